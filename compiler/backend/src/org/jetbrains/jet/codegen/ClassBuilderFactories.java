@@ -16,7 +16,10 @@
 
 package org.jetbrains.jet.codegen;
 
+import com.intellij.psi.PsiElement;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassVisitor;
 import org.jetbrains.asm4.ClassWriter;
 import org.jetbrains.asm4.util.TraceClassVisitor;
 
@@ -34,8 +37,8 @@ public class ClassBuilderFactories {
         }
 
         @Override
-        public ClassBuilder newClassBuilder() {
-            return new TraceBuilder(new BinaryClassWriter());
+        public ClassBuilder newClassBuilder(@NotNull ClassHierarchy hierarchy) {
+            return new TraceBuilder(new BinaryClassWriter(hierarchy), hierarchy);
         }
 
         @Override
@@ -62,7 +65,7 @@ public class ClassBuilderFactories {
         }
 
         @Override
-        public ClassBuilder newClassBuilder() {
+        public ClassBuilder newClassBuilder(@NotNull ClassHierarchy hierarchy) {
             return new ClassBuilder.Concrete(new TraceClassVisitor(new PrintWriter(new StringWriter())));
         }
 
@@ -90,8 +93,8 @@ public class ClassBuilderFactories {
         }
 
         @Override
-        public ClassBuilder newClassBuilder() {
-            return new ClassBuilder.Concrete(new BinaryClassWriter());
+        public ClassBuilder newClassBuilder(@NotNull ClassHierarchy hierarchy) {
+            return new BinaryClassBuilder(new BinaryClassWriter(hierarchy), hierarchy);
         }
 
         @Override
@@ -110,12 +113,19 @@ public class ClassBuilderFactories {
     }
 
     private static class BinaryClassWriter extends ClassWriter {
-        public BinaryClassWriter() {
+        private final ClassHierarchy hierarchy;
+
+        public BinaryClassWriter(@NotNull ClassHierarchy hierarchy) {
             super(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+            this.hierarchy = hierarchy;
         }
 
         @Override
         protected String getCommonSuperClass(String type1, String type2) {
+            if (ClassHierarchy.ENABLED) {
+                return hierarchy.getCommonSuperClass(type1, type2);
+            }
+
             try {
                 return super.getCommonSuperClass(type1, type2);
             }
@@ -126,11 +136,35 @@ public class ClassBuilderFactories {
         }
     }
 
-    private static class TraceBuilder extends ClassBuilder.Concrete {
+    private static class BinaryClassBuilder extends ClassBuilder.Concrete {
+        private final ClassHierarchy hierarchy;
+
+        public BinaryClassBuilder(@NotNull ClassVisitor v, @NotNull ClassHierarchy hierarchy) {
+            super(v);
+            this.hierarchy = hierarchy;
+        }
+
+        @Override
+        public void defineClass(
+                @Nullable PsiElement origin,
+                int version,
+                int access,
+                @NotNull String name,
+                @Nullable String signature,
+                @NotNull String superName,
+                @NotNull String[] interfaces
+        ) {
+            // Frames of the classes generated later may need to know the supertypes of this one
+            hierarchy.classDefined(name, access, superName, interfaces);
+            super.defineClass(origin, version, access, name, signature, superName, interfaces);
+        }
+    }
+
+    private static class TraceBuilder extends BinaryClassBuilder {
         public final BinaryClassWriter binary;
 
-        public TraceBuilder(BinaryClassWriter binary) {
-            super(new TraceClassVisitor(binary, new PrintWriter(new StringWriter())));
+        public TraceBuilder(BinaryClassWriter binary, @NotNull ClassHierarchy hierarchy) {
+            super(new TraceClassVisitor(binary, new PrintWriter(new StringWriter())), hierarchy);
             this.binary = binary;
         }
     }
@@ -22,7 +22,7 @@ public interface ClassBuilderFactory {
     @NotNull
     ClassBuilderMode getClassBuilderMode();
 
-    ClassBuilder newClassBuilder();
+    ClassBuilder newClassBuilder(@NotNull ClassHierarchy hierarchy);
 
     String asText(ClassBuilder builder);
 
@@ -46,6 +46,7 @@ public final class ClassFileFactory extends GenerationStateAware implements Outp
 
     private final Map<FqName, NamespaceCodegen> ns2codegen = new HashMap<FqName, NamespaceCodegen>();
     private final Map<String, ClassBuilderAndSourceFileList> generators = new LinkedHashMap<String, ClassBuilderAndSourceFileList>();
+    private final ThreadLocal<OutputSection> currentSection = new ThreadLocal<OutputSection>();
     private boolean isDone = false;
 
     public ClassFileFactory(@NotNull GenerationState state) {
@@ -65,12 +66,64 @@ public final class ClassFileFactory extends GenerationStateAware implements Outp
     @NotNull
     private ClassBuilder newVisitor(@NotNull Type asmType, @NotNull Collection<? extends PsiFile> sourceFiles) {
         String outputFilePath = asmType.getInternalName() + ".class";
-        state.getProgress().reportOutput(toIoFilesIgnoringNonPhysical(sourceFiles), new File(outputFilePath));
-        ClassBuilder answer = builderFactory.newClassBuilder();
-        generators.put(outputFilePath, new ClassBuilderAndSourceFileList(answer, sourceFiles));
+        ClassBuilder answer = builderFactory.newClassBuilder(state.getClassHierarchy());
+        ClassBuilderAndSourceFileList generator = new ClassBuilderAndSourceFileList(answer, sourceFiles);
+
+        OutputSection section = currentSection.get();
+        if (section != null) {
+            // Progress is not thread-safe: outputs of a section are reported by the thread committing it
+            section.generators.put(outputFilePath, generator);
+        }
+        else {
+            reportOutput(outputFilePath, sourceFiles);
+            synchronized (generators) {
+                generators.put(outputFilePath, generator);
+            }
+        }
         return answer;
     }
 
+    private void reportOutput(@NotNull String outputFilePath, @NotNull Collection<? extends PsiFile> sourceFiles) {
+        state.getProgress().reportOutput(toIoFilesIgnoringNonPhysical(sourceFiles), new File(outputFilePath));
+    }
+
+    /**
+     * Classes created by {@code generation} are kept aside in the section until it is committed,
+     * so that sections generated concurrently can be committed in a deterministic order
+     */
+    public void generateInSection(@NotNull OutputSection section, @NotNull Runnable generation) {
+        assert currentSection.get() == null : "Sections can't be nested";
+        currentSection.set(section);
+        try {
+            generation.run();
+        }
+        finally {
+            currentSection.remove();
+        }
+    }
+
+    /**
+     * Reports the outputs of the section to {@link GenerationState#getProgress()}, which is not thread-safe:
+     * all sections must be committed on one thread
+     */
+    public void commitSection(@NotNull OutputSection section) {
+        for (Map.Entry<String, ClassBuilderAndSourceFileList> entry : section.generators.entrySet()) {
+            reportOutput(entry.getKey(), entry.getValue().sourceFiles);
+        }
+        synchronized (generators) {
+            generators.putAll(section.generators);
+        }
+    }
+
+    /**
+     * @return the number of classes created so far; unlike {@link #asList()}, this doesn't finish the generation
+     */
+    public int getClassCount() {
+        synchronized (generators) {
+            return generators.size();
+        }
+    }
+
     private void done() {
         if (!isDone) {
             isDone = true;
@@ -110,7 +163,7 @@ public final class ClassFileFactory extends GenerationStateAware implements Outp
         return answer.toString();
     }
 
-    public NamespaceCodegen forNamespace(final FqName fqName, final Collection<JetFile> files) {
+    public synchronized NamespaceCodegen forNamespace(final FqName fqName, final Collection<JetFile> files) {
         assert !isDone : "Already done!";
         NamespaceCodegen codegen = ns2codegen.get(fqName);
         if (codegen == null) {
@@ -205,6 +258,10 @@ public final class ClassFileFactory extends GenerationStateAware implements Outp
         }
     }
 
+    public static final class OutputSection {
+        private final Map<String, ClassBuilderAndSourceFileList> generators = new LinkedHashMap<String, ClassBuilderAndSourceFileList>();
+    }
+
     private static final class ClassBuilderAndSourceFileList {
         private final ClassBuilder classBuilder;
         private final Collection<? extends PsiFile> sourceFiles;
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.Opcodes;
+import org.jetbrains.asm4.Type;
+import org.jetbrains.jet.codegen.state.JetTypeMapper;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassKind;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.java.JavaClassFinderImpl;
+import org.jetbrains.jet.lang.resolve.java.structure.JavaClass;
+import org.jetbrains.jet.lang.resolve.java.structure.impl.JavaClassImpl;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.types.JetType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.jetbrains.jet.codegen.CodegenUtil.isInterface;
+import static org.jetbrains.jet.codegen.binding.CodegenBinding.ASM_TYPE;
+
+/**
+ * Answers {@link org.jetbrains.asm4.ClassWriter#getCommonSuperClass} for the frames computed by the class writers
+ * without loading classes into the compiler. Supertypes are taken from the classes already generated, from the descriptors
+ * of the compiled classes and from the class files found on the classpath, in this order.
+ * A class which can't be found is treated as a direct subclass of {@code java.lang.Object}. With parallel generation it may be
+ * a class which another thread hasn't defined yet, so neither the miss nor the answers which depend on it are remembered.
+ *
+ * One instance is created per {@link org.jetbrains.jet.codegen.state.GenerationState}; it may be used from several threads.
+ */
+public final class ClassHierarchy {
+    public static final String ENABLED_PROPERTY = "kotlin.codegen.class.hierarchy";
+
+    // When disabled, ASM loads classes with Class.forName to compute common superclasses, which is how frames were computed before
+    /*package*/ static final boolean ENABLED = !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final String ENUM = "java/lang/Enum";
+
+    private static final class ClassInfo {
+        private final boolean isInterface;
+        @Nullable
+        private final String superName;
+        @NotNull
+        private final List<String> interfaces;
+
+        private ClassInfo(boolean isInterface, @Nullable String superName, @NotNull List<String> interfaces) {
+            this.isInterface = isInterface;
+            this.superName = superName;
+            this.interfaces = interfaces;
+        }
+    }
+
+    private static final ClassInfo UNKNOWN = new ClassInfo(false, OBJECT, Collections.<String>emptyList());
+
+    @NotNull
+    private final JetTypeMapper typeMapper;
+    @NotNull
+    private final Project project;
+
+    private final ConcurrentMap<String, ClassInfo> classes = new ConcurrentHashMap<String, ClassInfo>();
+    private final ConcurrentMap<String, String> commonSuperClasses = new ConcurrentHashMap<String, String>();
+
+    @NotNull
+    private volatile Map<String, ClassDescriptor> sourceClasses = Collections.emptyMap();
+
+    @Nullable
+    private JavaClassFinderImpl javaClassFinder;
+
+    public ClassHierarchy(@NotNull JetTypeMapper typeMapper, @NotNull Project project) {
+        this.typeMapper = typeMapper;
+        this.project = project;
+    }
+
+    /**
+     * Remembers the internal names of the classes compiled from source, must be called after they are recorded to the trace
+     */
+    public void indexSourceClasses(@NotNull BindingContext bindingContext) {
+        Map<String, ClassDescriptor> result = new HashMap<String, ClassDescriptor>();
+        for (DeclarationDescriptor descriptor : bindingContext.getKeys(ASM_TYPE)) {
+            if (!(descriptor instanceof ClassDescriptor)) continue;
+            ClassDescriptor classDescriptor = (ClassDescriptor) descriptor;
+
+            Type asmType = bindingContext.get(ASM_TYPE, classDescriptor);
+            assert asmType != null : "No ASM type for " + classDescriptor;
+
+            // Objects of enum classes are compiled to the enum class itself
+            ClassDescriptor existing = result.get(asmType.getInternalName());
+            if (existing != null && !isObject(existing)) continue;
+
+            result.put(asmType.getInternalName(), classDescriptor);
+        }
+        sourceClasses = result;
+    }
+
+    private static boolean isObject(@NotNull ClassDescriptor descriptor) {
+        return descriptor.getKind() == ClassKind.OBJECT || descriptor.getKind() == ClassKind.CLASS_OBJECT;
+    }
+
+    /*package*/ void classDefined(@NotNull String internalName, int access, @Nullable String superName, @Nullable String[] interfaces) {
+        List<String> interfaceList = interfaces == null ? Collections.<String>emptyList() : Arrays.asList(interfaces);
+        classes.put(internalName, new ClassInfo((access & Opcodes.ACC_INTERFACE) != 0, superName, interfaceList));
+    }
+
+    /**
+     * Follows the contract of {@link org.jetbrains.asm4.ClassWriter#getCommonSuperClass}: interfaces have {@code java.lang.Object}
+     * as the common superclass with anything but their subtypes
+     */
+    @NotNull
+    public String getCommonSuperClass(@NotNull String type1, @NotNull String type2) {
+        if (type1.equals(type2)) return type1;
+
+        String key = type1.compareTo(type2) < 0 ? type1 + ' ' + type2 : type2 + ' ' + type1;
+        String result = commonSuperClasses.get(key);
+        if (result == null) {
+            Lookup lookup = new Lookup();
+            result = lookup.computeCommonSuperClass(type1, type2);
+            if (!lookup.missed) {
+                commonSuperClasses.putIfAbsent(key, result);
+            }
+        }
+        return result;
+    }
+
+    // Lookups of one common superclass, which record whether some class wasn't found
+    private final class Lookup {
+        private boolean missed;
+
+        @NotNull
+        private String computeCommonSuperClass(@NotNull String type1, @NotNull String type2) {
+            if (isSubclass(type2, type1)) return type1;
+            if (isSubclass(type1, type2)) return type2;
+
+            ClassInfo info = getClassInfo(type1);
+            if (info.isInterface || getClassInfo(type2).isInterface) return OBJECT;
+
+            Set<String> visited = new HashSet<String>();
+            String current = info.superName;
+            while (current != null && visited.add(current)) {
+                if (isSubclass(type2, current)) return current;
+                current = getClassInfo(current).superName;
+            }
+            return OBJECT;
+        }
+
+        private boolean isSubclass(@NotNull String subclass, @NotNull String superclass) {
+            if (superclass.equals(OBJECT)) return true;
+
+            Set<String> visited = new HashSet<String>();
+            Deque<String> queue = new ArrayDeque<String>();
+            queue.add(subclass);
+            while (!queue.isEmpty()) {
+                String current = queue.poll();
+                if (current.equals(superclass)) return true;
+                if (!visited.add(current)) continue;
+
+                ClassInfo info = getClassInfo(current);
+                if (info.superName != null) {
+                    queue.add(info.superName);
+                }
+                queue.addAll(info.interfaces);
+            }
+            return false;
+        }
+
+        @NotNull
+        private ClassInfo getClassInfo(@NotNull String internalName) {
+            ClassInfo info = findClassInfo(internalName);
+            if (info == null) {
+                missed = true;
+                return UNKNOWN;
+            }
+            return info;
+        }
+    }
+
+    @Nullable
+    private ClassInfo findClassInfo(@NotNull String internalName) {
+        ClassInfo info = classes.get(internalName);
+        if (info == null) {
+            info = computeClassInfo(internalName);
+            if (info == null) return null;
+
+            ClassInfo existing = classes.putIfAbsent(internalName, info);
+            if (existing != null) {
+                info = existing;
+            }
+        }
+        return info;
+    }
+
+    @Nullable
+    private ClassInfo computeClassInfo(@NotNull String internalName) {
+        if (internalName.equals(OBJECT)) {
+            return new ClassInfo(false, null, Collections.<String>emptyList());
+        }
+
+        ClassDescriptor descriptor = sourceClasses.get(internalName);
+        if (descriptor != null) {
+            return getClassInfo(descriptor);
+        }
+
+        PsiClass psiClass = findClassFile(internalName);
+        if (psiClass != null) {
+            return getClassInfo(psiClass);
+        }
+
+        return null;
+    }
+
+    // Supertypes are mapped the same way as in ImplementationBodyCodegen.getSuperClass()
+    @NotNull
+    private ClassInfo getClassInfo(@NotNull ClassDescriptor descriptor) {
+        if (isInterface(descriptor)) {
+            return new ClassInfo(true, OBJECT, mapInterfaces(descriptor));
+        }
+
+        String superName = null;
+        for (JetType supertype : descriptor.getTypeConstructor().getSupertypes()) {
+            ClassifierDescriptor classifier = supertype.getConstructor().getDeclarationDescriptor();
+            if (classifier instanceof ClassDescriptor && !isInterface(classifier)) {
+                superName = typeMapper.mapClass(classifier).getInternalName();
+            }
+        }
+
+        if (superName == null || superName.equals(OBJECT)) {
+            if (descriptor.getKind() == ClassKind.ENUM_CLASS) {
+                superName = ENUM;
+            }
+            else if (descriptor.getKind() == ClassKind.ENUM_ENTRY) {
+                JetType supertype = descriptor.getTypeConstructor().getSupertypes().iterator().next();
+                superName = typeMapper.mapType(supertype).getInternalName();
+            }
+            else {
+                superName = OBJECT;
+            }
+        }
+
+        return new ClassInfo(false, superName, mapInterfaces(descriptor));
+    }
+
+    @NotNull
+    private List<String> mapInterfaces(@NotNull ClassDescriptor descriptor) {
+        List<String> result = new ArrayList<String>();
+        for (JetType supertype : descriptor.getTypeConstructor().getSupertypes()) {
+            ClassifierDescriptor classifier = supertype.getConstructor().getDeclarationDescriptor();
+            if (classifier instanceof ClassDescriptor && isInterface(classifier)) {
+                result.add(typeMapper.mapClass(classifier).getInternalName());
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    private static ClassInfo getClassInfo(@NotNull PsiClass psiClass) {
+        PsiClass superClass = psiClass.getSuperClass();
+        String superName = superClass != null ? getInternalName(superClass) : null;
+
+        List<String> interfaces = new ArrayList<String>();
+        for (PsiClass anInterface : psiClass.getInterfaces()) {
+            String name = getInternalName(anInterface);
+            if (name != null) {
+                interfaces.add(name);
+            }
+        }
+
+        return new ClassInfo(psiClass.isInterface(), superName != null ? superName : OBJECT, interfaces);
+    }
+
+    @Nullable
+    private PsiClass findClassFile(@NotNull String internalName) {
+        // Nested classes are found by the qualified name, the class is checked to have the requested binary name afterwards
+        FqName fqName = new FqName(internalName.replace('/', '.').replace('$', '.'));
+        JavaClass javaClass = getJavaClassFinder().findClass(fqName);
+        if (javaClass == null) return null;
+
+        PsiClass psiClass = ((JavaClassImpl) javaClass).getPsi();
+        return internalName.equals(getInternalName(psiClass)) ? psiClass : null;
+    }
+
+    @NotNull
+    private synchronized JavaClassFinderImpl getJavaClassFinder() {
+        if (javaClassFinder == null) {
+            JavaClassFinderImpl finder = new JavaClassFinderImpl();
+            finder.setProject(project);
+            finder.initialize();
+            javaClassFinder = finder;
+        }
+        return javaClassFinder;
+    }
+
+    @Nullable
+    private static String getInternalName(@NotNull PsiClass psiClass) {
+        PsiClass containingClass = psiClass.getContainingClass();
+        if (containingClass != null) {
+            String containingName = getInternalName(containingClass);
+            return containingName != null ? containingName + '$' + psiClass.getName() : null;
+        }
+
+        String qualifiedName = psiClass.getQualifiedName();
+        return qualifiedName != null ? qualifiedName.replace('.', '/') : null;
+    }
+}
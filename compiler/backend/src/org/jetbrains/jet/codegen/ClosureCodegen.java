@@ -26,6 +26,7 @@ import org.jetbrains.asm4.Type;
 import org.jetbrains.asm4.commons.InstructionAdapter;
 import org.jetbrains.asm4.commons.Method;
 import org.jetbrains.jet.codegen.binding.CalculatedClosure;
+import org.jetbrains.jet.codegen.binding.MutableClosure;
 import org.jetbrains.jet.codegen.context.CodegenContext;
 import org.jetbrains.jet.codegen.context.LocalLookup;
 import org.jetbrains.jet.codegen.signature.BothSignatureWriter;
@@ -136,6 +137,8 @@ public class ClosureCodegen extends ParentCodegenAwareImpl {
                                    DefaultParameterValueLoader.DEFAULT);
 
         cv.done();
+
+        ((MutableClosure) closure).setGenerated();
     }
 
     @NotNull
@@ -22,6 +22,7 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.Function;
 import com.intellij.util.containers.Stack;
@@ -44,7 +45,9 @@ import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.diagnostics.DiagnosticUtils;
 import org.jetbrains.jet.lang.psi.*;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
 import org.jetbrains.jet.lang.resolve.DescriptorUtils;
+import org.jetbrains.jet.lang.resolve.OverridingUtil;
 import org.jetbrains.jet.lang.resolve.calls.autocasts.AutoCastReceiver;
 import org.jetbrains.jet.lang.resolve.calls.model.*;
 import org.jetbrains.jet.lang.resolve.calls.util.CallMaker;
@@ -59,6 +62,7 @@ import org.jetbrains.jet.lang.resolve.scopes.receivers.*;
 import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.jet.lang.types.lang.PrimitiveType;
 import org.jetbrains.jet.lexer.JetTokens;
 import org.jetbrains.jet.renderer.DescriptorRenderer;
 
@@ -81,6 +85,13 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
 
     private static final String CLASS_NO_PATTERN_MATCHED_EXCEPTION = "jet/NoPatternMatchedException";
     private static final String CLASS_TYPE_CAST_EXCEPTION = "jet/TypeCastException";
+
+    public static final String WHEN_SWITCH_PROPERTY = "kotlin.when.switch";
+    private static final boolean WHEN_SWITCH_ENABLED = !"false".equals(System.getProperty(WHEN_SWITCH_PROPERTY));
+
+    public static final String PRIMITIVE_ITERATORS_PROPERTY = "kotlin.primitive.iterators";
+    private static final boolean PRIMITIVE_ITERATORS_ENABLED = !"false".equals(System.getProperty(PRIMITIVE_ITERATORS_PROPERTY));
+
     public static final Set<DeclarationDescriptor> INTEGRAL_RANGES = KotlinBuiltIns.getInstance().getIntegralRanges();
 
     private int myLastLineNumber = -1;
@@ -109,6 +120,14 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
      */
     private final Map<JetElement, StackValue.Local> tempVariables = Maps.newHashMap();
 
+    /*
+     * State of the inline function calls and function literals being expanded at the current point, see InlineCodegenUtil
+     */
+    private final Stack<InlineFrame> inlineFrames = new Stack<InlineFrame>();
+    private final Set<FunctionDescriptor> functionsBeingInlined = new HashSet<FunctionDescriptor>();
+    private final Map<ValueParameterDescriptor, JetFunctionLiteral> inlinedLambdas = new HashMap<ValueParameterDescriptor, JetFunctionLiteral>();
+    private final Map<CallableDescriptor, StackValue.Local> inlinedReceivers = new HashMap<CallableDescriptor, StackValue.Local>();
+
     public CalculatedClosure generateObjectLiteral(GenerationState state, JetObjectLiteralExpression literal) {
         JetObjectDeclaration objectDeclaration = literal.getObjectDeclaration();
 
@@ -159,6 +178,20 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
         }
     }
 
+    static class InlineFrame {
+        // Returns from the inlined body jump here with the returned value on the stack
+        final Label end;
+        final Type returnType;
+        // Inlined function bodies have no line numbers, because they point to another file
+        final boolean suppressLineNumbers;
+
+        InlineFrame(Label end, Type returnType, boolean suppressLineNumbers) {
+            this.end = end;
+            this.returnType = returnType;
+            this.suppressLineNumbers = suppressLineNumbers;
+        }
+    }
+
     public ExpressionCodegen(
             @NotNull MethodVisitor v,
             @NotNull FrameMap myMap,
@@ -695,6 +728,8 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
         private final ResolvedCall<FunctionDescriptor> iteratorCall;
         private final ResolvedCall<FunctionDescriptor> nextCall;
         private final Type asmTypeForIterator;
+        @Nullable
+        private final PrimitiveType primitiveIteratorType;
 
         private IteratorForLoopGenerator(@NotNull JetForExpression forExpression) {
             super(forExpression);
@@ -712,6 +747,8 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
             this.nextCall = getNotNull(bindingContext,
                                        LOOP_RANGE_NEXT_RESOLVED_CALL, loopRange,
                                        "No next() function " + DiagnosticUtils.atLocation(loopRange));
+
+            this.primitiveIteratorType = PRIMITIVE_ITERATORS_ENABLED ? getPrimitiveIteratorType(nextCall.getResultingDescriptor()) : null;
         }
 
         @Override
@@ -752,11 +789,25 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
 
         @Override
         protected void assignToLoopParameter() {
+            //noinspection ConstantConditions
+            Type elementType = asmType(nextCall.getResultingDescriptor().getReturnType());
+
+            if (primitiveIteratorType != null) {
+                // tmp<iterator>.nextInt() instead of the boxing tmp<iterator>.next()
+                Type primitiveType = asmType(KotlinBuiltIns.getInstance().getPrimitiveJetType(primitiveIteratorType));
+                Type iteratorType = asmType(getPrimitiveIteratorClass(primitiveIteratorType).getDefaultType());
+                v.load(iteratorVarIndex, asmTypeForIterator);
+                v.invokevirtual(iteratorType.getInternalName(), "next" + primitiveIteratorType.getTypeName().asString(),
+                                Type.getMethodDescriptor(primitiveType));
+                StackValue.coerce(primitiveType, elementType, v);
+                v.store(loopParameterVar, elementType);
+                return;
+            }
+
             @SuppressWarnings("ConstantConditions") Call fakeCall =
                     makeFakeCall(new TransientReceiver(iteratorCall.getResultingDescriptor().getReturnType()));
             invokeFunction(fakeCall, StackValue.local(iteratorVarIndex, asmTypeForIterator), nextCall);
-            //noinspection ConstantConditions
-            v.store(loopParameterVar, asmType(nextCall.getResultingDescriptor().getReturnType()));
+            v.store(loopParameterVar, elementType);
         }
 
         @Override
@@ -764,6 +815,28 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
         }
     }
 
+    /**
+     * @return the type of elements if {@code next} is the one inherited from a primitive iterator, such as {@code jet.IntIterator}
+     */
+    @Nullable
+    private static PrimitiveType getPrimitiveIteratorType(@NotNull FunctionDescriptor next) {
+        Collection<CallableMemberDescriptor> declarations = OverridingUtil.getOverriddenDeclarations(next);
+        if (declarations.size() != 1) return null;
+
+        DeclarationDescriptor iteratorClass = declarations.iterator().next().getContainingDeclaration();
+        for (PrimitiveType type : PrimitiveType.values()) {
+            if (iteratorClass == getPrimitiveIteratorClass(type)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    private static ClassDescriptor getPrimitiveIteratorClass(@NotNull PrimitiveType type) {
+        return KotlinBuiltIns.getInstance().getBuiltInClassByName(Name.identifier(type.getTypeName().asString() + "Iterator"));
+    }
+
     private class ForInArrayLoopGenerator extends AbstractForLoopGenerator {
         private int indexVar;
         private int arrayVar;
@@ -1505,6 +1578,8 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
     }
 
     private void markLineNumber(@NotNull JetElement statement) {
+        if (!inlineFrames.isEmpty() && inlineFrames.peek().suppressLineNumbers) return;
+
         Document document = statement.getContainingFile().getViewProvider().getDocument();
         if (document != null) {
             int lineNumber = document.getLineNumber(statement.getTextRange().getStartOffset());  // 0-based
@@ -1574,7 +1649,17 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
     @Override
     public StackValue visitReturnExpression(@NotNull JetReturnExpression expression, StackValue receiver) {
         JetExpression returnedExpression = expression.getReturnedExpression();
-        if (returnedExpression != null) {
+        if (!inlineFrames.isEmpty()) {
+            InlineFrame frame = inlineFrames.peek();
+            if (returnedExpression != null) {
+                gen(returnedExpression, frame.returnType);
+            }
+            else {
+                StackValue.none().put(frame.returnType, v);
+            }
+            v.goTo(frame.end);
+        }
+        else if (returnedExpression != null) {
             gen(returnedExpression, returnType);
             doFinallyOnReturn();
             v.areturn(returnType);
@@ -1990,12 +2075,25 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
         if (resolvedCall instanceof VariableAsFunctionResolvedCall) {
             VariableAsFunctionResolvedCall variableAsFunctionResolvedCall = (VariableAsFunctionResolvedCall) resolvedCall;
             ResolvedCallWithTrace<FunctionDescriptor> functionCall = variableAsFunctionResolvedCall.getFunctionCall();
+            //noinspection SuspiciousMethodCalls
+            JetFunctionLiteral inlinedLambda =
+                    inlinedLambdas.get(variableAsFunctionResolvedCall.getVariableCall().getResultingDescriptor().getOriginal());
+            if (inlinedLambda != null) {
+                return generateInlinedLambda(inlinedLambda, functionCall);
+            }
             return invokeFunction(call, receiver, functionCall);
         }
 
         FunctionDescriptor fd = (FunctionDescriptor) resolvedCall.getResultingDescriptor();
         boolean superCall = isSuperCall(call);
 
+        if (!superCall) {
+            JetNamedFunction inlinedFunction = InlineCodegenUtil.getInlinableDeclaration(bindingContext, resolvedCall, functionsBeingInlined);
+            if (inlinedFunction != null) {
+                return generateInlinedCall(inlinedFunction, resolvedCall, receiver);
+            }
+        }
+
         if (superCall && !isInterface(fd.getContainingDeclaration())) {
             JetSuperExpression expression = getSuperCallExpression(call);
             ClassDescriptor owner = getSuperCallLabelTarget(expression);
@@ -2035,6 +2133,122 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
         }
     }
 
+    @NotNull
+    private StackValue generateInlinedCall(
+            @NotNull JetNamedFunction function,
+            @NotNull ResolvedCall<? extends CallableDescriptor> resolvedCall,
+            @NotNull StackValue receiver
+    ) {
+        FunctionDescriptor original = (FunctionDescriptor) resolvedCall.getResultingDescriptor().getOriginal();
+        Map<ValueParameterDescriptor, JetFunctionLiteral> lambdas =
+                InlineCodegenUtil.getInlinableLambdas(bindingContext, function, resolvedCall);
+
+        ReceiverParameterDescriptor receiverParameter = original.getReceiverParameter();
+        Type receiverType = receiverParameter != null ? asmType(receiverParameter.getType()) : Type.VOID_TYPE;
+        StackValue.receiver(resolvedCall, receiver, this, null).put(receiverType, v);
+
+        // Arguments are evaluated in the same order as for a call, then stored to the locals of the parameters
+        List<ValueParameterDescriptor> parameters = new ArrayList<ValueParameterDescriptor>();
+        List<ResolvedValueArgument> arguments = resolvedCall.getValueArgumentsByIndex();
+        for (ValueParameterDescriptor parameter : original.getValueParameters()) {
+            if (lambdas.containsKey(parameter)) continue;
+            ValueArgument argument = ((ExpressionValueArgument) arguments.get(parameter.getIndex())).getValueArgument();
+            assert argument != null : "No argument for " + parameter;
+            gen(argument.getArgumentExpression(), asmType(parameter.getType()));
+            parameters.add(parameter);
+        }
+
+        StackValue.Local receiverLocal = null;
+        if (receiverType != Type.VOID_TYPE) {
+            receiverLocal = StackValue.local(myFrameMap.enterTemp(receiverType), receiverType);
+        }
+        int[] indices = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            indices[i] = myFrameMap.enter(parameters.get(i), asmType(parameters.get(i).getType()));
+        }
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            v.store(indices[i], asmType(parameters.get(i).getType()));
+        }
+        if (receiverLocal != null) {
+            receiverLocal.store(receiverType, v);
+            inlinedReceivers.put(original, receiverLocal);
+        }
+
+        JetType jetReturnType = original.getReturnType();
+        assert jetReturnType != null : "Return type is not resolved for " + original;
+        Type returnType = typeMapper.mapReturnType(jetReturnType);
+        InlineFrame frame = new InlineFrame(new Label(), returnType, true);
+
+        inlineFrames.push(frame);
+        functionsBeingInlined.add(original);
+        inlinedLambdas.putAll(lambdas);
+        try {
+            JetExpression body = function.getBodyExpression();
+            assert body != null : "Inlined function has no body: " + original;
+            gen(body, function.hasBlockBody() ? Type.VOID_TYPE : returnType);
+            v.mark(frame.end);
+        }
+        finally {
+            inlineFrames.pop();
+            functionsBeingInlined.remove(original);
+            inlinedLambdas.keySet().removeAll(lambdas.keySet());
+            inlinedReceivers.remove(original);
+        }
+
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            myFrameMap.leave(parameters.get(i));
+        }
+        if (receiverLocal != null) {
+            myFrameMap.leaveTemp(receiverType);
+        }
+
+        return returnValueAsStackValue((FunctionDescriptor) resolvedCall.getResultingDescriptor(), returnType);
+    }
+
+    @NotNull
+    private StackValue generateInlinedLambda(@NotNull JetFunctionLiteral literal, @NotNull ResolvedCall<FunctionDescriptor> invokeCall) {
+        FunctionDescriptor descriptor = bindingContext.get(FUNCTION, literal);
+        assert descriptor != null : "Function literal is not resolved: " + literal.getText();
+
+        List<ValueParameterDescriptor> parameters = descriptor.getValueParameters();
+        List<ResolvedValueArgument> arguments = invokeCall.getValueArgumentsByIndex();
+        for (int i = 0; i < parameters.size(); i++) {
+            ValueArgument argument = ((ExpressionValueArgument) arguments.get(i)).getValueArgument();
+            assert argument != null : "No argument for " + parameters.get(i);
+            gen(argument.getArgumentExpression(), asmType(parameters.get(i).getType()));
+        }
+
+        int[] indices = new int[parameters.size()];
+        for (int i = 0; i < parameters.size(); i++) {
+            indices[i] = myFrameMap.enter(parameters.get(i), asmType(parameters.get(i).getType()));
+        }
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            v.store(indices[i], asmType(parameters.get(i).getType()));
+        }
+
+        JetType jetReturnType = descriptor.getReturnType();
+        assert jetReturnType != null : "Return type is not resolved for " + descriptor;
+        Type returnType = typeMapper.mapReturnType(jetReturnType);
+        InlineFrame frame = new InlineFrame(new Label(), returnType, false);
+
+        inlineFrames.push(frame);
+        try {
+            JetBlockExpression body = literal.getBodyExpression();
+            assert body != null : "Function literal has no body: " + literal.getText();
+            gen(body, returnType);
+            v.mark(frame.end);
+        }
+        finally {
+            inlineFrames.pop();
+        }
+
+        for (int i = parameters.size() - 1; i >= 0; i--) {
+            myFrameMap.leave(parameters.get(i));
+        }
+
+        return returnType == Type.VOID_TYPE ? StackValue.none() : StackValue.onStack(returnType);
+    }
+
     @Nullable
     private static JetSuperExpression getSuperCallExpression(@NotNull Call call) {
         ReceiverValue explicitReceiver = call.getExplicitReceiver();
@@ -2206,6 +2420,12 @@ public class ExpressionCodegen extends JetVisitor<StackValue, StackValue> implem
     }
 
     private StackValue generateReceiver(DeclarationDescriptor provided) {
+        //noinspection SuspiciousMethodCalls
+        StackValue.Local inlinedReceiver = inlinedReceivers.get(provided);
+        if (inlinedReceiver != null) {
+            return inlinedReceiver;
+        }
+
         if (context.getCallableDescriptorWithReceiver() == provided) {
             StackValue result = context.getReceiverExpression(typeMapper);
             return castToRequiredTypeOfInterfaceIfNeeded(result, provided, null);
@@ -3700,47 +3920,43 @@ The "returned" value of try expression with no finally is either the last expres
         Label end = new Label();
         boolean hasElse = JetPsiUtil.checkWhenExpressionHasSingleElse(expression);
 
-        Label nextCondition = null;
-        for (JetWhenEntry whenEntry : expression.getEntries()) {
-            if (nextCondition != null) {
-                v.mark(nextCondition);
-            }
-            nextCondition = new Label();
-            FrameMap.Mark mark = myFrameMap.mark();
-            Label thisEntry = new Label();
-            if (!whenEntry.isElse()) {
-                JetWhenCondition[] conditions = whenEntry.getConditions();
-                for (int i = 0; i < conditions.length; i++) {
-                    StackValue conditionValue = generateWhenCondition(subjectType, subjectLocal, conditions[i]);
-                    conditionValue.condJump(nextCondition, true, v);
-                    if (i < conditions.length - 1) {
-                        v.goTo(thisEntry);
-                        v.mark(nextCondition);
-                        nextCondition = new Label();
+        Map<Object, JetWhenEntry> switchCases = subjectLocal != -1 ? getWhenSwitchCases(expression, subjectJetType, subjectType) : null;
+        if (switchCases != null) {
+            generateWhenSwitch(expression, switchCases, StackValue.local(subjectLocal, subjectType), resultType, end, hasElse, isStatement);
+        }
+        else {
+            Label nextCondition = null;
+            for (JetWhenEntry whenEntry : expression.getEntries()) {
+                if (nextCondition != null) {
+                    v.mark(nextCondition);
+                }
+                nextCondition = new Label();
+                FrameMap.Mark mark = myFrameMap.mark();
+                Label thisEntry = new Label();
+                if (!whenEntry.isElse()) {
+                    JetWhenCondition[] conditions = whenEntry.getConditions();
+                    for (int i = 0; i < conditions.length; i++) {
+                        StackValue conditionValue = generateWhenCondition(subjectType, subjectLocal, conditions[i]);
+                        conditionValue.condJump(nextCondition, true, v);
+                        if (i < conditions.length - 1) {
+                            v.goTo(thisEntry);
+                            v.mark(nextCondition);
+                            nextCondition = new Label();
+                        }
                     }
                 }
-            }
 
-            v.visitLabel(thisEntry);
-            gen(whenEntry.getExpression(), resultType);
-            mark.dropTo();
-            if (!whenEntry.isElse()) {
-                v.goTo(end);
-            }
-        }
-        if (!hasElse && nextCondition != null) {
-            v.mark(nextCondition);
-            if (!isStatement) {
-                // a result is expected
-                if (Boolean.TRUE.equals(bindingContext.get(BindingContext.EXHAUSTIVE_WHEN, expression))) {
-                    // when() is supposed to be exhaustive
-                    throwNewException(CLASS_NO_PATTERN_MATCHED_EXCEPTION);
-                }
-                else {
-                    // non-exhaustive when() with no else -> Unit must be expected
-                    StackValue.putUnitInstance(v);
+                v.visitLabel(thisEntry);
+                gen(whenEntry.getExpression(), resultType);
+                mark.dropTo();
+                if (!whenEntry.isElse()) {
+                    v.goTo(end);
                 }
             }
+            if (!hasElse && nextCondition != null) {
+                v.mark(nextCondition);
+                generateWhenNoMatch(expression, isStatement);
+            }
         }
 
         markLineNumber(expression);
@@ -3751,6 +3967,249 @@ The "returned" value of try expression with no finally is either the last expres
         return StackValue.onStack(resultType);
     }
 
+    private void generateWhenNoMatch(@NotNull JetWhenExpression expression, boolean isStatement) {
+        if (!isStatement) {
+            // a result is expected
+            if (Boolean.TRUE.equals(bindingContext.get(BindingContext.EXHAUSTIVE_WHEN, expression))) {
+                // when() is supposed to be exhaustive
+                throwNewException(CLASS_NO_PATTERN_MATCHED_EXCEPTION);
+            }
+            else {
+                // non-exhaustive when() with no else -> Unit must be expected
+                StackValue.putUnitInstance(v);
+            }
+        }
+    }
+
+    /**
+     * @return entries to jump to by the value of the subject: int values for integral subjects, ordinals for enums, strings,
+     * or null if some condition is not a constant of the subject type and the when should be generated as a chain of comparisons
+     */
+    @Nullable
+    private Map<Object, JetWhenEntry> getWhenSwitchCases(
+            @NotNull JetWhenExpression expression,
+            @Nullable JetType subjectJetType,
+            @NotNull Type subjectType
+    ) {
+        if (!WHEN_SWITCH_ENABLED || subjectJetType == null) return null;
+
+        ClassDescriptor enumClass = null;
+        if (subjectType.getSort() == Type.OBJECT) {
+            ClassifierDescriptor classifier = subjectJetType.getConstructor().getDeclarationDescriptor();
+            if (classifier instanceof ClassDescriptor && ((ClassDescriptor) classifier).getKind() == ClassKind.ENUM_CLASS) {
+                enumClass = (ClassDescriptor) classifier;
+            }
+            else if (!subjectType.equals(JAVA_STRING_TYPE)) {
+                return null;
+            }
+        }
+        else if (!isIntOrShorter(subjectType)) {
+            return null;
+        }
+
+        Map<Object, JetWhenEntry> cases = new LinkedHashMap<Object, JetWhenEntry>();
+        for (JetWhenEntry entry : expression.getEntries()) {
+            if (entry.isElse()) continue;
+            for (JetWhenCondition condition : entry.getConditions()) {
+                if (!(condition instanceof JetWhenConditionWithExpression)) return null;
+                JetExpression pattern = JetPsiUtil.deparenthesize(((JetWhenConditionWithExpression) condition).getExpression());
+                if (pattern == null) return null;
+
+                Object key = enumClass != null ? getEnumEntryOrdinal(pattern, enumClass) : getSwitchConstant(pattern, subjectType);
+                if (key == null) return null;
+                // A value matches the first entry with it, the same as for a chain of comparisons
+                if (!cases.containsKey(key)) {
+                    cases.put(key, entry);
+                }
+            }
+        }
+        return cases.size() >= 2 ? cases : null;
+    }
+
+    private static boolean isIntOrShorter(@NotNull Type type) {
+        int sort = type.getSort();
+        return sort == Type.INT || sort == Type.CHAR || sort == Type.SHORT || sort == Type.BYTE;
+    }
+
+    @Nullable
+    private Object getSwitchConstant(@NotNull JetExpression pattern, @NotNull Type subjectType) {
+        CompileTimeConstant<?> constant = bindingContext.get(BindingContext.COMPILE_TIME_VALUE, pattern);
+        if (constant == null) return null;
+
+        Object value = constant.getValue();
+        if (subjectType.equals(JAVA_STRING_TYPE)) {
+            return value instanceof String ? value : null;
+        }
+        if (value instanceof Character) {
+            return (int) (Character) value;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        }
+        return null;
+    }
+
+    /**
+     * Ordinals are known only for enums compiled together with the when expression, entries of other enums may be reordered
+     * by separate compilation
+     */
+    @Nullable
+    private Integer getEnumEntryOrdinal(@NotNull JetExpression pattern, @NotNull ClassDescriptor enumClass) {
+        JetExpression reference = pattern;
+        if (pattern instanceof JetDotQualifiedExpression) {
+            JetDotQualifiedExpression qualified = (JetDotQualifiedExpression) pattern;
+            if (!isQualifiedName(qualified.getReceiverExpression())) return null;
+            reference = qualified.getSelectorExpression();
+        }
+        if (!(reference instanceof JetSimpleNameExpression)) return null;
+
+        DeclarationDescriptor target = bindingContext.get(REFERENCE_TARGET, (JetSimpleNameExpression) reference);
+        if (target instanceof VariableDescriptorForObject) {
+            target = ((VariableDescriptorForObject) target).getObjectClass();
+        }
+        if (!(target instanceof ClassDescriptor) || ((ClassDescriptor) target).getKind() != ClassKind.ENUM_ENTRY) return null;
+
+        PsiElement entry = BindingContextUtils.classDescriptorToDeclaration(bindingContext, (ClassDescriptor) target);
+        if (!(entry instanceof JetEnumEntry) || !(entry.getParent() instanceof JetClassBody)) return null;
+        JetClass enumDeclaration = PsiTreeUtil.getParentOfType(entry, JetClass.class);
+        if (enumDeclaration == null || bindingContext.get(CLASS, enumDeclaration) != enumClass) return null;
+
+        int ordinal = 0;
+        for (JetDeclaration declaration : ((JetClassBody) entry.getParent()).getDeclarations()) {
+            if (declaration == entry) return ordinal;
+            if (declaration instanceof JetEnumEntry) {
+                ordinal++;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isQualifiedName(@Nullable JetExpression expression) {
+        if (expression instanceof JetDotQualifiedExpression) {
+            JetDotQualifiedExpression qualified = (JetDotQualifiedExpression) expression;
+            return isQualifiedName(qualified.getReceiverExpression()) && qualified.getSelectorExpression() instanceof JetSimpleNameExpression;
+        }
+        return expression instanceof JetSimpleNameExpression;
+    }
+
+    private void generateWhenSwitch(
+            @NotNull JetWhenExpression expression,
+            @NotNull Map<Object, JetWhenEntry> cases,
+            @NotNull StackValue.Local subject,
+            @NotNull Type resultType,
+            @NotNull Label end,
+            boolean hasElse,
+            boolean isStatement
+    ) {
+        Label defaultLabel = new Label();
+        Map<JetWhenEntry, Label> entryLabels = new HashMap<JetWhenEntry, Label>();
+        for (JetWhenEntry entry : cases.values()) {
+            if (!entryLabels.containsKey(entry)) {
+                entryLabels.put(entry, new Label());
+            }
+        }
+
+        if (subject.type.getSort() == Type.OBJECT) {
+            subject.put(subject.type, v);
+            v.ifnull(defaultLabel);
+        }
+
+        if (subject.type.equals(JAVA_STRING_TYPE)) {
+            // Switch by hash code, then compare the strings which have it
+            SortedMap<Integer, List<String>> stringsByHash = new TreeMap<Integer, List<String>>();
+            for (Object key : cases.keySet()) {
+                String string = (String) key;
+                List<String> strings = stringsByHash.get(string.hashCode());
+                if (strings == null) {
+                    strings = new ArrayList<String>(1);
+                    stringsByHash.put(string.hashCode(), strings);
+                }
+                strings.add(string);
+            }
+
+            SortedMap<Integer, Label> hashLabels = new TreeMap<Integer, Label>();
+            for (Integer hash : stringsByHash.keySet()) {
+                hashLabels.put(hash, new Label());
+            }
+
+            subject.put(subject.type, v);
+            v.invokevirtual("java/lang/String", "hashCode", "()I");
+            generateSwitchInstruction(hashLabels, defaultLabel);
+
+            for (Map.Entry<Integer, List<String>> hashStrings : stringsByHash.entrySet()) {
+                v.mark(hashLabels.get(hashStrings.getKey()));
+                for (String string : hashStrings.getValue()) {
+                    subject.put(subject.type, v);
+                    v.aconst(string);
+                    v.invokevirtual("java/lang/String", "equals", "(Ljava/lang/Object;)Z");
+                    v.ifne(entryLabels.get(cases.get(string)));
+                }
+                v.goTo(defaultLabel);
+            }
+        }
+        else {
+            SortedMap<Integer, Label> keyLabels = new TreeMap<Integer, Label>();
+            for (Map.Entry<Object, JetWhenEntry> entry : cases.entrySet()) {
+                keyLabels.put((Integer) entry.getKey(), entryLabels.get(entry.getValue()));
+            }
+
+            subject.put(subject.type, v);
+            if (subject.type.getSort() == Type.OBJECT) {
+                v.invokevirtual(subject.type.getInternalName(), "ordinal", "()I");
+            }
+            generateSwitchInstruction(keyLabels, defaultLabel);
+        }
+
+        for (JetWhenEntry entry : expression.getEntries()) {
+            Label entryLabel = entry.isElse() ? defaultLabel : entryLabels.get(entry);
+            // Entries whose values are all matched by previous entries are unreachable
+            if (entryLabel == null) continue;
+
+            v.mark(entryLabel);
+            FrameMap.Mark mark = myFrameMap.mark();
+            gen(entry.getExpression(), resultType);
+            mark.dropTo();
+            if (!entry.isElse()) {
+                v.goTo(end);
+            }
+        }
+
+        if (!hasElse) {
+            v.mark(defaultLabel);
+            generateWhenNoMatch(expression, isStatement);
+        }
+    }
+
+    private void generateSwitchInstruction(@NotNull SortedMap<Integer, Label> cases, @NotNull Label defaultLabel) {
+        int[] keys = new int[cases.size()];
+        Label[] labels = new Label[cases.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Label> entry : cases.entrySet()) {
+            keys[i] = entry.getKey();
+            labels[i] = entry.getValue();
+            i++;
+        }
+
+        int min = keys[0];
+        int max = keys[keys.length - 1];
+        // The same estimate of size and speed as in javac
+        long tableSpaceCost = 4 + ((long) max - min + 1);
+        long tableTimeCost = 3;
+        long lookupSpaceCost = 3 + 2 * (long) keys.length;
+        long lookupTimeCost = keys.length;
+        if (tableSpaceCost + 3 * tableTimeCost <= lookupSpaceCost + 3 * lookupTimeCost) {
+            Label[] table = new Label[max - min + 1];
+            Arrays.fill(table, defaultLabel);
+            for (int j = 0; j < keys.length; j++) {
+                table[keys[j] - min] = labels[j];
+            }
+            v.tableswitch(min, max, defaultLabel, table);
+        }
+        else {
+            v.lookupswitch(defaultLabel, keys, labels);
+        }
+    }
+
     private StackValue generateWhenCondition(Type subjectType, int subjectLocal, JetWhenCondition condition) {
         if (condition instanceof JetWhenConditionInRange) {
             JetWhenConditionInRange conditionInRange = (JetWhenConditionInRange) condition;
@@ -0,0 +1,388 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
+import org.jetbrains.jet.lang.resolve.calls.model.*;
+import org.jetbrains.jet.lang.types.lang.InlineUtil;
+import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.jet.lexer.JetTokens;
+
+import java.util.*;
+
+import static org.jetbrains.jet.lang.resolve.BindingContext.*;
+
+/**
+ * Decides which calls of inline functions are expanded at the call site by {@link ExpressionCodegen}.
+ *
+ * Only top-level functions declared in the module being compiled can be inlined, because the body is generated from the source.
+ * Calls of library functions, e.g. {@code filter}, {@code map} or {@code forEach} from the standard library, are never inlined.
+ * The body must not declare closures, classes or try blocks, returns must not leave anything on the operand stack,
+ * and everything it refers to must be accessible from any call site.
+ * A function literal passed to an inline function is expanded in place of each invocation of the parameter
+ * if the parameter is used only by invoking it; otherwise it is passed as a closure object.
+ * Such a literal is not a closure: no class is generated for it, and the local variables it modifies are not wrapped
+ * unless a real closure captures them as well.
+ */
+public class InlineCodegenUtil {
+    public static final String ENABLED_PROPERTY = "kotlin.inline.codegen";
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+    @Nullable
+    public static JetNamedFunction getInlinableDeclaration(
+            @NotNull BindingContext bindingContext,
+            @NotNull ResolvedCall<? extends CallableDescriptor> resolvedCall,
+            @NotNull Set<FunctionDescriptor> beingInlined
+    ) {
+        if (!ENABLED || resolvedCall instanceof VariableAsFunctionResolvedCall) return null;
+
+        CallableDescriptor original = resolvedCall.getResultingDescriptor().getOriginal();
+        if (!(original instanceof SimpleFunctionDescriptor) || !((SimpleFunctionDescriptor) original).isInline()) return null;
+        if (!(original.getContainingDeclaration() instanceof NamespaceDescriptor)) return null;
+        if (beingInlined.contains(original)) return null;
+
+        PsiElement declaration = BindingContextUtils.descriptorToDeclaration(bindingContext, original);
+        if (!(declaration instanceof JetNamedFunction)) return null;
+        JetNamedFunction function = (JetNamedFunction) declaration;
+        JetExpression body = function.getBodyExpression();
+        if (body == null) return null;
+
+        List<ResolvedValueArgument> arguments = resolvedCall.getValueArgumentsByIndex();
+        if (arguments == null) return null;
+        for (ResolvedValueArgument argument : arguments) {
+            // Default values and varargs are computed by the callee
+            if (!(argument instanceof ExpressionValueArgument)) return null;
+            ValueArgument valueArgument = ((ExpressionValueArgument) argument).getValueArgument();
+            if (valueArgument == null || valueArgument.getArgumentExpression() == null) return null;
+        }
+
+        return isInlinableBody(bindingContext, body, true) ? function : null;
+    }
+
+    /**
+     * @return function literals which can be generated in place of invocations of the corresponding parameters
+     */
+    @NotNull
+    public static Map<ValueParameterDescriptor, JetFunctionLiteral> getInlinableLambdas(
+            @NotNull BindingContext bindingContext,
+            @NotNull JetNamedFunction function,
+            @NotNull ResolvedCall<? extends CallableDescriptor> resolvedCall
+    ) {
+        List<ValueParameterDescriptor> parameters = resolvedCall.getResultingDescriptor().getOriginal().getValueParameters();
+        List<ResolvedValueArgument> arguments = resolvedCall.getValueArgumentsByIndex();
+
+        Map<ValueParameterDescriptor, JetFunctionLiteral> result = null;
+        for (ValueParameterDescriptor parameter : parameters) {
+            ValueArgument argument = ((ExpressionValueArgument) arguments.get(parameter.getIndex())).getValueArgument();
+            assert argument != null : "Argument is not generated for " + parameter;
+            JetExpression expression = JetPsiUtil.deparenthesize(argument.getArgumentExpression());
+            if (!(expression instanceof JetFunctionLiteralExpression)) continue;
+
+            JetFunctionLiteral literal = ((JetFunctionLiteralExpression) expression).getFunctionLiteral();
+            if (Boolean.TRUE.equals(bindingContext.get(BLOCK, expression))) continue;
+            if (InlineUtil.hasNoinlineAnnotation(parameter)) continue;
+            if (!KotlinBuiltIns.getInstance().isFunctionType(parameter.getType())) continue;
+
+            FunctionDescriptor literalDescriptor = bindingContext.get(FUNCTION, literal);
+            if (literalDescriptor == null || literalDescriptor.getReceiverParameter() != null) continue;
+
+            JetBlockExpression literalBody = literal.getBodyExpression();
+            if (literalBody == null || !isInlinableBody(bindingContext, literalBody, false)) continue;
+
+            //noinspection ConstantConditions
+            if (!isOnlyInvoked(bindingContext, function.getBodyExpression(), parameter, literalDescriptor.getValueParameters().size())) {
+                continue;
+            }
+
+            if (result == null) {
+                result = new HashMap<ValueParameterDescriptor, JetFunctionLiteral>();
+            }
+            result.put(parameter, literal);
+        }
+        return result != null ? result : Collections.<ValueParameterDescriptor, JetFunctionLiteral>emptyMap();
+    }
+
+    /**
+     * @return whether the function literal is generated in place of the invocations of the parameter it is passed to,
+     *         so that no closure class is generated for it and the variables it refers to are not captured
+     */
+    public static boolean isInlinedFunctionLiteral(
+            @NotNull BindingContext bindingContext,
+            @NotNull JetFunctionLiteralExpression expression
+    ) {
+        if (!ENABLED) return false;
+
+        PsiElement parent = expression.getParent();
+        while (parent instanceof JetParenthesizedExpression) {
+            parent = parent.getParent();
+        }
+        if (parent instanceof JetValueArgument) {
+            parent = parent.getParent() instanceof JetValueArgumentList ? parent.getParent().getParent() : null;
+        }
+        if (!(parent instanceof JetCallExpression)) return false;
+
+        JetExpression callee = ((JetCallExpression) parent).getCalleeExpression();
+        if (callee == null || callee == expression) return false;
+
+        ResolvedCall<? extends CallableDescriptor> resolvedCall = bindingContext.get(RESOLVED_CALL, callee);
+        if (resolvedCall == null) return false;
+
+        // Calls in inlined bodies may only take closures, so the set of functions being inlined is irrelevant here
+        JetNamedFunction function = getInlinableDeclaration(bindingContext, resolvedCall, Collections.<FunctionDescriptor>emptySet());
+        return function != null &&
+               getInlinableLambdas(bindingContext, function, resolvedCall).containsValue(expression.getFunctionLiteral());
+    }
+
+    private static boolean isOnlyInvoked(
+            @NotNull final BindingContext bindingContext,
+            @NotNull JetExpression body,
+            @NotNull final ValueParameterDescriptor parameter,
+            final int argumentCount
+    ) {
+        final boolean[] result = {true};
+        body.accept(new JetTreeVisitorVoid() {
+            @Override
+            public void visitSimpleNameExpression(@NotNull JetSimpleNameExpression expression) {
+                if (result[0] && getReferencedDescriptors(bindingContext, expression).contains(parameter)) {
+                    result[0] = isInvocation(expression);
+                }
+            }
+
+            private boolean isInvocation(@NotNull JetSimpleNameExpression expression) {
+                PsiElement parent = expression.getParent();
+                if (!(parent instanceof JetCallExpression) || ((JetCallExpression) parent).getCalleeExpression() != expression) return false;
+
+                ResolvedCall<? extends CallableDescriptor> call = bindingContext.get(RESOLVED_CALL, expression);
+                if (!(call instanceof VariableAsFunctionResolvedCall)) return false;
+
+                List<ResolvedValueArgument> arguments = call.getValueArgumentsByIndex();
+                if (arguments == null || arguments.size() != argumentCount) return false;
+                for (ResolvedValueArgument argument : arguments) {
+                    if (!(argument instanceof ExpressionValueArgument)) return false;
+                }
+                return true;
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * @param checkVisibility whether the body is going to be generated outside of the declaring file,
+     *                        so that only public and internal declarations can be used
+     */
+    private static boolean isInlinableBody(
+            @NotNull final BindingContext bindingContext,
+            @NotNull final JetExpression body,
+            final boolean checkVisibility
+    ) {
+        final boolean[] result = {true};
+        body.accept(new JetTreeVisitorVoid() {
+            @Override
+            public void visitElement(PsiElement element) {
+                if (result[0]) {
+                    super.visitElement(element);
+                }
+            }
+
+            @Override
+            public void visitFunctionLiteralExpression(@NotNull JetFunctionLiteralExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitObjectLiteralExpression(@NotNull JetObjectLiteralExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitClass(@NotNull JetClass klass) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitObjectDeclaration(@NotNull JetObjectDeclaration declaration) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitNamedFunction(@NotNull JetNamedFunction function) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitCallableReferenceExpression(@NotNull JetCallableReferenceExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitTryExpression(@NotNull JetTryExpression expression) {
+                result[0] = false;
+            }
+
+            @Override
+            public void visitReturnExpression(@NotNull JetReturnExpression expression) {
+                // An inlined return is a jump to the end of the body, which is only valid if the stack is empty
+                if (expression.getTargetLabel() != null || !isOnStatementLevel(expression, body)) {
+                    result[0] = false;
+                    return;
+                }
+                super.visitReturnExpression(expression);
+            }
+
+            @Override
+            public void visitBreakExpression(@NotNull JetBreakExpression expression) {
+                result[0] = isLocalJump(expression, body);
+            }
+
+            @Override
+            public void visitContinueExpression(@NotNull JetContinueExpression expression) {
+                result[0] = isLocalJump(expression, body);
+            }
+
+            @Override
+            public void visitSimpleNameExpression(@NotNull JetSimpleNameExpression expression) {
+                if (expression.getReferencedNameElementType() == JetTokens.FIELD_IDENTIFIER) {
+                    result[0] = false;
+                }
+                else if (checkVisibility) {
+                    result[0] = areAccessible(getReferencedDescriptors(bindingContext, expression));
+                }
+            }
+
+            @Override
+            public void visitArrayAccessExpression(@NotNull JetArrayAccessExpression expression) {
+                if (checkVisibility) {
+                    result[0] = isAccessible(bindingContext.get(INDEXED_LVALUE_GET, expression)) &&
+                                isAccessible(bindingContext.get(INDEXED_LVALUE_SET, expression));
+                }
+                super.visitArrayAccessExpression(expression);
+            }
+
+            @Override
+            public void visitForExpression(@NotNull JetForExpression expression) {
+                JetExpression loopRange = expression.getLoopRange();
+                if (checkVisibility && loopRange != null) {
+                    result[0] = isAccessible(bindingContext.get(LOOP_RANGE_ITERATOR_RESOLVED_CALL, loopRange)) &&
+                                isAccessible(bindingContext.get(LOOP_RANGE_HAS_NEXT_RESOLVED_CALL, loopRange)) &&
+                                isAccessible(bindingContext.get(LOOP_RANGE_NEXT_RESOLVED_CALL, loopRange));
+                }
+                super.visitForExpression(expression);
+            }
+
+            @Override
+            public void visitMultiDeclaration(@NotNull JetMultiDeclaration declaration) {
+                if (checkVisibility) {
+                    for (JetMultiDeclarationEntry entry : declaration.getEntries()) {
+                        result[0] &= isAccessible(bindingContext.get(COMPONENT_RESOLVED_CALL, entry));
+                    }
+                }
+                super.visitMultiDeclaration(declaration);
+            }
+        });
+        return result[0];
+    }
+
+    private static boolean isOnStatementLevel(@NotNull JetExpression expression, @NotNull JetExpression body) {
+        for (PsiElement element = expression.getParent(); element != body; element = element.getParent()) {
+            if (element == null) return false;
+            if (!(element instanceof JetBlockExpression ||
+                  element instanceof JetContainerNode ||
+                  element instanceof JetIfExpression ||
+                  element instanceof JetWhenEntry ||
+                  element instanceof JetWhenExpression ||
+                  element instanceof JetLoopExpression ||
+                  element instanceof JetParenthesizedExpression ||
+                  element instanceof JetProperty)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLocalJump(@NotNull JetLabelQualifiedExpression expression, @NotNull JetExpression body) {
+        if (expression.getTargetLabel() != null) return false;
+        for (PsiElement element = expression.getParent(); element != null && element != body; element = element.getParent()) {
+            if (element instanceof JetLoopExpression) return true;
+        }
+        return false;
+    }
+
+    @NotNull
+    private static Collection<DeclarationDescriptor> getReferencedDescriptors(
+            @NotNull BindingContext bindingContext,
+            @NotNull JetSimpleNameExpression expression
+    ) {
+        Collection<DeclarationDescriptor> result = new ArrayList<DeclarationDescriptor>(2);
+        ResolvedCall<? extends CallableDescriptor> resolvedCall = bindingContext.get(RESOLVED_CALL, expression);
+        if (resolvedCall instanceof VariableAsFunctionResolvedCall) {
+            VariableAsFunctionResolvedCall call = (VariableAsFunctionResolvedCall) resolvedCall;
+            result.add(call.getVariableCall().getResultingDescriptor().getOriginal());
+            result.add(call.getFunctionCall().getResultingDescriptor().getOriginal());
+        }
+        else if (resolvedCall != null) {
+            result.add(resolvedCall.getResultingDescriptor().getOriginal());
+        }
+
+        DeclarationDescriptor target = bindingContext.get(REFERENCE_TARGET, expression);
+        if (target != null) {
+            result.add(target.getOriginal());
+        }
+        return result;
+    }
+
+    private static boolean isAccessible(@Nullable ResolvedCall<? extends CallableDescriptor> resolvedCall) {
+        return resolvedCall == null || isAccessible(resolvedCall.getResultingDescriptor().getOriginal());
+    }
+
+    private static boolean areAccessible(@NotNull Collection<DeclarationDescriptor> descriptors) {
+        for (DeclarationDescriptor descriptor : descriptors) {
+            if (!isAccessible(descriptor)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAccessible(@NotNull DeclarationDescriptor descriptor) {
+        if (descriptor instanceof PropertyDescriptor) {
+            PropertySetterDescriptor setter = ((PropertyDescriptor) descriptor).getSetter();
+            if (setter != null && !isAccessibleVisibility(setter.getVisibility())) return false;
+        }
+
+        for (DeclarationDescriptor current = descriptor;
+             current != null && !(current instanceof NamespaceDescriptor);
+             current = current.getContainingDeclaration()) {
+            if (current instanceof DeclarationDescriptorWithVisibility &&
+                !isAccessibleVisibility(((DeclarationDescriptorWithVisibility) current).getVisibility())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAccessibleVisibility(@NotNull Visibility visibility) {
+        return visibility == Visibilities.PUBLIC || visibility == Visibilities.INTERNAL || visibility == Visibilities.LOCAL;
+    }
+
+    private InlineCodegenUtil() {
+    }
+}
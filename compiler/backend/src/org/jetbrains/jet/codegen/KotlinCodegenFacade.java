@@ -17,20 +17,31 @@
 package org.jetbrains.jet.codegen;
 
 import com.intellij.openapi.util.Pair;
+import com.intellij.psi.PsiElement;
 import com.intellij.util.containers.MultiMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.asm4.Type;
 import org.jetbrains.jet.codegen.state.GenerationState;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
 import org.jetbrains.jet.lang.descriptors.ScriptDescriptor;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.psi.JetPsiUtil;
 import org.jetbrains.jet.lang.psi.JetScript;
+import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.jet.lang.resolve.ScriptNameUtil;
 import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.TypeUtils;
+import org.jetbrains.jet.utils.ExceptionUtils;
+import org.jetbrains.jet.utils.PerformanceReport;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.jetbrains.jet.codegen.binding.CodegenBinding.registerClassNameForScript;
 
@@ -56,8 +67,94 @@ public class KotlinCodegenFacade {
             namespaceGrouping.putValue(JetPsiUtil.getFQName(file), file);
         }
 
-        for (Map.Entry<FqName, Collection<JetFile>> entry : namespaceGrouping.entrySet()) {
-            generateNamespace(state, entry.getKey(), entry.getValue(), errorHandler);
+        if (state.isParallelCodegen() && namespaceGrouping.size() > 1) {
+            generateNamespacesInParallel(state, namespaceGrouping, errorHandler);
+        }
+        else {
+            for (Map.Entry<FqName, Collection<JetFile>> entry : namespaceGrouping.entrySet()) {
+                generateNamespace(state, entry.getKey(), entry.getValue(), errorHandler);
+            }
+        }
+    }
+
+    private static void generateNamespacesInParallel(
+            @NotNull final GenerationState state,
+            @NotNull MultiMap<FqName, JetFile> namespaceGrouping,
+            @NotNull final CompilationErrorHandler errorHandler
+    ) {
+        // Error handlers are not required to be thread-safe
+        final CompilationErrorHandler synchronizedErrorHandler = new CompilationErrorHandler() {
+            @Override
+            public synchronized void reportException(Throwable exception, String fileUrl) {
+                errorHandler.reportException(exception, fileUrl);
+            }
+        };
+        resolveMemberScopes(state.getBindingContext());
+
+        final ClassFileFactory factory = state.getFactory();
+        final String parentPhase = PerformanceReport.getCurrentPath();
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), namespaceGrouping.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        List<ClassFileFactory.OutputSection> sections = new ArrayList<ClassFileFactory.OutputSection>();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (Map.Entry<FqName, Collection<JetFile>> entry : namespaceGrouping.entrySet()) {
+                final FqName fqName = entry.getKey();
+                final Collection<JetFile> files = entry.getValue();
+                final ClassFileFactory.OutputSection section = new ClassFileFactory.OutputSection();
+                sections.add(section);
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        factory.generateInSection(section, new Runnable() {
+                            @Override
+                            public void run() {
+                                generateNamespace(state, fqName, files, synchronizedErrorHandler, parentPhase);
+                            }
+                        });
+                    }
+                }));
+            }
+
+            // Failures are reported in the same order as the sequential generation would encounter them
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (ExecutionException e) {
+            throw ExceptionUtils.rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ExceptionUtils.rethrow(e);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // Commit in the order of the sequential mode, so that the output and the progress reports are the same
+        for (ClassFileFactory.OutputSection section : sections) {
+            factory.commitSection(section);
+        }
+    }
+
+    // Java descriptors are loaded lazily into plain hash maps (JavaClassResolver, JavaBaseScope, MembersCache), so the member scopes
+    // which codegen queries, i.e. those of the compiled classes and their supertypes, are computed before the generation is forked
+    private static void resolveMemberScopes(@NotNull BindingContext bindingContext) {
+        Set<ClassDescriptor> visited = new HashSet<ClassDescriptor>();
+        for (PsiElement element : bindingContext.getKeys(BindingContext.CLASS)) {
+            ClassDescriptor descriptor = bindingContext.get(BindingContext.CLASS, element);
+            if (descriptor == null || !visited.add(descriptor)) continue;
+
+            descriptor.getDefaultType().getMemberScope().getAllDescriptors();
+            for (JetType supertype : TypeUtils.getAllSupertypes(descriptor.getDefaultType())) {
+                supertype.getMemberScope().getAllDescriptors();
+                ClassifierDescriptor classifier = supertype.getConstructor().getDeclarationDescriptor();
+                if (classifier instanceof ClassDescriptor && visited.add((ClassDescriptor) classifier)) {
+                    ((ClassDescriptor) classifier).getDefaultType().getMemberScope().getAllDescriptors();
+                }
+            }
         }
     }
 
@@ -67,8 +164,25 @@ public class KotlinCodegenFacade {
             @NotNull Collection<JetFile> jetFiles,
             @NotNull CompilationErrorHandler errorHandler
     ) {
+        generateNamespace(state, fqName, jetFiles, errorHandler, PerformanceReport.getCurrentPath());
+    }
+
+    private static void generateNamespace(
+            @NotNull GenerationState state,
+            @NotNull FqName fqName,
+            @NotNull Collection<JetFile> jetFiles,
+            @NotNull CompilationErrorHandler errorHandler,
+            @Nullable String parentPhase
+    ) {
+        PerformanceReport.Phase phase = PerformanceReport.phase(parentPhase, "namespace:" + (fqName.isRoot() ? "<root>" : fqName.asString()));
+        try {
             NamespaceCodegen codegen = state.getFactory().forNamespace(fqName, jetFiles);
             codegen.generate(errorHandler);
+            phase.count("files", jetFiles.size());
+        }
+        finally {
+            phase.end();
+        }
     }
 
     private KotlinCodegenFacade() {}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen.binding;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.util.PsiTreeUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.codegen.InlineCodegenUtil;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptor;
+import org.jetbrains.jet.lang.psi.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jetbrains.jet.lexer.JetTokens.*;
+
+/**
+ * Finds local {@code var}s which may be copied to the closures capturing them instead of being wrapped to
+ * {@code jet.runtime.SharedVar}: the variable is never written inside a closure, and in the function declaring it
+ * all writes end before the first closure capturing it and are not repeated by a loop after it.
+ */
+/*package*/ final class CapturedVarAnalyzer {
+    public static final String ENABLED_PROPERTY = "kotlin.capture.by.value";
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty(ENABLED_PROPERTY));
+
+    private CapturedVarAnalyzer() {
+    }
+
+    /**
+     * @return false if the variable is referenced only from function literals which are generated in place,
+     *         see {@link InlineCodegenUtil#isInlinedFunctionLiteral}
+     */
+    public static boolean isCapturedByClosure(
+            @NotNull JetProperty property,
+            @NotNull final VariableDescriptor variable,
+            @NotNull final BindingContext bindingContext
+    ) {
+        final PsiElement scope = property.getParent();
+        if (!(scope instanceof JetBlockExpression)) return true;
+
+        final boolean[] result = new boolean[1];
+        scope.accept(new JetTreeVisitorVoid() {
+            @Override
+            public void visitSimpleNameExpression(@NotNull JetSimpleNameExpression expression) {
+                if (!result[0] && bindingContext.get(BindingContext.REFERENCE_TARGET, expression) == variable) {
+                    result[0] = getOutermostClosure(expression, scope, bindingContext) != null;
+                }
+            }
+        });
+        return result[0];
+    }
+
+    public static boolean canCaptureByValue(
+            @NotNull JetProperty property,
+            @NotNull final VariableDescriptor variable,
+            @NotNull final BindingContext bindingContext
+    ) {
+        if (!ENABLED) return false;
+
+        final PsiElement scope = property.getParent();
+        if (!(scope instanceof JetBlockExpression)) return false;
+
+        final List<JetElement> writes = new ArrayList<JetElement>();
+        final List<JetElement> captures = new ArrayList<JetElement>();
+        final boolean[] writtenInClosure = new boolean[1];
+
+        scope.accept(new JetTreeVisitorVoid() {
+            @Override
+            public void visitSimpleNameExpression(@NotNull JetSimpleNameExpression expression) {
+                if (bindingContext.get(BindingContext.REFERENCE_TARGET, expression) != variable) return;
+
+                JetElement write = getWrite(expression);
+                JetElement closure = getOutermostClosure(expression, scope, bindingContext);
+                if (closure != null) {
+                    captures.add(closure);
+                    writtenInClosure[0] |= write != null;
+                }
+                else if (write != null) {
+                    writes.add(write);
+                }
+            }
+        });
+
+        if (writtenInClosure[0] || captures.isEmpty()) return false;
+
+        // A write is performed after its right-hand side is evaluated, e.g. in "x = register { x }" the closure is created first
+        int firstCapture = captures.get(0).getTextRange().getStartOffset();
+        for (JetElement write : writes) {
+            if (write.getTextRange().getEndOffset() > firstCapture) return false;
+
+            for (JetElement capture : captures) {
+                if (isInSameLoop(write, capture, scope)) return false;
+            }
+        }
+        return true;
+    }
+
+    // A closure in a lambda, local function, object literal or local class is created when its outermost container is
+    @Nullable
+    private static JetElement getOutermostClosure(
+            @NotNull PsiElement element,
+            @NotNull PsiElement scope,
+            @NotNull BindingContext bindingContext
+    ) {
+        JetElement result = null;
+        for (PsiElement current = element; current != scope; current = current.getParent()) {
+            if (current instanceof JetFunctionLiteralExpression &&
+                InlineCodegenUtil.isInlinedFunctionLiteral(bindingContext, (JetFunctionLiteralExpression) current)) {
+                continue;
+            }
+            if (current instanceof JetFunctionLiteralExpression || current instanceof JetNamedFunction ||
+                current instanceof JetObjectLiteralExpression || current instanceof JetClassOrObject) {
+                result = (JetElement) current;
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private static JetElement getWrite(@NotNull JetSimpleNameExpression expression) {
+        PsiElement child = expression;
+        PsiElement parent = expression.getParent();
+        while (parent instanceof JetParenthesizedExpression) {
+            child = parent;
+            parent = parent.getParent();
+        }
+
+        if (parent instanceof JetBinaryExpression) {
+            JetBinaryExpression binaryExpression = (JetBinaryExpression) parent;
+            if (ALL_ASSIGNMENTS.contains(binaryExpression.getOperationToken()) && binaryExpression.getLeft() == child) {
+                return binaryExpression;
+            }
+        }
+        else if (parent instanceof JetUnaryExpression) {
+            JetUnaryExpression unaryExpression = (JetUnaryExpression) parent;
+            IElementType operation = unaryExpression.getOperationReference().getReferencedNameElementType();
+            if ((operation == PLUSPLUS || operation == MINUSMINUS) && unaryExpression.getBaseExpression() == child) {
+                return unaryExpression;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInSameLoop(@NotNull JetElement write, @NotNull JetElement capture, @NotNull PsiElement scope) {
+        for (PsiElement current = write.getParent(); current != scope; current = current.getParent()) {
+            if (current instanceof JetLoopExpression && PsiTreeUtil.isAncestor(current, capture, false)) return true;
+        }
+        return false;
+    }
+}
@@ -23,6 +23,7 @@ import com.intellij.util.containers.Stack;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.asm4.Type;
+import org.jetbrains.jet.codegen.InlineCodegenUtil;
 import org.jetbrains.jet.codegen.SamCodegenUtil;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.descriptors.impl.ClassDescriptorImpl;
@@ -254,6 +255,12 @@ class CodegenAnnotatingVisitor extends JetVisitorVoid {
         // working around a problem with shallow analysis
         if (functionDescriptor == null) return;
 
+        // The body is generated in the enclosing method, see InlineCodegenUtil
+        if (InlineCodegenUtil.isInlinedFunctionLiteral(bindingContext, expression)) {
+            super.visitFunctionLiteralExpression(expression);
+            return;
+        }
+
         String name = inventAnonymousClassName(expression);
         JetType superType = getSuperTypeForClosure(functionDescriptor, false);
         ClassDescriptor classDescriptor = recordClassForFunction(functionDescriptor, superType);
@@ -332,6 +339,18 @@ class CodegenAnnotatingVisitor extends JetVisitorVoid {
         // working around a problem with shallow analysis
         if (propertyDescriptor == null) return;
 
+        if (propertyDescriptor instanceof VariableDescriptor && !(propertyDescriptor instanceof PropertyDescriptor)) {
+            VariableDescriptor variable = (VariableDescriptor) propertyDescriptor;
+            if (variable.isVar() && bindingContext.get(CAPTURED_IN_CLOSURE, variable) != null) {
+                if (!CapturedVarAnalyzer.isCapturedByClosure(property, variable, bindingContext)) {
+                    bindingTrace.record(CAPTURED_IN_INLINED_LITERALS_ONLY, variable);
+                }
+                else if (CapturedVarAnalyzer.canCaptureByValue(property, variable, bindingContext)) {
+                    bindingTrace.record(CAPTURED_BY_VALUE, variable);
+                }
+            }
+        }
+
         String nameForClassOrNamespaceMember = getNameForClassOrNamespaceMember(propertyDescriptor);
         if (nameForClassOrNamespaceMember != null) {
             nameStack.push(nameForClassOrNamespaceMember);
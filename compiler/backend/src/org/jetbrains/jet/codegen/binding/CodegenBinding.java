@@ -58,6 +58,12 @@ public class CodegenBinding {
 
     public static final WritableSlice<JetExpression, JavaClassDescriptor> SAM_VALUE = Slices.createSimpleSlice();
 
+    // Local vars captured in closures which are not written after the capture, see CapturedVarAnalyzer
+    public static final WritableSlice<VariableDescriptor, Boolean> CAPTURED_BY_VALUE = Slices.createSimpleSetSlice();
+
+    // Local vars referenced only from function literals generated in place, see InlineCodegenUtil.isInlinedFunctionLiteral
+    public static final WritableSlice<VariableDescriptor, Boolean> CAPTURED_IN_INLINED_LITERALS_ONLY = Slices.createSimpleSetSlice();
+
     private CodegenBinding() {
     }
 
@@ -367,7 +373,9 @@ public class CodegenBinding {
     public static boolean isVarCapturedInClosure(BindingContext bindingContext, DeclarationDescriptor descriptor) {
         if (!(descriptor instanceof VariableDescriptor) || descriptor instanceof PropertyDescriptor) return false;
         VariableDescriptor variableDescriptor = (VariableDescriptor) descriptor;
-        return bindingContext.get(CAPTURED_IN_CLOSURE, variableDescriptor) != null && variableDescriptor.isVar();
+        return bindingContext.get(CAPTURED_IN_CLOSURE, variableDescriptor) != null && variableDescriptor.isVar() &&
+               !Boolean.TRUE.equals(bindingContext.get(CAPTURED_BY_VALUE, variableDescriptor)) &&
+               !Boolean.TRUE.equals(bindingContext.get(CAPTURED_IN_INLINED_LITERALS_ONLY, variableDescriptor));
     }
 
     public static boolean hasThis0(BindingContext bindingContext, ClassDescriptor classDescriptor) {
@@ -38,6 +38,7 @@ public final class MutableClosure implements CalculatedClosure {
 
     private boolean captureThis;
     private boolean captureReceiver;
+    private boolean generated;
 
     private Map<DeclarationDescriptor, EnclosedValueDescriptor> captureVariables;
     private List<Pair<String, Type>> recordedFields;
@@ -119,4 +120,15 @@ public final class MutableClosure implements CalculatedClosure {
     public CallableDescriptor getEnclosingReceiverDescriptor() {
         return enclosingReceiverDescriptor;
     }
+
+    /**
+     * @return true if the class of the closure is generated, so nothing will be captured by it anymore
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    public void setGenerated() {
+        this.generated = true;
+    }
 }
@@ -22,11 +22,13 @@ import org.jetbrains.jet.codegen.StackValue;
 import org.jetbrains.jet.codegen.binding.MutableClosure;
 import org.jetbrains.jet.codegen.state.GenerationState;
 import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.java.JvmAbi;
 import org.jetbrains.jet.lang.types.JetType;
 
 import static org.jetbrains.jet.codegen.AsmUtil.CAPTURED_RECEIVER_FIELD;
-import static org.jetbrains.jet.codegen.binding.CodegenBinding.asmTypeForAnonymousClass;
-import static org.jetbrains.jet.codegen.binding.CodegenBinding.isLocalNamedFun;
+import static org.jetbrains.jet.codegen.CodegenUtil.isConst;
+import static org.jetbrains.jet.codegen.binding.CodegenBinding.*;
 
 public interface LocalLookup {
     boolean lookupLocal(DeclarationDescriptor descriptor);
@@ -82,12 +84,18 @@ public interface LocalLookup {
                     Type classType
             ) {
                 FunctionDescriptor vd = (FunctionDescriptor) d;
+                BindingContext bindingContext = state.getBindingContext();
+                Type localType = asmTypeForAnonymousClass(bindingContext, vd);
+
+                // A local function which captures nothing is a singleton, there's no need to capture it
+                MutableClosure functionClosure = bindingContext.get(CLOSURE, anonymousClassForFunction(bindingContext, vd));
+                if (functionClosure != null && functionClosure.isGenerated() && isConst(functionClosure)) {
+                    return StackValue.field(localType, localType, JvmAbi.INSTANCE_FIELD, true);
+                }
 
                 boolean idx = localLookup != null && localLookup.lookupLocal(vd);
                 if (!idx) return null;
 
-                Type localType = asmTypeForAnonymousClass(state.getBindingContext(), vd);
-
                 String fieldName = "$" + vd.getName();
                 StackValue innerValue = StackValue.field(localType, classType, fieldName, false);
 
@@ -28,8 +28,10 @@ import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.jet.lang.resolve.BindingTrace;
 import org.jetbrains.jet.lang.resolve.DelegatingBindingTrace;
+import org.jetbrains.jet.lang.resolve.LockProtectedTrace;
 
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GenerationState {
     private boolean used = false;
@@ -64,12 +66,22 @@ public class GenerationState {
     @NotNull
     private final JetTypeMapper typeMapper;
 
+    @NotNull
+    private final ClassHierarchy classHierarchy;
+
     private final boolean generateNotNullAssertions;
 
     private final boolean generateNotNullParamAssertions;
 
     private final boolean generateDeclaredClasses;
 
+    // Namespaces are generated on several threads: the binding trace is lock-protected, the class hierarchy, the SAM wrappers and
+    // the class file factory are thread-safe, and the progress is called only by the thread committing the output
+    // (see ClassFileFactory.commitSection). Descriptors loaded from Java are not thread-safe, so the member scopes of the compiled
+    // classes and their supertypes are resolved before forking (see KotlinCodegenFacade.resolveMemberScopes); codegen must not
+    // resolve other Java declarations lazily while this flag is on
+    private final boolean parallelCodegen;
+
     @Nullable
     private List<ScriptDescriptor> earlierScriptsForReplInterpreter;
 
@@ -86,16 +98,34 @@ public class GenerationState {
             boolean generateNotNullAssertions,
             boolean generateNotNullParamAssertions,
             boolean generateDeclaredClasses
+    ) {
+        this(project, builderFactory, progress, bindingContext, files, generateNotNullAssertions, generateNotNullParamAssertions,
+             generateDeclaredClasses, false);
+    }
+
+    public GenerationState(
+            @NotNull Project project,
+            @NotNull ClassBuilderFactory builderFactory,
+            @NotNull Progress progress,
+            @NotNull BindingContext bindingContext,
+            @NotNull List<JetFile> files,
+            boolean generateNotNullAssertions,
+            boolean generateNotNullParamAssertions,
+            boolean generateDeclaredClasses,
+            boolean parallelCodegen
     ) {
         this.project = project;
         this.progress = progress;
         this.files = files;
         this.classBuilderMode = builderFactory.getClassBuilderMode();
 
-        bindingTrace = new DelegatingBindingTrace(bindingContext, "trace in GenerationState");
+        DelegatingBindingTrace trace = new DelegatingBindingTrace(bindingContext, "trace in GenerationState");
+        // Namespaces generated on different threads record ASM types and closures into the same trace
+        bindingTrace = parallelCodegen ? new LockProtectedTrace(new ReentrantLock(), trace) : trace;
         this.bindingContext = bindingTrace.getBindingContext();
 
         this.typeMapper = new JetTypeMapper(bindingTrace, classBuilderMode);
+        this.classHierarchy = new ClassHierarchy(typeMapper, project);
 
         InjectorForJvmCodegen injector = new InjectorForJvmCodegen(typeMapper, this, builderFactory, project);
 
@@ -105,6 +135,7 @@ public class GenerationState {
         this.generateNotNullAssertions = generateNotNullAssertions;
         this.generateNotNullParamAssertions = generateNotNullParamAssertions;
         this.generateDeclaredClasses = generateDeclaredClasses;
+        this.parallelCodegen = parallelCodegen;
     }
 
     @NotNull
@@ -142,6 +173,11 @@ public class GenerationState {
         return typeMapper;
     }
 
+    @NotNull
+    public ClassHierarchy getClassHierarchy() {
+        return classHierarchy;
+    }
+
     @NotNull
     public Project getProject() {
         return project;
@@ -169,11 +205,20 @@ public class GenerationState {
         return generateDeclaredClasses;
     }
 
+    public boolean isParallelCodegen() {
+        return parallelCodegen;
+    }
+
     public void beforeCompile() {
         markUsed();
 
         //noinspection unchecked
         CodegenBinding.initTrace(getBindingTrace(), getFiles());
+
+        if (classBuilderMode == ClassBuilderMode.FULL) {
+            // Before the generation, which may record to the trace from several threads
+            classHierarchy.indexSourceClasses(bindingContext);
+        }
     }
 
     private void markUsed() {
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sources the benchmarks run on. A corpus consists of units, every unit is analyzed and compiled on its own.
+ */
+public enum BenchmarkCorpus {
+    /**
+     * Tests from compiler/testData/codegen/box: many small independent files
+     */
+    TEST_DATA(false) {
+        @NotNull
+        @Override
+        protected List<List<File>> collectUnits(@NotNull File home) {
+            List<List<File>> units = new ArrayList<List<File>>();
+            for (File file : collectKotlinFiles(new File(home, "compiler/testData/codegen/box"))) {
+                units.add(Collections.singletonList(file));
+            }
+            return units;
+        }
+    },
+
+    /**
+     * Sources of the standard library as one module: large files with many dependencies between them
+     */
+    STDLIB(true) {
+        @NotNull
+        @Override
+        protected List<List<File>> collectUnits(@NotNull File home) {
+            return Collections.singletonList(collectKotlinFiles(new File(home, "libraries/stdlib/src")));
+        }
+    };
+
+    /**
+     * Root of the repository, the working directory by default
+     */
+    public static final String HOME_PROPERTY = "kotlin.benchmark.home";
+
+    private final boolean compiledWithoutRuntime;
+
+    BenchmarkCorpus(boolean compiledWithoutRuntime) {
+        this.compiledWithoutRuntime = compiledWithoutRuntime;
+    }
+
+    public boolean isCompiledWithoutRuntime() {
+        return compiledWithoutRuntime;
+    }
+
+    @NotNull
+    protected abstract List<List<File>> collectUnits(@NotNull File home);
+
+    @NotNull
+    public List<List<File>> getUnits() {
+        File home = new File(System.getProperty(HOME_PROPERTY, "."));
+        List<List<File>> units = collectUnits(home);
+        if (units.isEmpty() || units.get(0).isEmpty()) {
+            throw new IllegalStateException("No sources found for " + this + " in " + home.getAbsolutePath() +
+                                            ", set -D" + HOME_PROPERTY + " to the root of the repository");
+        }
+        return units;
+    }
+
+    @NotNull
+    public static String loadText(@NotNull File file) {
+        try {
+            return FileUtil.loadFile(file, true);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot read " + file, e);
+        }
+    }
+
+    @NotNull
+    private static List<File> collectKotlinFiles(@NotNull File root) {
+        List<File> result = new ArrayList<File>();
+        collectKotlinFiles(root, result);
+        return result;
+    }
+
+    private static void collectKotlinFiles(@NotNull File file, @NotNull List<File> result) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) return;
+            // Keep the order stable across file systems
+            Arrays.sort(children);
+            for (File child : children) {
+                collectKotlinFiles(child, result);
+            }
+        }
+        else if (file.getName().endsWith(".kt")) {
+            result.add(file);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.google.common.base.Predicates;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.analyzer.AnalyzeExhaust;
+import org.jetbrains.jet.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+import org.jetbrains.jet.lang.resolve.AnalyzerScriptParameter;
+import org.jetbrains.jet.lang.resolve.AnalyzingUtils;
+import org.jetbrains.jet.lang.resolve.java.AnalyzerFacadeForJVM;
+import org.jetbrains.jet.utils.KotlinPaths;
+import org.jetbrains.jet.utils.PathUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compiler environment set up for a corpus, to be created in a trial setup method and disposed in the teardown
+ */
+public class BenchmarkEnvironment {
+    private final BenchmarkCorpus corpus;
+    private final Disposable disposable = Disposer.newDisposable();
+    private final JetCoreEnvironment environment;
+
+    public BenchmarkEnvironment(@NotNull BenchmarkCorpus corpus) {
+        this.corpus = corpus;
+
+        KotlinPaths paths = PathUtil.getKotlinPathsForCompiler();
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.add(JVMConfigurationKeys.CLASSPATH_KEY, PathUtil.findRtJar());
+        if (!corpus.isCompiledWithoutRuntime()) {
+            configuration.add(JVMConfigurationKeys.CLASSPATH_KEY, paths.getRuntimePath());
+        }
+        configuration.add(JVMConfigurationKeys.ANNOTATIONS_PATH_KEY, paths.getJdkAnnotationsPath());
+        configuration.put(JVMConfigurationKeys.SCRIPT_PARAMETERS, Collections.<AnalyzerScriptParameter>emptyList());
+
+        environment = JetCoreEnvironment.createForProduction(disposable, configuration);
+    }
+
+    @NotNull
+    public Project getProject() {
+        return environment.getProject();
+    }
+
+    @NotNull
+    public List<List<String>> loadTexts() {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (List<File> unit : corpus.getUnits()) {
+            List<String> texts = new ArrayList<String>(unit.size());
+            for (File file : unit) {
+                texts.add(BenchmarkCorpus.loadText(file));
+            }
+            result.add(texts);
+        }
+        return result;
+    }
+
+    @NotNull
+    public List<JetFile> parse(@NotNull List<File> unit) {
+        List<JetFile> files = new ArrayList<JetFile>(unit.size());
+        for (File file : unit) {
+            files.add(JetPsiFactory.createFile(getProject(), file.getName(), BenchmarkCorpus.loadText(file)));
+        }
+        return files;
+    }
+
+    /**
+     * @return units which are parsed and analyzed without errors, so that they can be fed to the code generator
+     */
+    @NotNull
+    public List<List<JetFile>> parseCorrectUnits() {
+        List<List<JetFile>> result = new ArrayList<List<JetFile>>();
+        for (List<File> unit : corpus.getUnits()) {
+            List<JetFile> files = parse(unit);
+            try {
+                for (JetFile file : files) {
+                    AnalyzingUtils.checkForSyntacticErrors(file);
+                }
+                AnalyzingUtils.throwExceptionOnErrors(analyze(files).getBindingContext());
+            }
+            catch (IllegalArgumentException e) {
+                continue;
+            }
+            catch (IllegalStateException e) {
+                continue;
+            }
+            result.add(files);
+        }
+        return result;
+    }
+
+    @NotNull
+    public AnalyzeExhaust analyze(@NotNull List<JetFile> files) {
+        return AnalyzerFacadeForJVM.analyzeFilesWithJavaIntegration(
+                getProject(), files, Collections.<AnalyzerScriptParameter>emptyList(), Predicates.<PsiFile>alwaysTrue());
+    }
+
+    public void dispose() {
+        Disposer.dispose(disposable);
+    }
+}
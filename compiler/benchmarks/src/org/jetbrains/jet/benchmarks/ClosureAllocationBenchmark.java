@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.jet.codegen.ClassBuilderFactories;
+import org.jetbrains.jet.codegen.CompilationErrorHandler;
+import org.jetbrains.jet.codegen.GeneratedClassLoader;
+import org.jetbrains.jet.codegen.KotlinCodegenFacade;
+import org.jetbrains.jet.codegen.state.GenerationState;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+import org.jetbrains.jet.lang.resolve.AnalyzingUtils;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.utils.PathUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs generated code which creates lambdas in a loop: lambdas capturing nothing, lambdas capturing a {@code var}
+ * which is not written after the capture and lambdas calling a local function which captures nothing.
+ * Run it with {@code -prof gc} to see the allocation rate, and with {@code -jvmArgsAppend -Dkotlin.capture.by.value=false}
+ * to compare with captured vars wrapped to {@code SharedVar}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ClosureAllocationBenchmark {
+    private static final String SOURCE =
+            "package closures\n" +
+            "\n" +
+            "fun apply(x: Int, f: (Int) -> Int): Int = f(x)\n" +
+            "\n" +
+            "fun run(n: Int): Int {\n" +
+            "    var sum = 0\n" +
+            "    for (i in 0..n - 1) {\n" +
+            "        var base = i\n" +
+            "        if (base % 2 == 0) base = -base\n" +
+            "        fun square(x: Int) = x * x\n" +
+            "\n" +
+            "        sum += apply(i) { it * 3 }\n" +
+            "        sum += apply(i) { it + base }\n" +
+            "        sum += apply(i) { square(it) }\n" +
+            "    }\n" +
+            "    return sum\n" +
+            "}\n";
+
+    @Param({"1000"})
+    public int iterationCount;
+
+    private BenchmarkEnvironment environment;
+    private GenerationState state;
+    private Method runMethod;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new BenchmarkEnvironment(BenchmarkCorpus.TEST_DATA);
+        JetFile file = JetPsiFactory.createFile(environment.getProject(), "closures.kt", SOURCE);
+        List<JetFile> files = Collections.singletonList(file);
+        BindingContext bindingContext = environment.analyze(files).getBindingContext();
+        AnalyzingUtils.throwExceptionOnErrors(bindingContext);
+
+        state = new GenerationState(environment.getProject(), ClassBuilderFactories.BINARIES, bindingContext, files);
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+
+        URL runtime = PathUtil.getKotlinPathsForCompiler().getRuntimePath().toURI().toURL();
+        ClassLoader classLoader = new GeneratedClassLoader(state.getFactory(), new URLClassLoader(new URL[] {runtime}, null));
+        runMethod = classLoader.loadClass("closures.ClosuresPackage").getMethod("run", int.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        state.destroy();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public Object run() throws Exception {
+        return runMethod.invoke(null, iterationCount);
+    }
+}
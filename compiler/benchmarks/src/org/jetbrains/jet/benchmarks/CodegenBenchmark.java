@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.jet.codegen.ClassBuilderFactories;
+import org.jetbrains.jet.codegen.CompilationErrorHandler;
+import org.jetbrains.jet.codegen.KotlinCodegenFacade;
+import org.jetbrains.jet.codegen.state.GenerationState;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates bytecode for units of the corpus that were analyzed once in the setup.
+ * Units with compilation errors are skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CodegenBenchmark {
+    @Param({"TEST_DATA", "STDLIB"})
+    public BenchmarkCorpus corpus;
+
+    private BenchmarkEnvironment environment;
+    private List<List<JetFile>> units;
+    private List<BindingContext> bindingContexts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new BenchmarkEnvironment(corpus);
+        units = environment.parseCorrectUnits();
+        bindingContexts = new ArrayList<BindingContext>(units.size());
+        for (List<JetFile> unit : units) {
+            bindingContexts.add(environment.analyze(unit).getBindingContext());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int generate() {
+        int classCount = 0;
+        for (int i = 0; i < units.size(); i++) {
+            GenerationState state = new GenerationState(
+                    environment.getProject(), ClassBuilderFactories.BINARIES, bindingContexts.get(i), units.get(i));
+            KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+            classCount += state.getFactory().asList().size();
+            state.destroy();
+        }
+        return classCount;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.jet.lexer.JetLexer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizes the corpus with the lexer generated by JFlex
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LexerBenchmark {
+    @Param({"TEST_DATA", "STDLIB"})
+    public BenchmarkCorpus corpus;
+
+    private List<String> texts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        texts = new ArrayList<String>();
+        for (List<File> unit : corpus.getUnits()) {
+            for (File file : unit) {
+                texts.add(BenchmarkCorpus.loadText(file));
+            }
+        }
+    }
+
+    @Benchmark
+    public int tokenize() {
+        int tokenCount = 0;
+        JetLexer lexer = new JetLexer();
+        for (String text : texts) {
+            lexer.start(text);
+            while (lexer.getTokenType() != null) {
+                tokenCount++;
+                lexer.advance();
+            }
+        }
+        return tokenCount;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes a generated file where every expression is a call of a heavily overloaded function:
+ * overloads declared in the file, {@code println}, collection builders and arithmetic operators.
+ * Most of the time goes to trying candidates in temporary traces, which makes it sensitive to the cost of forking
+ * and committing {@link org.jetbrains.jet.lang.resolve.DelegatingBindingTrace}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OverloadResolutionBenchmark {
+    private static final String[] TYPES = {"Int", "Long", "Short", "Byte", "Double", "Float", "Char", "Boolean", "String", "Any"};
+    private static final String[] ARGUMENTS = {"1", "1L", "1.0", "1.0f", "'c'", "true", "\"s\"", "null", "i", "i * 2L"};
+
+    @Param({"200"})
+    public int functionCount;
+
+    private BenchmarkEnvironment environment;
+    private List<JetFile> files;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The runtime is needed for println() and the collection builders
+        environment = new BenchmarkEnvironment(BenchmarkCorpus.TEST_DATA);
+        JetFile file = JetPsiFactory.createFile(environment.getProject(), "overloads.kt", generateSource(functionCount));
+        files = Collections.singletonList(file);
+    }
+
+    @NotNull
+    private static String generateSource(int functionCount) {
+        StringBuilder source = new StringBuilder();
+        for (String type : TYPES) {
+            source.append("fun over(x: ").append(type).append("): ").append(type).append(" = x\n");
+            source.append("fun over(x: ").append(type).append(", y: Int): ").append(type).append(" = x\n");
+        }
+        source.append("fun over(x: Any?) = x\n");
+
+        for (int i = 0; i < functionCount; i++) {
+            source.append("\nfun test").append(i).append("(i: Int) {\n");
+            for (String argument : ARGUMENTS) {
+                source.append("    over(").append(argument).append(")\n");
+                source.append("    over(").append(argument).append(", i)\n");
+                source.append("    println(").append(argument).append(")\n");
+            }
+            source.append("    val list = arrayListOf(1, 2L, 3.0, \"s\")\n");
+            source.append("    val map = hashMapOf(1 to \"a\", 2 to \"b\")\n");
+            source.append("    println(list.size() + map.size() * i - 1L / 2.0 + i % 3 + 'c'.toInt())\n");
+            source.append("}\n");
+        }
+        return source.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int analyze() {
+        BindingContext bindingContext = environment.analyze(files).getBindingContext();
+        return bindingContext.getDiagnostics().all().size();
+    }
+}
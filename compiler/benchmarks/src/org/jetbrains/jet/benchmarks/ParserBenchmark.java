@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiRecursiveElementVisitor;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the AST and PSI of the corpus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"TEST_DATA", "STDLIB"})
+    public BenchmarkCorpus corpus;
+
+    private BenchmarkEnvironment environment;
+    private List<File> files;
+    private List<String> texts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new BenchmarkEnvironment(corpus);
+        files = new ArrayList<File>();
+        texts = new ArrayList<String>();
+        for (List<File> unit : corpus.getUnits()) {
+            for (File file : unit) {
+                files.add(file);
+                texts.add(BenchmarkCorpus.loadText(file));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int parse() {
+        final int[] elementCount = new int[1];
+        for (int i = 0; i < files.size(); i++) {
+            JetFile file = JetPsiFactory.createFile(environment.getProject(), files.get(i).getName(), texts.get(i));
+            // The tree is built lazily: visit it to construct all AST nodes and PSI elements
+            file.accept(new PsiRecursiveElementVisitor() {
+                @Override
+                public void visitElement(PsiElement element) {
+                    elementCount[0]++;
+                    super.visitElement(element);
+                }
+            });
+        }
+        return elementCount[0];
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the top-down analysis (declarations, bodies, control flow) on already parsed units of the corpus
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResolveBenchmark {
+    @Param({"TEST_DATA", "STDLIB"})
+    public BenchmarkCorpus corpus;
+
+    private BenchmarkEnvironment environment;
+    private List<List<JetFile>> units;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new BenchmarkEnvironment(corpus);
+        units = new ArrayList<List<JetFile>>();
+        for (List<File> unit : corpus.getUnits()) {
+            units.add(environment.parse(unit));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int analyze() {
+        int diagnosticCount = 0;
+        for (List<JetFile> unit : units) {
+            BindingContext bindingContext = environment.analyze(unit).getBindingContext();
+            diagnosticCount += bindingContext.getDiagnostics().all().size();
+        }
+        return diagnosticCount;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.TypeParameterDescriptor;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.types.*;
+import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
+import org.jetbrains.jet.lang.types.checker.TypeCheckingProcedure;
+import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the types of all expressions of the corpus against collection types from the built-ins.
+ * To see how the search of supertypes performs without the cache, add {@code -jvmArgsAppend -Dkotlin.supertype.cache=false}
+ * (see {@link TypeCheckingProcedure#SUPERTYPE_CACHE_PROPERTY}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SubtypingBenchmark {
+    @Param({"STDLIB", "TEST_DATA"})
+    public BenchmarkCorpus corpus;
+
+    private BenchmarkEnvironment environment;
+    private List<JetType> subtypes;
+    private List<JetType> supertypes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        environment = new BenchmarkEnvironment(corpus);
+
+        Set<JetType> expressionTypes = new LinkedHashSet<JetType>();
+        for (List<File> unit : corpus.getUnits()) {
+            List<JetFile> files = environment.parse(unit);
+            BindingContext bindingContext = environment.analyze(files).getBindingContext();
+            for (JetType type : bindingContext.getSliceContents(BindingContext.EXPRESSION_TYPE).values()) {
+                if (!type.isError()) {
+                    expressionTypes.add(type);
+                }
+            }
+        }
+        subtypes = new ArrayList<JetType>(expressionTypes);
+
+        KotlinBuiltIns builtIns = KotlinBuiltIns.getInstance();
+        supertypes = new ArrayList<JetType>();
+        for (ClassDescriptor classDescriptor : Arrays.asList(
+                builtIns.getIterable(), builtIns.getCollection(), builtIns.getList(), builtIns.getMutableList(),
+                builtIns.getSet(), builtIns.getMap(), builtIns.getComparable(), builtIns.getCharSequence())) {
+            supertypes.add(createStarProjectedType(classDescriptor));
+        }
+    }
+
+    @NotNull
+    private static JetType createStarProjectedType(@NotNull ClassDescriptor classDescriptor) {
+        List<TypeProjection> arguments = new ArrayList<TypeProjection>();
+        for (TypeParameterDescriptor parameter : classDescriptor.getTypeConstructor().getParameters()) {
+            arguments.add(SubstitutionUtils.makeStarProjection(parameter));
+        }
+        return new JetTypeImpl(Collections.<AnnotationDescriptor>emptyList(), classDescriptor.getTypeConstructor(), true, arguments,
+                               classDescriptor.getMemberScope(arguments));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        environment.dispose();
+    }
+
+    @Benchmark
+    public int isSubtypeOf() {
+        int count = 0;
+        for (JetType subtype : subtypes) {
+            for (JetType supertype : supertypes) {
+                if (JetTypeChecker.INSTANCE.isSubtypeOf(subtype, supertype)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+}
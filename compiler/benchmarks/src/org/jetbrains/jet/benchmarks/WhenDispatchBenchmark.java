@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.benchmarks;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.codegen.ClassBuilderFactories;
+import org.jetbrains.jet.codegen.CompilationErrorHandler;
+import org.jetbrains.jet.codegen.GeneratedClassLoader;
+import org.jetbrains.jet.codegen.KotlinCodegenFacade;
+import org.jetbrains.jet.codegen.state.GenerationState;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetPsiFactory;
+import org.jetbrains.jet.lang.resolve.AnalyzingUtils;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.utils.PathUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs code generated for a {@code when} which dispatches on an int, enum or string subject over {@link #caseCount} constants.
+ * The source is compiled in the setup, so the benchmark measures the bytecode of the current compiler;
+ * run it with {@code -jvmArgsAppend -Dkotlin.when.switch=false} to compare switch instructions with chains of comparisons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WhenDispatchBenchmark {
+    public enum Subject {
+        INT, SPARSE_INT, ENUM, STRING
+    }
+
+    private static final int INPUT_COUNT = 4096;
+
+    @Param({"INT", "SPARSE_INT", "ENUM", "STRING"})
+    public Subject subject;
+
+    @Param({"8", "64"})
+    public int caseCount;
+
+    private BenchmarkEnvironment environment;
+    private GenerationState state;
+    private Method runMethod;
+    private Object inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new BenchmarkEnvironment(BenchmarkCorpus.TEST_DATA);
+        JetFile file = JetPsiFactory.createFile(environment.getProject(), "dispatch.kt", generateSource(caseCount));
+        List<JetFile> files = Collections.singletonList(file);
+        BindingContext bindingContext = environment.analyze(files).getBindingContext();
+        AnalyzingUtils.throwExceptionOnErrors(bindingContext);
+
+        state = new GenerationState(environment.getProject(), ClassBuilderFactories.BINARIES, bindingContext, files);
+        KotlinCodegenFacade.compileCorrectFiles(state, CompilationErrorHandler.THROW_EXCEPTION);
+
+        URL runtime = PathUtil.getKotlinPathsForCompiler().getRuntimePath().toURI().toURL();
+        ClassLoader classLoader = new GeneratedClassLoader(state.getFactory(), new URLClassLoader(new URL[] {runtime}, null));
+        Class<?> packageClass = classLoader.loadClass("dispatch.DispatchPackage");
+
+        Random random = new Random(42);
+        switch (subject) {
+            case INT:
+            case SPARSE_INT:
+                int[] ints = new int[INPUT_COUNT];
+                for (int i = 0; i < INPUT_COUNT; i++) {
+                    ints[i] = getKey(subject, random.nextInt(caseCount + 1));
+                }
+                inputs = ints;
+                break;
+            case ENUM:
+                Class<?> enumClass = classLoader.loadClass("dispatch.Opcode");
+                Object[] constants = enumClass.getEnumConstants();
+                Object[] enums = (Object[]) Array.newInstance(enumClass, INPUT_COUNT);
+                for (int i = 0; i < INPUT_COUNT; i++) {
+                    enums[i] = constants[random.nextInt(constants.length)];
+                }
+                inputs = enums;
+                break;
+            case STRING:
+                String[] strings = new String[INPUT_COUNT];
+                for (int i = 0; i < INPUT_COUNT; i++) {
+                    strings[i] = "op" + random.nextInt(caseCount + 1);
+                }
+                inputs = strings;
+                break;
+        }
+
+        runMethod = packageClass.getMethod("run" + subject.name(), inputs.getClass());
+    }
+
+    private static int getKey(@NotNull Subject subject, int index) {
+        return subject == Subject.SPARSE_INT ? index * 1009 : index;
+    }
+
+    @NotNull
+    private static String generateSource(int caseCount) {
+        StringBuilder source = new StringBuilder();
+        source.append("package dispatch\n\n");
+
+        // One constant more than cases, so that some inputs go to else
+        source.append("enum class Opcode {\n");
+        for (int i = 0; i <= caseCount; i++) {
+            source.append("    OP").append(i).append("\n");
+        }
+        source.append("}\n");
+
+        for (Subject subject : Subject.values()) {
+            String parameterType = subject == Subject.ENUM ? "Opcode" : subject == Subject.STRING ? "String" : "Int";
+            source.append("\nfun dispatch").append(subject.name()).append("(x: ").append(parameterType).append("): Int = when (x) {\n");
+            for (int i = 0; i < caseCount; i++) {
+                source.append("    ");
+                switch (subject) {
+                    case INT:
+                    case SPARSE_INT:
+                        source.append(getKey(subject, i));
+                        break;
+                    case ENUM:
+                        source.append("Opcode.OP").append(i);
+                        break;
+                    case STRING:
+                        source.append("\"op").append(i).append("\"");
+                        break;
+                }
+                source.append(" -> ").append(i * 31 + 7).append("\n");
+            }
+            source.append("    else -> -1\n}\n");
+
+            String arrayType = subject == Subject.ENUM ? "Array<Opcode>" : subject == Subject.STRING ? "Array<String>" : "IntArray";
+            source.append("\nfun run").append(subject.name()).append("(inputs: ").append(arrayType).append("): Int {\n");
+            source.append("    var sum = 0\n");
+            source.append("    for (x in inputs) {\n");
+            source.append("        sum += dispatch").append(subject.name()).append("(x)\n");
+            source.append("    }\n");
+            source.append("    return sum\n");
+            source.append("}\n");
+        }
+        return source.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        state.destroy();
+        environment.dispose();
+    }
+
+    @Benchmark
+    public Object dispatch() throws Exception {
+        return runMethod.invoke(null, inputs);
+    }
+}
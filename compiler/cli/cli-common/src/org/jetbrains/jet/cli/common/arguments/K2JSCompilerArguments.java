@@ -35,6 +35,10 @@ public class K2JSCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "sourceFiles", description = "Source files (dir or file)")
     public String[] sourceFiles;
 
+    @Argument(value = "metadata", description = "Path to the file where descriptors of the compiled declarations are written to, " +
+                                                "so that the module can be used as a library without recompiling its sources")
+    public String metadata;
+
     @Argument(value = "sourcemap", description = "Generate SourceMap")
     public boolean sourcemap;
 
@@ -54,6 +54,12 @@ public class K2JVMCompilerArguments extends CommonCompilerArguments {
     @Argument(value = "notNullParamAssertions", description = "generate not-null assertions on parameters of methods accessible from Java")
     public boolean notNullParamAssertions;
 
+    @Argument(value = "parallelCodegen", description = "generate bytecode for different packages in parallel")
+    public boolean parallelCodegen;
+
+    @Argument(value = "reportPerf", description = "write time and memory spent in compilation phases to the given file as JSON")
+    public String reportPerf;
+
     @Argument(value = "output", description = "output directory")
     public String outputDir;
 
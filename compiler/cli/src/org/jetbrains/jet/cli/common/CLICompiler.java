@@ -25,10 +25,12 @@ import com.sampullara.cli.Args;
 import com.sampullara.cli.ArgumentUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.jet.cli.common.arguments.CommonCompilerArguments;
+import org.jetbrains.jet.cli.common.daemon.CompilerDaemonClient;
 import org.jetbrains.jet.cli.common.messages.*;
 import org.jetbrains.jet.cli.jvm.compiler.CompileEnvironmentException;
 import org.jetbrains.jet.config.CompilerConfiguration;
 
+import java.io.File;
 import java.io.PrintStream;
 import java.util.List;
 
@@ -218,7 +220,14 @@ public abstract class CLICompiler<A extends CommonCompilerArguments> {
     @NotNull
     public static ExitCode doMainNoExit(@NotNull CLICompiler compiler, @NotNull String[] args) {
         try {
-            ExitCode rc = compiler.exec(System.out, args);
+            ExitCode rc = null;
+            File daemonFile = CompilerDaemonClient.getDaemonFile();
+            if (daemonFile != null) {
+                rc = CompilerDaemonClient.compile(daemonFile, compiler.getClass().getName(), args, System.out);
+            }
+            if (rc == null) {
+                rc = compiler.exec(System.out, args);
+            }
             if (rc != OK) {
                 System.err.println("exec() finished with " + rc + " return code");
             }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.common.daemon;
+
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.cli.common.CLICompiler;
+import org.jetbrains.jet.cli.common.ExitCode;
+import org.jetbrains.jet.cli.common.messages.MessageRenderer;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+
+/**
+ * A long-running compiler process: compilation requests come from {@link CompilerDaemonClient} over a loopback socket.
+ * The compiler classes stay loaded and JIT-compiled, and the application environment with its jar indices and the built-ins
+ * are reused between requests, as are the class indices of the classpath jars and the summaries of the class files read from them.
+ * Library descriptors are not: they belong to the module of each compilation.
+ *
+ * The daemon writes its port and a secret token to the daemon file, which only the owner can read. On Windows, where
+ * java.io.File can't take read access away from other users, the daemon file must be in the user's home directory,
+ * which is private to the user by default.
+ * Requests are served one at a time: compilations are never run concurrently.
+ */
+public class CompilerDaemon {
+    public static final String IDLE_TIMEOUT_PROPERTY = "kotlin.daemon.idle.timeout.minutes";
+    private static final int DEFAULT_IDLE_TIMEOUT_MINUTES = 120;
+    private static final int REQUEST_READ_TIMEOUT_MILLIS = 10 * 1000;
+
+    /*package*/ static final String SHUTDOWN_COMMAND = "";
+    /*package*/ static final int STATUS_OK = 0;
+    /*package*/ static final int STATUS_REJECTED = 1;
+
+    private final ServerSocket serverSocket;
+    private final String token;
+    private final String workingDirectory;
+
+    private CompilerDaemon(@NotNull ServerSocket serverSocket, @NotNull String token) throws IOException {
+        this.serverSocket = serverSocket;
+        this.token = token;
+        this.workingDirectory = new File("").getCanonicalPath();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: " + CompilerDaemon.class.getName() + " <daemon file>");
+            System.exit(ExitCode.INTERNAL_ERROR.getCode());
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        File daemonFile = new File(args[0]);
+        ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName(null));
+        serverSocket.setSoTimeout(Integer.getInteger(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_MINUTES) * 60 * 1000);
+
+        String token = new BigInteger(130, new SecureRandom()).toString(32);
+        writeDaemonFile(daemonFile, serverSocket.getLocalPort(), token);
+
+        JetCoreEnvironment.setKeepApplicationEnvironment(true);
+        try {
+            new CompilerDaemon(serverSocket, token).serve();
+        }
+        finally {
+            FileUtil.delete(daemonFile);
+            serverSocket.close();
+        }
+    }
+
+    private static void writeDaemonFile(@NotNull File daemonFile, int port, @NotNull String token) throws IOException {
+        FileUtil.createIfDoesntExist(daemonFile);
+        // The token is what keeps other local users from running compilations on our behalf
+        if (SystemInfo.isWindows) {
+            File userHome = new File(System.getProperty("user.home")).getCanonicalFile();
+            if (!FileUtil.isAncestor(userHome, daemonFile.getCanonicalFile(), true)) {
+                throw new IOException("The daemon file must be in the user's home directory " + userHome + ": " + daemonFile);
+            }
+        }
+        else if (!(daemonFile.setReadable(false, false) && daemonFile.setReadable(true, true) &&
+                   daemonFile.setWritable(false, false) && daemonFile.setWritable(true, true))) {
+            throw new IOException("Cannot restrict access to the daemon file: " + daemonFile);
+        }
+        FileUtil.writeToFile(daemonFile, port + "\n" + token);
+    }
+
+    private void serve() throws IOException {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (SocketTimeoutException e) {
+                // Nobody needs us anymore
+                return;
+            }
+
+            try {
+                // A client that doesn't send its request must not block the others
+                socket.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+                if (!handleRequest(socket)) return;
+            }
+            catch (IOException e) {
+                // The client has gone away: it will compile by itself
+            }
+            finally {
+                socket.close();
+            }
+        }
+    }
+
+    /**
+     * @return false if the daemon should shut down
+     */
+    private boolean handleRequest(@NotNull Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (!token.equals(input.readUTF())) return true;
+
+        String clientWorkingDirectory = input.readUTF();
+        String compilerClassName = input.readUTF();
+        if (SHUTDOWN_COMMAND.equals(compilerClassName)) return false;
+
+        String[] arguments = new String[input.readInt()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = input.readUTF();
+        }
+
+        // Relative paths in the arguments are resolved against the working directory of this process
+        CLICompiler<?> compiler = workingDirectory.equals(clientWorkingDirectory) ? createCompiler(compilerClassName) : null;
+        if (compiler == null) {
+            output.writeInt(STATUS_REJECTED);
+            output.flush();
+            return true;
+        }
+
+        ByteArrayOutputStream compilerOutput = new ByteArrayOutputStream();
+        ExitCode exitCode = compile(compiler, arguments, new PrintStream(compilerOutput));
+
+        output.writeInt(STATUS_OK);
+        byte[] bytes = compilerOutput.toByteArray();
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.writeUTF(exitCode.name());
+        output.flush();
+        return true;
+    }
+
+    @NotNull
+    private static ExitCode compile(@NotNull CLICompiler<?> compiler, @NotNull String[] arguments, @NotNull PrintStream out) {
+        try {
+            return compiler.exec(out, arguments);
+        }
+        catch (Throwable t) {
+            out.println(MessageRenderer.PLAIN.renderException(t));
+            return ExitCode.INTERNAL_ERROR;
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    @Nullable
+    private static CLICompiler<?> createCompiler(@NotNull String compilerClassName) {
+        try {
+            Class<?> compilerClass = Class.forName(compilerClassName);
+            if (!CLICompiler.class.isAssignableFrom(compilerClass)) return null;
+            return (CLICompiler<?>) compilerClass.newInstance();
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+}
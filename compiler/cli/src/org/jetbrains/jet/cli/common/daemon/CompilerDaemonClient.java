@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.common.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.cli.common.ExitCode;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+import static org.jetbrains.jet.cli.common.daemon.CompilerDaemon.SHUTDOWN_COMMAND;
+import static org.jetbrains.jet.cli.common.daemon.CompilerDaemon.STATUS_OK;
+
+/**
+ * Sends compilation requests to a {@link CompilerDaemon}. Every failure to reach the daemon is silent:
+ * the caller is expected to compile in its own process then.
+ */
+public class CompilerDaemonClient {
+    public static final String DAEMON_FILE_PROPERTY = "kotlin.daemon.file";
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    @Nullable
+    public static File getDaemonFile() {
+        String path = System.getProperty(DAEMON_FILE_PROPERTY);
+        return path != null ? new File(path) : null;
+    }
+
+    /**
+     * @return the exit code of the compilation, or null if the daemon is not running or has rejected the request
+     */
+    @Nullable
+    public static ExitCode compile(
+            @NotNull File daemonFile,
+            @NotNull String compilerClassName,
+            @NotNull String[] arguments,
+            @NotNull PrintStream out
+    ) {
+        try {
+            Socket socket = connect(daemonFile, compilerClassName);
+            if (socket == null) return null;
+
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                output.writeInt(arguments.length);
+                for (String argument : arguments) {
+                    output.writeUTF(argument);
+                }
+                output.flush();
+
+                DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                if (input.readInt() != STATUS_OK) return null;
+
+                byte[] compilerOutput = new byte[input.readInt()];
+                input.readFully(compilerOutput);
+                ExitCode exitCode = ExitCode.valueOf(input.readUTF());
+
+                out.write(compilerOutput);
+                out.flush();
+                return exitCode;
+            }
+            finally {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    public static void shutdown(@NotNull File daemonFile) {
+        try {
+            Socket socket = connect(daemonFile, SHUTDOWN_COMMAND);
+            if (socket != null) {
+                socket.close();
+            }
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Connects to the daemon and sends the request header
+     */
+    @Nullable
+    private static Socket connect(@NotNull File daemonFile, @NotNull String command) throws IOException {
+        if (!daemonFile.isFile()) return null;
+
+        List<String> lines = FileUtil.loadLines(daemonFile);
+        if (lines.size() != 2) return null;
+
+        int port;
+        try {
+            port = Integer.parseInt(lines.get(0));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT_MILLIS);
+
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            output.writeUTF(lines.get(1));
+            output.writeUTF(new File("").getCanonicalPath());
+            output.writeUTF(command);
+            output.flush();
+            return socket;
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private CompilerDaemonClient() {}
+}
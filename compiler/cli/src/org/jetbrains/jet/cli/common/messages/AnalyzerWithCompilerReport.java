@@ -38,6 +38,7 @@ import org.jetbrains.jet.lang.resolve.java.JavaBindingContext;
 import org.jetbrains.jet.lang.resolve.java.JvmAbi;
 import org.jetbrains.jet.lang.resolve.java.resolver.TraceBasedErrorReporter;
 import org.jetbrains.jet.lang.resolve.kotlin.VirtualFileKotlinClass;
+import org.jetbrains.jet.utils.PerformanceReport;
 
 import java.util.Collection;
 import java.util.List;
@@ -221,8 +222,24 @@ public final class AnalyzerWithCompilerReport {
     }
 
     public void analyzeAndReport(@NotNull Function0<AnalyzeExhaust> analyzer, @NotNull Collection<JetFile> files) {
-        reportSyntaxErrors(files);
-        analyzeExhaust = analyzer.invoke();
+        // PSI is built lazily, so looking for syntax errors here parses the files
+        PerformanceReport.Phase phase = PerformanceReport.phase("parse");
+        try {
+            reportSyntaxErrors(files);
+            phase.count("files", files.size());
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = PerformanceReport.phase("analyze");
+        try {
+            analyzeExhaust = analyzer.invoke();
+        }
+        finally {
+            phase.end();
+        }
+
         reportDiagnostics(analyzeExhaust.getBindingContext(), messageCollectorWrapper);
         reportIncompleteHierarchies();
         reportAlternativeSignatureErrors();
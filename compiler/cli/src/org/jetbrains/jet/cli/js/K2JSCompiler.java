@@ -28,7 +28,6 @@ import com.intellij.util.containers.ContainerUtil;
 import jet.Function0;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.jet.OutputFileCollection;
 import org.jetbrains.jet.analyzer.AnalyzeExhaust;
 import org.jetbrains.jet.cli.common.CLICompiler;
 import org.jetbrains.jet.cli.common.ExitCode;
@@ -38,9 +37,7 @@ import org.jetbrains.jet.cli.common.messages.AnalyzerWithCompilerReport;
 import org.jetbrains.jet.cli.common.messages.CompilerMessageLocation;
 import org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity;
 import org.jetbrains.jet.cli.common.messages.MessageCollector;
-import org.jetbrains.jet.cli.common.output.OutputDirector;
-import org.jetbrains.jet.cli.common.output.SingleDirectoryDirector;
-import org.jetbrains.jet.cli.common.output.outputUtils.OutputUtilsPackage;
+import org.jetbrains.jet.cli.common.messages.OutputMessageUtil;
 import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
 import org.jetbrains.jet.config.CommonConfigurationKeys;
 import org.jetbrains.jet.config.CompilerConfiguration;
@@ -49,8 +46,10 @@ import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
 import org.jetbrains.k2js.config.*;
 import org.jetbrains.k2js.facade.K2JSTranslator;
 import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.serialization.JsMetadataSerializer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -106,7 +105,8 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
         File outputFile = new File(arguments.outputFile);
 
         Config config = getConfig(arguments, project);
-        if (analyzeAndReportErrors(messageCollector, sourcesFiles, config)) {
+        AnalyzeExhaust analyzeExhaust = analyzeAndReportErrors(messageCollector, sourcesFiles, config);
+        if (analyzeExhaust == null) {
             return COMPILATION_ERROR;
         }
 
@@ -134,10 +134,25 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
 
         MainCallParameters mainCallParameters = createMainCallParameters(arguments.main);
 
-        OutputFileCollection outputFiles = translate(mainCallParameters, config, sourcesFiles, outputFile, outputPrefixFile, outputPostfixFile);
+        List<File> outputFiles = translate(mainCallParameters, config, sourcesFiles, outputFile, outputPrefixFile, outputPostfixFile);
 
-        OutputDirector outputDirector = new SingleDirectoryDirector(outputFile.getParentFile());
-        OutputUtilsPackage.writeAll(outputFiles, outputDirector, messageCollector);
+        List<File> sourceFilesOnDisk = K2JSTranslator.getSourceFiles(sourcesFiles);
+        for (File file : outputFiles) {
+            messageCollector.report(CompilerMessageSeverity.OUTPUT, OutputMessageUtil.formatOutputMessage(sourceFilesOnDisk, file),
+                                    CompilerMessageLocation.NO_LOCATION);
+        }
+
+        if (arguments.metadata != null) {
+            try {
+                JsMetadataSerializer.serialize(analyzeExhaust.getBindingContext(), sourcesFiles, new File(arguments.metadata));
+            }
+            catch (IOException e) {
+                messageCollector.report(CompilerMessageSeverity.ERROR,
+                                        "Could not write metadata to '" + arguments.metadata + "': " + e.getMessage(),
+                                        CompilerMessageLocation.NO_LOCATION);
+                return ExitCode.COMPILATION_ERROR;
+            }
+        }
 
         return OK;
     }
@@ -158,7 +173,7 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
                                 CompilerMessageLocation.NO_LOCATION);
     }
 
-    private static OutputFileCollection translate(
+    private static List<File> translate(
             @NotNull MainCallParameters mainCall,
             @NotNull Config config,
             @NotNull List<JetFile> sourceFiles,
@@ -167,14 +182,18 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
             @Nullable File outputPostfix
     ) {
         try {
-            return K2JSTranslator.translateWithMainCallParameters(mainCall, sourceFiles, outputFile, outputPrefix, outputPostfix, config);
+            return K2JSTranslator.translateToFiles(mainCall, sourceFiles, outputFile, outputPrefix, outputPostfix, config);
         }
         catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static boolean analyzeAndReportErrors(@NotNull MessageCollector messageCollector,
+    /**
+     * @return null if there were errors
+     */
+    @Nullable
+    private static AnalyzeExhaust analyzeAndReportErrors(@NotNull MessageCollector messageCollector,
             @NotNull final List<JetFile> sources, @NotNull final Config config) {
         AnalyzerWithCompilerReport analyzerWithCompilerReport = new AnalyzerWithCompilerReport(messageCollector);
         analyzerWithCompilerReport.analyzeAndReport(new Function0<AnalyzeExhaust>() {
@@ -183,7 +202,7 @@ public class K2JSCompiler extends CLICompiler<K2JSCompilerArguments> {
                 return AnalyzerFacadeForJS.analyzeFiles(sources, Predicates.<PsiFile>alwaysTrue(), config);
             }
         }, sources);
-        return analyzerWithCompilerReport.hasErrors();
+        return analyzerWithCompilerReport.hasErrors() ? null : analyzerWithCompilerReport.getAnalyzeExhaust();
     }
 
     @NotNull
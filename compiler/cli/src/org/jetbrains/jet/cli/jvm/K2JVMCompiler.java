@@ -35,8 +35,10 @@ import org.jetbrains.jet.lang.resolve.AnalyzerScriptParameter;
 import org.jetbrains.jet.utils.KotlinPaths;
 import org.jetbrains.jet.utils.KotlinPathsFromHomeDir;
 import org.jetbrains.jet.utils.PathUtil;
+import org.jetbrains.jet.utils.PerformanceReport;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -107,11 +109,13 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
 
         configuration.put(JVMConfigurationKeys.GENERATE_NOT_NULL_ASSERTIONS, arguments.notNullAssertions);
         configuration.put(JVMConfigurationKeys.GENERATE_NOT_NULL_PARAMETER_ASSERTIONS, arguments.notNullParamAssertions);
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN, arguments.parallelCodegen);
 
         configuration.put(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, messageCollector);
 
         messageCollector.report(CompilerMessageSeverity.LOGGING, "Configuring the compilation environment",
                                 CompilerMessageLocation.NO_LOCATION);
+        PerformanceReport performanceReport = arguments.reportPerf != null ? PerformanceReport.start() : null;
         try {
             configureEnvironment(configuration, arguments);
 
@@ -148,6 +152,26 @@ public class K2JVMCompiler extends CLICompiler<K2JVMCompilerArguments> {
                                     MessageUtil.psiElementToMessageLocation(e.getElement()));
             return INTERNAL_ERROR;
         }
+        finally {
+            if (performanceReport != null) {
+                PerformanceReport.stop();
+                writePerformanceReport(performanceReport, new File(arguments.reportPerf), messageCollector);
+            }
+        }
+    }
+
+    private static void writePerformanceReport(
+            @NotNull PerformanceReport report,
+            @NotNull File file,
+            @NotNull MessageCollector messageCollector
+    ) {
+        try {
+            report.writeJson(file);
+        }
+        catch (IOException e) {
+            messageCollector.report(CompilerMessageSeverity.WARNING, "Cannot write performance report to " + file + ": " + e.getMessage(),
+                                    CompilerMessageLocation.NO_LOCATION);
+        }
     }
 
 
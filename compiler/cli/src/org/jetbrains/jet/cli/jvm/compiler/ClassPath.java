@@ -18,6 +18,7 @@ package org.jetbrains.jet.cli.jvm.compiler;
 
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -27,6 +28,9 @@ public final class ClassPath implements Iterable<VirtualFile> {
 
     @NotNull
     private final List<VirtualFile> roots = new ArrayList<VirtualFile>();
+    // Parallel to roots, null for roots which are not indexed
+    @NotNull
+    private final List<JarClassIndex> indices = new ArrayList<JarClassIndex>();
 
     @Override
     public Iterator<VirtualFile> iterator() {
@@ -34,6 +38,28 @@ public final class ClassPath implements Iterable<VirtualFile> {
     }
 
     public void add(@NotNull VirtualFile root) {
+        add(root, null);
+    }
+
+    /*package*/ void add(@NotNull VirtualFile root, @Nullable JarClassIndex index) {
         roots.add(root);
+        indices.add(index);
+    }
+
+    /*package*/ int size() {
+        return roots.size();
+    }
+
+    @NotNull
+    /*package*/ VirtualFile getRoot(int i) {
+        return roots.get(i);
+    }
+
+    /**
+     * @return index of the i-th root, or null if it is not indexed and must be searched in the VFS
+     */
+    @Nullable
+    /*package*/ JarClassIndex getIndex(int i) {
+        return indices.get(i);
     }
 }
@@ -19,12 +19,22 @@ package org.jetbrains.jet.cli.jvm.compiler;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.resolve.java.JvmAnnotationNames;
+import org.jetbrains.jet.lang.resolve.java.JvmClassName;
 import org.jetbrains.jet.lang.resolve.kotlin.VirtualFileFinder;
 import org.jetbrains.jet.lang.resolve.kotlin.VirtualFileKotlinClass;
 import org.jetbrains.jet.lang.resolve.kotlin.header.KotlinClassHeader;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 
+import java.io.UnsupportedEncodingException;
+
 public class CliVirtualFileFinder implements VirtualFileFinder {
+    @SuppressWarnings("deprecation")
+    private static final byte[][] HEADER_ANNOTATION_DESCRIPTORS = headerAnnotationDescriptors(
+            JvmAnnotationNames.KOTLIN_CLASS, JvmAnnotationNames.KOTLIN_PACKAGE, JvmAnnotationNames.KOTLIN_PACKAGE_FRAGMENT,
+            JvmAnnotationNames.KOTLIN_TRAIT_IMPL, JvmAnnotationNames.OLD_JET_CLASS_ANNOTATION,
+            JvmAnnotationNames.OLD_JET_PACKAGE_CLASS_ANNOTATION
+    );
 
     @NotNull
     private final ClassPath classPath;
@@ -36,8 +46,29 @@ public class CliVirtualFileFinder implements VirtualFileFinder {
     @Nullable
     @Override
     public VirtualFile find(@NotNull FqName className) {
-        for (VirtualFile root : classPath) {
-            VirtualFile fileInRoot = findFileInRoot(className.asString(), root);
+        String qName = className.asString();
+        for (int i = 0; i < classPath.size(); i++) {
+            VirtualFile root = classPath.getRoot(i);
+            JarClassIndex index = classPath.getIndex(i);
+            if (index != null) {
+                int entry = index.findClassFile(qName);
+                if (entry < 0) continue;
+
+                JarClassIndex.ClassFile classFile = index.readClassFile(entry);
+                if (classFile != null && classFile.isClassFileOf(qName)) {
+                    // Most classes on the classpath are Java classes, which are recognized without the VFS
+                    if (!mayBeKotlinClass(classFile.getBytes())) continue;
+
+                    VirtualFile vFile = root.findFileByRelativePath(classFile.getPath());
+                    if (vFile != null && isKotlinClass(vFile)) {
+                        return vFile;
+                    }
+                    continue;
+                }
+                // A hash collision or a jar changed since it was indexed: search it as usual
+            }
+
+            VirtualFile fileInRoot = findFileInRoot(qName, root);
             if (fileInRoot != null) {
                 return fileInRoot;
             }
@@ -45,6 +76,49 @@ public class CliVirtualFileFinder implements VirtualFileFinder {
         return null;
     }
 
+    // The header annotation is referenced by its descriptor in the constant pool of a Kotlin class file
+    private static boolean mayBeKotlinClass(@NotNull byte[] classFile) {
+        for (byte[] descriptor : HEADER_ANNOTATION_DESCRIPTORS) {
+            if (indexOf(classFile, descriptor) >= 0) return true;
+        }
+        return false;
+    }
+
+    private static int indexOf(@NotNull byte[] bytes, @NotNull byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    @NotNull
+    private static byte[][] headerAnnotationDescriptors(@NotNull FqName... annotations) {
+        byte[][] result = new byte[annotations.length][];
+        for (int i = 0; i < annotations.length; i++) {
+            String descriptor = "L" + JvmClassName.byFqNameWithoutInnerClasses(annotations[i]).getInternalName() + ";";
+            try {
+                result[i] = descriptor.getBytes("UTF-8");
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isKotlinClass(@NotNull VirtualFile vFile) {
+        if (!vFile.isValid()) {
+            //TODO: log
+            return false;
+        }
+        //NOTE: currently we use VirtualFileFinder to find Kotlin binaries only
+        return KotlinClassHeader.read(new VirtualFileKotlinClass(vFile)) != null;
+    }
+
     //NOTE: copied with some changes from CoreJavaFileManager
     @Nullable
     private static VirtualFile findFileInRoot(@NotNull String qName, @NotNull VirtualFile root) {
@@ -65,16 +139,6 @@ public class CliVirtualFileFinder implements VirtualFileFinder {
 
         String className = pathRest.replace('.', '$');
         VirtualFile vFile = cur.findChild(className + ".class");
-        if (vFile != null) {
-            if (!vFile.isValid()) {
-                //TODO: log
-                return null;
-            }
-            //NOTE: currently we use VirtualFileFinder to find Kotlin binaries only
-            if (KotlinClassHeader.read(new VirtualFileKotlinClass(vFile)) != null) {
-                return vFile;
-            }
-        }
-        return null;
+        return vFile != null && isKotlinClass(vFile) ? vFile : null;
     }
 }
@@ -0,0 +1,612 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.compiler;
+
+import com.intellij.openapi.util.SystemInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Locations of all class files in a jar: sorted 64-bit hashes of their paths and, in the same order, the offsets of their local
+ * headers with sizes and compression methods. Lookups of classes the jar doesn't contain are answered without reading the jar,
+ * and class files it does contain are read directly from their offsets, without the VFS.
+ *
+ * The index is built in one pass over the central directory. It is cached in a directory private to the user
+ * (see {@link #CACHE_DIR_PROPERTY}) and memory-mapped by later compilations while the jar's stamp is the same: its length,
+ * modification time, the end of central directory record (entry count, size and offset of the central directory) and a hash
+ * of the last bytes of the file, which hold the end of the central directory.
+ *
+ * Zip64 jars and jars with class files compressed by methods other than deflate are not indexed.
+ */
+/*package*/ final class JarClassIndex {
+    /**
+     * Directory for cached indices, "none" disables caching. By default indices are cached in the user's home directory
+     */
+    public static final String CACHE_DIR_PROPERTY = "kotlin.classpath.index.dir";
+
+    private static final int MAGIC = 0x4B434958;
+    private static final int VERSION = 3;
+
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_ZIP_COMMENT_SIZE = 0xFFFF;
+    private static final int STAMP_TAIL_SIZE = 4096;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    // Offset of the local header, compressed size, uncompressed size and compression method of each class file
+    private static final int ENTRY_INTS = 4;
+
+    private final File jar;
+    private final LongBuffer hashes;
+    private final IntBuffer entries;
+
+    private JarClassIndex(@NotNull File jar, @NotNull LongBuffer hashes, @NotNull IntBuffer entries) {
+        this.jar = jar;
+        this.hashes = hashes;
+        this.entries = entries;
+    }
+
+    /**
+     * Doesn't allocate or read the jar, so it is cheap for the jars which don't contain the class.
+     * A hash collision may give an entry of another class, see {@link ClassFile#isClassFileOf(String)}
+     *
+     * @param qName qualified name of a class, any prefix of which may be the package: "a.b.C" may be in "a/b/C.class",
+     *              "a/b$C.class" or "a$b$C.class"
+     * @return the entry of the class file, or -1 if the jar certainly doesn't contain it
+     */
+    public int findClassFile(@NotNull String qName) {
+        int packageEnd = qName.lastIndexOf('.');
+        while (true) {
+            int entry = binarySearch(hashes, hashClassFilePath(qName, packageEnd));
+            if (entry >= 0) return entry;
+            if (packageEnd < 0) return -1;
+            packageEnd = qName.lastIndexOf('.', packageEnd - 1);
+        }
+    }
+
+    /**
+     * @return null if the entry can't be read, e.g. the jar was changed since the index was loaded
+     */
+    @Nullable
+    public ClassFile readClassFile(int entry) {
+        long offset = entries.get(entry * ENTRY_INTS) & 0xFFFFFFFFL;
+        int compressedSize = entries.get(entry * ENTRY_INTS + 1);
+        int size = entries.get(entry * ENTRY_INTS + 2);
+        int method = entries.get(entry * ENTRY_INTS + 3);
+        try {
+            RandomAccessFile file = new RandomAccessFile(jar, "r");
+            try {
+                byte[] header = new byte[LOCAL_FILE_HEADER_SIZE];
+                file.seek(offset);
+                file.readFully(header);
+                if (readInt(header, 0) != LOCAL_FILE_HEADER_SIGNATURE) return null;
+
+                byte[] name = new byte[readShort(header, 26)];
+                file.readFully(name);
+                file.seek(offset + LOCAL_FILE_HEADER_SIZE + name.length + readShort(header, 28));
+                byte[] data = new byte[compressedSize];
+                file.readFully(data);
+
+                byte[] bytes = method == STORED ? data : inflate(data, size);
+                return bytes != null ? new ClassFile(new String(name, "UTF-8"), bytes) : null;
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static byte[] inflate(@NotNull byte[] data, int size) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[size];
+            int length = 0;
+            while (length < size && !inflater.finished()) {
+                int inflated = inflater.inflate(result, length, size - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) return null;
+                length += inflated;
+            }
+            return length == size ? result : null;
+        }
+        catch (DataFormatException e) {
+            return null;
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    public static final class ClassFile {
+        private final String path;
+        private final byte[] bytes;
+
+        private ClassFile(@NotNull String path, @NotNull byte[] bytes) {
+            this.path = path;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return path relative to the root of the jar
+         */
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        @NotNull
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @return whether this is the class file of the given class rather than of another class with the same hash
+         */
+        public boolean isClassFileOf(@NotNull String qName) {
+            if (path.length() != qName.length() + ".class".length() || !path.endsWith(".class")) return false;
+            boolean nested = false;
+            for (int i = 0; i < qName.length(); i++) {
+                char c = path.charAt(i);
+                if (qName.charAt(i) != '.') {
+                    if (c != qName.charAt(i)) return false;
+                }
+                else if (c == '$') {
+                    nested = true;
+                }
+                else if (c != '/' || nested) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return null if the jar can't be indexed: the caller should look into it as usual
+     */
+    @Nullable
+    public static JarClassIndex load(@NotNull File jar) {
+        Stamp stamp = Stamp.read(jar);
+        if (stamp == null) return null;
+
+        File cacheFile = getCacheFile(jar);
+        if (cacheFile != null) {
+            JarClassIndex cached = readCache(cacheFile, jar, stamp);
+            if (cached != null) return cached;
+        }
+
+        long[] hashes;
+        int[] entries;
+        try {
+            byte[] centralDirectory = new byte[(int) stamp.centralDirectorySize];
+            RandomAccessFile file = new RandomAccessFile(jar, "r");
+            try {
+                file.seek(stamp.centralDirectoryOffset);
+                file.readFully(centralDirectory);
+            }
+            finally {
+                file.close();
+            }
+
+            int count = countClassFiles(centralDirectory, stamp.entryCount);
+            if (count < 0) return null;
+            hashes = new long[count];
+            entries = new int[count * ENTRY_INTS];
+            if (!readClassFiles(centralDirectory, stamp.entryCount, hashes, entries)) return null;
+        }
+        catch (IOException e) {
+            return null;
+        }
+
+        if (cacheFile != null) {
+            writeCache(cacheFile, jar, stamp, hashes, entries);
+        }
+        return new JarClassIndex(jar, LongBuffer.wrap(hashes), IntBuffer.wrap(entries));
+    }
+
+    /**
+     * @return the number of class files, or -1 if the central directory is malformed or uses zip64
+     */
+    private static int countClassFiles(@NotNull byte[] centralDirectory, int entryCount) {
+        int count = 0;
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (position + CENTRAL_DIRECTORY_ENTRY_SIZE > centralDirectory.length ||
+                readInt(centralDirectory, position) != CENTRAL_DIRECTORY_ENTRY_SIGNATURE) {
+                return -1;
+            }
+            int nameLength = readShort(centralDirectory, position + 28);
+            int next = position + CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength +
+                       readShort(centralDirectory, position + 30) + readShort(centralDirectory, position + 32);
+            if (next > centralDirectory.length) return -1;
+            if (isClassFileName(centralDirectory, position + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength)) {
+                count++;
+            }
+            position = next;
+        }
+        return count;
+    }
+
+    private static boolean readClassFiles(
+            @NotNull byte[] centralDirectory,
+            int entryCount,
+            @NotNull long[] hashes,
+            @NotNull int[] entries
+    ) throws UnsupportedEncodingException {
+        final long[] unsortedHashes = new long[hashes.length];
+        int[] unsortedEntries = new int[entries.length];
+        int count = 0;
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = readShort(centralDirectory, position + 28);
+            int namePosition = position + CENTRAL_DIRECTORY_ENTRY_SIZE;
+            if (isClassFileName(centralDirectory, namePosition, nameLength)) {
+                int method = readShort(centralDirectory, position + 10);
+                int compressedSize = readInt(centralDirectory, position + 20);
+                int size = readInt(centralDirectory, position + 24);
+                int offset = readInt(centralDirectory, position + 42);
+                if (method != STORED && method != DEFLATED) return false;
+                if (compressedSize == -1 || size == -1 || offset == -1 || compressedSize < 0 || size < 0) return false;
+
+                unsortedHashes[count] = hash(new String(centralDirectory, namePosition, nameLength, "UTF-8"));
+                unsortedEntries[count * ENTRY_INTS] = offset;
+                unsortedEntries[count * ENTRY_INTS + 1] = compressedSize;
+                unsortedEntries[count * ENTRY_INTS + 2] = size;
+                unsortedEntries[count * ENTRY_INTS + 3] = method;
+                count++;
+            }
+            position = namePosition + nameLength +
+                       readShort(centralDirectory, position + 30) + readShort(centralDirectory, position + 32);
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                long x = unsortedHashes[a];
+                long y = unsortedHashes[b];
+                return x < y ? -1 : x == y ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < count; i++) {
+            hashes[i] = unsortedHashes[order[i]];
+            System.arraycopy(unsortedEntries, order[i] * ENTRY_INTS, entries, i * ENTRY_INTS, ENTRY_INTS);
+        }
+        return true;
+    }
+
+    private static boolean isClassFileName(@NotNull byte[] bytes, int offset, int length) {
+        String suffix = ".class";
+        if (length < suffix.length()) return false;
+        for (int i = 0; i < suffix.length(); i++) {
+            if (bytes[offset + length - suffix.length() + i] != suffix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cheap to read: the length and modification time of the jar, and its last bytes with the end of central directory record
+     */
+    /*package*/ static final class Stamp {
+        private final long length;
+        private final long lastModified;
+        private final int entryCount;
+        private final long centralDirectorySize;
+        private final long centralDirectoryOffset;
+        private final long tailHash;
+
+        private Stamp(
+                long length,
+                long lastModified,
+                int entryCount,
+                long centralDirectorySize,
+                long centralDirectoryOffset,
+                long tailHash
+        ) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.entryCount = entryCount;
+            this.centralDirectorySize = centralDirectorySize;
+            this.centralDirectoryOffset = centralDirectoryOffset;
+            this.tailHash = tailHash;
+        }
+
+        /**
+         * @return null if the file is not a zip file or uses zip64
+         */
+        @Nullable
+        /*package*/ static Stamp read(@NotNull File jar) {
+            try {
+                RandomAccessFile file = new RandomAccessFile(jar, "r");
+                try {
+                    long length = file.length();
+                    long lastModified = jar.lastModified();
+
+                    // Usually there is no zip comment and the record is at the very end
+                    int tailSize = (int) Math.min(length, STAMP_TAIL_SIZE);
+                    byte[] tail = readTail(file, length, tailSize);
+                    int record = findEndOfCentralDirectory(tail);
+                    if (record < 0 && length > tailSize) {
+                        tailSize = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_ZIP_COMMENT_SIZE);
+                        tail = readTail(file, length, tailSize);
+                        record = findEndOfCentralDirectory(tail);
+                    }
+                    if (record < 0) return null;
+
+                    int entryCount = readShort(tail, record + 10);
+                    long size = readInt(tail, record + 12) & 0xFFFFFFFFL;
+                    long offset = readInt(tail, record + 16) & 0xFFFFFFFFL;
+                    if (entryCount == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) return null;
+                    if (offset + size > length - (tail.length - record) || size > Integer.MAX_VALUE) return null;
+
+                    return new Stamp(length, lastModified, entryCount, size, offset, hash(tail));
+                }
+                finally {
+                    file.close();
+                }
+            }
+            catch (IOException e) {
+                return null;
+            }
+        }
+
+        @NotNull
+        private static byte[] readTail(@NotNull RandomAccessFile file, long length, int tailSize) throws IOException {
+            byte[] tail = new byte[tailSize];
+            file.seek(length - tailSize);
+            file.readFully(tail);
+            return tail;
+        }
+
+        private static int findEndOfCentralDirectory(@NotNull byte[] tail) {
+            for (int i = tail.length - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+                if (readInt(tail, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) return i;
+            }
+            return -1;
+        }
+
+        /*package*/ void write(@NotNull DataOutput output) throws IOException {
+            output.writeLong(length);
+            output.writeLong(lastModified);
+            output.writeInt(entryCount);
+            output.writeLong(centralDirectorySize);
+            output.writeLong(centralDirectoryOffset);
+            output.writeLong(tailHash);
+        }
+
+        private boolean isWrittenTo(@NotNull DataInput input) throws IOException {
+            return input.readLong() == length && input.readLong() == lastModified && input.readInt() == entryCount &&
+                   input.readLong() == centralDirectorySize && input.readLong() == centralDirectoryOffset &&
+                   input.readLong() == tailHash;
+        }
+    }
+
+    private static int readShort(@NotNull byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(@NotNull byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 |
+               (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    @Nullable
+    private static File getCacheFile(@NotNull File jar) {
+        File cacheDir = getCacheDir();
+        if (cacheDir == null) return null;
+
+        String path = jar.getAbsolutePath();
+        return new File(cacheDir, jar.getName() + "-" + Long.toHexString(hash(path)) + ".idx");
+    }
+
+    /**
+     * @return null if caching is disabled or the directory can't be made private to the user
+     */
+    @Nullable
+    /*package*/ static File getCacheDir() {
+        String property = System.getProperty(CACHE_DIR_PROPERTY);
+        if ("none".equals(property)) return null;
+
+        File cacheDir = property != null ? new File(property) : getDefaultCacheDir();
+        return ensurePrivateDirectory(cacheDir) ? cacheDir : null;
+    }
+
+    @NotNull
+    /*package*/ static File getDefaultCacheDir() {
+        return new File(new File(System.getProperty("user.home"), ".kotlin"), "classpath-index");
+    }
+
+    // Other users must not be able to plant indices which would hide classes of a jar from the compiler
+    private static boolean ensurePrivateDirectory(@NotNull File dir) {
+        try {
+            File parent = dir.getAbsoluteFile().getParentFile();
+            if (parent == null) return false;
+            // The directory itself must not be a link to somewhere else
+            if (!new File(parent.getCanonicalFile(), dir.getName()).equals(dir.getCanonicalFile())) return false;
+        }
+        catch (IOException e) {
+            return false;
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) return false;
+
+        // On Windows, access can't be restricted with java.io.File: the directories under the user's home are private by default
+        if (SystemInfo.isWindows) return true;
+
+        // Restricting access fails for a directory of another user
+        return dir.setReadable(false, false) && dir.setReadable(true, true) &&
+               dir.setWritable(false, false) && dir.setWritable(true, true) &&
+               dir.setExecutable(false, false) && dir.setExecutable(true, true);
+    }
+
+    @Nullable
+    private static JarClassIndex readCache(@NotNull File cacheFile, @NotNull File jar, @NotNull Stamp stamp) {
+        if (!cacheFile.isFile()) return null;
+        try {
+            RandomAccessFile file = new RandomAccessFile(cacheFile, "r");
+            try {
+                if (file.readInt() != MAGIC || file.readInt() != VERSION) return null;
+                if (!jar.getAbsolutePath().equals(file.readUTF())) return null;
+                if (!stamp.isWrittenTo(file)) return null;
+                int count = file.readInt();
+                if (count < 0) return null;
+
+                long offset = file.getFilePointer();
+                long hashesSize = count * 8L;
+                long entriesSize = count * ENTRY_INTS * 4L;
+                if (file.length() != offset + hashesSize + entriesSize) return null;
+
+                ByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, hashesSize + entriesSize);
+                LongBuffer hashes = buffer.asLongBuffer();
+                hashes.limit(count);
+                buffer.position((int) hashesSize);
+                return new JarClassIndex(jar, hashes, buffer.slice().asIntBuffer());
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeCache(
+            @NotNull File cacheFile,
+            @NotNull File jar,
+            @NotNull Stamp stamp,
+            @NotNull long[] hashes,
+            @NotNull int[] entries
+    ) {
+        File dir = cacheFile.getParentFile();
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(jar.getAbsolutePath());
+                stamp.write(output);
+                output.writeInt(hashes.length);
+                for (long hash : hashes) {
+                    output.writeLong(hash);
+                }
+                for (int value : entries) {
+                    output.writeInt(value);
+                }
+            }
+            finally {
+                output.close();
+            }
+            // Another compilation may be writing the same index: whichever is renamed last wins, both are correct
+            if (!tempFile.renameTo(cacheFile)) {
+                //noinspection ResultOfMethodCallIgnored
+                cacheFile.delete();
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.renameTo(cacheFile);
+            }
+        }
+        catch (IOException e) {
+            // The index is only a cache
+        }
+        finally {
+            if (tempFile != null && tempFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static int binarySearch(@NotNull LongBuffer buffer, long key) {
+        int low = 0;
+        int high = buffer.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = buffer.get(middle);
+            if (value < key) {
+                low = middle + 1;
+            }
+            else if (value > key) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    // Hash of the class file path in which the dots of the qualified name up to packageEnd separate packages, and the others nested classes
+    private static long hashClassFilePath(@NotNull String qName, int packageEnd) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < qName.length(); i++) {
+            char c = qName.charAt(i);
+            if (c == '.') {
+                c = i <= packageEnd ? '/' : '$';
+            }
+            hash = (hash ^ c) * FNV_PRIME;
+        }
+        return hash(hash, ".class");
+    }
+
+    // 64-bit FNV-1a
+    private static long hash(@NotNull String s) {
+        return hash(FNV_OFFSET_BASIS, s);
+    }
+
+    private static long hash(long hash, @NotNull String s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(@NotNull byte[] bytes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
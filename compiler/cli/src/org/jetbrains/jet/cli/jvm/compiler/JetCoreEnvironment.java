@@ -37,6 +37,7 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.impl.compiled.ClsCustomNavigationPolicy;
 import com.intellij.psi.impl.file.impl.JavaFileManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 import org.jetbrains.jet.CompilerModeProvider;
 import org.jetbrains.jet.OperationModeProvider;
@@ -59,7 +60,9 @@ import org.jetbrains.jet.utils.PathUtil;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.ERROR;
 import static org.jetbrains.jet.cli.common.messages.CompilerMessageSeverity.WARNING;
@@ -70,26 +73,50 @@ public class JetCoreEnvironment {
     private static final Object APPLICATION_LOCK = new Object();
     private static JavaCoreApplicationEnvironment ourApplicationEnvironment;
     private static int ourProjectCount = 0;
+    private static boolean ourKeepApplicationEnvironment = false;
+    private static boolean ourApplicationEnvironmentOutdated = false;
+    // Jars are indexed by the application environment once: it can only be reused while the jars stay the same.
+    // Only recorded when the environment is kept between compilations
+    private static final Map<File, JarStamp> ourJarStamps = new HashMap<File, JarStamp>();
+    // Class indices of the jars, valid as long as the shared environment: a null value means the jar can't be indexed.
+    // Only filled when the environment is kept between compilations
+    private static final Map<File, JarClassIndex> ourJarClassIndices = new HashMap<File, JarClassIndex>();
+
+    /**
+     * Long-running compilers (e.g. the compile daemon) keep the application environment with its jar indices between compilations.
+     * It is recreated when one of the jars it has seen changes
+     */
+    public static void setKeepApplicationEnvironment(boolean keep) {
+        synchronized (APPLICATION_LOCK) {
+            ourKeepApplicationEnvironment = keep;
+        }
+    }
 
     @NotNull
     public static JetCoreEnvironment createForProduction(@NotNull Disposable parentDisposable, @NotNull CompilerConfiguration configuration) {
+        JavaCoreApplicationEnvironment applicationEnvironment;
+        synchronized (APPLICATION_LOCK) {
+            applicationEnvironment = getOrCreateApplicationEnvironmentForProduction(configuration);
+            if (applicationEnvironment == null) {
+                // Some jars have changed while other compilations still use the shared environment
+                return new JetCoreEnvironment(parentDisposable, createApplicationEnvironment(parentDisposable), configuration);
+            }
+            ourProjectCount++;
+        }
+
         // JPS may run many instances of the compiler in parallel (there's an option for compiling independent modules in parallel in IntelliJ)
         // All projects share the same ApplicationEnvironment, and when the last project is disposed, the ApplicationEnvironment is disposed as well
         Disposer.register(parentDisposable, new Disposable() {
             @Override
             public void dispose() {
                 synchronized (APPLICATION_LOCK) {
-                    if (--ourProjectCount <= 0) {
+                    if (--ourProjectCount <= 0 && (!ourKeepApplicationEnvironment || ourApplicationEnvironmentOutdated)) {
                         disposeApplicationEnvironment();
                     }
                 }
             }
         });
-        JetCoreEnvironment environment = new JetCoreEnvironment(parentDisposable, getOrCreateApplicationEnvironmentForProduction(), configuration);
-        synchronized (APPLICATION_LOCK) {
-            ourProjectCount++;
-        }
-        return environment;
+        return new JetCoreEnvironment(parentDisposable, applicationEnvironment, configuration);
     }
 
     @TestOnly
@@ -99,14 +126,31 @@ public class JetCoreEnvironment {
         return new JetCoreEnvironment(parentDisposable, createApplicationEnvironment(parentDisposable), configuration);
     }
 
-    @NotNull
-    private static JavaCoreApplicationEnvironment getOrCreateApplicationEnvironmentForProduction() {
+    /**
+     * @return null if the shared environment is outdated but can't be disposed, because it is in use
+     */
+    @Nullable
+    private static JavaCoreApplicationEnvironment getOrCreateApplicationEnvironmentForProduction(@NotNull CompilerConfiguration configuration) {
         synchronized (APPLICATION_LOCK) {
+            if (ourApplicationEnvironment != null &&
+                (ourApplicationEnvironmentOutdated || (ourKeepApplicationEnvironment && !updateJarStamps(configuration)))) {
+                if (ourProjectCount > 0) {
+                    ourApplicationEnvironmentOutdated = true;
+                    return null;
+                }
+                disposeApplicationEnvironment();
+            }
             if (ourApplicationEnvironment != null) return ourApplicationEnvironment;
 
             Disposable parentDisposable = Disposer.newDisposable();
             ourApplicationEnvironment = createApplicationEnvironment(parentDisposable);
             ourProjectCount = 0;
+            ourApplicationEnvironmentOutdated = false;
+            ourJarStamps.clear();
+            ourJarClassIndices.clear();
+            if (ourKeepApplicationEnvironment) {
+                updateJarStamps(configuration);
+            }
             Disposer.register(parentDisposable, new Disposable() {
                 @Override
                 public void dispose() {
@@ -119,11 +163,58 @@ public class JetCoreEnvironment {
         }
     }
 
+    /**
+     * Records the current stamps of the configuration's jars
+     * @return false if some of the jars seen before have changed
+     */
+    private static boolean updateJarStamps(@NotNull CompilerConfiguration configuration) {
+        List<File> jars = new ArrayList<File>();
+        jars.addAll(configuration.getList(JVMConfigurationKeys.CLASSPATH_KEY));
+        jars.addAll(configuration.getList(JVMConfigurationKeys.ANNOTATIONS_PATH_KEY));
+
+        boolean upToDate = true;
+        for (File jar : jars) {
+            if (!jar.isFile()) continue;
+
+            JarStamp stamp = new JarStamp(jar.lastModified(), jar.length());
+            JarStamp oldStamp = ourJarStamps.put(jar, stamp);
+            if (oldStamp != null && !oldStamp.equals(stamp)) {
+                upToDate = false;
+            }
+        }
+        return upToDate;
+    }
+
+    private static final class JarStamp {
+        private final long lastModified;
+        private final long length;
+
+        private JarStamp(long lastModified, long length) {
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof JarStamp)) return false;
+
+            JarStamp other = (JarStamp) o;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (lastModified ^ (lastModified >>> 32)) + (int) (length ^ (length >>> 32));
+        }
+    }
+
     public static void disposeApplicationEnvironment() {
         synchronized (APPLICATION_LOCK) {
             if (ourApplicationEnvironment == null) return;
             JavaCoreApplicationEnvironment environment = ourApplicationEnvironment;
             ourApplicationEnvironment = null;
+            ourJarClassIndices.clear();
             Disposer.dispose(environment.getParentDisposable());
         }
     }
@@ -273,7 +364,7 @@ public class JetCoreEnvironment {
                 return;
             }
             projectEnvironment.addJarToClassPath(path);
-            classPath.add(jarFile);
+            classPath.add(jarFile, getJarClassIndex(path));
         }
         else {
             VirtualFile root = getMyApplicationEnvironment().getLocalFileSystem().findFileByPath(path.getAbsolutePath());
@@ -286,6 +377,26 @@ public class JetCoreEnvironment {
         }
     }
 
+    /**
+     * Indices of the jars are loaded once per shared environment, which is only reused while the jars keep their stamps
+     */
+    @Nullable
+    private JarClassIndex getJarClassIndex(@NotNull File jar) {
+        synchronized (APPLICATION_LOCK) {
+            // An environment created aside from the outdated shared one may see jars which have changed since
+            if (!ourKeepApplicationEnvironment || getMyApplicationEnvironment() != ourApplicationEnvironment) {
+                return JarClassIndex.load(jar);
+            }
+
+            if (ourJarClassIndices.containsKey(jar)) {
+                return ourJarClassIndices.get(jar);
+            }
+            JarClassIndex index = JarClassIndex.load(jar);
+            ourJarClassIndices.put(jar, index);
+            return index;
+        }
+    }
+
     public List<JetFile> getSourceFiles() {
         return sourceFiles;
     }
@@ -49,6 +49,7 @@ import org.jetbrains.jet.lang.resolve.java.PackageClassUtils;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.plugin.JetMainDetector;
 import org.jetbrains.jet.utils.KotlinPaths;
+import org.jetbrains.jet.utils.PerformanceReport;
 
 import java.io.File;
 import java.net.URL;
@@ -95,6 +96,7 @@ public class KotlinToJVMBytecodeCompiler {
 
         Disposable parentDisposable = Disposer.newDisposable();
         JetCoreEnvironment moduleEnvironment = null;
+        PerformanceReport.Phase phase = PerformanceReport.phase("module:" + module.getModuleName());
         try {
             moduleEnvironment = JetCoreEnvironment.createForProduction(parentDisposable, compilerConfiguration);
 
@@ -105,6 +107,7 @@ public class KotlinToJVMBytecodeCompiler {
             }
             return generationState.getFactory();
         } finally {
+            phase.end();
             if (moduleEnvironment != null) {
                 Disposer.dispose(parentDisposable);
             }
@@ -120,7 +123,13 @@ public class KotlinToJVMBytecodeCompiler {
             FqName mainClass
     ) {
         MessageCollector messageCollector = configuration.get(CLIConfigurationKeys.MESSAGE_COLLECTOR_KEY, MessageCollector.NONE);
-        CompileEnvironmentUtil.writeOutputToDirOrJar(jarPath, outputDir, jarRuntime, mainClass, outputFiles, messageCollector);
+        PerformanceReport.Phase phase = PerformanceReport.phase("output");
+        try {
+            CompileEnvironmentUtil.writeOutputToDirOrJar(jarPath, outputDir, jarRuntime, mainClass, outputFiles, messageCollector);
+        }
+        finally {
+            phase.end();
+        }
     }
 
     public static boolean compileModules(
@@ -293,9 +302,18 @@ public class KotlinToJVMBytecodeCompiler {
                 project, ClassBuilderFactories.BINARIES, Progress.DEAF, exhaust.getBindingContext(), environment.getSourceFiles(),
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_ASSERTIONS, false),
                 configuration.get(JVMConfigurationKeys.GENERATE_NOT_NULL_PARAMETER_ASSERTIONS, false),
-                /*generateDeclaredClasses = */true
+                /*generateDeclaredClasses = */true,
+                configuration.get(JVMConfigurationKeys.PARALLEL_CODEGEN, false)
         );
-        KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION);
+        PerformanceReport.Phase phase = PerformanceReport.phase("codegen");
+        try {
+            KotlinCodegenFacade.compileCorrectFiles(generationState, CompilationErrorHandler.THROW_EXCEPTION);
+            phase.count("files", environment.getSourceFiles().size());
+            phase.count("classes", generationState.getFactory().getClassCount());
+        }
+        finally {
+            phase.end();
+        }
 
         CompilerPluginContext context = new CompilerPluginContext(project, exhaust.getBindingContext(), environment.getSourceFiles());
         for (CompilerPlugin plugin : configuration.getList(CLIConfigurationKeys.COMPILER_PLUGINS)) {
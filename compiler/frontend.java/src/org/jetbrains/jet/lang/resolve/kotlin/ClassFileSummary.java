@@ -0,0 +1,320 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.kotlin;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.asm4.ClassVisitor;
+import org.jetbrains.asm4.FieldVisitor;
+import org.jetbrains.asm4.MethodVisitor;
+import org.jetbrains.jet.lang.resolve.java.JvmClassName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jetbrains.asm4.ClassReader.*;
+import static org.jetbrains.asm4.Opcodes.ASM4;
+import static org.jetbrains.jet.lang.resolve.kotlin.KotlinJvmBinaryClass.*;
+
+/**
+ * Everything {@link VirtualFileKotlinClass} reads from a class file: the name, annotations of the class
+ * and annotations of its fields, methods and method parameters. It's collected in one pass over the class file
+ * and then replayed to visitors as many times as needed.
+ *
+ * Summaries are cached in the user data of the file until its modification stamp changes.
+ */
+/* package */ final class ClassFileSummary {
+    private static final Key<SoftReference<ClassFileSummary>> SUMMARY_KEY = Key.create("KOTLIN_CLASS_FILE_SUMMARY");
+
+    private final long modificationStamp;
+    private final JvmClassName className;
+    private final List<RecordedAnnotation> classAnnotations;
+    private final List<RecordedMember> members;
+
+    private ClassFileSummary(
+            long modificationStamp,
+            @NotNull JvmClassName className,
+            @NotNull List<RecordedAnnotation> classAnnotations,
+            @NotNull List<RecordedMember> members
+    ) {
+        this.modificationStamp = modificationStamp;
+        this.className = className;
+        this.classAnnotations = classAnnotations;
+        this.members = members;
+    }
+
+    @NotNull
+    public static ClassFileSummary get(@NotNull VirtualFile file) throws IOException {
+        long stamp = file.getModificationStamp();
+        SoftReference<ClassFileSummary> reference = file.getUserData(SUMMARY_KEY);
+        ClassFileSummary summary = reference == null ? null : reference.get();
+        if (summary != null && summary.modificationStamp == stamp) {
+            return summary;
+        }
+
+        summary = read(file.contentsToByteArray(), stamp);
+        file.putUserData(SUMMARY_KEY, new SoftReference<ClassFileSummary>(summary));
+        return summary;
+    }
+
+    @NotNull
+    private static ClassFileSummary read(@NotNull byte[] bytes, long modificationStamp) {
+        final JvmClassName[] className = new JvmClassName[1];
+        final List<RecordedAnnotation> classAnnotations = new ArrayList<RecordedAnnotation>(2);
+        final List<RecordedMember> members = new ArrayList<RecordedMember>();
+
+        new ClassReader(bytes).accept(new ClassVisitor(ASM4) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                className[0] = JvmClassName.byInternalName(name);
+            }
+
+            @Override
+            public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                return recordAnnotation(classAnnotations, desc);
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                final RecordedMember member = new RecordedMember(name, desc, false);
+                return new FieldVisitor(ASM4) {
+                    @Override
+                    public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                        return recordAnnotation(member.annotations(), desc);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        member.addIfAnnotated(members);
+                    }
+                };
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                final RecordedMember member = new RecordedMember(name, desc, true);
+                return new MethodVisitor(ASM4) {
+                    @Override
+                    public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                        return recordAnnotation(member.annotations(), desc);
+                    }
+
+                    @Override
+                    public org.jetbrains.asm4.AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+                        RecordedAnnotation annotation = new RecordedAnnotation(desc, parameter);
+                        member.annotations().add(annotation);
+                        return new ArgumentRecorder(annotation.arguments);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                        member.addIfAnnotated(members);
+                    }
+                };
+            }
+        }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+
+        assert className[0] != null : "No class name in the class file";
+        return new ClassFileSummary(modificationStamp, className[0], compact(classAnnotations), compact(members));
+    }
+
+    @NotNull
+    private static org.jetbrains.asm4.AnnotationVisitor recordAnnotation(@NotNull List<RecordedAnnotation> annotations, @NotNull String desc) {
+        RecordedAnnotation annotation = new RecordedAnnotation(desc, -1);
+        annotations.add(annotation);
+        return new ArgumentRecorder(annotation.arguments);
+    }
+
+    @NotNull
+    public JvmClassName getClassName() {
+        return className;
+    }
+
+    public void loadClassAnnotations(@NotNull AnnotationVisitor visitor) {
+        for (RecordedAnnotation annotation : classAnnotations) {
+            replayArguments(visitor.visitAnnotation(annotation.getClassName()), annotation.arguments);
+        }
+        visitor.visitEnd();
+    }
+
+    /**
+     * Only members which have annotations or annotated parameters are visited
+     */
+    public void loadMemberAnnotations(@NotNull MemberVisitor visitor) {
+        for (RecordedMember member : members) {
+            Name name = Name.guess(member.name);
+            if (member.isMethod) {
+                MethodAnnotationVisitor v = visitor.visitMethod(name, member.desc);
+                if (v == null) continue;
+
+                for (RecordedAnnotation annotation : member.annotations) {
+                    JvmClassName annotationClassName = annotation.getClassName();
+                    AnnotationArgumentVisitor av = annotation.parameter < 0
+                                                   ? v.visitAnnotation(annotationClassName)
+                                                   : v.visitParameterAnnotation(annotation.parameter, annotationClassName);
+                    replayArguments(av, annotation.arguments);
+                }
+                v.visitEnd();
+            }
+            else {
+                AnnotationVisitor v = visitor.visitField(name, member.desc);
+                if (v == null) continue;
+
+                for (RecordedAnnotation annotation : member.annotations) {
+                    replayArguments(v.visitAnnotation(annotation.getClassName()), annotation.arguments);
+                }
+                v.visitEnd();
+            }
+        }
+    }
+
+    private static void replayArguments(@Nullable AnnotationArgumentVisitor visitor, @NotNull List<RecordedArgument> arguments) {
+        if (visitor == null) return;
+
+        for (RecordedArgument argument : arguments) {
+            switch (argument.kind) {
+                case VALUE:
+                    visitor.visit(argument.name == null ? null : Name.identifier(argument.name), argument.value);
+                    break;
+                case ENUM:
+                    visitor.visitEnum(Name.identifier(argument.name), classNameFromAsmDesc(argument.enumDesc),
+                                      Name.identifier((String) argument.value));
+                    break;
+                case ARRAY:
+                    //noinspection unchecked
+                    replayArguments(visitor.visitArray(Name.guess(argument.name)), (List<RecordedArgument>) argument.value);
+                    break;
+            }
+        }
+        visitor.visitEnd();
+    }
+
+    @NotNull
+    private static JvmClassName classNameFromAsmDesc(@NotNull String desc) {
+        assert desc.startsWith("L") && desc.endsWith(";") : "Not a JVM descriptor: " + desc;
+        return JvmClassName.byInternalName(desc.substring(1, desc.length() - 1));
+    }
+
+    @NotNull
+    private static <T> List<T> compact(@NotNull List<T> list) {
+        if (list.isEmpty()) return Collections.emptyList();
+        if (list.size() == 1) return Collections.singletonList(list.get(0));
+        if (list instanceof ArrayList) {
+            ((ArrayList<T>) list).trimToSize();
+        }
+        return list;
+    }
+
+    private static class RecordedMember {
+        private final String name;
+        private final String desc;
+        private final boolean isMethod;
+        private List<RecordedAnnotation> annotations = Collections.emptyList();
+
+        private RecordedMember(@NotNull String name, @NotNull String desc, boolean isMethod) {
+            this.name = name;
+            this.desc = desc;
+            this.isMethod = isMethod;
+        }
+
+        @NotNull
+        private List<RecordedAnnotation> annotations() {
+            if (annotations.isEmpty()) {
+                annotations = new ArrayList<RecordedAnnotation>(1);
+            }
+            return annotations;
+        }
+
+        private void addIfAnnotated(@NotNull List<RecordedMember> members) {
+            if (!annotations.isEmpty()) {
+                annotations = compact(annotations);
+                members.add(this);
+            }
+        }
+    }
+
+    private static class RecordedAnnotation {
+        private final String desc;
+        // Index of the annotated parameter, or -1 for annotations of the class or the member itself
+        private final int parameter;
+        private final List<RecordedArgument> arguments = new ArrayList<RecordedArgument>(1);
+
+        private RecordedAnnotation(@NotNull String desc, int parameter) {
+            this.desc = desc;
+            this.parameter = parameter;
+        }
+
+        @NotNull
+        private JvmClassName getClassName() {
+            return classNameFromAsmDesc(desc);
+        }
+    }
+
+    private enum ArgumentKind {
+        VALUE,
+        ENUM,
+        ARRAY
+    }
+
+    private static class RecordedArgument {
+        private final ArgumentKind kind;
+        private final String name;
+        // The value itself, the name of an enum entry or a list of array elements
+        private final Object value;
+        private final String enumDesc;
+
+        private RecordedArgument(@NotNull ArgumentKind kind, @Nullable String name, @Nullable Object value, @Nullable String enumDesc) {
+            this.kind = kind;
+            this.name = name;
+            this.value = value;
+            this.enumDesc = enumDesc;
+        }
+    }
+
+    private static class ArgumentRecorder extends org.jetbrains.asm4.AnnotationVisitor {
+        private final List<RecordedArgument> arguments;
+
+        private ArgumentRecorder(@NotNull List<RecordedArgument> arguments) {
+            super(ASM4);
+            this.arguments = arguments;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            arguments.add(new RecordedArgument(ArgumentKind.VALUE, name, value, null));
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            arguments.add(new RecordedArgument(ArgumentKind.ENUM, name, value, desc));
+        }
+
+        @Override
+        public org.jetbrains.asm4.AnnotationVisitor visitArray(String name) {
+            List<RecordedArgument> elements = new ArrayList<RecordedArgument>();
+            arguments.add(new RecordedArgument(ArgumentKind.ARRAY, name, elements, null));
+            return new ArgumentRecorder(elements);
+        }
+    }
+}
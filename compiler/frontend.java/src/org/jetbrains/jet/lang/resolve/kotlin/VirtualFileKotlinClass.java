@@ -18,23 +18,18 @@ package org.jetbrains.jet.lang.resolve.kotlin;
 
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
-import org.jetbrains.asm4.ClassReader;
-import org.jetbrains.asm4.ClassVisitor;
-import org.jetbrains.asm4.FieldVisitor;
-import org.jetbrains.asm4.MethodVisitor;
 import org.jetbrains.jet.lang.resolve.java.JvmClassName;
-import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.utils.ExceptionUtils;
 
 import java.io.IOException;
 
-import static org.jetbrains.asm4.ClassReader.*;
-import static org.jetbrains.asm4.Opcodes.ASM4;
-
+/**
+ * The class file is read once, see {@link ClassFileSummary}. Members without annotations are not visited
+ * by {@link #loadMemberAnnotations}.
+ */
 public class VirtualFileKotlinClass implements KotlinJvmBinaryClass {
     private final VirtualFile file;
-    private JvmClassName className;
+    private ClassFileSummary summary;
 
     public VirtualFileKotlinClass(@NotNull VirtualFile file) {
         this.file = file;
@@ -46,133 +41,32 @@ public class VirtualFileKotlinClass implements KotlinJvmBinaryClass {
     }
 
     @NotNull
-    @Override
-    public JvmClassName getClassName() {
-        if (className == null) {
+    private ClassFileSummary getSummary() {
+        if (summary == null) {
             try {
-                new ClassReader(file.contentsToByteArray()).accept(new ClassVisitor(ASM4) {
-                    @Override
-                    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-                        className = JvmClassName.byInternalName(name);
-                    }
-                }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+                summary = ClassFileSummary.get(file);
             }
             catch (IOException e) {
                 throw ExceptionUtils.rethrow(e);
             }
         }
-
-        return className;
-    }
-
-    @Override
-    public void loadClassAnnotations(@NotNull final AnnotationVisitor annotationVisitor) {
-        try {
-            new ClassReader(file.contentsToByteArray()).accept(new ClassVisitor(ASM4) {
-                @Override
-                public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                    return convertAnnotationVisitor(annotationVisitor, desc);
-                }
-
-                @Override
-                public void visitEnd() {
-                    annotationVisitor.visitEnd();
-                }
-            }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
-        }
-        catch (IOException e) {
-            throw ExceptionUtils.rethrow(e);
-        }
-    }
-
-    @Nullable
-    private static org.jetbrains.asm4.AnnotationVisitor convertAnnotationVisitor(@NotNull AnnotationVisitor visitor, @NotNull String desc) {
-        AnnotationArgumentVisitor v = visitor.visitAnnotation(classNameFromAsmDesc(desc));
-        return v == null ? null : convertAnnotationVisitor(v);
+        return summary;
     }
 
     @NotNull
-    private static org.jetbrains.asm4.AnnotationVisitor convertAnnotationVisitor(@NotNull final AnnotationArgumentVisitor v) {
-        return new org.jetbrains.asm4.AnnotationVisitor(ASM4) {
-            @Override
-            public void visit(String name, Object value) {
-                v.visit(name == null ? null : Name.identifier(name), value);
-            }
-
-            @Override
-            public org.jetbrains.asm4.AnnotationVisitor visitArray(String name) {
-                AnnotationArgumentVisitor av = v.visitArray(Name.guess(name));
-                return av == null ? null : convertAnnotationVisitor(av);
-            }
-
-            @Override
-            public void visitEnum(String name, String desc, String value) {
-                v.visitEnum(Name.identifier(name), classNameFromAsmDesc(desc), Name.identifier(value));
-            }
-
-            @Override
-            public void visitEnd() {
-                v.visitEnd();
-            }
-        };
+    @Override
+    public JvmClassName getClassName() {
+        return getSummary().getClassName();
     }
 
     @Override
-    public void loadMemberAnnotations(@NotNull final MemberVisitor memberVisitor) {
-        try {
-            new ClassReader(file.contentsToByteArray()).accept(new ClassVisitor(ASM4) {
-                @Override
-                public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-                    final AnnotationVisitor v = memberVisitor.visitField(Name.guess(name), desc);
-                    if (v == null) return null;
-
-                    return new FieldVisitor(ASM4) {
-                        @Override
-                        public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                            return convertAnnotationVisitor(v, desc);
-                        }
-
-                        @Override
-                        public void visitEnd() {
-                            v.visitEnd();
-                        }
-                    };
-                }
-
-                @Override
-                public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-                    final MethodAnnotationVisitor v = memberVisitor.visitMethod(Name.guess(name), desc);
-                    if (v == null) return null;
-
-                    return new MethodVisitor(ASM4) {
-                        @Override
-                        public org.jetbrains.asm4.AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                            return convertAnnotationVisitor(v, desc);
-                        }
-
-                        @Override
-                        public org.jetbrains.asm4.AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
-                            AnnotationArgumentVisitor av = v.visitParameterAnnotation(parameter, classNameFromAsmDesc(desc));
-                            return av == null ? null : convertAnnotationVisitor(av);
-                        }
-
-                        @Override
-                        public void visitEnd() {
-                            v.visitEnd();
-                        }
-                    };
-                }
-            }, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
-        }
-        catch (IOException e) {
-            throw ExceptionUtils.rethrow(e);
-        }
+    public void loadClassAnnotations(@NotNull AnnotationVisitor annotationVisitor) {
+        getSummary().loadClassAnnotations(annotationVisitor);
     }
 
-    @NotNull
-    private static JvmClassName classNameFromAsmDesc(@NotNull String desc) {
-        assert desc.startsWith("L") && desc.endsWith(";") : "Not a JVM descriptor: " + desc;
-        return JvmClassName.byInternalName(desc.substring(1, desc.length() - 1));
+    @Override
+    public void loadMemberAnnotations(@NotNull MemberVisitor memberVisitor) {
+        getSummary().loadMemberAnnotations(memberVisitor);
     }
 
     @Override
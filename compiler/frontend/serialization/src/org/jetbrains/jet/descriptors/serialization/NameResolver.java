@@ -16,6 +16,8 @@
 
 package org.jetbrains.jet.descriptors.serialization;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.resolve.name.FqName;
@@ -24,16 +26,30 @@ import org.jetbrains.jet.lang.resolve.name.Name;
 
 import static org.jetbrains.jet.descriptors.serialization.ProtoBuf.QualifiedNameTable.QualifiedName;
 
+/**
+ * Names are computed once per index and shared between name resolvers of different classes by an interner.
+ * Memo tables are filled without synchronization: names are immutable, so a race only results in computing a name twice.
+ */
 public class NameResolver {
+    private static final Interner<Name> NAME_INTERNER = Interners.newWeakInterner();
+    private static final Interner<FqName> FQ_NAME_INTERNER = Interners.newWeakInterner();
+
     private final ProtoBuf.SimpleNameTable simpleNames;
     private final ProtoBuf.QualifiedNameTable qualifiedNames;
 
+    private final Name[] names;
+    private final FqName[] fqNames;
+    private final ClassId[] classIds;
+
     public NameResolver(
             @NotNull ProtoBuf.SimpleNameTable simpleNames,
             @NotNull ProtoBuf.QualifiedNameTable qualifiedNames
     ) {
         this.simpleNames = simpleNames;
         this.qualifiedNames = qualifiedNames;
+        this.names = new Name[simpleNames.getNameCount()];
+        this.fqNames = new FqName[qualifiedNames.getQualifiedNameCount()];
+        this.classIds = new ClassId[qualifiedNames.getQualifiedNameCount()];
     }
 
     @NotNull
@@ -48,12 +64,26 @@ public class NameResolver {
 
     @NotNull
     public Name getName(int index) {
-        String name = simpleNames.getName(index);
-        return Name.guess(name);
+        Name name = names[index];
+        if (name == null) {
+            name = NAME_INTERNER.intern(Name.guess(simpleNames.getName(index)));
+            names[index] = name;
+        }
+        return name;
     }
 
     @NotNull
     public ClassId getClassId(int index) {
+        ClassId classId = classIds[index];
+        if (classId == null) {
+            classId = computeClassId(index);
+            classIds[index] = classId;
+        }
+        return classId;
+    }
+
+    @NotNull
+    private ClassId computeClassId(int index) {
         QualifiedName fqNameProto = qualifiedNames.getQualifiedName(index);
         assert fqNameProto.getKind() == ProtoBuf.QualifiedNameTable.QualifiedName.Kind.CLASS : "Not a class fqName: " + fqNameProto.getKind();
 
@@ -66,7 +96,7 @@ public class NameResolver {
             QualifiedName mustBeNull = renderFqName(sb, packageFqNameProto, QualifiedName.Kind.PACKAGE);
             assert mustBeNull == null : "Prefix of an fqName must be all of kind PACKAGE";
 
-            packageFqName = new FqName(sb.toString());
+            packageFqName = FQ_NAME_INTERNER.intern(new FqName(sb.toString()));
         }
         else {
             packageFqName = FqName.ROOT;
@@ -94,11 +124,16 @@ public class NameResolver {
 
     @NotNull
     public FqName getFqName(int index) {
-        QualifiedName qualifiedName = qualifiedNames.getQualifiedName(index);
-        Name shortName = getName(qualifiedName.getShortName());
-        if (!qualifiedName.hasParentQualifiedName()) {
-            return FqName.topLevel(shortName);
+        FqName fqName = fqNames[index];
+        if (fqName == null) {
+            QualifiedName qualifiedName = qualifiedNames.getQualifiedName(index);
+            Name shortName = getName(qualifiedName.getShortName());
+            fqName = qualifiedName.hasParentQualifiedName()
+                     ? getFqName(qualifiedName.getParentQualifiedName()).child(shortName)
+                     : FqName.topLevel(shortName);
+            fqName = FQ_NAME_INTERNER.intern(fqName);
+            fqNames[index] = fqName;
         }
-        return getFqName(qualifiedName.getParentQualifiedName()).child(shortName);
+        return fqName;
     }
 }
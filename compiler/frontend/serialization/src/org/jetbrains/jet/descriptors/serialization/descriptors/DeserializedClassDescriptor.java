@@ -32,6 +32,7 @@ import org.jetbrains.jet.lang.resolve.scopes.JetScope;
 import org.jetbrains.jet.lang.types.ErrorUtils;
 import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.TypeConstructor;
+import org.jetbrains.jet.lang.types.checker.SupertypeCache;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
 import org.jetbrains.jet.storage.MemoizedFunctionToNullable;
 import org.jetbrains.jet.storage.NotNullLazyValue;
@@ -300,8 +301,9 @@ public class DeserializedClassDescriptor extends AbstractClassDescriptor impleme
         return "deserialized class " + getName().toString();
     }
 
-    private class DeserializedClassTypeConstructor implements TypeConstructor {
+    private class DeserializedClassTypeConstructor implements TypeConstructor, SupertypeCache.Owner {
         private final Collection<JetType> supertypes = computeSuperTypes();
+        private final SupertypeCache supertypeCache = new SupertypeCache();
         private final List<TypeParameterDescriptor> parameters;
 
         public DeserializedClassTypeConstructor(@NotNull List<TypeParameterDescriptor> typeParameters) {
@@ -330,6 +332,12 @@ public class DeserializedClassDescriptor extends AbstractClassDescriptor impleme
             return true;
         }
 
+        @NotNull
+        @Override
+        public SupertypeCache getSupertypeCache() {
+            return supertypeCache;
+        }
+
         @Nullable
         @Override
         public ClassifierDescriptor getDeclarationDescriptor() {
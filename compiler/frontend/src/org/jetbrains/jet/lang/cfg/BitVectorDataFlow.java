@@ -0,0 +1,309 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.cfg;
+
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.TraversalOrder;
+import org.jetbrains.jet.lang.cfg.pseudocode.Instruction;
+import org.jetbrains.jet.lang.cfg.pseudocode.LocalDeclarationInstruction;
+import org.jetbrains.jet.lang.cfg.pseudocode.Pseudocode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.*;
+
+/**
+ * A worklist data-flow solver over dense instruction indices.
+ *
+ * Data at an instruction edge is a bit vector: an array of longs, a shorter array is the same as a longer one padded with zeros.
+ * Data of the incoming edges is merged by a bitwise or, so analyses should encode their lattices in such a way that a join is a union of bits.
+ * Bit vectors are never modified after they are computed, so they are shared between instructions which don't change the data.
+ *
+ * Instructions are visited in the order of the traversal, as in a round-robin iteration, but an instruction is visited again
+ * only when data of one of its predecessors has changed.
+ */
+public class BitVectorDataFlow {
+    private static final long[] EMPTY = new long[0];
+
+    private BitVectorDataFlow() {
+    }
+
+    public interface Transfer {
+        /**
+         * @return data at the exit of the instruction, {@code enterData} itself if the instruction doesn't change it.
+         * {@code enterData} must not be modified.
+         */
+        @NotNull
+        long[] execute(@NotNull Instruction instruction, @NotNull long[] enterData);
+    }
+
+    @NotNull
+    public static Result analyze(
+            @NotNull Pseudocode pseudocode,
+            @NotNull TraversalOrder traversalOrder,
+            @NotNull LookInsideStrategy lookInside,
+            @NotNull long[] enterDataForStartInstruction,
+            @NotNull Transfer transfer
+    ) {
+        Graph graph = new Graph(traversalOrder, lookInside);
+        graph.addSubgraph(pseudocode, Collections.<Instruction>emptyList(), false);
+        Instruction startInstruction = getStartInstruction(pseudocode, traversalOrder);
+        if (graph.indexOf(startInstruction) < 0) {
+            graph.add(startInstruction, null, null);
+        }
+        graph.resolvePredecessors();
+
+        int size = graph.instructions.size();
+        long[][] enterData = new long[size][];
+        long[][] exitData = new long[size][];
+        Arrays.fill(enterData, EMPTY);
+        Arrays.fill(exitData, EMPTY);
+
+        BitSet pending = new BitSet(size);
+        pending.set(0, size);
+        for (int i = 0; i < size; i++) {
+            if (graph.isFixed[i]) {
+                enterData[i] = enterDataForStartInstruction;
+                exitData[i] = enterDataForStartInstruction;
+                pending.clear(i);
+            }
+        }
+
+        int index = pending.nextSetBit(0);
+        while (index >= 0) {
+            pending.clear(index);
+
+            long[] newEnterData;
+            long[] newExitData;
+            int copyFrom = graph.copyFrom[index];
+            if (copyFrom >= 0) {
+                newEnterData = enterData[copyFrom];
+                newExitData = exitData[copyFrom];
+            }
+            else {
+                newEnterData = EMPTY;
+                for (int predecessor : graph.predecessors[index]) {
+                    newEnterData = union(newEnterData, exitData[predecessor]);
+                }
+                newExitData = transfer.execute(graph.instructions.get(index), newEnterData);
+            }
+
+            if (!equal(newEnterData, enterData[index]) || !equal(newExitData, exitData[index])) {
+                enterData[index] = newEnterData;
+                exitData[index] = newExitData;
+                for (int dependent : graph.dependents[index]) {
+                    pending.set(dependent);
+                }
+            }
+
+            index = pending.nextSetBit(index + 1);
+            if (index < 0) {
+                index = pending.nextSetBit(0);
+            }
+        }
+
+        return new Result(graph.indices, enterData, exitData);
+    }
+
+    public static class Result {
+        private final TObjectIntHashMap<Instruction> indices;
+        private final long[][] enterData;
+        private final long[][] exitData;
+
+        private Result(@NotNull TObjectIntHashMap<Instruction> indices, @NotNull long[][] enterData, @NotNull long[][] exitData) {
+            this.indices = indices;
+            this.enterData = enterData;
+            this.exitData = exitData;
+        }
+
+        /**
+         * @return null if the instruction was not analyzed
+         */
+        @Nullable
+        public long[] getEnterData(@NotNull Instruction instruction) {
+            return indices.containsKey(instruction) ? enterData[indices.get(instruction)] : null;
+        }
+
+        @Nullable
+        public long[] getExitData(@NotNull Instruction instruction) {
+            return indices.containsKey(instruction) ? exitData[indices.get(instruction)] : null;
+        }
+    }
+
+    // Instructions are numbered in the order PseudocodeTraverser visits them: a body of a local declaration goes right before the declaration
+    private static class Graph {
+        private final TraversalOrder traversalOrder;
+        private final LookInsideStrategy lookInside;
+
+        private final TObjectIntHashMap<Instruction> indices = new TObjectIntHashMap<Instruction>();
+        private final List<Instruction> instructions = new ArrayList<Instruction>();
+        private final List<Collection<Instruction>> extraPredecessors = new ArrayList<Collection<Instruction>>();
+        private final List<Instruction> copiedInstructions = new ArrayList<Instruction>();
+
+        private int[][] predecessors;
+        private int[][] dependents;
+        private int[] copyFrom;
+        private boolean[] isFixed;
+
+        private Graph(@NotNull TraversalOrder traversalOrder, @NotNull LookInsideStrategy lookInside) {
+            this.traversalOrder = traversalOrder;
+            this.lookInside = lookInside;
+        }
+
+        private void addSubgraph(
+                @NotNull Pseudocode pseudocode,
+                @NotNull Collection<Instruction> previousSubgraphInstructions,
+                boolean isLocal
+        ) {
+            Instruction startInstruction = getStartInstruction(pseudocode, traversalOrder);
+            for (Instruction instruction : getInstructions(pseudocode, traversalOrder)) {
+                if (shouldLookInside(instruction, lookInside)) {
+                    Pseudocode body = ((LocalDeclarationInstruction) instruction).getBody();
+                    addSubgraph(body, getPreviousInstructions(instruction, traversalOrder), true);
+                    // The declaration itself gets the data of the last instruction of its body
+                    add(instruction, Collections.<Instruction>emptyList(), getLastInstruction(body, traversalOrder));
+                }
+                else if (!isLocal && isStartInstruction(instruction, traversalOrder)) {
+                    add(instruction, null, null);
+                }
+                else {
+                    add(instruction, instruction == startInstruction ? previousSubgraphInstructions : Collections.<Instruction>emptyList(), null);
+                }
+            }
+        }
+
+        // Null extra predecessors mark an instruction with fixed data
+        private void add(@NotNull Instruction instruction, @Nullable Collection<Instruction> extra, @Nullable Instruction copied) {
+            indices.put(instruction, instructions.size());
+            instructions.add(instruction);
+            extraPredecessors.add(extra);
+            copiedInstructions.add(copied);
+        }
+
+        private void resolvePredecessors() {
+            int size = instructions.size();
+            predecessors = new int[size][];
+            copyFrom = new int[size];
+            isFixed = new boolean[size];
+            int[] dependentCounts = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                Collection<Instruction> extra = extraPredecessors.get(i);
+                Instruction copied = copiedInstructions.get(i);
+                isFixed[i] = extra == null;
+                copyFrom[i] = copied != null ? indexOf(copied) : -1;
+
+                if (isFixed[i] || copied != null) {
+                    predecessors[i] = new int[0];
+                    if (copyFrom[i] >= 0) {
+                        dependentCounts[copyFrom[i]]++;
+                    }
+                    continue;
+                }
+
+                Collection<Instruction> previousInstructions = getPreviousInstructions(instructions.get(i), traversalOrder);
+                int[] indicesOfPrevious = new int[previousInstructions.size() + extra.size()];
+                int count = 0;
+                for (Instruction previous : previousInstructions) {
+                    count = addIndex(previous, indicesOfPrevious, count);
+                }
+                for (Instruction previous : extra) {
+                    count = addIndex(previous, indicesOfPrevious, count);
+                }
+                predecessors[i] = count == indicesOfPrevious.length ? indicesOfPrevious : Arrays.copyOf(indicesOfPrevious, count);
+                for (int predecessor : predecessors[i]) {
+                    dependentCounts[predecessor]++;
+                }
+            }
+
+            dependents = new int[size][];
+            for (int i = 0; i < size; i++) {
+                dependents[i] = new int[dependentCounts[i]];
+                dependentCounts[i] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                if (copyFrom[i] >= 0) {
+                    dependents[copyFrom[i]][dependentCounts[copyFrom[i]]++] = i;
+                }
+                for (int predecessor : predecessors[i]) {
+                    dependents[predecessor][dependentCounts[predecessor]++] = i;
+                }
+            }
+        }
+
+        private int indexOf(@NotNull Instruction instruction) {
+            return indices.containsKey(instruction) ? indices.get(instruction) : -1;
+        }
+
+        // Instructions which are not analyzed (dead ones) don't contribute any data
+        private int addIndex(@NotNull Instruction instruction, @NotNull int[] result, int count) {
+            int index = indexOf(instruction);
+            if (index >= 0) {
+                result[count++] = index;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * @return a copy of the data with the bits in {@code mask} at the given word replaced with {@code bits},
+     * or the data itself if nothing changes
+     */
+    @NotNull
+    public static long[] replace(@NotNull long[] data, int word, long mask, long bits) {
+        long oldWord = word < data.length ? data[word] : 0;
+        long newWord = (oldWord & ~mask) | (bits & mask);
+        if (newWord == oldWord) return data;
+
+        long[] result = Arrays.copyOf(data, Math.max(data.length, word + 1));
+        result[word] = newWord;
+        return result;
+    }
+
+    @NotNull
+    private static long[] union(@NotNull long[] a, @NotNull long[] b) {
+        if (a == b || contains(a, b)) return a;
+        if (contains(b, a)) return b;
+
+        long[] result = Arrays.copyOf(a.length >= b.length ? a : b, Math.max(a.length, b.length));
+        long[] other = a.length >= b.length ? b : a;
+        for (int i = 0; i < other.length; i++) {
+            result[i] |= other[i];
+        }
+        return result;
+    }
+
+    private static boolean contains(@NotNull long[] a, @NotNull long[] b) {
+        for (int i = 0; i < b.length; i++) {
+            long wordOfA = i < a.length ? a[i] : 0;
+            if ((b[i] & ~wordOfA) != 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean equal(@NotNull long[] a, @NotNull long[] b) {
+        return a == b || (contains(a, b) && contains(b, a));
+    }
+}
@@ -27,6 +27,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.cfg.pseudocode.*;
 import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.*;
 import org.jetbrains.jet.lang.cfg.PseudocodeVariablesData.VariableInitState;
+import org.jetbrains.jet.lang.cfg.PseudocodeVariablesData.VariableStates;
 import org.jetbrains.jet.lang.cfg.PseudocodeVariablesData.VariableUseState;
 import org.jetbrains.jet.lang.descriptors.*;
 import org.jetbrains.jet.lang.diagnostics.DiagnosticFactory;
@@ -183,18 +184,15 @@ public class JetFlowInformationProvider {
         final Collection<VariableDescriptor> varWithValReassignErrorGenerated = Sets.newHashSet();
         final boolean processClassOrObject = subroutine instanceof JetClassOrObject;
 
-        Map<Instruction, Edges<Map<VariableDescriptor,VariableInitState>>> initializers = pseudocodeVariablesData.getVariableInitializers();
+        final VariableStates<VariableInitState> initializers = pseudocodeVariablesData.getVariableInitializers();
         final Set<VariableDescriptor> declaredVariables = pseudocodeVariablesData.getDeclaredVariables(pseudocode, true);
 
         final Map<Instruction, DiagnosticFactory> reportedDiagnosticMap = Maps.newHashMap();
 
-        PseudocodeTraverser.traverse(pseudocode, FORWARD, initializers, new InstructionDataAnalyzeStrategy<Map<VariableDescriptor, PseudocodeVariablesData.VariableInitState>>() {
+        PseudocodeTraverser.traverse(pseudocode, FORWARD, new InstructionAnalyzeStrategy() {
             @Override
-            public void execute(@NotNull Instruction instruction,
-                    @Nullable Map<VariableDescriptor, VariableInitState> in,
-                    @Nullable Map<VariableDescriptor, VariableInitState> out) {
-                assert in != null && out != null;
-                VariableInitContext ctxt = new VariableInitContext(instruction, reportedDiagnosticMap, in, out);
+            public void execute(@NotNull Instruction instruction) {
+                VariableInitContext ctxt = new VariableInitContext(instruction, reportedDiagnosticMap, initializers);
                 if (ctxt.variableDescriptor == null) return;
                 if (instruction instanceof ReadValueInstruction) {
                     JetElement element = ((ReadValueInstruction) instruction).getElement();
@@ -223,7 +221,7 @@ public class JetFlowInformationProvider {
 
     public void recordInitializedVariables() {
         Pseudocode pseudocode = pseudocodeVariablesData.getPseudocode();
-        Map<Instruction, Edges<Map<VariableDescriptor,VariableInitState>>> initializers = pseudocodeVariablesData.getVariableInitializers();
+        VariableStates<VariableInitState> initializers = pseudocodeVariablesData.getVariableInitializers();
         recordInitializedVariables(pseudocode, initializers);
         for (LocalDeclarationInstruction instruction : pseudocode.getLocalDeclarations()) {
             recordInitializedVariables(instruction.getBody(), initializers);
@@ -418,12 +416,11 @@ public class JetFlowInformationProvider {
         return false;
     }
 
-    private void recordInitializedVariables(@NotNull Pseudocode pseudocode, @NotNull Map<Instruction, Edges<Map<VariableDescriptor,PseudocodeVariablesData.VariableInitState>>> initializersMap) {
-        Edges<Map<VariableDescriptor, VariableInitState>> initializers = initializersMap.get(pseudocode.getExitInstruction());
+    private void recordInitializedVariables(@NotNull Pseudocode pseudocode, @NotNull VariableStates<VariableInitState> initializers) {
         Set<VariableDescriptor> declaredVariables = pseudocodeVariablesData.getDeclaredVariables(pseudocode, false);
         for (VariableDescriptor variable : declaredVariables) {
             if (variable instanceof PropertyDescriptor) {
-                PseudocodeVariablesData.VariableInitState variableInitState = initializers.in.get(variable);
+                VariableInitState variableInitState = initializers.getEnterState(pseudocode.getExitInstruction(), variable);
                 if (variableInitState == null) return;
                 trace.record(BindingContext.IS_INITIALIZED, (PropertyDescriptor) variable, variableInitState.isInitialized);
             }
@@ -434,23 +431,18 @@ public class JetFlowInformationProvider {
 //  "Unused variable" & "unused value" analyses
 
     public void markUnusedVariables() {
-        Map<Instruction, Edges<Map<VariableDescriptor, VariableUseState>>> variableStatusData = pseudocodeVariablesData.getVariableUseStatusData();
+        final VariableStates<VariableUseState> variableStatusData = pseudocodeVariablesData.getVariableUseStatusData();
         final Map<Instruction, DiagnosticFactory> reportedDiagnosticMap = Maps.newHashMap();
-        InstructionDataAnalyzeStrategy<Map<VariableDescriptor, VariableUseState>> variableStatusAnalyzeStrategy =
-                new InstructionDataAnalyzeStrategy<Map<VariableDescriptor, PseudocodeVariablesData.VariableUseState>>() {
+        InstructionAnalyzeStrategy variableStatusAnalyzeStrategy = new InstructionAnalyzeStrategy() {
             @Override
-            public void execute(@NotNull Instruction instruction,
-                    @Nullable Map<VariableDescriptor, VariableUseState> in,
-                    @Nullable Map<VariableDescriptor, VariableUseState> out) {
-
-                assert in != null && out != null;
-                VariableContext ctxt = new VariableUseContext(instruction, reportedDiagnosticMap, in, out);
+            public void execute(@NotNull Instruction instruction) {
+                VariableContext ctxt = new VariableContext(instruction, reportedDiagnosticMap);
                 Set<VariableDescriptor> declaredVariables = pseudocodeVariablesData.getDeclaredVariables(instruction.getOwner(), false);
                 VariableDescriptor variableDescriptor = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, false,
                                                                       trace.getBindingContext());
                 if (variableDescriptor == null || !declaredVariables.contains(variableDescriptor) ||
                     !DescriptorUtils.isLocal(variableDescriptor.getContainingDeclaration(), variableDescriptor)) return;
-                PseudocodeVariablesData.VariableUseState variableUseState = in.get(variableDescriptor);
+                VariableUseState variableUseState = variableStatusData.getEnterState(instruction, variableDescriptor);
                 if (instruction instanceof WriteValueInstruction) {
                     if (trace.get(CAPTURED_IN_CLOSURE, variableDescriptor) != null) return;
                     JetElement element = ((WriteValueInstruction) instruction).getElement();
@@ -510,7 +502,7 @@ public class JetFlowInformationProvider {
                 }
             }
         };
-        PseudocodeTraverser.traverse(pseudocode, BACKWARD, variableStatusData, variableStatusAnalyzeStrategy);
+        PseudocodeTraverser.traverse(pseudocode, BACKWARD, variableStatusAnalyzeStrategy);
     }
 
 ////////////////////////////////////////////////////////////////////////////////
@@ -623,29 +615,11 @@ public class JetFlowInformationProvider {
         private VariableInitContext(
                 @NotNull Instruction instruction,
                 @NotNull Map<Instruction, DiagnosticFactory> map,
-                @NotNull Map<VariableDescriptor, VariableInitState> in,
-                @NotNull Map<VariableDescriptor, VariableInitState> out
-        ) {
-            super(instruction, map);
-            enterInitState = variableDescriptor != null ? in.get(variableDescriptor) : null;
-            exitInitState = variableDescriptor != null ? out.get(variableDescriptor) : null;
-        }
-    }
-
-    private class VariableUseContext extends VariableContext {
-        final VariableUseState enterUseState;
-        final VariableUseState exitUseState;
-
-
-        private VariableUseContext(
-                @NotNull Instruction instruction,
-                @NotNull Map<Instruction, DiagnosticFactory> map,
-                @NotNull Map<VariableDescriptor, VariableUseState> in,
-                @NotNull Map<VariableDescriptor, VariableUseState> out
+                @NotNull VariableStates<VariableInitState> initializers
         ) {
             super(instruction, map);
-            enterUseState = variableDescriptor != null ? in.get(variableDescriptor) : null;
-            exitUseState = variableDescriptor != null ? out.get(variableDescriptor) : null;
+            enterInitState = variableDescriptor != null ? initializers.getEnterState(instruction, variableDescriptor) : null;
+            exitInitState = variableDescriptor != null ? initializers.getExitState(instruction, variableDescriptor) : null;
         }
     }
 }
@@ -28,7 +28,6 @@ import org.jetbrains.jet.lang.psi.JetDeclaration;
 import org.jetbrains.jet.lang.psi.JetProperty;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
@@ -45,8 +44,6 @@ public class PseudocodeVariablesData {
     private final Map<Pseudocode, Set<VariableDescriptor>> declaredVariablesForDeclaration = Maps.newHashMap();
     private final Map<Pseudocode, Set<VariableDescriptor>> usedVariablesForDeclaration = Maps.newHashMap();
 
-    private Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> variableInitializers;
-
     public PseudocodeVariablesData(@NotNull Pseudocode pseudocode, @NotNull BindingContext bindingContext) {
         this.pseudocode = pseudocode;
         this.bindingContext = bindingContext;
@@ -119,189 +116,222 @@ public class PseudocodeVariablesData {
         return Collections.unmodifiableSet(declaredVariables);
     }
 
-    // variable initializers
+    // variable states
 
-    @NotNull
-    public Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> getVariableInitializers() {
-        if (variableInitializers == null) {
-            variableInitializers = getVariableInitializers(pseudocode);
+    // Every variable takes BITS_PER_VARIABLE bits of a bit vector, a state of a variable which is not in the vector is unknown
+    private static final int BITS_PER_VARIABLE = 4;
+    private static final int VARIABLES_PER_WORD = 64 / BITS_PER_VARIABLE;
+    private static final long VARIABLE_MASK = (1L << BITS_PER_VARIABLE) - 1;
+    private static final long KNOWN = 1;
+
+    private final Map<VariableDescriptor, Integer> variableIndices = Maps.newHashMap();
+
+    private int getVariableIndex(@NotNull VariableDescriptor variable) {
+        Integer index = variableIndices.get(variable);
+        if (index == null) {
+            index = variableIndices.size();
+            variableIndices.put(variable, index);
         }
+        return index;
+    }
 
-        return variableInitializers;
+    private static long getVariableBits(@NotNull long[] data, int variableIndex) {
+        int word = variableIndex / VARIABLES_PER_WORD;
+        if (word >= data.length) return 0;
+        return (data[word] >>> (variableIndex % VARIABLES_PER_WORD * BITS_PER_VARIABLE)) & VARIABLE_MASK;
     }
 
     @NotNull
-    private Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> getVariableInitializers(@NotNull Pseudocode pseudocode) {
-
-        Set<VariableDescriptor> usedVariables = getUsedVariables(pseudocode);
-        Set<VariableDescriptor> declaredVariables = getDeclaredVariables(pseudocode, false);
-        Map<VariableDescriptor, VariableInitState> initialMap = Collections.emptyMap();
-        Map<VariableDescriptor, VariableInitState> initialMapForStartInstruction = prepareInitializersMapForStartInstruction(
-                usedVariables, declaredVariables);
+    private static long[] setVariableBits(@NotNull long[] data, int variableIndex, long bits) {
+        int shift = variableIndex % VARIABLES_PER_WORD * BITS_PER_VARIABLE;
+        return BitVectorDataFlow.replace(data, variableIndex / VARIABLES_PER_WORD, VARIABLE_MASK << shift, bits << shift);
+    }
 
-        Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> variableInitializersMap = PseudocodeTraverser.collectData(
-                pseudocode, FORWARD, SKIP_LOCAL_DECLARATIONS,
-                initialMap, initialMapForStartInstruction, new PseudocodeTraverser.InstructionDataMergeStrategy<Map<VariableDescriptor, VariableInitState>>() {
-            @Override
-            public Edges<Map<VariableDescriptor, VariableInitState>> execute(
-                    @NotNull Instruction instruction, @NotNull Collection<Map<VariableDescriptor, VariableInitState>> incomingEdgesData) {
+    /**
+     * States of variables before and after instructions, as computed by a data-flow analysis
+     */
+    public abstract class VariableStates<S> {
+        private final Map<Pseudocode, BitVectorDataFlow.Result> results;
 
-                Map<VariableDescriptor, VariableInitState> enterInstructionData = mergeIncomingEdgesDataForInitializers(incomingEdgesData);
-                Map<VariableDescriptor, VariableInitState> exitInstructionData =
-                        addVariableInitStateFromCurrentInstructionIfAny(instruction, enterInstructionData);
-                return Edges.create(enterInstructionData, exitInstructionData);
-            }
-        });
+        private VariableStates(@NotNull Map<Pseudocode, BitVectorDataFlow.Result> results) {
+            this.results = results;
+        }
 
+        @Nullable
+        public S getEnterState(@NotNull Instruction instruction, @NotNull VariableDescriptor variable) {
+            BitVectorDataFlow.Result result = results.get(instruction.getOwner());
+            return result != null ? getState(result.getEnterData(instruction), variable) : null;
+        }
 
-        for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
-            Pseudocode localPseudocode = localDeclarationInstruction.getBody();
-            Map<Instruction, Edges<Map<VariableDescriptor, VariableInitState>>> initializersForLocalDeclaration = getVariableInitializers(localPseudocode);
+        @Nullable
+        public S getExitState(@NotNull Instruction instruction, @NotNull VariableDescriptor variable) {
+            BitVectorDataFlow.Result result = results.get(instruction.getOwner());
+            return result != null ? getState(result.getExitData(instruction), variable) : null;
+        }
 
-            for (Instruction instruction : initializersForLocalDeclaration.keySet()) {
-                //todo
-                if (!variableInitializersMap.containsKey(instruction)) {
-                    variableInitializersMap.put(instruction, initializersForLocalDeclaration.get(instruction));
-                }
-            }
-            variableInitializersMap.putAll(initializersForLocalDeclaration);
+        @Nullable
+        private S getState(@Nullable long[] data, @NotNull VariableDescriptor variable) {
+            Integer index = variableIndices.get(variable);
+            if (data == null || index == null) return null;
+            long bits = getVariableBits(data, index);
+            return (bits & KNOWN) != 0 ? decode(bits) : null;
         }
-        return variableInitializersMap;
+
+        @NotNull
+        protected abstract S decode(long bits);
     }
 
-    @NotNull
-    private static Map<VariableDescriptor, VariableInitState> prepareInitializersMapForStartInstruction(
-            @NotNull Collection<VariableDescriptor> usedVariables,
-            @NotNull Collection<VariableDescriptor> declaredVariables) {
+    // variable initializers
 
-        Map<VariableDescriptor, VariableInitState> initialMapForStartInstruction = Maps.newHashMap();
-        VariableInitState initializedForExternalVariable = VariableInitState.create(true);
-        VariableInitState notInitializedForDeclaredVariable = VariableInitState.create(false);
+    // Bits are set when a variable is not initialized or not declared on some of the incoming edges
+    private static final long NOT_INITIALIZED = 1 << 1;
+    private static final long NOT_DECLARED = 1 << 2;
 
-        for (VariableDescriptor variable : usedVariables) {
-            if (declaredVariables.contains(variable)) {
-                initialMapForStartInstruction.put(variable, notInitializedForDeclaredVariable);
-            }
-            else {
-                initialMapForStartInstruction.put(variable, initializedForExternalVariable);
+    private VariableStates<VariableInitState> variableInitializers;
+
+    @NotNull
+    public VariableStates<VariableInitState> getVariableInitializers() {
+        if (variableInitializers == null) {
+            Map<Pseudocode, BitVectorDataFlow.Result> results = Maps.newHashMap();
+            // Local declarations are analyzed separately, a state of a variable inside them doesn't depend on the place of the declaration
+            results.put(pseudocode, getVariableInitializers(pseudocode));
+            for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
+                Pseudocode localPseudocode = localDeclarationInstruction.getBody();
+                results.put(localPseudocode, getVariableInitializers(localPseudocode));
             }
+            variableInitializers = new VariableStates<VariableInitState>(results) {
+                @NotNull
+                @Override
+                protected VariableInitState decode(long bits) {
+                    return decodeInitState(bits);
+                }
+            };
         }
-        return initialMapForStartInstruction;
+
+        return variableInitializers;
     }
 
     @NotNull
-    private static Map<VariableDescriptor, VariableInitState> mergeIncomingEdgesDataForInitializers(
-            @NotNull Collection<Map<VariableDescriptor, VariableInitState>> incomingEdgesData) {
+    private BitVectorDataFlow.Result getVariableInitializers(@NotNull Pseudocode pseudocode) {
+        Set<VariableDescriptor> usedVariables = getUsedVariables(pseudocode);
+        Set<VariableDescriptor> declaredVariables = getDeclaredVariables(pseudocode, false);
 
-        Set<VariableDescriptor> variablesInScope = Sets.newHashSet();
-        for (Map<VariableDescriptor, VariableInitState> edgeData : incomingEdgesData) {
-            variablesInScope.addAll(edgeData.keySet());
+        long[] dataForStartInstruction = new long[0];
+        for (VariableDescriptor variable : usedVariables) {
+            // A declared variable is not initialized at the start, an external one is
+            VariableInitState initState = VariableInitState.create(!declaredVariables.contains(variable));
+            dataForStartInstruction = setVariableBits(dataForStartInstruction, getVariableIndex(variable), encodeInitState(initState));
         }
 
-        Map<VariableDescriptor, VariableInitState> enterInstructionData = Maps.newHashMap();
-        for (VariableDescriptor variable : variablesInScope) {
-            boolean isInitialized = true;
-            boolean isDeclared = true;
-            for (Map<VariableDescriptor, VariableInitState> edgeData : incomingEdgesData) {
-                VariableInitState initState = edgeData.get(variable);
-                if (initState != null) {
-                    if (!initState.isInitialized) {
-                        isInitialized = false;
-                    }
-                    if (!initState.isDeclared) {
-                        isDeclared = false;
-                    }
-                }
+        return BitVectorDataFlow.analyze(pseudocode, FORWARD, SKIP_LOCAL_DECLARATIONS, dataForStartInstruction, new BitVectorDataFlow.Transfer() {
+            @NotNull
+            @Override
+            public long[] execute(@NotNull Instruction instruction, @NotNull long[] enterData) {
+                return addVariableInitStateFromCurrentInstructionIfAny(instruction, enterData);
             }
-            enterInstructionData.put(variable, VariableInitState.create(isInitialized, isDeclared));
-        }
-        return enterInstructionData;
+        });
+    }
+
+    private static long encodeInitState(@NotNull VariableInitState initState) {
+        return KNOWN | (initState.isInitialized ? 0 : NOT_INITIALIZED) | (initState.isDeclared ? 0 : NOT_DECLARED);
     }
 
     @NotNull
-    private Map<VariableDescriptor, VariableInitState> addVariableInitStateFromCurrentInstructionIfAny(
-            @NotNull Instruction instruction, @NotNull Map<VariableDescriptor, VariableInitState> enterInstructionData) {
+    private static VariableInitState decodeInitState(long bits) {
+        return VariableInitState.create((bits & NOT_INITIALIZED) == 0, (bits & NOT_DECLARED) == 0);
+    }
 
+    @NotNull
+    private long[] addVariableInitStateFromCurrentInstructionIfAny(@NotNull Instruction instruction, @NotNull long[] enterData) {
         if (!(instruction instanceof WriteValueInstruction) && !(instruction instanceof VariableDeclarationInstruction)) {
-            return enterInstructionData;
+            return enterData;
         }
         VariableDescriptor variable = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, false, bindingContext);
         if (variable == null) {
-            return enterInstructionData;
+            return enterData;
         }
-        Map<VariableDescriptor, VariableInitState> exitInstructionData = Maps.newHashMap(enterInstructionData);
+        int index = getVariableIndex(variable);
+        long enterBits = getVariableBits(enterData, index);
+        VariableInitState enterInitState = (enterBits & KNOWN) != 0 ? decodeInitState(enterBits) : null;
         if (instruction instanceof WriteValueInstruction) {
-            VariableInitState enterInitState = enterInstructionData.get(variable);
             VariableInitState initializationAtThisElement =
                     VariableInitState.create(((WriteValueInstruction) instruction).getElement() instanceof JetProperty, enterInitState);
-            exitInstructionData.put(variable, initializationAtThisElement);
+            return setVariableBits(enterData, index, encodeInitState(initializationAtThisElement));
         }
         else { // instruction instanceof VariableDeclarationInstruction
-            VariableInitState enterInitState = enterInstructionData.get(variable);
             if (enterInitState == null || !enterInitState.isInitialized || !enterInitState.isDeclared) {
                 boolean isInitialized = enterInitState != null && enterInitState.isInitialized;
                 VariableInitState variableDeclarationInfo = VariableInitState.create(isInitialized, true);
-                exitInstructionData.put(variable, variableDeclarationInfo);
+                return setVariableBits(enterData, index, encodeInitState(variableDeclarationInfo));
             }
+            return enterData;
         }
-        return exitInstructionData;
     }
 
 // variable use
 
+    // A state is stored as a thermometer code of its importance, so that a union of bits merges states
+    private static final long[] USE_STATE_BITS = new long[] {KNOWN, KNOWN | 1 << 1, KNOWN | 1 << 1 | 1 << 2, KNOWN | 1 << 1 | 1 << 2 | 1 << 3};
+
     @NotNull
-    public Map<Instruction, Edges<Map<VariableDescriptor, VariableUseState>>> getVariableUseStatusData() {
-        Map<VariableDescriptor, VariableUseState> sinkInstructionData = Maps.newHashMap();
+    public VariableStates<VariableUseState> getVariableUseStatusData() {
+        long[] sinkInstructionData = new long[0];
         for (VariableDescriptor usedVariable : getUsedVariables(pseudocode)) {
-            sinkInstructionData.put(usedVariable, VariableUseState.UNUSED);
+            sinkInstructionData = setVariableBits(sinkInstructionData, getVariableIndex(usedVariable), encodeUseState(VariableUseState.UNUSED));
         }
-        InstructionDataMergeStrategy<Map<VariableDescriptor, VariableUseState>> collectVariableUseStatusStrategy =
-                new InstructionDataMergeStrategy<Map<VariableDescriptor, VariableUseState>>() {
-                    @Override
-                    public Edges<Map<VariableDescriptor, VariableUseState>> execute(
-                            @NotNull Instruction instruction,
-                            @NotNull Collection<Map<VariableDescriptor, VariableUseState>> incomingEdgesData
-                    ) {
-
-                        Map<VariableDescriptor, VariableUseState> enterResult = Maps.newHashMap();
-                        for (Map<VariableDescriptor, VariableUseState> edgeData : incomingEdgesData) {
-                            for (Map.Entry<VariableDescriptor, VariableUseState> entry : edgeData.entrySet()) {
-                                VariableDescriptor variableDescriptor = entry.getKey();
-                                VariableUseState variableUseState = entry.getValue();
-                                enterResult.put(variableDescriptor, variableUseState.merge(enterResult.get(variableDescriptor)));
-                            }
-                        }
-                        VariableDescriptor variableDescriptor = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, true,
-                                                                                                              bindingContext);
-                        if (variableDescriptor == null ||
-                            (!(instruction instanceof ReadValueInstruction) && !(instruction instanceof WriteValueInstruction))) {
-                            return Edges.create(enterResult, enterResult);
-                        }
-                        Map<VariableDescriptor, VariableUseState> exitResult = Maps.newHashMap(enterResult);
-                        if (instruction instanceof ReadValueInstruction) {
-                            exitResult.put(variableDescriptor, VariableUseState.LAST_READ);
-                        }
-                        else { //instruction instanceof WriteValueInstruction
-                            VariableUseState variableUseState = enterResult.get(variableDescriptor);
-                            if (variableUseState == null) {
-                                variableUseState = VariableUseState.UNUSED;
-                            }
-                            switch (variableUseState) {
-                                case UNUSED:
-                                case ONLY_WRITTEN_NEVER_READ:
-                                    exitResult.put(variableDescriptor, VariableUseState.ONLY_WRITTEN_NEVER_READ);
-                                    break;
-                                case LAST_WRITTEN:
-                                case LAST_READ:
-                                    exitResult.put(variableDescriptor, VariableUseState.LAST_WRITTEN);
-                            }
-                        }
-                        return Edges.create(enterResult, exitResult);
+        BitVectorDataFlow.Transfer collectVariableUseStatusStrategy = new BitVectorDataFlow.Transfer() {
+            @NotNull
+            @Override
+            public long[] execute(@NotNull Instruction instruction, @NotNull long[] enterData) {
+                VariableDescriptor variableDescriptor = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, true, bindingContext);
+                if (variableDescriptor == null ||
+                    (!(instruction instanceof ReadValueInstruction) && !(instruction instanceof WriteValueInstruction))) {
+                    return enterData;
+                }
+                int index = getVariableIndex(variableDescriptor);
+                if (instruction instanceof ReadValueInstruction) {
+                    return setVariableBits(enterData, index, encodeUseState(VariableUseState.LAST_READ));
+                }
+                else { //instruction instanceof WriteValueInstruction
+                    long enterBits = getVariableBits(enterData, index);
+                    VariableUseState variableUseState = (enterBits & KNOWN) != 0 ? decodeUseState(enterBits) : VariableUseState.UNUSED;
+                    switch (variableUseState) {
+                        case UNUSED:
+                        case ONLY_WRITTEN_NEVER_READ:
+                            return setVariableBits(enterData, index, encodeUseState(VariableUseState.ONLY_WRITTEN_NEVER_READ));
+                        case LAST_WRITTEN:
+                        case LAST_READ:
+                        default:
+                            return setVariableBits(enterData, index, encodeUseState(VariableUseState.LAST_WRITTEN));
                     }
-                };
-        return PseudocodeTraverser.collectData(pseudocode, BACKWARD, ANALYSE_LOCAL_DECLARATIONS,
-                                               Collections.<VariableDescriptor, VariableUseState>emptyMap(),
-                                               sinkInstructionData, collectVariableUseStatusStrategy);
+                }
+            }
+        };
+        BitVectorDataFlow.Result result = BitVectorDataFlow.analyze(pseudocode, BACKWARD, ANALYSE_LOCAL_DECLARATIONS,
+                                                                    sinkInstructionData, collectVariableUseStatusStrategy);
+
+        // Local declarations are analyzed together with the pseudocode
+        Map<Pseudocode, BitVectorDataFlow.Result> results = Maps.newHashMap();
+        results.put(pseudocode, result);
+        for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
+            results.put(localDeclarationInstruction.getBody(), result);
+        }
+        return new VariableStates<VariableUseState>(results) {
+            @NotNull
+            @Override
+            protected VariableUseState decode(long bits) {
+                return decodeUseState(bits);
+            }
+        };
+    }
+
+    private static long encodeUseState(@NotNull VariableUseState useState) {
+        return USE_STATE_BITS[useState.importance];
+    }
+
+    @NotNull
+    private static VariableUseState decodeUseState(long bits) {
+        return VariableUseState.byImportance(Long.bitCount(bits) - 1);
     }
 
     public static class VariableInitState {
@@ -349,9 +379,12 @@ public class PseudocodeVariablesData {
             this.importance = importance;
         }
 
-        private VariableUseState merge(@Nullable VariableUseState variableUseState) {
-            if (variableUseState == null || importance > variableUseState.importance) return this;
-            return variableUseState;
+        @NotNull
+        private static VariableUseState byImportance(int importance) {
+            for (VariableUseState state : values()) {
+                if (state.importance == importance) return state;
+            }
+            throw new IllegalArgumentException("Unknown importance: " + importance);
         }
 
         public static boolean isUsed(@Nullable VariableUseState variableUseState) {
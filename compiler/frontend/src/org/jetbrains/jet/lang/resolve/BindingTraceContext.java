@@ -24,10 +24,11 @@ import org.jetbrains.jet.lang.diagnostics.Diagnostic;
 import org.jetbrains.jet.util.slicedmap.*;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class BindingTraceContext implements BindingTrace {
-    private final List<Diagnostic> diagnosticList = Lists.newArrayList();
+    private final List<Diagnostic> diagnosticList;
     private final Diagnostics diagnostics;
 
     // These flags are used for debugging of "Rewrite at slice..." exceptions
@@ -65,12 +66,16 @@ public class BindingTraceContext implements BindingTrace {
 
     public BindingTraceContext() {
         //noinspection ConstantConditions
-        this(TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create());
+        this(TRACK_REWRITES ? new TrackingSlicedMap(TRACK_WITH_STACK_TRACES) : CompactSlicedMap.createDefault());
     }
 
-
     private BindingTraceContext(@NotNull MutableSlicedMap map) {
+        this(map, Lists.<Diagnostic>newArrayList());
+    }
+
+    private BindingTraceContext(@NotNull MutableSlicedMap map, @NotNull List<Diagnostic> diagnosticList) {
         this.map = map;
+        this.diagnosticList = diagnosticList;
         this.diagnostics = new DiagnosticsWithSuppression(getBindingContext(), diagnosticList);
     }
 
@@ -79,6 +84,14 @@ public class BindingTraceContext implements BindingTrace {
         return new BindingTraceContext(new TrackingSlicedMap(TRACK_WITH_STACK_TRACES));
     }
 
+    /**
+     * A trace that may be read and written from several threads, e.g. by the parallel body resolution
+     */
+    @NotNull
+    public static BindingTraceContext createConcurrent() {
+        return new BindingTraceContext(CompactSlicedMap.createConcurrent(), Collections.synchronizedList(Lists.<Diagnostic>newArrayList()));
+    }
+
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
         diagnosticList.add(diagnostic);
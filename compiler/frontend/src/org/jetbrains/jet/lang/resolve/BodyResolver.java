@@ -42,9 +42,11 @@ import org.jetbrains.jet.lexer.JetTokens;
 import org.jetbrains.jet.util.Box;
 import org.jetbrains.jet.util.ReenteringLazyValueComputationException;
 import org.jetbrains.jet.util.slicedmap.WritableSlice;
+import org.jetbrains.jet.utils.PerformanceReport;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import static org.jetbrains.jet.lang.descriptors.ReceiverParameterDescriptor.NO_RECEIVER_PARAMETER;
 import static org.jetbrains.jet.lang.diagnostics.Errors.*;
@@ -151,10 +153,36 @@ public class BodyResolver {
     }
 
     public void resolveBodies() {
-        resolveBehaviorDeclarationBodies(context);
-        controlFlowAnalyzer.process(context);
-        declarationsChecker.process(context);
-        functionAnalyzerExtension.process(context);
+        PerformanceReport.Phase phase = startPhase("bodies");
+        try {
+            resolveBehaviorDeclarationBodies(context);
+            phase.count("functions", context.getFunctions().size());
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = startPhase("controlFlow");
+        try {
+            controlFlowAnalyzer.process(context);
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = startPhase("checks");
+        try {
+            declarationsChecker.process(context);
+            functionAnalyzerExtension.process(context);
+        }
+        finally {
+            phase.end();
+        }
+    }
+
+    @NotNull
+    private PerformanceReport.Phase startPhase(@NotNull String name) {
+        return topDownAnalysisParameters.isDeclaredLocally() ? PerformanceReport.NO_PHASE : PerformanceReport.phase(name);
     }
 
     private void resolveDelegationSpecifierLists() {
@@ -577,6 +605,11 @@ public class BodyResolver {
     }
 
     private void resolveFunctionBodies() {
+        if (topDownAnalysisParameters.isParallelBodyResolve() && this.context.getFunctions().size() > 1) {
+            resolveFunctionBodiesInParallel();
+            return;
+        }
+
         for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : this.context.getFunctions().entrySet()) {
             JetNamedFunction declaration = entry.getKey();
             SimpleFunctionDescriptor descriptor = entry.getValue();
@@ -593,6 +626,46 @@ public class BodyResolver {
         }
     }
 
+    /**
+     * Return types are inferred sequentially, because their computation writes to the main trace.
+     * Then every body is resolved on a worker thread into its own temporary trace, and the traces are committed
+     * in the order of declarations, so that the main trace gets the same data as in the sequential mode.
+     *
+     * Besides the main trace, the workers share:
+     * <ul>
+     * <li>declaring scopes of the functions, i.e. namespace, import and class member scopes: they are locked for reading
+     * by the top-down analyzer before bodies are resolved, so any write to them throws, and their lazily computed caches
+     * are published only when complete;</li>
+     * <li>descriptors and member scopes of types, whose lazy computations go through the storage manager or are published
+     * the same way. No lock is held while a scope asks other scopes, so they can't deadlock with the storage manager locks;</li>
+     * <li>PSI, which is only read: the IntelliJ PSI allows concurrent reads, as in read actions of the IDE.</li>
+     * </ul>
+     * Scopes of function bodies and everything written during the resolution of a body belong to one worker.
+     */
+    private void resolveFunctionBodiesInParallel() {
+        List<Callable<TemporaryBindingTrace>> tasks = new ArrayList<Callable<TemporaryBindingTrace>>();
+        for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : this.context.getFunctions().entrySet()) {
+            final JetNamedFunction declaration = entry.getKey();
+            final SimpleFunctionDescriptor descriptor = entry.getValue();
+
+            computeDeferredType(descriptor.getReturnType());
+
+            final JetScope declaringScope = this.context.getDeclaringScopes().apply(declaration);
+            assert declaringScope != null;
+
+            tasks.add(new Callable<TemporaryBindingTrace>() {
+                @Override
+                public TemporaryBindingTrace call() {
+                    TemporaryBindingTrace bodyTrace = TemporaryBindingTrace.create(trace, "trace to resolve function body in parallel", declaration);
+                    annotationResolver.resolveAnnotationsArguments(declaringScope, declaration.getModifierList(), bodyTrace);
+                    resolveFunctionBody(bodyTrace, declaration, descriptor, declaringScope);
+                    return bodyTrace;
+                }
+            });
+        }
+        ParallelResolveUtil.runAndCommit(tasks);
+    }
+
     public void resolveFunctionBody(
             @NotNull BindingTrace trace,
             @NotNull JetDeclarationWithBody function,
@@ -25,8 +25,10 @@ import org.jetbrains.jet.lang.psi.*;
 import org.jetbrains.jet.lang.types.JetType;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import static org.jetbrains.jet.lang.types.TypeUtils.NO_EXPECTED_TYPE;
 
@@ -45,36 +47,90 @@ public class ControlFlowAnalyzer {
     }
 
     public void process(@NotNull BodiesResolveContext bodiesResolveContext) {
+        List<DeclarationCheck> checks = collectChecks(bodiesResolveContext);
+        if (topDownAnalysisParameters.isParallelBodyResolve() && checks.size() > 1) {
+            processInParallel(checks);
+            return;
+        }
+
+        for (DeclarationCheck check : checks) {
+            check.run(trace);
+        }
+    }
+
+    @NotNull
+    private List<DeclarationCheck> collectChecks(@NotNull BodiesResolveContext bodiesResolveContext) {
+        List<DeclarationCheck> checks = new ArrayList<DeclarationCheck>();
         for (JetFile file : bodiesResolveContext.getFiles()) {
             if (!bodiesResolveContext.completeAnalysisNeeded(file)) continue;
-            checkDeclarationContainer(file);
+            checks.add(declarationContainerCheck(file));
         }
         for (JetClass aClass : bodiesResolveContext.getClasses().keySet()) {
             if (!bodiesResolveContext.completeAnalysisNeeded(aClass)) continue;
-            checkDeclarationContainer(aClass);
+            checks.add(declarationContainerCheck(aClass));
         }
         for (JetObjectDeclaration objectDeclaration : bodiesResolveContext.getObjects().keySet()) {
             if (!bodiesResolveContext.completeAnalysisNeeded(objectDeclaration)) continue;
-            checkDeclarationContainer(objectDeclaration);
+            checks.add(declarationContainerCheck(objectDeclaration));
         }
         for (Map.Entry<JetNamedFunction, SimpleFunctionDescriptor> entry : bodiesResolveContext.getFunctions().entrySet()) {
-            JetNamedFunction function = entry.getKey();
+            final JetNamedFunction function = entry.getKey();
             SimpleFunctionDescriptor functionDescriptor = entry.getValue();
             if (!bodiesResolveContext.completeAnalysisNeeded(function)) continue;
-            JetType expectedReturnType = !function.hasBlockBody() && !function.hasDeclaredReturnType()
+            final JetType expectedReturnType = !function.hasBlockBody() && !function.hasDeclaredReturnType()
                                                ? NO_EXPECTED_TYPE
                                                : functionDescriptor.getReturnType();
-            checkFunction(function, expectedReturnType);
+            checks.add(new DeclarationCheck(function) {
+                @Override
+                public void run(@NotNull BindingTrace trace) {
+                    checkFunction(trace, function, expectedReturnType);
+                }
+            });
         }
         for (Map.Entry<JetProperty, PropertyDescriptor> entry : bodiesResolveContext.getProperties().entrySet()) {
-            JetProperty property = entry.getKey();
+            final JetProperty property = entry.getKey();
             if (!bodiesResolveContext.completeAnalysisNeeded(property)) continue;
-            PropertyDescriptor propertyDescriptor = entry.getValue();
-            checkProperty(property, propertyDescriptor);
+            final PropertyDescriptor propertyDescriptor = entry.getValue();
+            checks.add(new DeclarationCheck(property) {
+                @Override
+                public void run(@NotNull BindingTrace trace) {
+                    checkProperty(trace, property, propertyDescriptor);
+                }
+            });
+        }
+        return checks;
+    }
+
+    /**
+     * Every declaration is checked on a worker thread into its own temporary trace, the checks only read the main trace.
+     * The traces are committed in the order of the sequential mode, so the main trace gets the same data and diagnostics.
+     */
+    private void processInParallel(@NotNull List<DeclarationCheck> checks) {
+        List<Callable<TemporaryBindingTrace>> tasks = new ArrayList<Callable<TemporaryBindingTrace>>();
+        for (final DeclarationCheck check : checks) {
+            tasks.add(new Callable<TemporaryBindingTrace>() {
+                @Override
+                public TemporaryBindingTrace call() {
+                    TemporaryBindingTrace checkTrace = TemporaryBindingTrace.create(trace, "trace to check control flow in parallel", check.declaration);
+                    check.run(checkTrace);
+                    return checkTrace;
+                }
+            });
         }
+        ParallelResolveUtil.runAndCommit(tasks);
     }
 
-    private void checkDeclarationContainer(JetDeclarationContainer declarationContainer) {
+    @NotNull
+    private DeclarationCheck declarationContainerCheck(@NotNull final JetDeclarationContainer declarationContainer) {
+        return new DeclarationCheck((JetElement) declarationContainer) {
+            @Override
+            public void run(@NotNull BindingTrace trace) {
+                checkDeclarationContainer(trace, declarationContainer);
+            }
+        };
+    }
+
+    private void checkDeclarationContainer(@NotNull BindingTrace trace, JetDeclarationContainer declarationContainer) {
         // A pseudocode of class/object initialization corresponds to a class/object
         // or initialization of properties corresponds to a package declared in a file
         JetFlowInformationProvider flowInformationProvider = new JetFlowInformationProvider((JetElement) declarationContainer, trace);
@@ -85,17 +141,17 @@ public class ControlFlowAnalyzer {
         flowInformationProvider.markUninitializedVariables();
     }
 
-    private void checkProperty(JetProperty property, PropertyDescriptor propertyDescriptor) {
+    private void checkProperty(@NotNull BindingTrace trace, JetProperty property, PropertyDescriptor propertyDescriptor) {
         for (JetPropertyAccessor accessor : property.getAccessors()) {
             PropertyAccessorDescriptor accessorDescriptor = accessor.isGetter()
                                                             ? propertyDescriptor.getGetter()
                                                             : propertyDescriptor.getSetter();
             assert accessorDescriptor != null;
-            checkFunction(accessor, accessorDescriptor.getReturnType());
+            checkFunction(trace, accessor, accessorDescriptor.getReturnType());
         }
     }
 
-    private void checkFunction(JetDeclarationWithBody function, @NotNull JetType expectedReturnType) {
+    private void checkFunction(@NotNull BindingTrace trace, JetDeclarationWithBody function, @NotNull JetType expectedReturnType) {
         assert function instanceof JetDeclaration;
 
         JetExpression bodyExpression = function.getBodyExpression();
@@ -120,4 +176,14 @@ public class ControlFlowAnalyzer {
 
         flowInformationProvider.markUnusedLiteralsInBlock();
     }
+
+    private abstract static class DeclarationCheck {
+        private final JetElement declaration;
+
+        private DeclarationCheck(@NotNull JetElement declaration) {
+            this.declaration = declaration;
+        }
+
+        public abstract void run(@NotNull BindingTrace trace);
+    }
 }
@@ -29,19 +29,30 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A trace that keeps its own records and falls back to the parent context for everything else.
+ *
+ * Many of these traces are forked for every call (one per candidate) and most of them are discarded or stay empty,
+ * so the map and the list of diagnostics are only created on the first write, and reads from an empty trace go to the parent directly.
+ * When the data is moved to a {@link TemporaryBindingTrace} that has no data of its own, the map and the diagnostics are handed over
+ * instead of being recorded entry by entry.
+ */
 public class DelegatingBindingTrace implements BindingTrace {
-    @SuppressWarnings("ConstantConditions")
-    private final MutableSlicedMap map = BindingTraceContext.TRACK_REWRITES ? new TrackingSlicedMap(BindingTraceContext.TRACK_WITH_STACK_TRACES) : SlicedMapImpl.create();
+    @Nullable
+    private MutableSlicedMap map = null;
 
     private final BindingContext parentContext;
-    private final List<Diagnostic> diagnostics = Lists.newArrayList();
+    @Nullable
+    private List<Diagnostic> diagnostics = null;
     private final String name;
 
     private final BindingContext bindingContext = new BindingContext() {
         @NotNull
         @Override
         public Diagnostics getDiagnostics() {
-            ArrayList<Diagnostic> mergedDiagnostics = new ArrayList<Diagnostic>(diagnostics);
+            ArrayList<Diagnostic> mergedDiagnostics = diagnostics == null
+                                                      ? new ArrayList<Diagnostic>()
+                                                      : new ArrayList<Diagnostic>(diagnostics);
             mergedDiagnostics.addAll(parentContext.getDiagnostics().noSuppression().all());
             return new DiagnosticsWithSuppression(this, mergedDiagnostics);
         }
@@ -63,6 +74,7 @@ public class DelegatingBindingTrace implements BindingTrace {
         @Override
         public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
             ImmutableMap<K, V> parentContents = parentContext.getSliceContents(slice);
+            if (map == null) return parentContents;
             ImmutableMap<K, V> currentContents = map.getSliceContents(slice);
             return ImmutableMap.<K, V>builder().putAll(parentContents).putAll(currentContents).build();
         }
@@ -83,8 +95,19 @@ public class DelegatingBindingTrace implements BindingTrace {
         return bindingContext;
     }
 
+    @NotNull
+    private static MutableSlicedMap createMap() {
+        //noinspection ConstantConditions
+        return BindingTraceContext.TRACK_REWRITES
+               ? new TrackingSlicedMap(BindingTraceContext.TRACK_WITH_STACK_TRACES)
+               : CompactSlicedMap.createDefault();
+    }
+
     @Override
     public <K, V> void record(WritableSlice<K, V> slice, K key, V value) {
+        if (map == null) {
+            map = createMap();
+        }
         map.put(slice, key, value);
     }
 
@@ -95,6 +118,10 @@ public class DelegatingBindingTrace implements BindingTrace {
 
     @Override
     public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        if (map == null) {
+            return parentContext.get(slice, key);
+        }
+
         V value = map.get(slice, key);
         if (slice instanceof Slices.SetSlice) {
             assert value != null;
@@ -110,8 +137,10 @@ public class DelegatingBindingTrace implements BindingTrace {
     @NotNull
     @Override
     public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
-        Collection<K> keys = map.getKeys(slice);
         Collection<K> fromParent = parentContext.getKeys(slice);
+        if (map == null) return fromParent;
+
+        Collection<K> keys = map.getKeys(slice);
         if (keys.isEmpty()) return fromParent;
         if (fromParent.isEmpty()) return keys;
 
@@ -125,11 +154,35 @@ public class DelegatingBindingTrace implements BindingTrace {
     }
 
     public void moveAllMyDataTo(@NotNull BindingTrace trace) {
+        if (trace instanceof TemporaryBindingTrace) {
+            DelegatingBindingTrace target = (DelegatingBindingTrace) trace;
+            // Temporary traces don't intercept records, so an empty one can simply take the data over
+            if (target.map == null && target.diagnostics == null) {
+                target.map = map;
+                target.diagnostics = diagnostics;
+                map = null;
+                diagnostics = null;
+                return;
+            }
+        }
         addAllMyDataTo(trace, null, true);
         clear();
     }
 
     public void addAllMyDataTo(@NotNull BindingTrace trace, @Nullable TraceEntryFilter filter, boolean commitDiagnostics) {
+        if (map != null) {
+            addAllRecordsTo(trace, filter);
+        }
+
+        if (!commitDiagnostics || diagnostics == null) return;
+
+        for (Diagnostic diagnostic : diagnostics) {
+            trace.report(diagnostic);
+        }
+    }
+
+    private void addAllRecordsTo(@NotNull BindingTrace trace, @Nullable TraceEntryFilter filter) {
+        assert map != null;
         for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
             SlicedMapKey slicedMapKey = entry.getKey();
 
@@ -142,21 +195,18 @@ public class DelegatingBindingTrace implements BindingTrace {
                 trace.record(slice, key, value);
             }
         }
-
-        if (!commitDiagnostics) return;
-
-        for (Diagnostic diagnostic : diagnostics) {
-            trace.report(diagnostic);
-        }
     }
 
     public void clear() {
-        map.clear();
-        diagnostics.clear();
+        map = null;
+        diagnostics = null;
     }
 
     @Override
     public void report(@NotNull Diagnostic diagnostic) {
+        if (diagnostics == null) {
+            diagnostics = Lists.newArrayList();
+        }
         diagnostics.add(diagnostic);
     }
 
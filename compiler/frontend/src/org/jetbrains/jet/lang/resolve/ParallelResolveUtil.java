@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.utils.ExceptionUtils;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the parts of the analysis done in parallel, see {@link TopDownAnalysisParameters#isParallelBodyResolve()}.
+ * The worker threads are shared by all analyses in the process and stop when idle, so that a compiler daemon doesn't create
+ * a pool per compilation and doesn't keep idle threads either. Tasks must not wait for other tasks submitted here.
+ */
+/*package*/ final class ParallelResolveUtil {
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+
+    @NotNull
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "Kotlin resolve worker " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the tasks, each of which fills its own temporary trace, and commits the traces in the order of the tasks
+     */
+    public static void runAndCommit(@NotNull List<Callable<TemporaryBindingTrace>> tasks) {
+        try {
+            List<Future<TemporaryBindingTrace>> futures = EXECUTOR.invokeAll(tasks);
+            for (Future<TemporaryBindingTrace> future : futures) {
+                future.get().commit();
+            }
+        }
+        catch (ExecutionException e) {
+            throw ExceptionUtils.rethrow(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ExceptionUtils.rethrow(e);
+        }
+    }
+
+    private ParallelResolveUtil() {
+    }
+}
@@ -30,6 +30,7 @@ public class TopDownAnalysisParameters {
     private final Predicate<PsiFile> analyzeCompletely;
     private final boolean analyzingBootstrapLibrary;
     private final boolean declaredLocally;
+    private final boolean parallelBodyResolve;
     @NotNull
     private final List<AnalyzerScriptParameter> scriptParameters;
 
@@ -38,10 +39,24 @@ public class TopDownAnalysisParameters {
             boolean analyzingBootstrapLibrary,
             boolean declaredLocally,
             @NotNull List<AnalyzerScriptParameter> scriptParameters) {
+        this(analyzeCompletely, analyzingBootstrapLibrary, declaredLocally, scriptParameters, false);
+    }
+
+    /**
+     * @param parallelBodyResolve resolve function bodies and check control flow of declarations on several threads,
+     *                            the trace given to the analyzer must be thread-safe
+     */
+    public TopDownAnalysisParameters(
+            @NotNull Predicate<PsiFile> analyzeCompletely,
+            boolean analyzingBootstrapLibrary,
+            boolean declaredLocally,
+            @NotNull List<AnalyzerScriptParameter> scriptParameters,
+            boolean parallelBodyResolve) {
         this.analyzeCompletely = analyzeCompletely;
         this.analyzingBootstrapLibrary = analyzingBootstrapLibrary;
         this.declaredLocally = declaredLocally;
         this.scriptParameters = scriptParameters;
+        this.parallelBodyResolve = parallelBodyResolve;
     }
 
     @NotNull
@@ -61,4 +76,8 @@ public class TopDownAnalysisParameters {
     public List<AnalyzerScriptParameter> getScriptParameters() {
         return scriptParameters;
     }
+
+    public boolean isParallelBodyResolve() {
+        return parallelBodyResolve;
+    }
 }
@@ -36,6 +36,7 @@ import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScopeImpl;
 import org.jetbrains.jet.lang.types.expressions.ExpressionTypingContext;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.jet.utils.PerformanceReport;
 
 import javax.inject.Inject;
 import java.util.*;
@@ -122,13 +123,36 @@ public class TopDownAnalyzer {
 //        context.enableDebugOutput();
         context.debug("Enter");
 
-        typeHierarchyResolver.process(outerScope, owner, declarations);
-        declarationResolver.process(outerScope);
-        overrideResolver.process();
+        PerformanceReport.Phase phase = startPhase("typeHierarchy");
+        try {
+            typeHierarchyResolver.process(outerScope, owner, declarations);
+            phase.count("classes", context.getClasses().size() + context.getObjects().size());
+        }
+        finally {
+            phase.end();
+        }
+
+        phase = startPhase("declarations");
+        try {
+            declarationResolver.process(outerScope);
+            phase.count("functions", context.getFunctions().size());
+            phase.count("properties", context.getProperties().size());
+        }
+        finally {
+            phase.end();
+        }
 
-        lockScopes();
+        phase = startPhase("overrides");
+        try {
+            overrideResolver.process();
 
-        overloadResolver.process();
+            lockScopes();
+
+            overloadResolver.process();
+        }
+        finally {
+            phase.end();
+        }
 
         if (!topDownAnalysisParameters.isAnalyzingBootstrapLibrary()) {
             bodyResolver.resolveBodies();
@@ -168,6 +192,12 @@ public class TopDownAnalyzer {
         injector.getTopDownAnalyzer().doProcessStandardLibraryNamespace(outerScope, standardLibraryNamespace, files);
     }
 
+    @NotNull
+    private PerformanceReport.Phase startPhase(@NotNull String name) {
+        // Local classes are analyzed while resolving bodies of the enclosing declarations, which is measured as a whole
+        return topDownAnalysisParameters.isDeclaredLocally() ? PerformanceReport.NO_PHASE : PerformanceReport.phase(name);
+    }
+
     private void doProcessStandardLibraryNamespace(
             WritableScope outerScope, NamespaceDescriptorImpl standardLibraryNamespace, List<JetFile> files) {
         ArrayList<JetDeclaration> toAnalyze = new ArrayList<JetDeclaration>();
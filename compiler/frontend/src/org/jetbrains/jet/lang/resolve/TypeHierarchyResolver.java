@@ -37,6 +37,7 @@ import org.jetbrains.jet.lang.types.SubstitutionUtils;
 import org.jetbrains.jet.lang.types.TypeConstructor;
 import org.jetbrains.jet.lang.types.TypeProjection;
 import org.jetbrains.jet.lang.types.checker.JetTypeChecker;
+import org.jetbrains.jet.lang.types.checker.SupertypeCache;
 import org.jetbrains.jet.utils.DFS;
 
 import javax.inject.Inject;
@@ -258,6 +259,7 @@ public class TypeHierarchyResolver {
                     JetType type = iterator.next();
                     if (type.getConstructor() == currentClass.getTypeConstructor()) {
                         iterator.remove();
+                        SupertypeCache.supertypesRemoved();
                         break;
                     }
                 }
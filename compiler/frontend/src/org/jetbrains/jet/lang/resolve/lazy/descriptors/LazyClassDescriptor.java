@@ -46,6 +46,7 @@ import org.jetbrains.jet.lang.resolve.scopes.*;
 import org.jetbrains.jet.lang.types.JetType;
 import org.jetbrains.jet.lang.types.TypeConstructor;
 import org.jetbrains.jet.lang.types.TypeUtils;
+import org.jetbrains.jet.lang.types.checker.SupertypeCache;
 import org.jetbrains.jet.storage.NotNullLazyValue;
 import org.jetbrains.jet.storage.NullableLazyValue;
 import org.jetbrains.jet.storage.StorageManager;
@@ -350,7 +351,7 @@ public class LazyClassDescriptor extends ClassDescriptorBase implements LazyDesc
         getVisibility();
     }
 
-    private class LazyClassTypeConstructor implements LazyDescriptor, TypeConstructor {
+    private class LazyClassTypeConstructor implements LazyDescriptor, TypeConstructor, SupertypeCache.Owner {
         private final NotNullLazyValue<Collection<JetType>> supertypes = resolveSession.getStorageManager().createLazyValueWithPostCompute(
                 new Function0<Collection<JetType>>() {
                     @Override
@@ -388,6 +389,8 @@ public class LazyClassDescriptor extends ClassDescriptorBase implements LazyDesc
                     }
                 });
 
+        private final SupertypeCache supertypeCache = new SupertypeCache();
+
         private final NotNullLazyValue<List<TypeParameterDescriptor>> parameters = resolveSession.getStorageManager().createLazyValue(new Function0<List<TypeParameterDescriptor>>() {
             @Override
             public List<TypeParameterDescriptor> invoke() {
@@ -420,6 +423,7 @@ public class LazyClassDescriptor extends ClassDescriptorBase implements LazyDesc
                 JetType supertype = iterator.next();
                 if (isReachable(supertype.getConstructor(), this, new HashSet<TypeConstructor>())) {
                     iterator.remove();
+                    SupertypeCache.supertypesRemoved();
                 }
             }
         }
@@ -448,6 +452,12 @@ public class LazyClassDescriptor extends ClassDescriptorBase implements LazyDesc
             return true;
         }
 
+        @NotNull
+        @Override
+        public SupertypeCache getSupertypeCache() {
+            return supertypeCache;
+        }
+
         @Override
         public ClassifierDescriptor getDeclarationDescriptor() {
             return LazyClassDescriptor.this;
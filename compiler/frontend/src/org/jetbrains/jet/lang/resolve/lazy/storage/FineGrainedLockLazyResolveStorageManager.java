@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.lazy.storage;
+
+import com.intellij.util.containers.ConcurrentWeakValueHashMap;
+import jet.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.resolve.BindingTrace;
+import org.jetbrains.jet.lang.resolve.LockProtectedTrace;
+import org.jetbrains.jet.storage.FineGrainedLockStorageManager;
+import org.jetbrains.jet.storage.MemoizedFunctionToNotNull;
+import org.jetbrains.jet.storage.MemoizedFunctionToNullable;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class FineGrainedLockLazyResolveStorageManager extends FineGrainedLockStorageManager implements LazyResolveStorageManager {
+
+    // Trace operations never acquire other locks, so a single lock for all of them can't take part in a deadlock
+    private final Lock traceLock = new ReentrantLock();
+
+    @NotNull
+    public static LazyResolveStorageManager createDefault() {
+        return isEnabled() ? new FineGrainedLockLazyResolveStorageManager() : new LockBasedLazyResolveStorageManager();
+    }
+
+    @Override
+    @NotNull
+    public <K, V> MemoizedFunctionToNotNull<K, V> createWeaklyRetainedMemoizedFunction(
+            @NotNull Function1<K, V> compute
+    ) {
+        return super.createMemoizedFunction(compute, new ConcurrentWeakValueHashMap<K, Object>());
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createWeaklyRetainedMemoizedFunctionWithNullableValues(
+            @NotNull Function1<K, V> compute
+    ) {
+        return super.createMemoizedFunctionWithNullableValues(compute, new ConcurrentWeakValueHashMap<K, Object>());
+    }
+
+    @NotNull
+    @Override
+    public BindingTrace createSafeTrace(@NotNull BindingTrace originalTrace) {
+        return new LockProtectedTrace(traceLock, originalTrace);
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import com.google.common.collect.ImmutableMap;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A sliced map that keeps a separate {@link KeyValueTable} for every slice, so no key object is created or retained per entry.
+ * Entries are iterated in the order of insertion, as in {@link SlicedMapImpl}: every new entry gets a stamp from a counter
+ * and the tables are merged by these stamps.
+ */
+public class CompactSlicedMap implements MutableSlicedMap {
+    public static final String ENABLED_PROPERTY = "kotlin.compact.sliced.map";
+
+    private static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    @NotNull
+    public static MutableSlicedMap createDefault() {
+        return ENABLED ? new CompactSlicedMap() : SlicedMapImpl.create();
+    }
+
+    @NotNull
+    public static CompactSlicedMap create() {
+        return new CompactSlicedMap();
+    }
+
+    @NotNull
+    public static CompactSlicedMap createConcurrent() {
+        return new ConcurrentCompactSlicedMap();
+    }
+
+    private Map<WritableSlice<?, ?>, KeyValueTable> tables = null;
+    private Map<WritableSlice<?, ?>, List<Object>> collectiveSliceKeys = null;
+    private int nextStamp = 0;
+
+    protected CompactSlicedMap() {
+    }
+
+    @Override
+    public <K, V> void put(WritableSlice<K, V> slice, K key, V value) {
+        if (!slice.check(key, value)) {
+            return;
+        }
+
+        KeyValueTable table = getTable(slice.getStorageSlice(), true);
+        assert table != null;
+        if (!putToTable(table, slice, slice.normalizeKey(key), value)) {
+            return;
+        }
+
+        if (slice.isCollective()) {
+            addCollectiveSliceKey(slice, key);
+        }
+
+        slice.afterPut(this, key, value);
+    }
+
+    protected <K, V> boolean putToTable(@NotNull KeyValueTable table, @NotNull WritableSlice<K, V> slice, K key, V value) {
+        RewritePolicy rewritePolicy = slice.getRewritePolicy();
+        if (rewritePolicy.rewriteProcessingNeeded(key)) {
+            if (table.containsKey(key)) {
+                //noinspection unchecked
+                if (!rewritePolicy.processRewrite(slice, key, (V) table.get(key), value)) {
+                    return false;
+                }
+            }
+        }
+        table.put(key, value, nextStamp());
+        return true;
+    }
+
+    /**
+     * Called for every put, stamps of the entries of one table must increase in the order of insertion
+     */
+    protected int nextStamp() {
+        return nextStamp++;
+    }
+
+    @Override
+    public void clear() {
+        tables = null;
+        collectiveSliceKeys = null;
+    }
+
+    @Override
+    public <K, V> V get(ReadOnlySlice<K, V> slice, K key) {
+        KeyValueTable table = getTable(slice.getStorageSlice(), false);
+        //noinspection unchecked
+        V value = table == null ? null : (V) getFromTable(table, slice.normalizeKey(key));
+        return slice.computeValue(this, key, value, value == null);
+    }
+
+    @Nullable
+    protected Object getFromTable(@NotNull KeyValueTable table, Object key) {
+        return table.get(key);
+    }
+
+    @Override
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+        List<Object> keys = collectiveSliceKeys == null ? null : collectiveSliceKeys.get(slice);
+        //noinspection unchecked
+        return keys == null ? Collections.<K>emptyList() : (Collection<K>) keys;
+    }
+
+    protected <K, V> void addCollectiveSliceKey(@NotNull WritableSlice<K, V> slice, K key) {
+        if (collectiveSliceKeys == null) {
+            collectiveSliceKeys = new HashMap<WritableSlice<?, ?>, List<Object>>();
+        }
+        List<Object> keys = collectiveSliceKeys.get(slice);
+        if (keys == null) {
+            keys = new ArrayList<Object>();
+            collectiveSliceKeys.put(slice, keys);
+        }
+        keys.add(key);
+    }
+
+    @Override
+    public <K, V> V remove(RemovableSlice<K, V> slice, K key) {
+        KeyValueTable table = getTable(slice.getStorageSlice(), false);
+        //noinspection unchecked
+        return table == null ? null : (V) removeFromTable(table, slice.normalizeKey(key));
+    }
+
+    @Nullable
+    protected Object removeFromTable(@NotNull KeyValueTable table, Object key) {
+        return table.remove(key);
+    }
+
+    @Nullable
+    protected KeyValueTable getTable(@NotNull WritableSlice<?, ?> slice, boolean create) {
+        if (tables == null) {
+            if (!create) return null;
+            tables = new LinkedHashMap<WritableSlice<?, ?>, KeyValueTable>();
+        }
+        KeyValueTable table = tables.get(slice);
+        if (table == null && create) {
+            table = new KeyValueTable();
+            tables.put(slice, table);
+        }
+        return table;
+    }
+
+    @NotNull
+    protected Collection<Map.Entry<WritableSlice<?, ?>, KeyValueTable>> getTables() {
+        return tables == null
+               ? Collections.<Map.Entry<WritableSlice<?, ?>, KeyValueTable>>emptyList()
+               : tables.entrySet();
+    }
+
+    /**
+     * Copies entries of the table with their stamps: the iterator doesn't reflect modifications made after it was created
+     */
+    protected void collectEntries(
+            @NotNull WritableSlice<?, ?> slice,
+            @NotNull KeyValueTable table,
+            @NotNull List<Map.Entry<SlicedMapKey<?, ?>, ?>> result,
+            @NotNull TIntArrayList stamps
+    ) {
+        for (int i = 0; i < table.getPositionCount(); i++) {
+            if (table.isRemovedAt(i)) continue;
+            //noinspection unchecked
+            SlicedMapKey<?, ?> key = new SlicedMapKey<Object, Object>((WritableSlice<Object, Object>) slice, table.getKeyAt(i));
+            result.add(new AbstractMap.SimpleImmutableEntry<SlicedMapKey<?, ?>, Object>(key, table.getValueAt(i)));
+            stamps.add(table.getStampAt(i));
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Map.Entry<SlicedMapKey<?, ?>, ?>> iterator() {
+        final List<List<Map.Entry<SlicedMapKey<?, ?>, ?>>> tableEntries = new ArrayList<List<Map.Entry<SlicedMapKey<?, ?>, ?>>>();
+        final List<TIntArrayList> tableStamps = new ArrayList<TIntArrayList>();
+        int size = 0;
+        for (Map.Entry<WritableSlice<?, ?>, KeyValueTable> entry : getTables()) {
+            List<Map.Entry<SlicedMapKey<?, ?>, ?>> entries = new ArrayList<Map.Entry<SlicedMapKey<?, ?>, ?>>();
+            TIntArrayList stamps = new TIntArrayList();
+            collectEntries(entry.getKey(), entry.getValue(), entries, stamps);
+            if (entries.isEmpty()) continue;
+
+            tableEntries.add(entries);
+            tableStamps.add(stamps);
+            size += entries.size();
+        }
+        if (tableEntries.isEmpty()) {
+            return Collections.<Map.Entry<SlicedMapKey<?, ?>, ?>>emptyList().iterator();
+        }
+        if (tableEntries.size() == 1) {
+            return tableEntries.get(0).iterator();
+        }
+
+        // Entries of every table are in the order of their stamps, the tables are merged by the stamp of their next entry
+        final int[] next = new int[tableEntries.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<Integer>(tableEntries.size(), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer table1, Integer table2) {
+                int stamp1 = tableStamps.get(table1).get(next[table1]);
+                int stamp2 = tableStamps.get(table2).get(next[table2]);
+                return stamp1 < stamp2 ? -1 : (stamp1 == stamp2 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < tableEntries.size(); i++) {
+            queue.add(i);
+        }
+
+        List<Map.Entry<SlicedMapKey<?, ?>, ?>> result = new ArrayList<Map.Entry<SlicedMapKey<?, ?>, ?>>(size);
+        while (!queue.isEmpty()) {
+            int table = queue.poll();
+            result.add(tableEntries.get(table).get(next[table]));
+            next[table]++;
+            if (next[table] < tableEntries.get(table).size()) {
+                queue.add(table);
+            }
+        }
+        return result.iterator();
+    }
+
+    @NotNull
+    @Override
+    public <K, V> ImmutableMap<K, V> getSliceContents(@NotNull ReadOnlySlice<K, V> slice) {
+        ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+        for (Map.Entry<WritableSlice<?, ?>, KeyValueTable> entry : getTables()) {
+            if (entry.getKey() != slice) continue;
+
+            List<Map.Entry<SlicedMapKey<?, ?>, ?>> entries = new ArrayList<Map.Entry<SlicedMapKey<?, ?>, ?>>();
+            collectEntries(entry.getKey(), entry.getValue(), entries, new TIntArrayList());
+            for (Map.Entry<SlicedMapKey<?, ?>, ?> sliceEntry : entries) {
+                //noinspection unchecked
+                builder.put((K) sliceEntry.getKey().getKey(), (V) sliceEntry.getValue());
+            }
+        }
+        return builder.build();
+    }
+}
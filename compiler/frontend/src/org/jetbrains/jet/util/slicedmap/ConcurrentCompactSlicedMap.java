@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread-safe version of {@link CompactSlicedMap}: every slice table is guarded by its own lock,
+ * so that writes to different slices don't contend.
+ *
+ * Rewrite checks and the write itself are atomic, {@link WritableSlice#afterPut} is called outside of the lock.
+ * Stamps are taken under the lock of the table, so they increase within every table.
+ */
+/*package*/ class ConcurrentCompactSlicedMap extends CompactSlicedMap {
+    private volatile ConcurrentMap<WritableSlice<?, ?>, KeyValueTable> concurrentTables = createTablesMap();
+    // Keeps the order in which slices were first written to
+    private volatile List<Map.Entry<WritableSlice<?, ?>, KeyValueTable>> orderedTables = createOrderedTablesList();
+    private volatile ConcurrentMap<WritableSlice<?, ?>, List<Object>> concurrentCollectiveSliceKeys = createCollectiveSliceKeysMap();
+    private final AtomicInteger nextStamp = new AtomicInteger();
+
+    @Override
+    protected <K, V> boolean putToTable(@NotNull KeyValueTable table, @NotNull WritableSlice<K, V> slice, K key, V value) {
+        synchronized (table) {
+            return super.putToTable(table, slice, key, value);
+        }
+    }
+
+    @Override
+    protected int nextStamp() {
+        return nextStamp.getAndIncrement();
+    }
+
+    @Nullable
+    @Override
+    protected Object getFromTable(@NotNull KeyValueTable table, Object key) {
+        synchronized (table) {
+            return super.getFromTable(table, key);
+        }
+    }
+
+    @Nullable
+    @Override
+    protected Object removeFromTable(@NotNull KeyValueTable table, Object key) {
+        synchronized (table) {
+            return super.removeFromTable(table, key);
+        }
+    }
+
+    @Override
+    protected void collectEntries(
+            @NotNull WritableSlice<?, ?> slice,
+            @NotNull KeyValueTable table,
+            @NotNull List<Map.Entry<SlicedMapKey<?, ?>, ?>> result,
+            @NotNull TIntArrayList stamps
+    ) {
+        synchronized (table) {
+            super.collectEntries(slice, table, result, stamps);
+        }
+    }
+
+    @Nullable
+    @Override
+    protected KeyValueTable getTable(@NotNull WritableSlice<?, ?> slice, boolean create) {
+        ConcurrentMap<WritableSlice<?, ?>, KeyValueTable> tables = concurrentTables;
+        KeyValueTable table = tables.get(slice);
+        if (table != null || !create) return table;
+
+        KeyValueTable newTable = new KeyValueTable();
+        table = tables.putIfAbsent(slice, newTable);
+        if (table != null) return table;
+
+        orderedTables.add(new AbstractMap.SimpleImmutableEntry<WritableSlice<?, ?>, KeyValueTable>(slice, newTable));
+        return newTable;
+    }
+
+    @NotNull
+    @Override
+    protected Collection<Map.Entry<WritableSlice<?, ?>, KeyValueTable>> getTables() {
+        return orderedTables;
+    }
+
+    @Override
+    public <K, V> Collection<K> getKeys(WritableSlice<K, V> slice) {
+        assert slice.isCollective() : "Keys are not collected for slice " + slice;
+        List<Object> keys = concurrentCollectiveSliceKeys.get(slice);
+        if (keys == null) return Collections.emptyList();
+        synchronized (keys) {
+            //noinspection unchecked
+            return (Collection<K>) new ArrayList<Object>(keys);
+        }
+    }
+
+    @Override
+    protected <K, V> void addCollectiveSliceKey(@NotNull WritableSlice<K, V> slice, K key) {
+        List<Object> keys = concurrentCollectiveSliceKeys.get(slice);
+        if (keys == null) {
+            List<Object> newKeys = new ArrayList<Object>();
+            keys = concurrentCollectiveSliceKeys.putIfAbsent(slice, newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+        synchronized (keys) {
+            keys.add(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        concurrentTables = createTablesMap();
+        orderedTables = createOrderedTablesList();
+        concurrentCollectiveSliceKeys = createCollectiveSliceKeysMap();
+    }
+
+    @NotNull
+    private static ConcurrentMap<WritableSlice<?, ?>, KeyValueTable> createTablesMap() {
+        return new ConcurrentHashMap<WritableSlice<?, ?>, KeyValueTable>();
+    }
+
+    @NotNull
+    private static List<Map.Entry<WritableSlice<?, ?>, KeyValueTable>> createOrderedTablesList() {
+        return new CopyOnWriteArrayList<Map.Entry<WritableSlice<?, ?>, KeyValueTable>>();
+    }
+
+    @NotNull
+    private static ConcurrentMap<WritableSlice<?, ?>, List<Object>> createCollectiveSliceKeysMap() {
+        return new ConcurrentHashMap<WritableSlice<?, ?>, List<Object>>();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicedmap;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An insertion-ordered hash map without entry objects: keys and values are kept in two dense arrays in the order of insertion,
+ * and an open-addressing table of positions in these arrays is used for lookup. Null keys are allowed, null values are not.
+ * Every entry also keeps a stamp given on its insertion, so that entries of several tables may be ordered together.
+ *
+ * Not thread-safe.
+ */
+/*package*/ final class KeyValueTable {
+    private static final Object NULL_KEY = new Object();
+    private static final Object REMOVED = new Object();
+
+    private static final int EMPTY_SLOT = 0;
+    private static final int REMOVED_SLOT = -1;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private Object[] keys = new Object[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int[] stamps = new int[INITIAL_CAPACITY];
+    // Position in the arrays above plus one, EMPTY_SLOT or REMOVED_SLOT
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    // Number of used positions in keys and values, including removed ones
+    private int count = 0;
+    private int size = 0;
+    private int removedSlots = 0;
+
+    @Nullable
+    public Object get(@Nullable Object key) {
+        int position = find(mask(key));
+        return position < 0 ? null : values[position];
+    }
+
+    public boolean containsKey(@Nullable Object key) {
+        return find(mask(key)) >= 0;
+    }
+
+    /**
+     * @param stamp is kept only if the key was not in the table before
+     * @return true if the key was not in the table before
+     */
+    public boolean put(@Nullable Object key, Object value, int stamp) {
+        assert value != null : "Null values are not supported";
+
+        Object maskedKey = mask(key);
+        int position = find(maskedKey);
+        if (position >= 0) {
+            values[position] = value;
+            return false;
+        }
+
+        if (count == keys.length) {
+            growArrays();
+        }
+        if ((size + removedSlots + 1) * 4 > slots.length * 3) {
+            rehash(size + 1);
+        }
+
+        keys[count] = maskedKey;
+        values[count] = value;
+        stamps[count] = stamp;
+        count++;
+        size++;
+
+        int slot = hash(maskedKey) & (slots.length - 1);
+        while (slots[slot] > 0) {
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        if (slots[slot] == REMOVED_SLOT) {
+            removedSlots--;
+        }
+        slots[slot] = count;
+        return true;
+    }
+
+    @Nullable
+    public Object remove(@Nullable Object key) {
+        Object maskedKey = mask(key);
+        int slot = findSlot(maskedKey);
+        if (slot < 0) return null;
+
+        int position = slots[slot] - 1;
+        Object oldValue = values[position];
+        keys[position] = REMOVED;
+        values[position] = null;
+        slots[slot] = REMOVED_SLOT;
+        size--;
+        removedSlots++;
+        return oldValue;
+    }
+
+    public void clear() {
+        keys = new Object[INITIAL_CAPACITY];
+        values = new Object[INITIAL_CAPACITY];
+        stamps = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+        count = 0;
+        size = 0;
+        removedSlots = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Positions from 0 to getPositionCount() - 1 may be passed to {@link #getKeyAt}, {@link #getValueAt} and {@link #getStampAt},
+     * if {@link #isRemovedAt} is false for them
+     */
+    public int getPositionCount() {
+        return count;
+    }
+
+    public boolean isRemovedAt(int position) {
+        return keys[position] == REMOVED;
+    }
+
+    @Nullable
+    public Object getKeyAt(int position) {
+        Object key = keys[position];
+        return key == NULL_KEY ? null : key;
+    }
+
+    public Object getValueAt(int position) {
+        return values[position];
+    }
+
+    public int getStampAt(int position) {
+        return stamps[position];
+    }
+
+    private int find(Object maskedKey) {
+        int slot = findSlot(maskedKey);
+        return slot < 0 ? -1 : slots[slot] - 1;
+    }
+
+    private int findSlot(Object maskedKey) {
+        int mask = slots.length - 1;
+        int slot = hash(maskedKey) & mask;
+        while (true) {
+            int value = slots[slot];
+            if (value == EMPTY_SLOT) return -1;
+            if (value != REMOVED_SLOT) {
+                Object candidate = keys[value - 1];
+                if (candidate == maskedKey || candidate.equals(maskedKey)) return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void growArrays() {
+        int newLength = size * 2 > keys.length ? keys.length * 2 : keys.length;
+        Object[] newKeys = new Object[newLength];
+        Object[] newValues = new Object[newLength];
+        int[] newStamps = new int[newLength];
+
+        // Removed positions are dropped here, so the order of the remaining entries is kept
+        int newCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == REMOVED) continue;
+            newKeys[newCount] = keys[i];
+            newValues[newCount] = values[i];
+            newStamps[newCount] = stamps[i];
+            newCount++;
+        }
+
+        keys = newKeys;
+        values = newValues;
+        stamps = newStamps;
+        count = newCount;
+        rehash(size + 1);
+    }
+
+    private void rehash(int expectedSize) {
+        int capacity = slots.length;
+        while (expectedSize * 4 > capacity * 3) {
+            capacity *= 2;
+        }
+
+        slots = new int[capacity];
+        removedSlots = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == REMOVED) continue;
+
+            int slot = hash(keys[i]) & mask;
+            while (slots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    private static Object mask(@Nullable Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static int hash(Object maskedKey) {
+        int h = maskedKey.hashCode();
+        // Identity hash codes and many hashCode() implementations have poor low bits
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.preloading;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * A snapshot of resources of several jars: uncompressed bytes of all resources, preceded by an index.
+ *
+ * Format: magic, version, offset of the data, size of the data, jar stamps (path, last modified, length),
+ * resource count, resources (name, jar index, offset in the data, size). The data follows the index, resources are stored
+ * one after another. Resources that were loaded by the run which created the snapshot go first in the order of loading,
+ * so that the pages needed at startup are adjacent in the file.
+ *
+ * The data is mapped into memory and nothing is read until a resource is requested.
+ */
+/*package*/ class ClassArchive {
+    private static final int MAGIC = 0x4B505241;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private final List<File> jarFiles;
+    private final Map<String, Entry> entries;
+    private final ByteBuffer data;
+
+    private ClassArchive(List<File> jarFiles, Map<String, Entry> entries, ByteBuffer data) {
+        this.jarFiles = jarFiles;
+        this.entries = entries;
+        this.data = data;
+    }
+
+    public File getJarFile(String resourceName) {
+        Entry entry = entries.get(resourceName);
+        return entry == null ? null : jarFiles.get(entry.jarIndex);
+    }
+
+    /**
+     * @return a read-only view of the resource bytes, or null if there's no such resource
+     */
+    public ByteBuffer getBytes(String resourceName) {
+        Entry entry = entries.get(resourceName);
+        if (entry == null) return null;
+
+        ByteBuffer bytes = data.duplicate();
+        bytes.position(entry.offset);
+        bytes.limit(entry.offset + entry.size);
+        return bytes.slice();
+    }
+
+    /**
+     * @return null if the snapshot does not exist, is corrupted or was made from other versions of the jars
+     */
+    public static ClassArchive open(File snapshotFile, Collection<File> jarFiles) {
+        if (!snapshotFile.isFile()) return null;
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+            try {
+                long fileLength = file.length();
+                if (fileLength < HEADER_SIZE) return null;
+
+                if (file.readInt() != MAGIC || file.readInt() != VERSION) return null;
+                long dataOffset = file.readLong();
+                long dataSize = file.readLong();
+                if (dataOffset < HEADER_SIZE || dataOffset - HEADER_SIZE > Integer.MAX_VALUE) return null;
+                if (dataSize < 0 || dataSize > Integer.MAX_VALUE || dataOffset + dataSize != fileLength) return null;
+
+                byte[] indexBytes = new byte[(int) (dataOffset - HEADER_SIZE)];
+                file.readFully(indexBytes);
+                ByteArrayInputStream indexStream = new ByteArrayInputStream(indexBytes);
+                DataInputStream index = new DataInputStream(indexStream);
+
+                List<File> jars = new ArrayList<File>(jarFiles);
+                int jarCount = index.readInt();
+                if (jarCount != jars.size()) return null;
+                for (File jar : jars) {
+                    if (!jar.getAbsolutePath().equals(index.readUTF())) return null;
+                    if (jar.lastModified() != index.readLong() || jar.length() != index.readLong()) return null;
+                }
+
+                int entryCount = index.readInt();
+                if (entryCount < 0) return null;
+                Map<String, Entry> entries = new HashMap<String, Entry>(Math.min(entryCount, indexBytes.length) * 4 / 3 + 1);
+                long expectedOffset = 0;
+                for (int i = 0; i < entryCount; i++) {
+                    String name = index.readUTF();
+                    int jarIndex = index.readInt();
+                    int offset = index.readInt();
+                    int size = index.readInt();
+                    if (jarIndex < 0 || jarIndex >= jarCount || offset != expectedOffset || size < 0) return null;
+                    expectedOffset += size;
+                    if (expectedOffset > dataSize) return null;
+                    if (entries.put(name, new Entry(jarIndex, offset, size)) != null) return null;
+                }
+                if (expectedOffset != dataSize || indexStream.available() != 0) return null;
+
+                MappedByteBuffer data = file.getChannel().map(FileChannel.MapMode.READ_ONLY, dataOffset, dataSize);
+                return new ClassArchive(jars, entries, data);
+            }
+            finally {
+                // The mapping stays valid after the file is closed
+                file.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the resources, {@code loadedFirst} are placed in the beginning of the data.
+     * The snapshot is written to a temporary file which is then renamed, so that concurrent runs never see a partial snapshot.
+     */
+    public static void write(
+            File snapshotFile,
+            Collection<File> jarFiles,
+            Map<String, ClassPreloadingUtils.ResourceData> resources,
+            List<String> loadedFirst
+    ) throws IOException {
+        List<File> jars = new ArrayList<File>(jarFiles);
+        Map<File, Integer> jarIndices = new HashMap<File, Integer>();
+        for (int i = 0; i < jars.size(); i++) {
+            jarIndices.put(jars.get(i), i);
+        }
+
+        Set<String> order = new LinkedHashSet<String>();
+        for (String name : loadedFirst) {
+            if (resources.containsKey(name)) {
+                order.add(name);
+            }
+        }
+        order.addAll(resources.keySet());
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(order.size() * 64);
+        DataOutputStream index = new DataOutputStream(indexBytes);
+        index.writeInt(jars.size());
+        for (File jar : jars) {
+            index.writeUTF(jar.getAbsolutePath());
+            index.writeLong(jar.lastModified());
+            index.writeLong(jar.length());
+        }
+        index.writeInt(order.size());
+        int offset = 0;
+        for (String name : order) {
+            ClassPreloadingUtils.ResourceData resource = resources.get(name);
+            index.writeUTF(name);
+            index.writeInt(jarIndices.get(resource.jarFile));
+            index.writeInt(offset);
+            index.writeInt(resource.bytes.length);
+            if (resource.bytes.length > Integer.MAX_VALUE - offset) {
+                throw new IOException("Resources are too large for a snapshot");
+            }
+            offset += resource.bytes.length;
+        }
+        index.close();
+
+        File parent = snapshotFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        File tempFile = File.createTempFile(snapshotFile.getName(), ".tmp", parent);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(HEADER_SIZE + indexBytes.size());
+                output.writeLong(offset);
+                indexBytes.writeTo(output);
+                for (String name : order) {
+                    output.write(resources.get(name).bytes);
+                }
+            }
+            finally {
+                output.close();
+            }
+
+            if (!tempFile.renameTo(snapshotFile)) {
+                // On Windows an existing file is not replaced by renameTo()
+                if (!snapshotFile.delete() || !tempFile.renameTo(snapshotFile)) {
+                    throw new IOException("Cannot write " + snapshotFile);
+                }
+            }
+        }
+        finally {
+            if (tempFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final int jarIndex;
+        private final int offset;
+        private final int size;
+
+        private Entry(int jarIndex, int offset, int size) {
+            this.jarIndex = jarIndex;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
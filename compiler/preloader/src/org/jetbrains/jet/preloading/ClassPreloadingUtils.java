@@ -23,6 +23,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -58,7 +59,7 @@ public class ClassPreloadingUtils {
     ) throws IOException {
         Map<String, ResourceData> entries = loadAllClassesFromJars(jarFiles, classCountEstimation, handler);
 
-        return createMemoryBasedClassLoader(parent, entries, handler);
+        return createMemoryBasedClassLoader(parent, new PreloadedResources(entries), handler, null);
     }
 
     public static ClassLoader preloadClasses(
@@ -67,10 +68,44 @@ public class ClassPreloadingUtils {
         return preloadClasses(jarFiles, classCountEstimation, parent, null);
     }
 
+    /**
+     * Same as {@link #preloadClasses(Collection, int, ClassLoader, ClassHandler)}, but if {@code snapshotFile} is an up-to-date
+     * snapshot of the jars, classes are loaded lazily from the memory-mapped snapshot instead of reading the jars.
+     * Otherwise the jars are read as usual, and the snapshot is written on exit, with the classes loaded in this run going first.
+     *
+     * Classes are not instrumented when they are loaded from a snapshot, so {@link ClassHandler#instrument} must not change anything.
+     */
+    public static ClassLoader preloadClasses(
+            final Collection<File> jarFiles, int classCountEstimation, ClassLoader parent, ClassHandler handler, final File snapshotFile
+    ) throws IOException {
+        ClassArchive archive = ClassArchive.open(snapshotFile, jarFiles);
+        if (archive != null) {
+            return createMemoryBasedClassLoader(parent, new ArchivedResources(archive), handler, null);
+        }
+
+        final Map<String, ResourceData> entries = loadAllClassesFromJars(jarFiles, classCountEstimation, handler);
+        final List<String> loadedResources = Collections.synchronizedList(new ArrayList<String>());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ClassArchive.write(snapshotFile, jarFiles, entries, new ArrayList<String>(loadedResources));
+                }
+                catch (IOException e) {
+                    System.err.println("PRELOADER WARNING: Failed to write the snapshot " + snapshotFile + ": " + e.getMessage());
+                }
+            }
+        }));
+
+        return createMemoryBasedClassLoader(parent, new PreloadedResources(entries), handler, loadedResources);
+    }
+
     private static ClassLoader createMemoryBasedClassLoader(
             final ClassLoader parent,
-            final Map<String, ResourceData> preloadedResources,
-            final ClassHandler handler
+            final Resources preloadedResources,
+            final ClassHandler handler,
+            final List<String> loadedResources
     ) {
         return new ClassLoader(null) {
             @Override
@@ -89,15 +124,19 @@ public class ClassPreloadingUtils {
             @Override
             protected Class<?> findClass(String name) throws ClassNotFoundException {
                 String internalName = name.replace('.', '/').concat(".class");
-                ResourceData resourceData = preloadedResources.get(internalName);
-                if (resourceData == null) return null;
+                ByteBuffer bytes = preloadedResources.getBytes(internalName);
+                if (bytes == null) return null;
+
+                if (loadedResources != null) {
+                    loadedResources.add(internalName);
+                }
 
-                int sizeInBytes = resourceData.bytes.length;
+                int sizeInBytes = bytes.remaining();
                 if (handler != null) {
                     handler.beforeDefineClass(name, sizeInBytes);
                 }
 
-                Class<?> definedClass = defineClass(name, resourceData.bytes, 0, sizeInBytes);
+                Class<?> definedClass = defineClass(name, bytes, null);
 
                 if (handler != null) {
                     handler.afterDefineClass(name);
@@ -108,9 +147,9 @@ public class ClassPreloadingUtils {
 
             @Override
             protected URL findResource(String name) {
-                ResourceData resourceData = preloadedResources.get(name);
-                if (resourceData == null) return null;
-                return resourceData.getURL();
+                ByteBuffer bytes = preloadedResources.getBytes(name);
+                if (bytes == null) return null;
+                return createURL(preloadedResources.getJarFile(name), name, bytes);
             }
 
             @Override
@@ -162,7 +201,7 @@ public class ClassPreloadingUtils {
                         data = handler.instrument(name, data);
                     }
 
-                    resources.put(name, new ResourceData(jarFile, name, data));
+                    resources.put(name, new ResourceData(jarFile, data));
                 }
             }
             finally {
@@ -181,40 +220,84 @@ public class ClassPreloadingUtils {
         return resources;
     }
 
-    private static class ResourceData {
-        private final File jarFile;
-        private final String resourceName;
-        private final byte[] bytes;
+    private static URL createURL(File jarFile, String resourceName, final ByteBuffer bytes) {
+        try {
+            String path = "file:" + jarFile + "!/" + resourceName;
+            return new URL("jar", null, 0, path, new URLStreamHandler() {
+                @Override
+                protected URLConnection openConnection(URL u) throws IOException {
+                    return new URLConnection(u) {
+                        @Override
+                        public void connect() throws IOException {}
 
-        public ResourceData(File jarFile, String resourceName, byte[] bytes) {
-            this.jarFile = jarFile;
-            this.resourceName = resourceName;
-            this.bytes = bytes;
+                        @Override
+                        public InputStream getInputStream() throws IOException {
+                            byte[] data = new byte[bytes.remaining()];
+                            bytes.duplicate().get(data);
+                            return new ByteArrayInputStream(data);
+                        }
+                    };
+                }
+            });
         }
+        catch (MalformedURLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-        public URL getURL() {
-            try {
-                String path = "file:" + jarFile + "!/" + resourceName;
-                return new URL("jar", null, 0, path, new URLStreamHandler() {
-                    @Override
-                    protected URLConnection openConnection(URL u) throws IOException {
-                        return new URLConnection(u) {
-                            @Override
-                            public void connect() throws IOException {}
-
-                            @Override
-                            public InputStream getInputStream() throws IOException {
-                                return new ByteArrayInputStream(bytes);
-                            }
-                        };
-                    }
-                });
-            }
-            catch (MalformedURLException e) {
-                e.printStackTrace();
-                return null;
-            }
+    private interface Resources {
+        // null if there's no such resource
+        ByteBuffer getBytes(String resourceName);
+
+        File getJarFile(String resourceName);
+    }
+
+    private static class PreloadedResources implements Resources {
+        private final Map<String, ResourceData> resources;
+
+        public PreloadedResources(Map<String, ResourceData> resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public ByteBuffer getBytes(String resourceName) {
+            ResourceData resourceData = resources.get(resourceName);
+            return resourceData == null ? null : ByteBuffer.wrap(resourceData.bytes);
+        }
+
+        @Override
+        public File getJarFile(String resourceName) {
+            ResourceData resourceData = resources.get(resourceName);
+            return resourceData == null ? null : resourceData.jarFile;
+        }
+    }
+
+    private static class ArchivedResources implements Resources {
+        private final ClassArchive archive;
+
+        public ArchivedResources(ClassArchive archive) {
+            this.archive = archive;
+        }
+
+        @Override
+        public ByteBuffer getBytes(String resourceName) {
+            return archive.getBytes(resourceName);
+        }
+
+        @Override
+        public File getJarFile(String resourceName) {
+            return archive.getJarFile(resourceName);
         }
+    }
+
+    /*package*/ static class ResourceData {
+        /*package*/ final File jarFile;
+        /*package*/ final byte[] bytes;
 
+        public ResourceData(File jarFile, byte[] bytes) {
+            this.jarFile = jarFile;
+            this.bytes = bytes;
+        }
     }
 }
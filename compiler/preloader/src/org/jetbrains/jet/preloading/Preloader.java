@@ -14,6 +14,11 @@ public class Preloader {
     public static final int PRELOADER_ARG_COUNT = 4;
     private static final String INSTRUMENT_PREFIX = "instrument=";
 
+    /**
+     * Path to a snapshot of the jars, see {@link ClassPreloadingUtils#preloadClasses(Collection, int, ClassLoader, ClassPreloadingUtils.ClassHandler, File)}
+     */
+    public static final String SNAPSHOT_PROPERTY = "kotlin.preloader.snapshot";
+
     public static void main(String[] args) throws Exception {
         if (args.length < PRELOADER_ARG_COUNT) {
             printUsageAndExit();
@@ -44,7 +49,14 @@ public class Preloader {
         ClassLoader withInstrumenter = instrumentersClasspath.length > 0 ? new URLClassLoader(instrumentersClasspath, parent) : parent;
 
         final Handler handler = getHandler(mode, withInstrumenter);
-        ClassLoader preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, handler);
+        String snapshotPath = System.getProperty(SNAPSHOT_PROPERTY);
+        ClassLoader preloaded;
+        if (snapshotPath != null && mode != Mode.INSTRUMENT) {
+            preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, handler, new File(snapshotPath));
+        }
+        else {
+            preloaded = ClassPreloadingUtils.preloadClasses(files, classNumber, withInstrumenter, handler);
+        }
 
         Class<?> mainClass = preloaded.loadClass(mainClassCanonicalName);
         Method mainMethod = mainClass.getMethod("main", String[].class);
@@ -167,6 +179,7 @@ public class Preloader {
 
     private static void printUsageAndExit() {
         System.out.println("Usage: Preloader <paths to jars> <main class> <class number estimate> <notime|time|instrument=<instrumenters class path>> <parameters to pass to the main class>");
+        System.out.println("Pass -D" + SNAPSHOT_PROPERTY + "=<file> to load classes from a snapshot of the jars (ignored for instrument=...)");
         System.exit(1);
     }
 
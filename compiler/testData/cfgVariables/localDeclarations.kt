@@ -0,0 +1,46 @@
+fun localFunction() {
+    var a = 1
+    fun inner() {
+        val b: Int
+        b = a
+        a = b + 1
+    }
+    inner()
+    doSmth(a)
+}
+
+fun functionLiteral(n: Int) {
+    val c: Int
+    val f = { (x: Int) ->
+        var d = x
+        while (d < n) {
+            d = d + 1
+        }
+        d
+    }
+    c = f(n)
+    doSmth(c)
+}
+
+fun nestedLocalFunctions() {
+    var e: Int
+    fun inner1() {
+        fun inner2() {
+            e = 1
+        }
+        val g: Int
+        inner2()
+        doSmth(g)
+    }
+    inner1()
+}
+
+fun localObject() {
+    val h = 1
+    val o = object {
+        fun foo() = h
+    }
+    doSmth(o)
+}
+
+fun doSmth(a: Any?) = a
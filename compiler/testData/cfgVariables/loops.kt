@@ -0,0 +1,45 @@
+fun whileLoop(n: Int): Int {
+    var sum = 0
+    var i = 0
+    while (i < n) {
+        sum = sum + i
+        i = i + 1
+    }
+    return sum
+}
+
+fun doWhileLoop(n: Int) {
+    var i: Int
+    do {
+        i = n
+        doSmth(i)
+    } while (i > 0)
+    doSmth(i)
+}
+
+fun forLoop(n: Int) {
+    val last: Int
+    for (i in 0..n) {
+        val square = i * i
+        if (square > n) {
+            break
+        }
+        doSmth(square)
+    }
+    last = n
+    doSmth(last)
+}
+
+fun nestedLoops(n: Int) {
+    var x: Int
+    while (n > 0) {
+        while (n > 1) {
+            x = 1
+            if (n > 2) continue
+            doSmth(x)
+        }
+        x = 2
+    }
+}
+
+fun doSmth(a: Any?) = a
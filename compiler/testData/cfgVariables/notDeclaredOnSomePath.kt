@@ -0,0 +1,45 @@
+fun declaredInBranch(b: Boolean) {
+    if (b) {
+        val x = 1
+        doSmth(x)
+    }
+    else {
+        doSmth(2)
+    }
+}
+
+fun declaredInLoopBody(n: Int) {
+    while (n > 0) {
+        val a: Int
+        if (n > 1) {
+            a = 1
+        }
+        else {
+            a = 2
+        }
+        doSmth(a)
+    }
+}
+
+fun initializedOnSomePath(b: Boolean) {
+    val y: Int
+    if (b) {
+        y = 1
+    }
+    doSmth(y)
+}
+
+fun declaredInWhen(n: Int) {
+    when (n) {
+        1 -> {
+            var z = 1
+            z = z + 1
+        }
+        else -> {
+            val w: Int
+            doSmth(w)
+        }
+    }
+}
+
+fun doSmth(a: Any?) = a
@@ -0,0 +1,53 @@
+fun initializedInTry() {
+    val s: String
+    try {
+        s = ""
+    }
+    finally {
+        doSmth(1)
+    }
+    doSmth(s)
+}
+
+fun initializedInFinally() {
+    var a: Int
+    try {
+        doSmth(1)
+    }
+    finally {
+        a = 2
+    }
+    doSmth(a)
+}
+
+fun returnFromTry(b: Boolean): Int {
+    var a = 1
+    try {
+        if (b) return a
+        a = 2
+    }
+    catch (e: Exception) {
+        a = 3
+        doSmth(e)
+    }
+    finally {
+        doSmth(a)
+    }
+    return a
+}
+
+fun loopInTry(n: Int) {
+    var i = 0
+    try {
+        while (i < n) {
+            val x: Int
+            x = i
+            i = x + 1
+        }
+    }
+    finally {
+        i = 0
+    }
+}
+
+fun doSmth(a: Any?) = a
@@ -0,0 +1,26 @@
+open class Base {
+    fun name() = "Base"
+}
+
+trait Named
+
+class A : Base(), Named
+class B : Base(), Named
+
+// B is declared after the function whose frames need the common superclass of A and B
+fun choose(flag: Boolean): String {
+    val x = if (flag) A() else B()
+    return x.name()
+}
+
+fun chooseList(flag: Boolean): java.util.AbstractList<String> {
+    val list = if (flag) java.util.ArrayList<String>() else java.util.LinkedList<String>()
+    list.add("x")
+    return list
+}
+
+fun box(): String {
+    if (choose(true) != "Base" || choose(false) != "Base") return "Fail 1"
+    if (chooseList(true).size() != 1 || chooseList(false).size() != 1) return "Fail 2"
+    return "OK"
+}
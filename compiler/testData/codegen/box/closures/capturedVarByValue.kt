@@ -0,0 +1,68 @@
+fun apply(f: () -> Int) = f()
+
+var saved: () -> Int = { 0 }
+
+fun register(value: Int, f: () -> Int): Int {
+    saved = f
+    return value
+}
+
+fun writtenBeforeCapture(): Int {
+    var x = 1
+    x += 1
+    val f = { x }
+    return f()
+}
+
+fun writtenAfterCapture(): Int {
+    var x = 1
+    val f = { x }
+    x = 5
+    return f()
+}
+
+fun writtenByCapturingExpression(): Int {
+    var x = 1
+    x = register(5) { x }
+    return saved()
+}
+
+fun writtenInLoop(): Int {
+    var x = 0
+    var f = { 0 }
+    for (i in 1..3) {
+        x = i
+        if (i == 2) f = { x }
+    }
+    return f()
+}
+
+fun writtenInClosure(): Int {
+    var x = 0
+    apply { x = 7; 0 }
+    return x
+}
+
+fun capturedInLocalFunction(): Int {
+    var x = 1
+    x *= 3
+    fun get() = x
+    return get()
+}
+
+fun capturedStatelessLocalFunction(): Int {
+    fun one() = 1
+    val f = { one() + one() }
+    return f()
+}
+
+fun box(): String {
+    if (writtenBeforeCapture() != 2) return "Fail 1"
+    if (writtenAfterCapture() != 5) return "Fail 2"
+    if (writtenInLoop() != 3) return "Fail 3"
+    if (writtenByCapturingExpression() != 5) return "Fail 7"
+    if (writtenInClosure() != 7) return "Fail 4"
+    if (capturedInLocalFunction() != 3) return "Fail 5"
+    if (capturedStatelessLocalFunction() != 2) return "Fail 6"
+    return "OK"
+}
@@ -0,0 +1,50 @@
+class Ints(val n: Int) {
+    fun iterator(): IntIterator = object : IntIterator() {
+        var i = 0
+        override fun hasNext() = i < n
+        override fun nextInt() = i++
+    }
+}
+
+class Longs(val n: Long) {
+    fun iterator() = LongCountdown(n)
+}
+
+class LongCountdown(var n: Long) : LongIterator() {
+    override fun hasNext() = n > 0
+    override fun nextLong() = n--
+}
+
+class Chars(val s: String) {
+    fun iterator(): CharIterator = object : CharIterator() {
+        var i = 0
+        override fun hasNext() = i < s.length
+        override fun nextChar() = s[i++]
+    }
+}
+
+fun box(): String {
+    var sum = 0
+    for (i in Ints(5)) {
+        sum += i
+    }
+    if (sum != 10) return "Fail Int: $sum"
+
+    var nullableSum = 0
+    for (i: Int? in Ints(5)) {
+        nullableSum += i!!
+    }
+    if (nullableSum != 10) return "Fail Int?: $nullableSum"
+
+    var longSum = 0L
+    for (l in Longs(4)) {
+        longSum += l
+    }
+    if (longSum != 10L) return "Fail Long: $longSum"
+
+    val sb = StringBuilder()
+    for (c in Chars("OK")) {
+        sb.append(c)
+    }
+    return sb.toString()
+}
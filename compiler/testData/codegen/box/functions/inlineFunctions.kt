@@ -0,0 +1,43 @@
+inline fun <T> myRun(f: () -> T): T = f()
+
+inline fun Int.clamp(min: Int, max: Int): Int {
+    if (this < min) return min
+    if (this > max) return max
+    return this
+}
+
+inline fun repeatUntil(limit: Int, body: (Int) -> Boolean): Int {
+    var i = 0
+    while (i < limit) {
+        if (!body(i)) break
+        i++
+    }
+    return i
+}
+
+inline fun <T> T.verify(message: String, condition: (T) -> Boolean): T {
+    if (!condition(this)) throw AssertionError(message)
+    return this
+}
+
+fun box(): String {
+    var sum = 0
+    val count = repeatUntil(10) { sum += it; sum < 10 }
+    if (count != 4) return "fail count: $count"
+    if (sum != 10) return "fail sum: $sum"
+
+    var shared = 0
+    repeatUntil(3) { shared++; true }
+    val increment = { shared++ }
+    increment()
+    if (shared != 4) return "fail shared: $shared"
+
+    if (15.clamp(0, 10) != 10) return "fail clamp max"
+    if ((-1).clamp(0, 10) != 0) return "fail clamp min"
+    if (5.clamp(0, 10) != 5) return "fail clamp"
+
+    if (myRun { 1 + 2L } != 3L) return "fail run"
+
+    val o = "O".verify("not O") { it == "O" }
+    return myRun { o + "K" }
+}
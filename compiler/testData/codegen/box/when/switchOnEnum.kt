@@ -0,0 +1,29 @@
+enum class Direction {
+    NORTH
+    EAST
+    SOUTH
+    WEST
+}
+
+fun turn(d: Direction): Direction = when (d) {
+    Direction.NORTH -> Direction.EAST
+    Direction.EAST -> Direction.SOUTH
+    Direction.SOUTH -> Direction.WEST
+    Direction.WEST -> Direction.NORTH
+}
+
+fun isVertical(d: Direction?): Boolean = when (d) {
+    Direction.NORTH, Direction.SOUTH -> true
+    else -> false
+}
+
+fun box(): String {
+    if (turn(Direction.NORTH) != Direction.EAST) return "fail NORTH"
+    if (turn(Direction.WEST) != Direction.NORTH) return "fail WEST"
+    if (turn(turn(Direction.EAST)) != Direction.WEST) return "fail EAST"
+
+    if (!isVertical(Direction.SOUTH)) return "fail SOUTH"
+    if (isVertical(Direction.EAST)) return "fail EAST is vertical"
+    if (isVertical(null)) return "fail null"
+    return "OK"
+}
@@ -0,0 +1,36 @@
+fun name(x: Int): String = when (x) {
+    0 -> "zero"
+    1, 2 -> "small"
+    10 -> "ten"
+    1000000 -> "million"
+    else -> "other"
+}
+
+fun dense(x: Int): Int {
+    when (x) {
+        1 -> return 10
+        2 -> return 20
+        3 -> return 30
+        4 -> return 40
+    }
+    return 0
+}
+
+fun vowel(c: Char): Boolean = when (c) {
+    'a', 'e', 'i', 'o', 'u' -> true
+    else -> false
+}
+
+fun box(): String {
+    if (name(0) != "zero") return "fail 0"
+    if (name(2) != "small") return "fail 2"
+    if (name(10) != "ten") return "fail 10"
+    if (name(1000000) != "million") return "fail 1000000"
+    if (name(3) != "other") return "fail 3"
+    if (name(-1) != "other") return "fail -1"
+
+    if (dense(3) != 30 || dense(5) != 0 || dense(0) != 0) return "fail dense"
+
+    if (!vowel('e') || vowel('z')) return "fail char"
+    return "OK"
+}
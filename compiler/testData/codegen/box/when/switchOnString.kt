@@ -0,0 +1,18 @@
+fun code(s: String?): Int = when (s) {
+    "Aa" -> 1
+    "BB" -> 2
+    "" -> 3
+    "hello", "world" -> 4
+    else -> 0
+}
+
+fun box(): String {
+    // "Aa" and "BB" have the same hash code
+    if (code(StringBuilder().append("A").append("a").toString()) != 1) return "fail Aa"
+    if (code("BB") != 2) return "fail BB"
+    if (code("") != 3) return "fail empty"
+    if (code("world") != 4) return "fail world"
+    if (code("C#") != 0) return "fail other"
+    if (code(null) != 0) return "fail null"
+    return "OK"
+}
@@ -0,0 +1,21 @@
+fun apply(f: () -> Int) = f()
+
+fun writtenBeforeCapture(p: Int): Int {
+    var x = p
+    if (x < 0) x = -x
+    return apply { x }
+}
+
+fun writtenInClosure(): Int {
+    var y = 0
+    apply { y++ }
+    return y
+}
+
+fun capturedLocalFunction(): Int {
+    fun one() = 1
+    return apply { one() }
+}
+
+// 1 NEW jet/runtime/SharedVar\$Int
+// 0 \$one
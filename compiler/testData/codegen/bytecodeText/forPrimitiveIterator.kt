@@ -0,0 +1,19 @@
+class Countdown(var n: Int) : IntIterator() {
+    override fun hasNext() = n > 0
+    override fun nextInt() = n--
+}
+
+class Numbers(val n: Int) {
+    fun iterator() = Countdown(n)
+}
+
+fun sum(): Int {
+    var sum = 0
+    for (i in Numbers(10)) {
+        sum += i
+    }
+    return sum
+}
+
+// 1 INVOKEVIRTUAL jet/IntIterator\.nextInt
+// 0 INVOKEVIRTUAL Countdown\.next \(\)
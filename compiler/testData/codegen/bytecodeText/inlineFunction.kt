@@ -0,0 +1,16 @@
+inline fun <T> myRun(f: () -> T): T = f()
+
+inline fun Int.twice(f: (Int) -> Int): Int {
+    if (this < 0) return 0
+    return f(f(this))
+}
+
+class A {
+    fun test(x: Int): Int {
+        val y = myRun { x + 1 }
+        return y.twice { it * 2 }
+    }
+}
+
+// 0 A\$test\$
+// 2 IMUL
@@ -0,0 +1,24 @@
+inline fun repeatTimes(n: Int, body: (Int) -> Unit) {
+    var i = 0
+    while (i < n) {
+        body(i)
+        i++
+    }
+}
+
+fun sum(n: Int): Int {
+    var result = 0
+    repeatTimes(n) { result += it }
+    return result
+}
+
+fun mixed(): Int {
+    var x = 0
+    repeatTimes(2) { x++ }
+    val f = { x++ }
+    f()
+    return x
+}
+
+// 0 \$sum\$
+// 1 NEW jet/runtime/SharedVar\$Int
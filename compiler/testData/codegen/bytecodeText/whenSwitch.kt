@@ -0,0 +1,34 @@
+enum class E {
+    A
+    B
+    C
+}
+
+fun dense(x: Int) = when (x) {
+    1 -> "a"
+    2 -> "b"
+    3 -> "c"
+    else -> ""
+}
+
+fun sparse(x: Int) = when (x) {
+    1 -> "a"
+    1000 -> "b"
+    1000000 -> "c"
+    else -> ""
+}
+
+fun byEnum(x: E) = when (x) {
+    E.A -> 1
+    E.B -> 2
+    else -> 3
+}
+
+fun byString(x: String) = when (x) {
+    "a" -> 1
+    "b" -> 2
+    else -> 3
+}
+
+// 3 TABLESWITCH
+// 1 LOOKUPSWITCH
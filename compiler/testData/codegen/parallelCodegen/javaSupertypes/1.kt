@@ -0,0 +1,12 @@
+package first
+
+import java.util.AbstractList
+
+class Numbers(val size: Int) : AbstractList<Int>() {
+    override fun get(index: Int): Int = index
+    override fun size(): Int = size
+}
+
+class Task : Runnable {
+    override fun run() {}
+}
@@ -0,0 +1,12 @@
+package second
+
+import java.util.AbstractMap
+import java.util.HashSet
+
+class EmptyMap : AbstractMap<String, Int>() {
+    override fun entrySet(): MutableSet<MutableMap.MutableEntry<String, Int>> = HashSet()
+}
+
+class Delegating(list: MutableList<String>) : MutableList<String> by list, Comparable<Delegating> {
+    override fun compareTo(other: Delegating): Int = size() - other.size()
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.common.daemon;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.cli.common.ExitCode;
+import org.jetbrains.jet.cli.jvm.K2JVMCompiler;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.test.Tmpdir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompilerDaemonTest {
+    private static final long DAEMON_START_TIMEOUT_MILLIS = 10 * 1000;
+    private static final String[] HELP_ARGUMENTS = {"-help"};
+
+    @Rule
+    public final Tmpdir tmpdir = new Tmpdir();
+
+    private File daemonFile;
+    private Thread daemonThread;
+
+    @Before
+    public void startDaemon() throws Exception {
+        daemonFile = new File(tmpdir.getTmpDir(), "daemon");
+        daemonThread = new Thread("Compiler daemon") {
+            @Override
+            public void run() {
+                try {
+                    CompilerDaemon.main(new String[] {daemonFile.getPath()});
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        daemonThread.start();
+
+        long deadline = System.currentTimeMillis() + DAEMON_START_TIMEOUT_MILLIS;
+        while (readDaemonFile() == null) {
+            assertTrue("Daemon hasn't started", System.currentTimeMillis() < deadline && daemonThread.isAlive());
+            Thread.sleep(10);
+        }
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        CompilerDaemonClient.shutdown(daemonFile);
+        daemonThread.join(DAEMON_START_TIMEOUT_MILLIS);
+        JetCoreEnvironment.setKeepApplicationEnvironment(false);
+        JetCoreEnvironment.disposeApplicationEnvironment();
+    }
+
+    @Test
+    public void compileThroughDaemon() throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ExitCode expectedExitCode = new K2JVMCompiler().exec(new PrintStream(expected), HELP_ARGUMENTS);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        ExitCode exitCode = CompilerDaemonClient.compile(daemonFile, K2JVMCompiler.class.getName(), HELP_ARGUMENTS,
+                                                         new PrintStream(actual));
+
+        assertEquals(expectedExitCode, exitCode);
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void changedLibraryJarIsReindexed() throws Exception {
+        File libraryJar = new File(tmpdir.getTmpDir(), "library.jar");
+        File usage = writeSource("usage.kt", "package usage\n\nfun bar() = library.foo()\n");
+        String[] compileUsage = {"-src", usage.getPath(), "-classpath", libraryJar.getPath(),
+                "-output", new File(tmpdir.getTmpDir(), "out").getPath()};
+
+        compileLibrary(libraryJar, "package library\n\nfun foo() = 1\n");
+        assertEquals(ExitCode.OK, compile(compileUsage));
+
+        long oldStamp = libraryJar.lastModified();
+        compileLibrary(libraryJar, "package library\n\nfun baz() = 1\n");
+        assertTrue(libraryJar.setLastModified(oldStamp + 2000));
+        assertEquals("foo() is not in the library anymore", ExitCode.COMPILATION_ERROR, compile(compileUsage));
+    }
+
+    @Test
+    public void unknownCompilerRejected() throws Exception {
+        PrintStream out = new PrintStream(new ByteArrayOutputStream());
+        assertNull(CompilerDaemonClient.compile(daemonFile, String.class.getName(), HELP_ARGUMENTS, out));
+    }
+
+    @Test
+    public void otherWorkingDirectoryRejected() throws Exception {
+        List<String> lines = readDaemonFile();
+        assertNotNull(lines);
+
+        Socket socket = sendRequest(lines, tmpdir.getTmpDir().getCanonicalPath());
+        try {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            assertEquals(CompilerDaemon.STATUS_REJECTED, input.readInt());
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void wrongTokenIgnored() throws Exception {
+        List<String> lines = readDaemonFile();
+        assertNotNull(lines);
+
+        // Only the token is sent: it is all the daemon reads before closing the connection
+        Socket socket = new Socket(InetAddress.getByName(null), Integer.parseInt(lines.get(0)));
+        try {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeUTF("wrong" + lines.get(1));
+            output.flush();
+            assertEquals("Nothing should be answered to a request with a wrong token", -1, socket.getInputStream().read());
+        }
+        finally {
+            socket.close();
+        }
+
+        // The daemon keeps serving other requests
+        ExitCode exitCode = CompilerDaemonClient.compile(daemonFile, K2JVMCompiler.class.getName(), HELP_ARGUMENTS,
+                                                         new PrintStream(new ByteArrayOutputStream()));
+        assertNotNull(exitCode);
+    }
+
+    @Test
+    public void shutdown() throws Exception {
+        CompilerDaemonClient.shutdown(daemonFile);
+        daemonThread.join(DAEMON_START_TIMEOUT_MILLIS);
+
+        assertFalse(daemonThread.isAlive());
+        assertFalse(daemonFile.exists());
+        assertNull(CompilerDaemonClient.compile(daemonFile, K2JVMCompiler.class.getName(), HELP_ARGUMENTS,
+                                                new PrintStream(new ByteArrayOutputStream())));
+    }
+
+    private void compileLibrary(@NotNull File jar, @NotNull String text) throws Exception {
+        File source = writeSource("library.kt", text);
+        assertEquals(ExitCode.OK, compile(new String[] {"-src", source.getPath(), "-jar", jar.getPath()}));
+    }
+
+    @NotNull
+    private File writeSource(@NotNull String name, @NotNull String text) throws IOException {
+        File file = new File(tmpdir.getTmpDir(), name);
+        FileUtil.writeToFile(file, text);
+        return file;
+    }
+
+    @Nullable
+    private ExitCode compile(@NotNull String[] arguments) {
+        return CompilerDaemonClient.compile(daemonFile, K2JVMCompiler.class.getName(), arguments,
+                                            new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    // Sends a compilation request the way CompilerDaemonClient does, but from the given working directory
+    @NotNull
+    private static Socket sendRequest(@NotNull List<String> daemonFileLines, @NotNull String workingDirectory) throws IOException {
+        Socket socket = new Socket(InetAddress.getByName(null), Integer.parseInt(daemonFileLines.get(0)));
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        output.writeUTF(daemonFileLines.get(1));
+        output.writeUTF(workingDirectory);
+        output.writeUTF(K2JVMCompiler.class.getName());
+        output.writeInt(HELP_ARGUMENTS.length);
+        for (String argument : HELP_ARGUMENTS) {
+            output.writeUTF(argument);
+        }
+        output.flush();
+        return socket;
+    }
+
+    @Nullable
+    private List<String> readDaemonFile() throws IOException {
+        if (!daemonFile.isFile()) return null;
+        List<String> lines = FileUtil.loadLines(daemonFile);
+        return lines.size() == 2 ? lines : null;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.cli.jvm.compiler;
+
+import com.intellij.openapi.util.SystemInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.test.Tmpdir;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class JarClassIndexTest {
+    private static final long ENTRY_TIME = 1000000000000L;
+    private static final byte[] ENTRY_CONTENT = {1, 2, 3};
+
+    @Rule
+    public final Tmpdir tmpdir = new Tmpdir();
+
+    private String oldCacheDir;
+    private File cacheDir;
+
+    @Before
+    public void setUp() {
+        oldCacheDir = System.getProperty(JarClassIndex.CACHE_DIR_PROPERTY);
+        cacheDir = new File(tmpdir.getTmpDir(), "cache");
+        System.setProperty(JarClassIndex.CACHE_DIR_PROPERTY, cacheDir.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        if (oldCacheDir == null) {
+            System.clearProperty(JarClassIndex.CACHE_DIR_PROPERTY);
+        }
+        else {
+            System.setProperty(JarClassIndex.CACHE_DIR_PROPERTY, oldCacheDir);
+        }
+    }
+
+    @Test
+    public void classesOfJar() throws Exception {
+        File jar = createJar("test.jar", "a/A.class", "a/A$Nested.class", "a/resource.txt");
+
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        assertClassFile(index, "a.A", "a/A.class");
+        assertClassFile(index, "a.A.Nested", "a/A$Nested.class");
+        assertEquals(-1, index.findClassFile("a.B"));
+        assertEquals(-1, index.findClassFile("a.resource"));
+    }
+
+    @Test
+    public void storedAndDeflatedEntries() throws Exception {
+        File jar = new File(tmpdir.getTmpDir(), "methods.jar");
+        byte[] content = "class file contents, class file contents, class file contents".getBytes("UTF-8");
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            ZipEntry deflated = new ZipEntry("a/Deflated.class");
+            output.putNextEntry(deflated);
+            output.write(content);
+            output.closeEntry();
+
+            ZipEntry stored = new ZipEntry("a/Stored.class");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(content.length);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            stored.setCrc(crc.getValue());
+            output.putNextEntry(stored);
+            output.write(content);
+            output.closeEntry();
+        }
+        finally {
+            output.close();
+        }
+
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        for (String name : new String[] {"a.Deflated", "a.Stored"}) {
+            JarClassIndex.ClassFile classFile = index.readClassFile(index.findClassFile(name));
+            assertNotNull(name, classFile);
+            assertArrayEquals(name, content, classFile.getBytes());
+        }
+    }
+
+    @Test
+    public void classFileOfOtherClass() throws Exception {
+        File jar = createJar("test.jar", "a/b/C.class");
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        JarClassIndex.ClassFile classFile = index.readClassFile(index.findClassFile("a.b.C"));
+        assertNotNull(classFile);
+
+        assertTrue(classFile.isClassFileOf("a.b.C"));
+        assertFalse(classFile.isClassFileOf("a.b.D"));
+        assertFalse(classFile.isClassFileOf("a.b"));
+        assertFalse(classFile.isClassFileOf("a.b.C.D"));
+    }
+
+    @Test
+    public void cachedIndexIsReused() throws Exception {
+        File jar = createJar("test.jar", "a/A.class");
+        assertNotNull(JarClassIndex.load(jar));
+
+        File[] cacheFiles = cacheDir.listFiles();
+        assertNotNull(cacheFiles);
+        assertEquals(1, cacheFiles.length);
+        long cacheModified = cacheFiles[0].lastModified();
+
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        assertClassFile(index, "a.A", "a/A.class");
+        assertEquals(-1, index.findClassFile("a.B"));
+        assertEquals("The cached index should be read, not written again", cacheModified, cacheFiles[0].lastModified());
+    }
+
+    @Test
+    public void jarRewrittenWithSameStamp() throws Exception {
+        File jar = createJar("test.jar", "a/A.class");
+        long lastModified = jar.lastModified();
+        long length = jar.length();
+        assertNotNull(JarClassIndex.load(jar));
+
+        // Same length of the entry name gives the same length of the jar and the same end of central directory record
+        createJar("test.jar", "b/B.class");
+        assertTrue(jar.setLastModified(lastModified));
+        assertEquals(length, jar.length());
+
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        assertClassFile(index, "b.B", "b/B.class");
+        assertEquals(-1, index.findClassFile("a.A"));
+    }
+
+    @Test
+    public void stamp() throws Exception {
+        File first = createJar("first.jar", "a/A.class");
+        File same = createJar("same.jar", "a/A.class");
+        File other = createJar("other.jar", "b/B.class");
+        assertTrue(same.setLastModified(first.lastModified()));
+        assertTrue(other.setLastModified(first.lastModified()));
+
+        assertEquals(stampOf(first), stampOf(same));
+        assertFalse(stampOf(first).equals(stampOf(other)));
+    }
+
+    @Test
+    public void cachingDisabled() throws Exception {
+        System.setProperty(JarClassIndex.CACHE_DIR_PROPERTY, "none");
+        File jar = createJar("test.jar", "a/A.class");
+
+        JarClassIndex index = JarClassIndex.load(jar);
+        assertNotNull(index);
+        assertClassFile(index, "a.A", "a/A.class");
+        assertFalse(cacheDir.exists());
+    }
+
+    @Test
+    public void cacheDirIsPrivate() throws Exception {
+        File dir = JarClassIndex.getCacheDir();
+        assertEquals(cacheDir, dir);
+        assertTrue(dir.isDirectory());
+        if (!SystemInfo.isWindows) {
+            // Restricting access again succeeds only for the owner of the directory
+            assertTrue(dir.setReadable(false, false) && dir.setReadable(true, true));
+        }
+    }
+
+    @Test
+    public void defaultCacheDirIsInUserHome() throws Exception {
+        File userHome = new File(System.getProperty("user.home"));
+        File dir = JarClassIndex.getDefaultCacheDir();
+        assertTrue(dir.getPath(), dir.getPath().startsWith(userHome.getPath()));
+    }
+
+    @Test
+    public void notAJar() throws Exception {
+        File file = new File(tmpdir.getTmpDir(), "notAJar.jar");
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write("not a zip file".getBytes("UTF-8"));
+        }
+        finally {
+            output.close();
+        }
+
+        assertNull(JarClassIndex.Stamp.read(file));
+        assertNull(JarClassIndex.load(file));
+    }
+
+    private static void assertClassFile(@NotNull JarClassIndex index, @NotNull String qName, @NotNull String path) {
+        int entry = index.findClassFile(qName);
+        assertTrue(qName, entry >= 0);
+        JarClassIndex.ClassFile classFile = index.readClassFile(entry);
+        assertNotNull(qName, classFile);
+        assertEquals(path, classFile.getPath());
+        assertTrue(classFile.isClassFileOf(qName));
+        assertArrayEquals(ENTRY_CONTENT, classFile.getBytes());
+    }
+
+    @NotNull
+    private static String stampOf(@NotNull File jar) throws IOException {
+        JarClassIndex.Stamp stamp = JarClassIndex.Stamp.read(jar);
+        assertNotNull(stamp);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        stamp.write(output);
+        output.close();
+        return Arrays.toString(bytes.toByteArray());
+    }
+
+    // Entries have the same time and contents, so that jars with names of the same length have the same length
+    @NotNull
+    private File createJar(@NotNull String name, @NotNull String... entries) throws IOException {
+        File jar = new File(tmpdir.getTmpDir(), name);
+        ZipOutputStream output = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            for (String entryName : entries) {
+                ZipEntry entry = new ZipEntry(entryName);
+                entry.setTime(ENTRY_TIME);
+                output.putNextEntry(entry);
+                output.write(ENTRY_CONTENT);
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+        return jar;
+    }
+}
@@ -52,11 +52,31 @@ public class BytecodeTextTestGenerated extends AbstractBytecodeTextTest {
         doTest("compiler/testData/codegen/bytecodeText/annotationRetentionPolicySource.kt");
     }
     
+    @TestMetadata("capturedVarByValue.kt")
+    public void testCapturedVarByValue() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/capturedVarByValue.kt");
+    }
+    
     @TestMetadata("componentEvaluatesOnlyOnce.kt")
     public void testComponentEvaluatesOnlyOnce() throws Exception {
         doTest("compiler/testData/codegen/bytecodeText/componentEvaluatesOnlyOnce.kt");
     }
     
+    @TestMetadata("forPrimitiveIterator.kt")
+    public void testForPrimitiveIterator() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/forPrimitiveIterator.kt");
+    }
+    
+    @TestMetadata("inlineFunction.kt")
+    public void testInlineFunction() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/inlineFunction.kt");
+    }
+    
+    @TestMetadata("inlineLambdaCapturedVar.kt")
+    public void testInlineLambdaCapturedVar() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/inlineLambdaCapturedVar.kt");
+    }
+    
     @TestMetadata("intConstantNotNull.kt")
     public void testIntConstantNotNull() throws Exception {
         doTest("compiler/testData/codegen/bytecodeText/intConstantNotNull.kt");
@@ -102,6 +122,11 @@ public class BytecodeTextTestGenerated extends AbstractBytecodeTextTest {
         doTest("compiler/testData/codegen/bytecodeText/topLevelFunWithDefaultArgs.kt");
     }
     
+    @TestMetadata("whenSwitch.kt")
+    public void testWhenSwitch() throws Exception {
+        doTest("compiler/testData/codegen/bytecodeText/whenSwitch.kt");
+    }
+    
     @TestMetadata("compiler/testData/codegen/bytecodeText/directInvoke")
     public static class DirectInvoke extends AbstractBytecodeTextTest {
         public void testAllFilesPresentInDirectInvoke() throws Exception {
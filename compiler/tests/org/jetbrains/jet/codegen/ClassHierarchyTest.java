@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import org.jetbrains.asm4.Opcodes;
+import org.jetbrains.jet.ConfigurationKind;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.codegen.state.JetTypeMapper;
+import org.jetbrains.jet.lang.resolve.BindingTraceContext;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+
+public class ClassHierarchyTest extends KotlinTestWithEnvironment {
+    private static final String OBJECT = "java/lang/Object";
+
+    private ClassHierarchy hierarchy;
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        hierarchy = new ClassHierarchy(new JetTypeMapper(new BindingTraceContext(), ClassBuilderMode.FULL), getProject());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        hierarchy = null;
+        super.tearDown();
+    }
+
+    public void testClassesFromClasspath() {
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+        assertEquals("java/lang/Number", hierarchy.getCommonSuperClass("java/lang/Integer", "java/lang/Long"));
+        assertEquals(OBJECT, hierarchy.getCommonSuperClass("java/lang/Runnable", "java/lang/Thread"));
+    }
+
+    public void testGeneratedClasses() {
+        hierarchy.classDefined("test/Base", Opcodes.ACC_PUBLIC, OBJECT, null);
+        hierarchy.classDefined("test/A", Opcodes.ACC_PUBLIC, "test/Base", null);
+        hierarchy.classDefined("test/B", Opcodes.ACC_PUBLIC, "test/Base", new String[] {"test/I"});
+        hierarchy.classDefined("test/I", Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE, OBJECT, null);
+
+        assertEquals("test/Base", hierarchy.getCommonSuperClass("test/A", "test/B"));
+        assertEquals("test/I", hierarchy.getCommonSuperClass("test/B", "test/I"));
+        assertEquals(OBJECT, hierarchy.getCommonSuperClass("test/A", "test/I"));
+    }
+
+    // With parallel generation, a class may be asked about before the thread generating it has defined it
+    public void testClassDefinedAfterMiss() {
+        assertEquals(OBJECT, hierarchy.getCommonSuperClass("test/A", "test/B"));
+        assertEquals(OBJECT, hierarchy.getCommonSuperClass("test/A", "java/util/ArrayList"));
+
+        hierarchy.classDefined("test/B", Opcodes.ACC_PUBLIC, "java/util/AbstractList", null);
+        hierarchy.classDefined("test/A", Opcodes.ACC_PUBLIC, "test/B", null);
+
+        assertEquals("test/B", hierarchy.getCommonSuperClass("test/A", "test/B"));
+        assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("test/A", "java/util/ArrayList"));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.codegen;
+
+import com.intellij.testFramework.UsefulTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.ConfigurationKind;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.TestJdkKind;
+import org.jetbrains.jet.cli.jvm.JVMConfigurationKeys;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.codegen.state.Progress;
+import org.jetbrains.jet.config.CompilerConfiguration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.jetbrains.jet.codegen.CodegenTestUtil.generateFiles;
+
+public class ParallelCodegenTest extends UsefulTestCase {
+    public void testNestedPackages() {
+        doTest("boxMultiFile/nestedPackages/1.kt", "boxMultiFile/nestedPackages/2.kt");
+    }
+
+    public void testKt2060() {
+        doTest("boxMultiFile/kt2060/1.kt", "boxMultiFile/kt2060/2.kt");
+    }
+
+    public void testJavaSupertypes() {
+        doTest("parallelCodegen/javaSupertypes/1.kt", "parallelCodegen/javaSupertypes/2.kt");
+    }
+
+    public void testProgressReportedOnOneThread() {
+        String[] files = {"boxMultiFile/nestedPackages/1.kt", "boxMultiFile/nestedPackages/2.kt"};
+        RecordingProgress sequential = new RecordingProgress();
+        generateToText(false, sequential, files);
+        RecordingProgress parallel = new RecordingProgress();
+        generateToText(true, parallel, files);
+
+        assertFalse(sequential.outputs.isEmpty());
+        assertEquals(sequential.outputs, parallel.outputs);
+        assertFalse("Progress was called from a codegen worker thread", parallel.calledFromOtherThread);
+    }
+
+    private void doTest(@NotNull String... files) {
+        assertEquals(generateToText(false, Progress.DEAF, files), generateToText(true, Progress.DEAF, files));
+    }
+
+    @NotNull
+    private String generateToText(boolean parallel, @NotNull Progress progress, @NotNull String... files) {
+        CompilerConfiguration configuration = JetTestUtils.compilerConfigurationForTests(ConfigurationKind.ALL, TestJdkKind.MOCK_JDK);
+        configuration.put(JVMConfigurationKeys.PARALLEL_CODEGEN, parallel);
+        JetCoreEnvironment environment = JetCoreEnvironment.createForTests(getTestRootDisposable(), configuration);
+        return generateFiles(environment, CodegenTestFiles.create(environment.getProject(), files), progress).createText();
+    }
+
+    private static class RecordingProgress implements Progress {
+        private final Thread thread = Thread.currentThread();
+        private final List<String> outputs = new ArrayList<String>();
+        private boolean calledFromOtherThread = false;
+
+        @Override
+        public void reportOutput(@NotNull Collection<File> sourceFiles, @Nullable File outputFile) {
+            calledFromOtherThread |= Thread.currentThread() != thread;
+            outputs.add(outputFile + " <- " + sourceFiles);
+        }
+    }
+}
@@ -758,6 +758,11 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             doTest("compiler/testData/codegen/box/classes/classObjectsWithParentClasses.kt");
         }
         
+        @TestMetadata("commonSuperClass.kt")
+        public void testCommonSuperClass() throws Exception {
+            doTest("compiler/testData/codegen/box/classes/commonSuperClass.kt");
+        }
+        
         @TestMetadata("delegation2.kt")
         public void testDelegation2() throws Exception {
             doTest("compiler/testData/codegen/box/classes/delegation2.kt");
@@ -1212,6 +1217,11 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             doTest("compiler/testData/codegen/box/closures/capturedLocalGenericFun.kt");
         }
         
+        @TestMetadata("capturedVarByValue.kt")
+        public void testCapturedVarByValue() throws Exception {
+            doTest("compiler/testData/codegen/box/closures/capturedVarByValue.kt");
+        }
+        
         @TestMetadata("closureInsideConstrucor.kt")
         public void testClosureInsideConstrucor() throws Exception {
             doTest("compiler/testData/codegen/box/closures/closureInsideConstrucor.kt");
@@ -1472,6 +1482,11 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             doTest("compiler/testData/codegen/box/controlStructures/forPrimitiveIntArray.kt");
         }
         
+        @TestMetadata("forPrimitiveIterator.kt")
+        public void testForPrimitiveIterator() throws Exception {
+            doTest("compiler/testData/codegen/box/controlStructures/forPrimitiveIterator.kt");
+        }
+        
         @TestMetadata("forUserType.kt")
         public void testForUserType() throws Exception {
             doTest("compiler/testData/codegen/box/controlStructures/forUserType.kt");
@@ -2412,6 +2427,11 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             doTest("compiler/testData/codegen/box/functions/infixRecursiveCall.kt");
         }
         
+        @TestMetadata("inlineFunctions.kt")
+        public void testInlineFunctions() throws Exception {
+            doTest("compiler/testData/codegen/box/functions/inlineFunctions.kt");
+        }
+        
         @TestMetadata("kt1038.kt")
         public void testKt1038() throws Exception {
             doTest("compiler/testData/codegen/box/functions/kt1038.kt");
@@ -4651,6 +4671,21 @@ public class BlackBoxCodegenTestGenerated extends AbstractBlackBoxCodegenTest {
             doTest("compiler/testData/codegen/box/when/range.kt");
         }
         
+        @TestMetadata("switchOnEnum.kt")
+        public void testSwitchOnEnum() throws Exception {
+            doTest("compiler/testData/codegen/box/when/switchOnEnum.kt");
+        }
+        
+        @TestMetadata("switchOnInt.kt")
+        public void testSwitchOnInt() throws Exception {
+            doTest("compiler/testData/codegen/box/when/switchOnInt.kt");
+        }
+        
+        @TestMetadata("switchOnString.kt")
+        public void testSwitchOnString() throws Exception {
+            doTest("compiler/testData/codegen/box/when/switchOnString.kt");
+        }
+        
         @TestMetadata("whenArgumentIsEvaluatedOnlyOnce.kt")
         public void testWhenArgumentIsEvaluatedOnlyOnce() throws Exception {
             doTest("compiler/testData/codegen/box/when/whenArgumentIsEvaluatedOnlyOnce.kt");
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.descriptors.serialization;
+
+import junit.framework.TestCase;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+
+public class NameResolverTest extends TestCase {
+    public void testNamesAreMemoizedAndInterned() {
+        NameTable table = new NameTable();
+        int foo = table.getSimpleNameIndex(Name.identifier("foo"));
+        int bar = table.getFqNameIndex(new FqName("a.b.bar"));
+
+        NameResolver first = NameSerializationUtil.createNameResolver(table);
+        NameResolver second = NameSerializationUtil.createNameResolver(table);
+
+        assertEquals(Name.identifier("foo"), first.getName(foo));
+        assertSame(first.getName(foo), first.getName(foo));
+        assertSame(first.getName(foo), second.getName(foo));
+
+        assertEquals(new FqName("a.b.bar"), first.getFqName(bar));
+        assertSame(first.getFqName(bar), first.getFqName(bar));
+        assertSame(first.getFqName(bar), second.getFqName(bar));
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.cfg;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.ConfigurationKind;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy;
+import org.jetbrains.jet.lang.cfg.PseudocodeTraverser.TraversalOrder;
+import org.jetbrains.jet.lang.cfg.PseudocodeVariablesData.VariableInitState;
+import org.jetbrains.jet.lang.cfg.PseudocodeVariablesData.VariableUseState;
+import org.jetbrains.jet.lang.cfg.pseudocode.*;
+import org.jetbrains.jet.lang.descriptors.VariableDescriptor;
+import org.jetbrains.jet.lang.psi.JetDeclaration;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetProperty;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.*;
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy.ANALYSE_LOCAL_DECLARATIONS;
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.LookInsideStrategy.SKIP_LOCAL_DECLARATIONS;
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.TraversalOrder.BACKWARD;
+import static org.jetbrains.jet.lang.cfg.PseudocodeTraverser.TraversalOrder.FORWARD;
+
+/**
+ * Compares variable states computed by {@link PseudocodeVariablesData} with the map-based round-robin analysis it replaced.
+ * The reference analysis below is a copy of the previous implementation.
+ */
+public class PseudocodeVariablesDataTest extends KotlinTestWithEnvironment {
+    private static final String TEST_DATA_PATH = "compiler/testData/cfgVariables/";
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return createEnvironmentWithMockJdk(ConfigurationKind.JDK_ONLY);
+    }
+
+    public void testLoops() throws Exception {
+        doTest("loops.kt");
+    }
+
+    public void testTryFinally() throws Exception {
+        doTest("tryFinally.kt");
+    }
+
+    public void testNotDeclaredOnSomePath() throws Exception {
+        doTest("notDeclaredOnSomePath.kt");
+    }
+
+    public void testLocalDeclarations() throws Exception {
+        doTest("localDeclarations.kt");
+    }
+
+    public void testControlFlowTestData() throws Exception {
+        File[] files = new File("compiler/testData/cfg").listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            if (file.getName().endsWith(".kt")) {
+                compareStates(file);
+            }
+        }
+    }
+
+    private void doTest(@NotNull String fileName) throws Exception {
+        assertTrue("No variable states compared in " + fileName, compareStates(new File(TEST_DATA_PATH + fileName)) > 0);
+    }
+
+    private int compareStates(@NotNull File file) throws Exception {
+        JetFile jetFile = JetTestUtils.loadJetFile(getProject(), file);
+        BindingContext bindingContext = JetTestUtils.analyzeFile(jetFile).getBindingContext();
+
+        int comparedStates = 0;
+        for (JetDeclaration declaration : jetFile.getDeclarations()) {
+            Pseudocode pseudocode = PseudocodeUtil.generatePseudocode(declaration, bindingContext);
+            PseudocodeVariablesData data = new PseudocodeVariablesData(pseudocode, bindingContext);
+            ReferenceAnalysis reference = new ReferenceAnalysis(data, bindingContext);
+
+            PseudocodeVariablesData.VariableStates<VariableInitState> initStates = data.getVariableInitializers();
+            Map<Instruction, Edges<Map<VariableDescriptor, ReferenceInitState>>> expectedInitStates = reference.getVariableInitializers();
+            PseudocodeVariablesData.VariableStates<VariableUseState> useStates = data.getVariableUseStatusData();
+            Map<Instruction, Edges<Map<VariableDescriptor, VariableUseState>>> expectedUseStates = reference.getVariableUseStatusData();
+
+            Set<VariableDescriptor> variables = data.getUsedVariables(pseudocode);
+            for (Instruction instruction : getAllInstructions(pseudocode)) {
+                String place = file.getName() + ": " + instruction + " in " + declaration.getName();
+                Edges<Map<VariableDescriptor, ReferenceInitState>> expectedInit = expectedInitStates.get(instruction);
+                Edges<Map<VariableDescriptor, VariableUseState>> expectedUse = expectedUseStates.get(instruction);
+                for (VariableDescriptor variable : variables) {
+                    String message = place + ", variable " + variable.getName();
+                    assertEquals("Enter init state at " + message,
+                                 expectedInit != null ? expectedInit.in.get(variable) : null,
+                                 ReferenceInitState.of(initStates.getEnterState(instruction, variable)));
+                    assertEquals("Exit init state at " + message,
+                                 expectedInit != null ? expectedInit.out.get(variable) : null,
+                                 ReferenceInitState.of(initStates.getExitState(instruction, variable)));
+                    assertEquals("Enter use state at " + message,
+                                 expectedUse != null ? expectedUse.in.get(variable) : null,
+                                 useStates.getEnterState(instruction, variable));
+                    assertEquals("Exit use state at " + message,
+                                 expectedUse != null ? expectedUse.out.get(variable) : null,
+                                 useStates.getExitState(instruction, variable));
+                    comparedStates++;
+                }
+            }
+        }
+        return comparedStates;
+    }
+
+    @NotNull
+    private static List<Instruction> getAllInstructions(@NotNull Pseudocode pseudocode) {
+        List<Instruction> instructions = Lists.newArrayList(pseudocode.getInstructions());
+        for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
+            instructions.addAll(localDeclarationInstruction.getBody().getInstructions());
+        }
+        return instructions;
+    }
+
+    private static class ReferenceInitState {
+        private final boolean isInitialized;
+        private final boolean isDeclared;
+
+        private ReferenceInitState(boolean isInitialized, boolean isDeclared) {
+            this.isInitialized = isInitialized;
+            this.isDeclared = isDeclared;
+        }
+
+        @Nullable
+        private static ReferenceInitState of(@Nullable VariableInitState initState) {
+            return initState != null ? new ReferenceInitState(initState.isInitialized, initState.isDeclared) : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ReferenceInitState)) return false;
+            ReferenceInitState state = (ReferenceInitState) o;
+            return isInitialized == state.isInitialized && isDeclared == state.isDeclared;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (isInitialized ? 1 : 0) + (isDeclared ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return "initialized=" + isInitialized + ", declared=" + isDeclared;
+        }
+    }
+
+    private static class Edges<T> {
+        private final T in;
+        private final T out;
+
+        private Edges(@NotNull T in, @NotNull T out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Edges)) return false;
+            Edges edges = (Edges) o;
+            return in.equals(edges.in) && out.equals(edges.out);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * in.hashCode() + out.hashCode();
+        }
+    }
+
+    private interface MergeStrategy<D> {
+        @NotNull
+        Edges<D> execute(@NotNull Instruction instruction, @NotNull Collection<D> incomingEdgesData);
+    }
+
+    private static class ReferenceAnalysis {
+        private final PseudocodeVariablesData data;
+        private final BindingContext bindingContext;
+
+        private ReferenceAnalysis(@NotNull PseudocodeVariablesData data, @NotNull BindingContext bindingContext) {
+            this.data = data;
+            this.bindingContext = bindingContext;
+        }
+
+        @NotNull
+        private Map<Instruction, Edges<Map<VariableDescriptor, ReferenceInitState>>> getVariableInitializers() {
+            return getVariableInitializers(data.getPseudocode());
+        }
+
+        @NotNull
+        private Map<Instruction, Edges<Map<VariableDescriptor, ReferenceInitState>>> getVariableInitializers(
+                @NotNull Pseudocode pseudocode
+        ) {
+            Set<VariableDescriptor> declaredVariables = data.getDeclaredVariables(pseudocode, false);
+            Map<VariableDescriptor, ReferenceInitState> initialMapForStartInstruction = Maps.newHashMap();
+            for (VariableDescriptor variable : data.getUsedVariables(pseudocode)) {
+                initialMapForStartInstruction.put(variable, new ReferenceInitState(!declaredVariables.contains(variable), false));
+            }
+
+            Map<Instruction, Edges<Map<VariableDescriptor, ReferenceInitState>>> result = collectData(
+                    pseudocode, FORWARD, SKIP_LOCAL_DECLARATIONS,
+                    Collections.<VariableDescriptor, ReferenceInitState>emptyMap(), initialMapForStartInstruction,
+                    new MergeStrategy<Map<VariableDescriptor, ReferenceInitState>>() {
+                        @NotNull
+                        @Override
+                        public Edges<Map<VariableDescriptor, ReferenceInitState>> execute(
+                                @NotNull Instruction instruction,
+                                @NotNull Collection<Map<VariableDescriptor, ReferenceInitState>> incomingEdgesData
+                        ) {
+                            Map<VariableDescriptor, ReferenceInitState> enterData = mergeInitStates(incomingEdgesData);
+                            Map<VariableDescriptor, ReferenceInitState> exitData = transferInitStates(instruction, enterData);
+                            return new Edges<Map<VariableDescriptor, ReferenceInitState>>(enterData, exitData);
+                        }
+                    });
+
+            for (LocalDeclarationInstruction localDeclarationInstruction : pseudocode.getLocalDeclarations()) {
+                result.putAll(getVariableInitializers(localDeclarationInstruction.getBody()));
+            }
+            return result;
+        }
+
+        @NotNull
+        private static Map<VariableDescriptor, ReferenceInitState> mergeInitStates(
+                @NotNull Collection<Map<VariableDescriptor, ReferenceInitState>> incomingEdgesData
+        ) {
+            Set<VariableDescriptor> variablesInScope = Sets.newHashSet();
+            for (Map<VariableDescriptor, ReferenceInitState> edgeData : incomingEdgesData) {
+                variablesInScope.addAll(edgeData.keySet());
+            }
+            Map<VariableDescriptor, ReferenceInitState> enterData = Maps.newHashMap();
+            for (VariableDescriptor variable : variablesInScope) {
+                boolean isInitialized = true;
+                boolean isDeclared = true;
+                for (Map<VariableDescriptor, ReferenceInitState> edgeData : incomingEdgesData) {
+                    ReferenceInitState initState = edgeData.get(variable);
+                    if (initState != null) {
+                        isInitialized &= initState.isInitialized;
+                        isDeclared &= initState.isDeclared;
+                    }
+                }
+                enterData.put(variable, new ReferenceInitState(isInitialized, isDeclared));
+            }
+            return enterData;
+        }
+
+        @NotNull
+        private Map<VariableDescriptor, ReferenceInitState> transferInitStates(
+                @NotNull Instruction instruction,
+                @NotNull Map<VariableDescriptor, ReferenceInitState> enterData
+        ) {
+            if (!(instruction instanceof WriteValueInstruction) && !(instruction instanceof VariableDeclarationInstruction)) {
+                return enterData;
+            }
+            VariableDescriptor variable = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, false, bindingContext);
+            if (variable == null) {
+                return enterData;
+            }
+            Map<VariableDescriptor, ReferenceInitState> exitData = Maps.newHashMap(enterData);
+            ReferenceInitState enterInitState = enterData.get(variable);
+            if (instruction instanceof WriteValueInstruction) {
+                boolean isDeclaredHere = ((WriteValueInstruction) instruction).getElement() instanceof JetProperty;
+                boolean isDeclared = isDeclaredHere || (enterInitState != null && enterInitState.isDeclared);
+                exitData.put(variable, new ReferenceInitState(true, isDeclared));
+            }
+            else if (enterInitState == null || !enterInitState.isInitialized || !enterInitState.isDeclared) {
+                exitData.put(variable, new ReferenceInitState(enterInitState != null && enterInitState.isInitialized, true));
+            }
+            return exitData;
+        }
+
+        @NotNull
+        private Map<Instruction, Edges<Map<VariableDescriptor, VariableUseState>>> getVariableUseStatusData() {
+            Map<VariableDescriptor, VariableUseState> sinkInstructionData = Maps.newHashMap();
+            for (VariableDescriptor usedVariable : data.getUsedVariables(data.getPseudocode())) {
+                sinkInstructionData.put(usedVariable, VariableUseState.UNUSED);
+            }
+            return collectData(
+                    data.getPseudocode(), BACKWARD, ANALYSE_LOCAL_DECLARATIONS,
+                    Collections.<VariableDescriptor, VariableUseState>emptyMap(), sinkInstructionData,
+                    new MergeStrategy<Map<VariableDescriptor, VariableUseState>>() {
+                        @NotNull
+                        @Override
+                        public Edges<Map<VariableDescriptor, VariableUseState>> execute(
+                                @NotNull Instruction instruction,
+                                @NotNull Collection<Map<VariableDescriptor, VariableUseState>> incomingEdgesData
+                        ) {
+                            Map<VariableDescriptor, VariableUseState> enterData = Maps.newHashMap();
+                            for (Map<VariableDescriptor, VariableUseState> edgeData : incomingEdgesData) {
+                                for (Map.Entry<VariableDescriptor, VariableUseState> entry : edgeData.entrySet()) {
+                                    enterData.put(entry.getKey(), mergeUseStates(entry.getValue(), enterData.get(entry.getKey())));
+                                }
+                            }
+                            Map<VariableDescriptor, VariableUseState> exitData = transferUseStates(instruction, enterData);
+                            return new Edges<Map<VariableDescriptor, VariableUseState>>(enterData, exitData);
+                        }
+                    });
+        }
+
+        @NotNull
+        private static VariableUseState mergeUseStates(@NotNull VariableUseState state, @Nullable VariableUseState otherState) {
+            // States are declared in the order of decreasing importance
+            return otherState == null || state.compareTo(otherState) < 0 ? state : otherState;
+        }
+
+        @NotNull
+        private Map<VariableDescriptor, VariableUseState> transferUseStates(
+                @NotNull Instruction instruction,
+                @NotNull Map<VariableDescriptor, VariableUseState> enterData
+        ) {
+            VariableDescriptor variable = PseudocodeUtil.extractVariableDescriptorIfAny(instruction, true, bindingContext);
+            if (variable == null || (!(instruction instanceof ReadValueInstruction) && !(instruction instanceof WriteValueInstruction))) {
+                return enterData;
+            }
+            Map<VariableDescriptor, VariableUseState> exitData = Maps.newHashMap(enterData);
+            if (instruction instanceof ReadValueInstruction) {
+                exitData.put(variable, VariableUseState.LAST_READ);
+            }
+            else {
+                VariableUseState enterState = enterData.get(variable);
+                boolean wasRead = enterState == VariableUseState.LAST_READ || enterState == VariableUseState.LAST_WRITTEN;
+                exitData.put(variable, wasRead ? VariableUseState.LAST_WRITTEN : VariableUseState.ONLY_WRITTEN_NEVER_READ);
+            }
+            return exitData;
+        }
+
+        @NotNull
+        private static <D> Map<Instruction, Edges<D>> collectData(
+                @NotNull Pseudocode pseudocode,
+                @NotNull TraversalOrder traversalOrder,
+                @NotNull LookInsideStrategy lookInside,
+                @NotNull D initialDataValue,
+                @NotNull D initialDataValueForStartInstruction,
+                @NotNull MergeStrategy<D> mergeStrategy
+        ) {
+            Map<Instruction, Edges<D>> edgesMap = Maps.newLinkedHashMap();
+            initializeEdgesMap(pseudocode, lookInside, edgesMap, initialDataValue);
+            edgesMap.put(getStartInstruction(pseudocode, traversalOrder),
+                         new Edges<D>(initialDataValueForStartInstruction, initialDataValueForStartInstruction));
+
+            boolean[] changed = new boolean[] {true};
+            while (changed[0]) {
+                changed[0] = false;
+                collectDataFromSubgraph(pseudocode, traversalOrder, lookInside, edgesMap, mergeStrategy,
+                                        Collections.<Instruction>emptyList(), changed, false);
+            }
+            return edgesMap;
+        }
+
+        private static <D> void initializeEdgesMap(
+                @NotNull Pseudocode pseudocode,
+                @NotNull LookInsideStrategy lookInside,
+                @NotNull Map<Instruction, Edges<D>> edgesMap,
+                @NotNull D initialDataValue
+        ) {
+            Edges<D> initialEdge = new Edges<D>(initialDataValue, initialDataValue);
+            for (Instruction instruction : pseudocode.getInstructions()) {
+                edgesMap.put(instruction, initialEdge);
+                if (shouldLookInside(instruction, lookInside)) {
+                    initializeEdgesMap(((LocalDeclarationInstruction) instruction).getBody(), lookInside, edgesMap, initialDataValue);
+                }
+            }
+        }
+
+        private static <D> void collectDataFromSubgraph(
+                @NotNull Pseudocode pseudocode,
+                @NotNull TraversalOrder traversalOrder,
+                @NotNull LookInsideStrategy lookInside,
+                @NotNull Map<Instruction, Edges<D>> edgesMap,
+                @NotNull MergeStrategy<D> mergeStrategy,
+                @NotNull Collection<Instruction> previousSubGraphInstructions,
+                @NotNull boolean[] changed,
+                boolean isLocal
+        ) {
+            Instruction startInstruction = getStartInstruction(pseudocode, traversalOrder);
+
+            for (Instruction instruction : getInstructions(pseudocode, traversalOrder)) {
+                if (!isLocal && isStartInstruction(instruction, traversalOrder)) continue;
+
+                Collection<Instruction> previousInstructions = getPreviousInstructions(instruction, traversalOrder);
+                Collection<Instruction> allPreviousInstructions = previousInstructions;
+                if (instruction == startInstruction && !previousSubGraphInstructions.isEmpty()) {
+                    allPreviousInstructions = Lists.newArrayList(previousInstructions);
+                    allPreviousInstructions.addAll(previousSubGraphInstructions);
+                }
+
+                if (shouldLookInside(instruction, lookInside)) {
+                    Pseudocode subroutinePseudocode = ((LocalDeclarationInstruction) instruction).getBody();
+                    collectDataFromSubgraph(subroutinePseudocode, traversalOrder, lookInside, edgesMap, mergeStrategy,
+                                            previousInstructions, changed, true);
+                    Edges<D> newValue = edgesMap.get(getLastInstruction(subroutinePseudocode, traversalOrder));
+                    if (!edgesMap.get(instruction).equals(newValue)) {
+                        changed[0] = true;
+                        edgesMap.put(instruction, newValue);
+                    }
+                    continue;
+                }
+
+                Collection<D> incomingEdgesData = Sets.newHashSet();
+                for (Instruction previousInstruction : allPreviousInstructions) {
+                    Edges<D> previousData = edgesMap.get(previousInstruction);
+                    if (previousData != null) {
+                        incomingEdgesData.add(previousData.out);
+                    }
+                }
+                Edges<D> mergedData = mergeStrategy.execute(instruction, incomingEdgesData);
+                if (!mergedData.equals(edgesMap.get(instruction))) {
+                    changed[0] = true;
+                    edgesMap.put(instruction, mergedData);
+                }
+            }
+        }
+    }
+}
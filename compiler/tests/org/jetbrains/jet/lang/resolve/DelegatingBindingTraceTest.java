@@ -0,0 +1,217 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve;
+
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.diagnostics.Diagnostic;
+import org.jetbrains.jet.lang.diagnostics.DiagnosticFactory;
+import org.jetbrains.jet.lang.diagnostics.Severity;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.jet.util.slicedmap.Slices;
+import org.jetbrains.jet.util.slicedmap.WritableSlice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class DelegatingBindingTraceTest extends KotlinTestWithEnvironment {
+    private static final WritableSlice<String, Integer> NAME_COLOR =
+            Slices.<String, Integer>sliceBuilder().setDebugName("NAME_COLOR").build();
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), new CompilerConfiguration());
+    }
+
+    public void testMoveToEmptyTemporaryTrace() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace target = TemporaryBindingTrace.create(root, "target");
+        TemporaryBindingTrace trace = TemporaryBindingTrace.create(target, "trace");
+        Diagnostic error = diagnostic("error");
+        trace.record(NAME_COLOR, "RED", 0xff0000);
+        trace.report(error);
+
+        trace.commit();
+
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertEquals(Arrays.asList("RED"), new ArrayList<String>(target.getKeys(NAME_COLOR)));
+        assertEquals(Arrays.asList(error), getDiagnostics(target));
+        assertNull(root.get(NAME_COLOR, "RED"));
+
+        // The trace keeps working on its own data after the handover
+        trace.record(NAME_COLOR, "GREEN", 0x00ff00);
+        trace.report(diagnostic("warning"));
+        assertNull(target.get(NAME_COLOR, "GREEN"));
+        assertEquals(Arrays.asList(error), getDiagnostics(target));
+
+        // and clearing the trace doesn't drop the data handed over
+        trace.clear();
+        assertNull(trace.get(NAME_COLOR, "GREEN"));
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertEquals(Arrays.asList(error), getDiagnostics(target));
+    }
+
+    public void testMoveToNonEmptyTemporaryTrace() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace target = TemporaryBindingTrace.create(root, "target");
+        Diagnostic targetError = diagnostic("target error");
+        target.record(NAME_COLOR, "RED", 0xff0000);
+        target.report(targetError);
+
+        TemporaryBindingTrace trace = TemporaryBindingTrace.create(target, "trace");
+        Diagnostic error = diagnostic("error");
+        trace.record(NAME_COLOR, "GREEN", 0x00ff00);
+        trace.report(error);
+
+        trace.commit();
+
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertEquals(0x00ff00, (int) target.get(NAME_COLOR, "GREEN"));
+        assertEquals(Arrays.asList("RED", "GREEN"), new ArrayList<String>(target.getKeys(NAME_COLOR)));
+        assertEquals(Arrays.asList(targetError, error), getDiagnostics(target));
+
+        trace.record(NAME_COLOR, "BLUE", 0x0000ff);
+        assertNull(target.get(NAME_COLOR, "BLUE"));
+    }
+
+    public void testMoveToTraceWithDiagnosticsOnly() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace target = TemporaryBindingTrace.create(root, "target");
+        Diagnostic targetError = diagnostic("target error");
+        target.report(targetError);
+
+        TemporaryBindingTrace trace = TemporaryBindingTrace.create(target, "trace");
+        trace.record(NAME_COLOR, "RED", 0xff0000);
+
+        trace.commit();
+
+        assertEquals(0xff0000, (int) target.get(NAME_COLOR, "RED"));
+        assertEquals(Arrays.asList(targetError), getDiagnostics(target));
+    }
+
+    public void testMoveToContext() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace trace = TemporaryBindingTrace.create(root, "trace");
+        Diagnostic error = diagnostic("error");
+        trace.record(NAME_COLOR, "RED", 0xff0000);
+        trace.report(error);
+
+        trace.commit();
+
+        assertEquals(0xff0000, (int) root.get(NAME_COLOR, "RED"));
+        assertEquals(Arrays.asList(error), getDiagnostics(root));
+
+        trace.record(NAME_COLOR, "GREEN", 0x00ff00);
+        assertNull(root.get(NAME_COLOR, "GREEN"));
+    }
+
+    public void testCommitAfterHandover() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace target = TemporaryBindingTrace.create(root, "target");
+        TemporaryBindingTrace trace = TemporaryBindingTrace.create(target, "trace");
+        Diagnostic error = diagnostic("error");
+        Diagnostic targetError = diagnostic("target error");
+        trace.record(NAME_COLOR, "RED", 0xff0000);
+        trace.report(error);
+
+        trace.commit();
+        target.record(NAME_COLOR, "GREEN", 0x00ff00);
+        target.report(targetError);
+        target.commit();
+
+        assertEquals(0xff0000, (int) root.get(NAME_COLOR, "RED"));
+        assertEquals(0x00ff00, (int) root.get(NAME_COLOR, "GREEN"));
+        assertEquals(Arrays.asList("RED", "GREEN"), new ArrayList<String>(root.getKeys(NAME_COLOR)));
+        assertEquals(Arrays.asList(error, targetError), getDiagnostics(root));
+
+        // Committing the emptied traces again doesn't record anything twice
+        trace.commit();
+        target.commit();
+        assertEquals(Arrays.asList(error, targetError), getDiagnostics(root));
+    }
+
+    public void testChainedCommitAfterHandover() {
+        BindingTraceContext root = new BindingTraceContext();
+        TemporaryBindingTrace target = TemporaryBindingTrace.create(root, "target");
+        ChainedTemporaryBindingTrace trace = ChainedTemporaryBindingTrace.create(target, "trace", null);
+        Diagnostic error = diagnostic("error");
+        trace.record(NAME_COLOR, "RED", 0xff0000);
+        trace.report(error);
+
+        trace.commit();
+
+        assertEquals(0xff0000, (int) root.get(NAME_COLOR, "RED"));
+        assertEquals(Arrays.asList(error), getDiagnostics(root));
+        // The diagnostic is seen once through the emptied target
+        assertEquals(Arrays.asList(error), getDiagnostics(target));
+    }
+
+    @NotNull
+    private static List<Diagnostic> getDiagnostics(@NotNull BindingTrace trace) {
+        return new ArrayList<Diagnostic>(trace.getBindingContext().getDiagnostics().noSuppression().all());
+    }
+
+    @NotNull
+    private static Diagnostic diagnostic(@NotNull final String name) {
+        return new Diagnostic() {
+            @NotNull
+            @Override
+            public DiagnosticFactory getFactory() {
+                throw new UnsupportedOperationException(name);
+            }
+
+            @NotNull
+            @Override
+            public Severity getSeverity() {
+                return Severity.ERROR;
+            }
+
+            @NotNull
+            @Override
+            public PsiElement getPsiElement() {
+                throw new UnsupportedOperationException(name);
+            }
+
+            @NotNull
+            @Override
+            public List<TextRange> getTextRanges() {
+                throw new UnsupportedOperationException(name);
+            }
+
+            @NotNull
+            @Override
+            public PsiFile getPsiFile() {
+                throw new UnsupportedOperationException(name);
+            }
+
+            @Override
+            public boolean isValid() {
+                return true;
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.kotlin;
+
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassWriter;
+import org.jetbrains.asm4.FieldVisitor;
+import org.jetbrains.asm4.MethodVisitor;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.resolve.java.JvmClassName;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.jet.lang.resolve.name.Name;
+
+import static org.jetbrains.asm4.Opcodes.*;
+import static org.jetbrains.jet.lang.resolve.kotlin.KotlinJvmBinaryClass.*;
+
+public class ClassFileSummaryTest extends KotlinTestWithEnvironment {
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), new CompilerConfiguration());
+    }
+
+    public void testClassAnnotationsReplayed() throws Exception {
+        ClassFileSummary summary = ClassFileSummary.get(new ClassFile(generateClass("test/Annotated"), 1));
+
+        assertEquals("test/Annotated", summary.getClassName().getInternalName());
+
+        StringBuilder log = new StringBuilder();
+        summary.loadClassAnnotations(new LoggingAnnotationVisitor(log, ""));
+        assertEquals("@test/ClassAnn\n" +
+                     "  value = text\n" +
+                     "  kind = test/Kind.FIRST\n" +
+                     "  numbers = [\n" +
+                     "    null = 1\n" +
+                     "    null = 2\n" +
+                     "  ]\n" +
+                     "end\n", log.toString());
+
+        // The summary is replayed as many times as needed
+        StringBuilder secondLog = new StringBuilder();
+        summary.loadClassAnnotations(new LoggingAnnotationVisitor(secondLog, ""));
+        assertEquals(log.toString(), secondLog.toString());
+    }
+
+    public void testMemberAnnotationsReplayed() throws Exception {
+        ClassFileSummary summary = ClassFileSummary.get(new ClassFile(generateClass("test/Annotated"), 1));
+
+        StringBuilder log = new StringBuilder();
+        summary.loadMemberAnnotations(new LoggingMemberVisitor(log));
+        assertEquals("field annotatedField I\n" +
+                     "  @test/FieldAnn\n" +
+                     "  end\n" +
+                     "method annotatedMethod ()V\n" +
+                     "  @test/MethodAnn\n" +
+                     "    value = 42\n" +
+                     "  end\n" +
+                     "method annotatedParameter (ILjava/lang/String;)V\n" +
+                     "  parameter 1 @test/ParamAnn\n" +
+                     "  end\n", log.toString());
+    }
+
+    public void testUnannotatedMembersSkipped() throws Exception {
+        ClassFileSummary summary = ClassFileSummary.get(new ClassFile(generateClass("test/Annotated"), 1));
+
+        StringBuilder log = new StringBuilder();
+        summary.loadMemberAnnotations(new LoggingMemberVisitor(log));
+        assertFalse(log.toString(), log.toString().contains("plain"));
+        assertFalse(log.toString(), log.toString().contains("<init>"));
+    }
+
+    public void testCachedUntilModificationStampChanges() throws Exception {
+        ClassFile file = new ClassFile(generateClass("test/First"), 1);
+        ClassFileSummary summary = ClassFileSummary.get(file);
+        assertSame(summary, ClassFileSummary.get(file));
+        assertEquals(1, file.reads);
+
+        // Contents are not read again while the stamp is the same
+        file.setContents(generateClass("test/Second"), 1);
+        assertSame(summary, ClassFileSummary.get(file));
+        assertEquals(1, file.reads);
+
+        file.setContents(generateClass("test/Second"), 2);
+        ClassFileSummary newSummary = ClassFileSummary.get(file);
+        assertNotSame(summary, newSummary);
+        assertEquals("test/Second", newSummary.getClassName().getInternalName());
+        assertEquals(2, file.reads);
+        assertSame(newSummary, ClassFileSummary.get(file));
+    }
+
+    public void testKotlinClassReadsFileOnce() throws Exception {
+        ClassFile file = new ClassFile(generateClass("test/Annotated"), 1);
+        VirtualFileKotlinClass kotlinClass = new VirtualFileKotlinClass(file);
+
+        assertEquals("test/Annotated", kotlinClass.getClassName().getInternalName());
+        kotlinClass.loadClassAnnotations(new LoggingAnnotationVisitor(new StringBuilder(), ""));
+        kotlinClass.loadMemberAnnotations(new LoggingMemberVisitor(new StringBuilder()));
+        new VirtualFileKotlinClass(file).getClassName();
+
+        assertEquals(1, file.reads);
+    }
+
+    @NotNull
+    private static byte[] generateClass(@NotNull String internalName) {
+        ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_6, ACC_PUBLIC | ACC_ABSTRACT, internalName, null, "java/lang/Object", null);
+
+        org.jetbrains.asm4.AnnotationVisitor classAnnotation = cw.visitAnnotation("Ltest/ClassAnn;", true);
+        classAnnotation.visit("value", "text");
+        classAnnotation.visitEnum("kind", "Ltest/Kind;", "FIRST");
+        org.jetbrains.asm4.AnnotationVisitor numbers = classAnnotation.visitArray("numbers");
+        numbers.visit(null, 1);
+        numbers.visit(null, 2);
+        numbers.visitEnd();
+        classAnnotation.visitEnd();
+
+        FieldVisitor fv = cw.visitField(ACC_PUBLIC, "annotatedField", "I", null, null);
+        fv.visitAnnotation("Ltest/FieldAnn;", true).visitEnd();
+        fv.visitEnd();
+        cw.visitField(ACC_PUBLIC, "plainField", "I", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, "annotatedMethod", "()V", null, null);
+        org.jetbrains.asm4.AnnotationVisitor methodAnnotation = mv.visitAnnotation("Ltest/MethodAnn;", false);
+        methodAnnotation.visit("value", 42);
+        methodAnnotation.visitEnd();
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, "annotatedParameter", "(ILjava/lang/String;)V", null, null);
+        mv.visitParameterAnnotation(1, "Ltest/ParamAnn;", true).visitEnd();
+        mv.visitEnd();
+
+        cw.visitMethod(ACC_PUBLIC | ACC_ABSTRACT, "plainMethod", "()V", null, null).visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static class ClassFile extends LightVirtualFile {
+        private byte[] contents;
+        private long modificationStamp;
+        private int reads = 0;
+
+        private ClassFile(@NotNull byte[] contents, long modificationStamp) {
+            super("Test.class");
+            setContents(contents, modificationStamp);
+        }
+
+        private void setContents(@NotNull byte[] contents, long modificationStamp) {
+            this.contents = contents;
+            this.modificationStamp = modificationStamp;
+        }
+
+        @NotNull
+        @Override
+        public byte[] contentsToByteArray() {
+            reads++;
+            return contents;
+        }
+
+        @Override
+        public long getModificationStamp() {
+            return modificationStamp;
+        }
+    }
+
+    private static class LoggingMemberVisitor implements MemberVisitor {
+        private final StringBuilder log;
+
+        private LoggingMemberVisitor(@NotNull StringBuilder log) {
+            this.log = log;
+        }
+
+        @Nullable
+        @Override
+        public MethodAnnotationVisitor visitMethod(@NotNull Name name, @NotNull String desc) {
+            log.append("method ").append(name).append(" ").append(desc).append("\n");
+            return new LoggingAnnotationVisitor(log, "  ");
+        }
+
+        @Nullable
+        @Override
+        public AnnotationVisitor visitField(@NotNull Name name, @NotNull String desc) {
+            log.append("field ").append(name).append(" ").append(desc).append("\n");
+            return new LoggingAnnotationVisitor(log, "  ");
+        }
+    }
+
+    private static class LoggingAnnotationVisitor implements MethodAnnotationVisitor {
+        private final StringBuilder log;
+        private final String indent;
+
+        private LoggingAnnotationVisitor(@NotNull StringBuilder log, @NotNull String indent) {
+            this.log = log;
+            this.indent = indent;
+        }
+
+        @Nullable
+        @Override
+        public AnnotationArgumentVisitor visitAnnotation(@NotNull JvmClassName className) {
+            log.append(indent).append("@").append(className.getInternalName()).append("\n");
+            return new LoggingArgumentVisitor(log, indent + "  ", null);
+        }
+
+        @Nullable
+        @Override
+        public AnnotationArgumentVisitor visitParameterAnnotation(int index, @NotNull JvmClassName className) {
+            log.append(indent).append("parameter ").append(index).append(" @").append(className.getInternalName()).append("\n");
+            return new LoggingArgumentVisitor(log, indent + "  ", null);
+        }
+
+        @Override
+        public void visitEnd() {
+            log.append(indent).append("end\n");
+        }
+    }
+
+    private static class LoggingArgumentVisitor implements AnnotationArgumentVisitor {
+        private final StringBuilder log;
+        private final String indent;
+        // Printed at the end of an array, nothing is printed at the end of an annotation
+        private final String end;
+
+        private LoggingArgumentVisitor(@NotNull StringBuilder log, @NotNull String indent, @Nullable String end) {
+            this.log = log;
+            this.indent = indent;
+            this.end = end;
+        }
+
+        @Override
+        public void visit(@Nullable Name name, @Nullable Object value) {
+            log.append(indent).append(name).append(" = ").append(value).append("\n");
+        }
+
+        @Override
+        public void visitEnum(@NotNull Name name, @NotNull JvmClassName enumClassName, @NotNull Name enumEntryName) {
+            log.append(indent).append(name).append(" = ").append(enumClassName.getInternalName()).append(".").append(enumEntryName)
+                    .append("\n");
+        }
+
+        @Nullable
+        @Override
+        public AnnotationArgumentVisitor visitArray(@NotNull Name name) {
+            log.append(indent).append(name).append(" = [\n");
+            return new LoggingArgumentVisitor(log, indent + "  ", indent + "]\n");
+        }
+
+        @Override
+        public void visitEnd() {
+            if (end != null) {
+                log.append(end);
+            }
+        }
+    }
+}
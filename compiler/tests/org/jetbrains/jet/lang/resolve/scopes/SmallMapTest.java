@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.resolve.scopes;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+public class SmallMapTest extends TestCase {
+    public void testPutAndGet() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        assertNull(map.get("a"));
+        assertTrue(map.values().isEmpty());
+
+        assertNull(map.put("a", 1));
+        assertNull(map.put("b", 2));
+        assertEquals(1, (int) map.put("a", 3));
+
+        assertEquals(3, (int) map.get("a"));
+        assertEquals(2, (int) map.get("b"));
+        assertNull(map.get("c"));
+        assertEquals(Arrays.asList(3, 2), new ArrayList<Integer>(map.values()));
+    }
+
+    public void testKeysAreComparedByEquals() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        map.put(new String("a"), 1);
+        assertEquals(1, (int) map.get(new String("a")));
+    }
+
+    public void testInsertionOrder() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = SmallMap.MAX_LINEAR_SIZE - 1; i >= 0; i--) {
+            map.put("key" + i, i);
+            expected.add(i);
+        }
+        assertEquals(expected, new ArrayList<Integer>(map.values()));
+    }
+
+    public void testTransitionToHashMap() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        int size = SmallMap.MAX_LINEAR_SIZE * 2 + 3;
+        for (int i = 0; i < size; i++) {
+            assertNull(map.put("key" + i, i));
+        }
+        assertEquals(0, (int) map.put("key0", 0));
+
+        for (int i = 0; i < size; i++) {
+            assertEquals(i, (int) map.get("key" + i));
+        }
+        assertNull(map.get("key" + size));
+        assertEquals(size, map.values().size());
+        assertEquals(range(0, size), new HashSet<Integer>(map.values()));
+    }
+
+    public void testRemove() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        assertNull(map.remove("a"));
+
+        map.put("a", 1);
+        map.put("b", 2);
+        map.put("c", 3);
+
+        assertEquals(2, (int) map.remove("b"));
+        assertNull(map.remove("b"));
+        assertNull(map.get("b"));
+        assertEquals(Arrays.asList(1, 3), new ArrayList<Integer>(map.values()));
+
+        assertEquals(3, (int) map.remove("c"));
+        assertEquals(1, (int) map.remove("a"));
+        assertTrue(map.values().isEmpty());
+
+        map.put("b", 4);
+        assertEquals(Arrays.asList(4), new ArrayList<Integer>(map.values()));
+    }
+
+    public void testRemoveAfterTransitionToHashMap() {
+        SmallMap<String, Integer> map = new SmallMap<String, Integer>();
+        int size = SmallMap.MAX_LINEAR_SIZE + 2;
+        for (int i = 0; i < size; i++) {
+            map.put("key" + i, i);
+        }
+
+        assertEquals(1, (int) map.remove("key1"));
+        assertNull(map.remove("key1"));
+        assertNull(map.get("key1"));
+
+        Set<Integer> expected = range(0, size);
+        expected.remove(1);
+        assertEquals(expected, new HashSet<Integer>(map.values()));
+    }
+
+    private static Set<Integer> range(int from, int to) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (int i = from; i < to; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+}
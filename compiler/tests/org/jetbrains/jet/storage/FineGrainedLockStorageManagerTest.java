@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.storage;
+
+import jet.Function0;
+import jet.Function1;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FineGrainedLockStorageManagerTest extends StorageManagerTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ExecutorService executor;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    @Override
+    protected StorageManager createStorageManager() {
+        return new FineGrainedLockStorageManager();
+    }
+
+    public void testIndependentValuesAreComputedInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Function0<Boolean> awaitOther = new Function0<Boolean>() {
+            @Override
+            public Boolean invoke() {
+                bothStarted.countDown();
+                try {
+                    return bothStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        Future<Boolean> first = executor.submit(toCallable(m.createLazyValue(awaitOther)));
+        Future<Boolean> second = executor.submit(toCallable(m.createLazyValue(awaitOther)));
+
+        assertTrue(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    public void testCycleBetweenThreadsIsReportedAsRecursion() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+
+        class C {
+            final NotNullLazyValue<String> x = m.createRecursionTolerantLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    awaitBoth(bothStarted);
+                    return "x(" + y.invoke() + ")";
+                }
+            }, "rec");
+
+            final NotNullLazyValue<String> y = m.createRecursionTolerantLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    awaitBoth(bothStarted);
+                    return "y(" + x.invoke() + ")";
+                }
+            }, "rec");
+        }
+
+        C c = new C();
+        Future<String> x = executor.submit(toCallable(c.x));
+        Future<String> y = executor.submit(toCallable(c.y));
+
+        String xValue = x.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        String yValue = y.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(xValue + ", " + yValue,
+                   (xValue.equals("x(rec)") && yValue.equals("y(x(rec))")) ||
+                   (yValue.equals("y(rec)") && xValue.equals("x(y(rec))")));
+    }
+
+    public void testBrokenCycleIsRetriedForLazyValues() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final AtomicInteger xAttempts = new AtomicInteger();
+
+        class C {
+            final NotNullLazyValue<String> x = m.createLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    // Only the first attempt needs y, so that the value doesn't depend on itself when it's computed again
+                    if (xAttempts.incrementAndGet() > 1) return "x";
+                    awaitBoth(bothStarted);
+                    return "x(" + y.invoke() + ")";
+                }
+            });
+
+            final NotNullLazyValue<String> y = m.createLazyValue(new Function0<String>() {
+                @Override
+                public String invoke() {
+                    awaitBoth(bothStarted);
+                    return "y(" + x.invoke() + ")";
+                }
+            });
+        }
+
+        C c = new C();
+        FutureTask<String> x = new FutureTask<String>(toCallable(c.x));
+        FutureTask<String> y = new FutureTask<String>(toCallable(c.y));
+        startInOrder(x, y);
+
+        assertEquals("x", x.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("y(x)", y.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, xAttempts.get());
+    }
+
+    public void testBrokenCycleIsRetriedForMemoizedFunctions() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final AtomicInteger xAttempts = new AtomicInteger();
+
+        class C {
+            final MemoizedFunctionToNotNull<String, String> f = m.createMemoizedFunction(new Function1<String, String>() {
+                @Override
+                public String invoke(String key) {
+                    if (key.equals("x")) {
+                        if (xAttempts.incrementAndGet() > 1) return "x";
+                        awaitBoth(bothStarted);
+                        return "x(" + f.invoke("y") + ")";
+                    }
+                    awaitBoth(bothStarted);
+                    return "y(" + f.invoke("x") + ")";
+                }
+            });
+
+            Callable<String> call(final String key) {
+                return new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return f.invoke(key);
+                    }
+                };
+            }
+        }
+
+        C c = new C();
+        FutureTask<String> x = new FutureTask<String>(c.call("x"));
+        FutureTask<String> y = new FutureTask<String>(c.call("y"));
+        startInOrder(x, y);
+
+        assertEquals("x", x.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("y(x)", y.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, xAttempts.get());
+    }
+
+    // The thread created first has the smaller id, so it's the one to break a cycle and compute its task again
+    private static void startInOrder(Runnable first, Runnable second) {
+        Thread firstThread = new Thread(first);
+        Thread secondThread = new Thread(second);
+        assertTrue(firstThread.getId() < secondThread.getId());
+        firstThread.start();
+        secondThread.start();
+    }
+
+    private static void awaitBoth(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T> Callable<T> toCallable(final Function0<T> f) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return f.invoke();
+            }
+        };
+    }
+}
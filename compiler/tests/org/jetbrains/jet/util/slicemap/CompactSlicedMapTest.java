@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.util.slicemap;
+
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.util.slicedmap.*;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+public class CompactSlicedMapTest extends TestCase {
+    private static final WritableSlice<String, Integer> NAME_COLOR =
+            Slices.<String, Integer>sliceBuilder().setDebugName("NAME_COLOR").build();
+    private static final WritableSlice<Integer, String> COLOR_NAME =
+            Slices.<Integer, String>sliceBuilder().setDebugName("COLOR_NAME").build();
+    private static final WritableSlice<String, Integer> NAME_COLOR_WITH_OPPOSITE =
+            Slices.<String, Integer>sliceBuilder().setOpposite(COLOR_NAME).setDebugName("NAME_COLOR_WITH_OPPOSITE").build();
+    private static final RemovableSlice<Integer, Integer> REMOVABLE =
+            Slices.<Integer, Integer>sliceBuilder().setDebugName("REMOVABLE").build();
+    private static final WritableSlice<String, Boolean> COLLECTIVE = Slices.createCollectiveSetSlice();
+    private static final RemovableSlice<String, Integer> NORMALIZED = Slices.<String, Integer>sliceBuilder()
+            .setKeyNormalizer(new Slices.KeyNormalizer<String>() {
+                @Override
+                public String normalize(String key) {
+                    return key.toLowerCase();
+                }
+            })
+            .setDebugName("NORMALIZED").build();
+
+    private static MutableSlicedMap createMap() {
+        return CompactSlicedMap.create();
+    }
+
+    public void testPutAndGet() {
+        MutableSlicedMap map = createMap();
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(NAME_COLOR, "GREEN", 0x00ff00);
+        map.put(NAME_COLOR, null, 0);
+
+        assertEquals(0xff0000, (int) map.get(NAME_COLOR, "RED"));
+        assertEquals(0x00ff00, (int) map.get(NAME_COLOR, "GREEN"));
+        assertEquals(0, (int) map.get(NAME_COLOR, null));
+        assertNull(map.get(NAME_COLOR, "BLUE"));
+        assertNull(map.get(NAME_COLOR_WITH_OPPOSITE, "RED"));
+
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        assertEquals(0xff0000, (int) map.get(NAME_COLOR, "RED"));
+        try {
+            map.put(NAME_COLOR, "RED", 0xee0000);
+            fail("Rewrite to a different value must be reported");
+        }
+        catch (IllegalStateException expected) {
+        }
+        assertEquals(0xff0000, (int) map.get(NAME_COLOR, "RED"));
+    }
+
+    public void testOppositeSlice() {
+        MutableSlicedMap map = createMap();
+        map.put(NAME_COLOR_WITH_OPPOSITE, "RED", 0xff0000);
+        assertEquals("RED", map.get(COLOR_NAME, 0xff0000));
+    }
+
+    public void testCollectiveSlice() {
+        MutableSlicedMap map = createMap();
+        map.put(COLLECTIVE, "a", true);
+        map.put(COLLECTIVE, "b", true);
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<String>(map.getKeys(COLLECTIVE)));
+
+        map.clear();
+        assertTrue(map.getKeys(COLLECTIVE).isEmpty());
+        assertNull(map.get(NAME_COLOR, "a"));
+    }
+
+    public void testRemoveAndOrder() {
+        MutableSlicedMap map = createMap();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            map.put(REMOVABLE, i, i * i);
+        }
+        for (int i = 0; i < count; i += 3) {
+            assertEquals(i * i, (int) map.remove(REMOVABLE, i));
+        }
+        assertNull(map.remove(REMOVABLE, 0));
+        for (int i = count; i < 2 * count; i++) {
+            map.put(REMOVABLE, i, i * i);
+        }
+
+        List<Integer> expectedKeys = new ArrayList<Integer>();
+        for (int i = 0; i < 2 * count; i++) {
+            if (i >= count || i % 3 != 0) {
+                expectedKeys.add(i);
+                assertEquals(i * i, (int) map.get(REMOVABLE, i));
+            }
+            else {
+                assertNull(map.get(REMOVABLE, i));
+            }
+        }
+
+        List<Integer> actualKeys = new ArrayList<Integer>();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            assertSame(REMOVABLE, entry.getKey().getSlice());
+            Integer key = (Integer) entry.getKey().getKey();
+            assertEquals(key * key, entry.getValue());
+            actualKeys.add(key);
+        }
+        assertEquals(expectedKeys, actualKeys);
+    }
+
+    public void testInsertionOrderAcrossSlices() {
+        MutableSlicedMap map = createMap();
+        MutableSlicedMap expected = SlicedMapImpl.create();
+        for (MutableSlicedMap m : Arrays.asList(map, expected)) {
+            for (int i = 0; i < 100; i++) {
+                m.put(REMOVABLE, i, i);
+                if (i % 2 == 0) {
+                    m.put(NAME_COLOR_WITH_OPPOSITE, "color" + i, i);
+                }
+                if (i % 5 == 0) {
+                    m.put(COLLECTIVE, "key" + i, true);
+                    m.remove(REMOVABLE, i / 2);
+                }
+                // Neither a rewrite nor a reinsertion after removal keep the first position
+                m.put(REMOVABLE, i / 3, i / 3);
+            }
+        }
+        assertEquals(entriesToString(expected), entriesToString(map));
+    }
+
+    public void testLookupWithoutKeys() {
+        MutableSlicedMap map = createMap();
+        RemovableSlice<String, Integer> slice = new Slices.BasicRemovableSlice<String, Integer>(Slices.ONLY_REWRITE_TO_EQUAL) {
+            @Override
+            public SlicedMapKey<String, Integer> makeKey(String key) {
+                throw new UnsupportedOperationException("Key objects are not created for lookups");
+            }
+        };
+
+        map.put(slice, "RED", 0xff0000);
+        assertEquals(0xff0000, (int) map.get(slice, "RED"));
+        assertEquals(0xff0000, (int) map.get(slice.makeRawValueVersion(), "RED"));
+        assertEquals(0xff0000, (int) map.remove(slice, "RED"));
+        assertNull(map.get(slice, "RED"));
+    }
+
+    public void testNormalizedKeys() {
+        MutableSlicedMap map = createMap();
+        map.put(NORMALIZED, "Red", 0xff0000);
+
+        assertEquals(0xff0000, (int) map.get(NORMALIZED, "RED"));
+        assertEquals(0xff0000, (int) map.get(NORMALIZED.makeRawValueVersion(), "red"));
+        assertEquals(Collections.singletonMap("red", 0xff0000), map.getSliceContents(NORMALIZED));
+        assertEquals(0xff0000, (int) map.remove(NORMALIZED, "rED"));
+        assertNull(map.get(NORMALIZED, "red"));
+    }
+
+    @NotNull
+    private static String entriesToString(@NotNull SlicedMap map) {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<SlicedMapKey<?, ?>, ?> entry : map) {
+            result.append(entry.getKey()).append(" = ").append(entry.getValue()).append("\n");
+        }
+        return result.toString();
+    }
+
+    public void testSliceContents() {
+        MutableSlicedMap map = createMap();
+        map.put(NAME_COLOR, "RED", 0xff0000);
+        map.put(COLOR_NAME, 0xff0000, "RED");
+        assertEquals(Collections.singletonMap("RED", 0xff0000), map.getSliceContents(NAME_COLOR));
+    }
+
+    public void testConcurrentWrites() throws Exception {
+        final MutableSlicedMap map = CompactSlicedMap.createConcurrent();
+        final int threadCount = 4;
+        final int count = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t * count;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    }
+                    catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int i = offset; i < offset + count; i++) {
+                        map.put(REMOVABLE, i, i);
+                        map.put(COLLECTIVE, String.valueOf(i), true);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < threadCount * count; i++) {
+            assertEquals(i, (int) map.get(REMOVABLE, i));
+        }
+        assertEquals(threadCount * count, map.getKeys(COLLECTIVE).size());
+    }
+}
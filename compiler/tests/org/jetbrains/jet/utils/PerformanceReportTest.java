@@ -0,0 +1,97 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.utils;
+
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+
+public class PerformanceReportTest extends TestCase {
+    public void testNotStarted() {
+        assertSame(PerformanceReport.NO_PHASE, PerformanceReport.phase("parse"));
+        assertNull(PerformanceReport.getCurrentPath());
+    }
+
+    public void testNestedPhases() throws Exception {
+        PerformanceReport report = PerformanceReport.start();
+        try {
+            PerformanceReport.Phase module = PerformanceReport.phase("module:m");
+            for (int i = 0; i < 2; i++) {
+                PerformanceReport.Phase parse = PerformanceReport.phase("parse");
+                assertEquals("module:m/parse", PerformanceReport.getCurrentPath());
+                parse.count("files", 3);
+                parse.end();
+            }
+            module.end();
+            assertNull(PerformanceReport.getCurrentPath());
+        }
+        finally {
+            PerformanceReport.stop();
+        }
+
+        StringWriter writer = new StringWriter();
+        report.writeJson(writer);
+        String json = writer.toString();
+
+        int modulePosition = json.indexOf("{\"name\": \"module:m\", \"invocations\": 1,");
+        int parsePosition = json.indexOf("{\"name\": \"module:m/parse\", \"invocations\": 2,");
+        assertTrue(json, modulePosition >= 0);
+        assertTrue("Phases must be reported in the order they were started: " + json, parsePosition > modulePosition);
+        assertTrue(json, json.contains("\"counters\": {\"files\": 6}"));
+    }
+
+    public void testExplicitParent() {
+        PerformanceReport.start();
+        try {
+            PerformanceReport.Phase phase = PerformanceReport.phase("codegen", "namespace:a");
+            assertEquals("codegen/namespace:a", PerformanceReport.getCurrentPath());
+            phase.end();
+        }
+        finally {
+            PerformanceReport.stop();
+        }
+    }
+
+    public void testNestedPhaseNotEnded() {
+        PerformanceReport.start();
+        try {
+            PerformanceReport.Phase outer = PerformanceReport.phase("analyze");
+            PerformanceReport.phase("bodies");
+            outer.end();
+            assertNull(PerformanceReport.getCurrentPath());
+        }
+        finally {
+            PerformanceReport.stop();
+        }
+    }
+
+    public void testPhasesOfPreviousReportAreForgotten() {
+        PerformanceReport.start();
+        PerformanceReport.phase("analyze");
+        PerformanceReport.stop();
+
+        PerformanceReport.start();
+        try {
+            PerformanceReport.Phase phase = PerformanceReport.phase("parse");
+            assertEquals("parse", PerformanceReport.getCurrentPath());
+            phase.end();
+        }
+        finally {
+            PerformanceReport.stop();
+        }
+    }
+}
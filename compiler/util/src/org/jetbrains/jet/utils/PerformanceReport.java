@@ -0,0 +1,307 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Wall time, allocated memory and counters of the compilation phases.
+ *
+ * Phases are measured only while a report is started, otherwise {@link #phase} returns a phase that does nothing.
+ * A phase started while another one is running on the same thread is reported as nested into it, e.g. "module:foo/analyze/bodies".
+ * Phases with the same path are summed up. A phase must be ended in {@code finally}, otherwise phases started after an exception
+ * are reported as nested into the failed one until the next report is started.
+ *
+ * Usage:
+ * <pre>
+ * PerformanceReport.Phase phase = PerformanceReport.phase("declarations");
+ * try {
+ *     ...
+ *     phase.count("functions", functions.size());
+ * }
+ * finally {
+ *     phase.end();
+ * }
+ * </pre>
+ */
+public final class PerformanceReport {
+    private static volatile PerformanceReport current = null;
+
+    private static final ThreadLocal<Deque<String>> PHASE_PATHS = new ThreadLocal<Deque<String>>() {
+        @Override
+        protected Deque<String> initialValue() {
+            return new ArrayDeque<String>();
+        }
+    };
+
+    /**
+     * A phase that is not measured
+     */
+    public static final Phase NO_PHASE = new Phase(null, "", 0, 0) {
+        @Override
+        public void count(@NotNull String counter, long delta) {
+        }
+
+        @Override
+        public void end() {
+        }
+    };
+
+    // Allocated bytes are provided by the HotSpot specific com.sun.management.ThreadMXBean, which other JVMs may lack
+    private static final Object THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final Method GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytesMethod();
+
+    /**
+     * Starts collecting a new report, phases started before are not included.
+     * Phases left running on the current thread by a previous compilation, e.g. in the same compiler daemon, are forgotten
+     */
+    @NotNull
+    public static PerformanceReport start() {
+        PHASE_PATHS.get().clear();
+        PerformanceReport report = new PerformanceReport();
+        current = report;
+        return report;
+    }
+
+    /**
+     * Stops collecting the report
+     */
+    public static void stop() {
+        current = null;
+        PHASE_PATHS.remove();
+    }
+
+    @Nullable
+    public static PerformanceReport getCurrent() {
+        return current;
+    }
+
+    @NotNull
+    public static Phase phase(@NotNull String name) {
+        return phase(getCurrentPath(), name);
+    }
+
+    /**
+     * Starts a phase nested into the given one, e.g. to attribute work done by a thread pool to the phase that started it
+     */
+    @NotNull
+    public static Phase phase(@Nullable String parentPath, @NotNull String name) {
+        PerformanceReport report = current;
+        if (report == null) return NO_PHASE;
+
+        String path = parentPath == null ? name : parentPath + "/" + name;
+        report.getPhaseData(path);
+        PHASE_PATHS.get().push(path);
+        return new Phase(report, path, System.nanoTime(), getAllocatedBytes());
+    }
+
+    /**
+     * @return path of the innermost phase running on the current thread, or null
+     */
+    @Nullable
+    public static String getCurrentPath() {
+        return PHASE_PATHS.get().peek();
+    }
+
+    private final long startTime = System.nanoTime();
+    // Insertion order is the order in which phases were first started
+    private final Map<String, PhaseData> phases = new LinkedHashMap<String, PhaseData>();
+
+    private PerformanceReport() {
+    }
+
+    @NotNull
+    private synchronized PhaseData getPhaseData(@NotNull String path) {
+        PhaseData data = phases.get(path);
+        if (data == null) {
+            data = new PhaseData();
+            phases.put(path, data);
+        }
+        return data;
+    }
+
+    private synchronized void record(@NotNull String path, long time, long allocatedBytes, @Nullable Map<String, Long> counters) {
+        PhaseData data = getPhaseData(path);
+        data.invocations++;
+        data.time += time;
+        data.allocatedBytes += allocatedBytes;
+        if (counters != null) {
+            for (Map.Entry<String, Long> entry : counters.entrySet()) {
+                Long value = data.counters.get(entry.getKey());
+                data.counters.put(entry.getKey(), value == null ? entry.getValue() : value + entry.getValue());
+            }
+        }
+    }
+
+    public synchronized void writeJson(@NotNull Writer writer) throws IOException {
+        Runtime runtime = Runtime.getRuntime();
+        writer.write("{\n");
+        writer.write("  \"totalTimeMs\": " + formatMillis(System.nanoTime() - startTime) + ",\n");
+        writer.write("  \"usedHeapBytes\": " + (runtime.totalMemory() - runtime.freeMemory()) + ",\n");
+        writer.write("  \"allocatedBytesMeasured\": " + (getAllocatedBytes() >= 0) + ",\n");
+        writer.write("  \"phases\": [");
+        boolean first = true;
+        for (Map.Entry<String, PhaseData> entry : phases.entrySet()) {
+            PhaseData data = entry.getValue();
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write("    {\"name\": " + quote(entry.getKey()) +
+                         ", \"invocations\": " + data.invocations +
+                         ", \"timeMs\": " + formatMillis(data.time) +
+                         ", \"allocatedBytes\": " + data.allocatedBytes +
+                         ", \"counters\": {");
+            boolean firstCounter = true;
+            for (Map.Entry<String, Long> counter : data.counters.entrySet()) {
+                if (!firstCounter) writer.write(", ");
+                firstCounter = false;
+                writer.write(quote(counter.getKey()) + ": " + counter.getValue());
+            }
+            writer.write("}}");
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    public void writeJson(@NotNull File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            writeJson(writer);
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @NotNull
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1e6);
+    }
+
+    @NotNull
+    private static String quote(@NotNull String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Nullable
+    private static Method getThreadAllocatedBytesMethod() {
+        try {
+            Class<?> sunBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (!sunBeanClass.isInstance(THREAD_MX_BEAN)) return null;
+
+            Method isSupported = sunBeanClass.getMethod("isThreadAllocatedMemorySupported");
+            Method isEnabled = sunBeanClass.getMethod("isThreadAllocatedMemoryEnabled");
+            if (!Boolean.TRUE.equals(isSupported.invoke(THREAD_MX_BEAN)) || !Boolean.TRUE.equals(isEnabled.invoke(THREAD_MX_BEAN))) {
+                return null;
+            }
+            return sunBeanClass.getMethod("getThreadAllocatedBytes", long.class);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM can't tell
+     */
+    private static long getAllocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) return -1;
+        try {
+            return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_MX_BEAN, Thread.currentThread().getId());
+        }
+        catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static class PhaseData {
+        private int invocations;
+        private long time;
+        private long allocatedBytes;
+        private final Map<String, Long> counters = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     * A running phase, must be ended on the thread it was started on, in {@code finally}
+     */
+    public static class Phase {
+        private final PerformanceReport report;
+        private final String path;
+        private final long startTime;
+        private final long startAllocatedBytes;
+        private Map<String, Long> counters = null;
+
+        private Phase(@Nullable PerformanceReport report, @NotNull String path, long startTime, long startAllocatedBytes) {
+            this.report = report;
+            this.path = path;
+            this.startTime = startTime;
+            this.startAllocatedBytes = startAllocatedBytes;
+        }
+
+        /**
+         * Adds {@code delta} to a counter of the phase, e.g. the number of files or classes processed
+         */
+        public void count(@NotNull String counter, long delta) {
+            if (counters == null) {
+                counters = new LinkedHashMap<String, Long>();
+            }
+            Long value = counters.get(counter);
+            counters.put(counter, value == null ? delta : value + delta);
+        }
+
+        public void end() {
+            long time = System.nanoTime() - startTime;
+            long allocatedBytes = startAllocatedBytes < 0 ? 0 : getAllocatedBytes() - startAllocatedBytes;
+
+            // Nested phases which were not ended are dropped together with this one. Nothing is thrown when phases are ended
+            // out of order, because this is called in finally, where an exception would hide the original one
+            Deque<String> paths = PHASE_PATHS.get();
+            if (paths.contains(path)) {
+                while (!path.equals(paths.pop())) {
+                    // drop the nested phase
+                }
+            }
+
+            if (report != null) {
+                report.record(path, time, allocatedBytes, counters);
+            }
+        }
+    }
+}
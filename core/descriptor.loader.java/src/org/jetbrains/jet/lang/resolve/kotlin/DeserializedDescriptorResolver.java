@@ -33,7 +33,8 @@ import org.jetbrains.jet.lang.resolve.kotlin.header.SerializedDataHeader;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.lang.resolve.scopes.JetScope;
-import org.jetbrains.jet.storage.LockBasedStorageManager;
+import org.jetbrains.jet.storage.FineGrainedLockStorageManager;
+import org.jetbrains.jet.storage.StorageManager;
 
 import javax.inject.Inject;
 import java.util.Collection;
@@ -45,7 +46,7 @@ import static org.jetbrains.jet.lang.resolve.kotlin.DeserializedResolverUtils.ko
 public final class DeserializedDescriptorResolver {
     private AnnotationDescriptorDeserializer annotationDeserializer;
 
-    private final LockBasedStorageManager storageManager = new LockBasedStorageManager();
+    private final StorageManager storageManager = FineGrainedLockStorageManager.createDefault();
 
     private JavaNamespaceResolver javaNamespaceResolver;
 
@@ -34,8 +34,10 @@ public class ChainedScope implements JetScope {
     private final DeclarationDescriptor containingDeclaration;
     private final String debugName;
     private final JetScope[] scopeChain;
-    private Collection<DeclarationDescriptor> allDescriptors;
-    private List<ReceiverParameterDescriptor> implicitReceiverHierarchy;
+    // Scopes are shared by threads resolving bodies in parallel. These are computed without a lock, because the chained scopes may
+    // compute lazy values under their own locks, and published when complete: racing threads compute equal results
+    private volatile Collection<DeclarationDescriptor> allDescriptors;
+    private volatile List<ReceiverParameterDescriptor> implicitReceiverHierarchy;
 
     public ChainedScope(DeclarationDescriptor containingDeclaration, JetScope... scopes) {
         this(containingDeclaration, "Untitled chained scope", scopes);
@@ -125,13 +127,15 @@ public class ChainedScope implements JetScope {
     @NotNull
     @Override
     public List<ReceiverParameterDescriptor> getImplicitReceiversHierarchy() {
-        if (implicitReceiverHierarchy == null) {
-            implicitReceiverHierarchy = Lists.newArrayList();
+        List<ReceiverParameterDescriptor> result = implicitReceiverHierarchy;
+        if (result == null) {
+            result = Lists.newArrayList();
             for (JetScope jetScope : scopeChain) {
-                implicitReceiverHierarchy.addAll(jetScope.getImplicitReceiversHierarchy());
+                result.addAll(jetScope.getImplicitReceiversHierarchy());
             }
+            implicitReceiverHierarchy = result;
         }
-        return implicitReceiverHierarchy;
+        return result;
     }
 
     @NotNull
@@ -153,13 +157,15 @@ public class ChainedScope implements JetScope {
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
-        if (allDescriptors == null) {
-            allDescriptors = Sets.newHashSet();
+        Collection<DeclarationDescriptor> result = allDescriptors;
+        if (result == null) {
+            result = Sets.newHashSet();
             for (JetScope scope : scopeChain) {
-                allDescriptors.addAll(scope.getAllDescriptors());
+                result.addAll(scope.getAllDescriptors());
             }
+            allDescriptors = result;
         }
-        return allDescriptors;
+        return result;
     }
 
     @NotNull
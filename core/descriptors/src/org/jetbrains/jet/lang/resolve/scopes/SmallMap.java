@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.lang.resolve.scopes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A map for the few names declared in a local scope: up to {@link #MAX_LINEAR_SIZE} entries are kept in two arrays
+ * and looked up linearly, bigger maps are moved to a {@link HashMap}. Null keys and values are not supported.
+ * While the entries are kept in the arrays, {@link #values()} returns them in the order of insertion.
+ *
+ * Not thread-safe.
+ */
+/*package*/ final class SmallMap<K, V> {
+    public static final String MAX_LINEAR_SIZE_PROPERTY = "kotlin.scope.linear.map.size";
+
+    // 0 makes every map a HashMap, which is how scopes were stored before; negative values are treated as 0
+    /*package*/ static final int MAX_LINEAR_SIZE = Math.max(0, Integer.getInteger(MAX_LINEAR_SIZE_PROPERTY, 8));
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    @Nullable
+    private Object[] keys;
+    @Nullable
+    private Object[] values;
+    private int size = 0;
+
+    @Nullable
+    private Map<K, V> map;
+
+    @Nullable
+    public V get(@NotNull K key) {
+        if (map != null) return map.get(key);
+
+        int index = indexOf(key);
+        //noinspection unchecked
+        return index < 0 ? null : (V) values[index];
+    }
+
+    /**
+     * @return the previous value for the key
+     */
+    @Nullable
+    public V put(@NotNull K key, @NotNull V value) {
+        if (map != null) return map.put(key, value);
+
+        int index = indexOf(key);
+        if (index >= 0) {
+            //noinspection unchecked
+            V oldValue = (V) values[index];
+            values[index] = value;
+            return oldValue;
+        }
+
+        if (size == MAX_LINEAR_SIZE) {
+            map = new HashMap<K, V>(size * 2 + 2);
+            for (int i = 0; i < size; i++) {
+                //noinspection unchecked
+                map.put((K) keys[i], (V) values[i]);
+            }
+            keys = null;
+            values = null;
+            return map.put(key, value);
+        }
+
+        if (keys == null) {
+            keys = new Object[Math.min(INITIAL_CAPACITY, MAX_LINEAR_SIZE)];
+            values = new Object[keys.length];
+        }
+        else if (size == keys.length) {
+            int newLength = Math.min(size * 2, MAX_LINEAR_SIZE);
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return the removed value for the key
+     */
+    @Nullable
+    public V remove(@NotNull K key) {
+        if (map != null) return map.remove(key);
+
+        int index = indexOf(key);
+        if (index < 0) return null;
+
+        //noinspection unchecked
+        V oldValue = (V) values[index];
+        // The order of the remaining entries is kept
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        return oldValue;
+    }
+
+    @NotNull
+    public Collection<V> values() {
+        if (map != null) return map.values();
+        if (size == 0) return Collections.emptyList();
+        //noinspection unchecked
+        return (Collection<V>) Collections.unmodifiableList(Arrays.asList(values).subList(0, size));
+    }
+
+    private int indexOf(@NotNull Object key) {
+        for (int i = 0; i < size; i++) {
+            Object candidate = keys[i];
+            if (candidate == key || candidate.equals(key)) return i;
+        }
+        return -1;
+    }
+}
@@ -16,7 +16,6 @@
 
 package org.jetbrains.jet.lang.resolve.scopes;
 
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -26,19 +25,23 @@ import org.jetbrains.jet.lang.resolve.name.LabelName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.lang.types.TypeSubstitutor;
 import org.jetbrains.jet.utils.Printer;
+import org.jetbrains.jet.utils.WrappedValues;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SubstitutingScope implements JetScope {
 
     private final JetScope workerScope;
     private final TypeSubstitutor substitutor;
 
-    private Map<DeclarationDescriptor, DeclarationDescriptor> substitutedDescriptors = null;
-    private Collection<DeclarationDescriptor> allDescriptors = null;
+    // Member scopes of types are shared by threads resolving bodies in parallel. Substitution may compute lazy values under their own
+    // locks, so it runs without a lock; if threads race, the first stored result wins and the others are dropped
+    private volatile ConcurrentMap<DeclarationDescriptor, Object> substitutedDescriptors = null;
+    private volatile Collection<DeclarationDescriptor> allDescriptors = null;
 
     public SubstitutingScope(JetScope workerScope, @NotNull TypeSubstitutor substitutor) {
         this.workerScope = workerScope;
@@ -50,20 +53,31 @@ public class SubstitutingScope implements JetScope {
         if (descriptor == null) return null;
         if (substitutor.isEmpty()) return descriptor;
 
-        if (substitutedDescriptors == null) {
-            substitutedDescriptors = Maps.newHashMap();
+        ConcurrentMap<DeclarationDescriptor, Object> cache = getSubstitutedDescriptors();
+        Object substituted = cache.get(descriptor);
+        if (substituted == null) {
+            Object computed = WrappedValues.escapeNull(descriptor.substitute(substitutor));
+            Object previous = cache.putIfAbsent(descriptor, computed);
+            substituted = previous != null ? previous : computed;
         }
 
-        DeclarationDescriptor substituted = substitutedDescriptors.get(descriptor);
-        if (substituted == null && !substitutedDescriptors.containsKey(descriptor)) {
-            substituted = descriptor.substitute(substitutor);
+        return WrappedValues.unescapeNull(substituted);
+    }
 
-            //noinspection ConstantConditions
-            substitutedDescriptors.put(descriptor, substituted);
+    @NotNull
+    private ConcurrentMap<DeclarationDescriptor, Object> getSubstitutedDescriptors() {
+        ConcurrentMap<DeclarationDescriptor, Object> result = substitutedDescriptors;
+        if (result == null) {
+            // Nothing else is called under this lock
+            synchronized (this) {
+                result = substitutedDescriptors;
+                if (result == null) {
+                    result = new ConcurrentHashMap<DeclarationDescriptor, Object>(16, 0.75f, 2);
+                    substitutedDescriptors = result;
+                }
+            }
         }
-
-        //noinspection unchecked
-        return (D) substituted;
+        return result;
     }
 
     @NotNull
@@ -141,10 +155,12 @@ public class SubstitutingScope implements JetScope {
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getAllDescriptors() {
-        if (allDescriptors == null) {
-            allDescriptors = substitute(workerScope.getAllDescriptors());
+        Collection<DeclarationDescriptor> result = allDescriptors;
+        if (result == null) {
+            result = substitute(workerScope.getAllDescriptors());
+            allDescriptors = result;
         }
-        return allDescriptors;
+        return result;
     }
 
     @NotNull
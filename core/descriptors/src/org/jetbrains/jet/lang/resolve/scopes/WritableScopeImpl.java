@@ -33,10 +33,13 @@ import java.util.*;
 public class WritableScopeImpl extends WritableScopeWithImports {
 
     private final Collection<DeclarationDescriptor> allDescriptors = Lists.newArrayList();
-    private final Multimap<Name, DeclarationDescriptor> declaredDescriptorsAccessibleBySimpleName = HashMultimap.create();
-    private boolean allDescriptorsDone = false;
+    @Nullable
+    private Multimap<Name, DeclarationDescriptor> declaredDescriptorsAccessibleBySimpleName;
+    // Results of reads are published when complete, without a lock: a scope locked for reading may be read from several threads,
+    // and the worker and imported scopes may compute lazy values under their own locks. Racing threads compute equal results
+    private volatile Collection<DeclarationDescriptor> allDescriptorsWithImports = null;
 
-    private Set<ClassDescriptor> allObjectDescriptors = null;
+    private volatile Set<ClassDescriptor> allObjectDescriptors = null;
 
     @NotNull
     private final DeclarationDescriptor ownerDeclarationDescriptor;
@@ -45,19 +48,19 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     private SetMultimap<Name, FunctionDescriptor> functionGroups;
 
     @Nullable
-    private Map<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors;
+    private SmallMap<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors;
     
     @Nullable
     private SetMultimap<Name, VariableDescriptor> propertyGroups;
 
     @Nullable
-    private Map<Name, NamespaceDescriptor> namespaceAliases;
+    private SmallMap<Name, NamespaceDescriptor> namespaceAliases;
 
     @Nullable
-    private Map<LabelName, List<DeclarationDescriptor>> labelsToDescriptors;
+    private SmallMap<LabelName, List<DeclarationDescriptor>> labelsToDescriptors;
     
     @Nullable
-    private Map<Name, ClassDescriptor> objectDescriptors;
+    private SmallMap<Name, ClassDescriptor> objectDescriptors;
 
     @Nullable
     private ReceiverParameterDescriptor implicitReceiver;
@@ -125,32 +128,33 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public Collection<DeclarationDescriptor> getAllDescriptors() {
         checkMayRead();
 
-        if (!allDescriptorsDone) {
-            allDescriptorsDone = true;
-
+        Collection<DeclarationDescriptor> result = allDescriptorsWithImports;
+        if (result == null) {
             // make sure no descriptors added to allDescriptors collection
             changeLockLevel(LockLevel.READING);
 
-            allDescriptors.addAll(getWorkerScope().getAllDescriptors());
+            result = Lists.newArrayList(allDescriptors);
+            result.addAll(getWorkerScope().getAllDescriptors());
             for (JetScope imported : getImports()) {
-                allDescriptors.addAll(imported.getAllDescriptors());
+                result.addAll(imported.getAllDescriptors());
             }
+            allDescriptorsWithImports = result;
         }
-        return allDescriptors;
+        return result;
     }
 
     @NotNull
-    private Map<LabelName, List<DeclarationDescriptor>> getLabelsToDescriptors() {
+    private SmallMap<LabelName, List<DeclarationDescriptor>> getLabelsToDescriptors() {
         if (labelsToDescriptors == null) {
-            labelsToDescriptors = new HashMap<LabelName, List<DeclarationDescriptor>>();
+            labelsToDescriptors = new SmallMap<LabelName, List<DeclarationDescriptor>>();
         }
         return labelsToDescriptors;
     }
 
     @NotNull
-    private Map<Name, ClassDescriptor> getObjectDescriptorsMap() {
+    private SmallMap<Name, ClassDescriptor> getObjectDescriptorsMap() {
         if (objectDescriptors == null) {
-            objectDescriptors = Maps.newHashMap();
+            objectDescriptors = new SmallMap<Name, ClassDescriptor>();
         }
         return objectDescriptors;
     }
@@ -161,13 +165,13 @@ public class WritableScopeImpl extends WritableScopeWithImports {
         checkMayRead();
 
         Collection<DeclarationDescriptor> superResult = super.getDeclarationsByLabel(labelName);
-        Map<LabelName, List<DeclarationDescriptor>> labelsToDescriptors = getLabelsToDescriptors();
-        List<DeclarationDescriptor> declarationDescriptors = labelsToDescriptors.get(labelName);
+        List<DeclarationDescriptor> declarationDescriptors = labelsToDescriptors == null ? null : labelsToDescriptors.get(labelName);
         if (declarationDescriptors == null) {
             return superResult;
         }
         if (superResult.isEmpty()) return declarationDescriptors;
-        List<DeclarationDescriptor> result = new ArrayList<DeclarationDescriptor>(declarationDescriptors);
+        List<DeclarationDescriptor> result = new ArrayList<DeclarationDescriptor>(declarationDescriptors.size() + superResult.size());
+        result.addAll(declarationDescriptors);
         result.addAll(superResult);
         return result;
     }
@@ -176,28 +180,33 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public void addLabeledDeclaration(@NotNull DeclarationDescriptor descriptor) {
         checkMayWrite();
 
-        Map<LabelName, List<DeclarationDescriptor>> labelsToDescriptors = getLabelsToDescriptors();
+        SmallMap<LabelName, List<DeclarationDescriptor>> labelsToDescriptors = getLabelsToDescriptors();
         LabelName name = new LabelName(descriptor.getName().asString());
         List<DeclarationDescriptor> declarationDescriptors = labelsToDescriptors.get(name);
         if (declarationDescriptors == null) {
-            declarationDescriptors = new ArrayList<DeclarationDescriptor>();
+            declarationDescriptors = new ArrayList<DeclarationDescriptor>(1);
             labelsToDescriptors.put(name, declarationDescriptors);
         }
         declarationDescriptors.add(descriptor);
     }
 
     @NotNull
-    private Map<Name, DeclarationDescriptor> getVariableClassOrNamespaceDescriptors() {
+    private SmallMap<Name, DeclarationDescriptor> getVariableClassOrNamespaceDescriptors() {
         if (variableClassOrNamespaceDescriptors == null) {
-            variableClassOrNamespaceDescriptors = Maps.newHashMap();
+            variableClassOrNamespaceDescriptors = new SmallMap<Name, DeclarationDescriptor>();
         }
         return variableClassOrNamespaceDescriptors;
     }
 
+    @Nullable
+    private DeclarationDescriptor getVariableClassOrNamespaceDescriptor(@NotNull Name name) {
+        return variableClassOrNamespaceDescriptors == null ? null : variableClassOrNamespaceDescriptors.get(name);
+    }
+
     @NotNull
-    private Map<Name, NamespaceDescriptor> getNamespaceAliases() {
+    private SmallMap<Name, NamespaceDescriptor> getNamespaceAliases() {
         if (namespaceAliases == null) {
-            namespaceAliases = Maps.newHashMap();
+            namespaceAliases = new SmallMap<Name, NamespaceDescriptor>();
         }
         return namespaceAliases;
     }
@@ -234,9 +243,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public Set<VariableDescriptor> getProperties(@NotNull Name name) {
         checkMayRead();
 
-        Set<VariableDescriptor> result = Sets.newLinkedHashSet(getPropertyGroups().get(name));
+        Set<VariableDescriptor> fromWorker = getWorkerScope().getProperties(name);
+        if (propertyGroups == null && !hasImports()) {
+            return fromWorker;
+        }
+
+        Set<VariableDescriptor> result = propertyGroups == null
+                                         ? Sets.<VariableDescriptor>newLinkedHashSet()
+                                         : Sets.newLinkedHashSet(propertyGroups.get(name));
 
-        result.addAll(getWorkerScope().getProperties(name));
+        result.addAll(fromWorker);
 
         result.addAll(super.getProperties(name));
         
@@ -247,9 +263,8 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public VariableDescriptor getLocalVariable(@NotNull Name name) {
         checkMayRead();
 
-        Map<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
-        DeclarationDescriptor descriptor = variableClassOrNamespaceDescriptors.get(name);
-        if (descriptor instanceof VariableDescriptor && !getPropertyGroups().get(name).contains(descriptor)) {
+        DeclarationDescriptor descriptor = getVariableClassOrNamespaceDescriptor(name);
+        if (descriptor instanceof VariableDescriptor && (propertyGroups == null || !propertyGroups.get(name).contains(descriptor))) {
             return (VariableDescriptor) descriptor;
         }
 
@@ -289,9 +304,16 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public Collection<FunctionDescriptor> getFunctions(@NotNull Name name) {
         checkMayRead();
 
-        Set<FunctionDescriptor> result = Sets.newLinkedHashSet(getFunctionGroups().get(name));
+        Collection<FunctionDescriptor> fromWorker = getWorkerScope().getFunctions(name);
+        if (functionGroups == null && !hasImports()) {
+            return fromWorker;
+        }
+
+        Set<FunctionDescriptor> result = functionGroups == null
+                                         ? Sets.<FunctionDescriptor>newLinkedHashSet()
+                                         : Sets.newLinkedHashSet(functionGroups.get(name));
 
-        result.addAll(getWorkerScope().getFunctions(name));
+        result.addAll(fromWorker);
 
         result.addAll(super.getFunctions(name));
 
@@ -368,7 +390,8 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     }
     
     private void checkForPropertyRedeclaration(@NotNull Name name, VariableDescriptor variableDescriptor) {
-        Set<VariableDescriptor> properties = getPropertyGroups().get(name);
+        if (propertyGroups == null) return;
+        Set<VariableDescriptor> properties = propertyGroups.get(name);
         ReceiverParameterDescriptor receiverParameter = variableDescriptor.getReceiverParameter();
         for (VariableDescriptor oldProperty : properties) {
             ReceiverParameterDescriptor receiverParameterForOldVariable = oldProperty.getReceiverParameter();
@@ -380,7 +403,7 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     }
 
     private void checkForRedeclaration(@NotNull Name name, DeclarationDescriptor classifierDescriptor) {
-        DeclarationDescriptor originalDescriptor = getVariableClassOrNamespaceDescriptors().get(name);
+        DeclarationDescriptor originalDescriptor = getVariableClassOrNamespaceDescriptor(name);
         if (originalDescriptor != null) {
             redeclarationHandler.handleRedeclaration(originalDescriptor, classifierDescriptor);
         }
@@ -390,8 +413,7 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public ClassifierDescriptor getClassifier(@NotNull Name name) {
         checkMayRead();
 
-        Map<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
-        DeclarationDescriptor descriptor = variableClassOrNamespaceDescriptors.get(name);
+        DeclarationDescriptor descriptor = getVariableClassOrNamespaceDescriptor(name);
         if (descriptor instanceof ClassifierDescriptor) return (ClassifierDescriptor) descriptor;
 
         ClassifierDescriptor classifierDescriptor = getWorkerScope().getClassifier(name);
@@ -402,7 +424,7 @@ public class WritableScopeImpl extends WritableScopeWithImports {
 
     @Override
     public ClassDescriptor getObjectDescriptor(@NotNull Name name) {
-        ClassDescriptor descriptor = getObjectDescriptorsMap().get(name);
+        ClassDescriptor descriptor = objectDescriptors == null ? null : objectDescriptors.get(name);
         if (descriptor != null) return descriptor;
 
         ClassDescriptor fromWorker = getWorkerScope().getObjectDescriptor(name);
@@ -414,22 +436,25 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     @NotNull
     @Override
     public Set<ClassDescriptor> getObjectDescriptors() {
-        if (allObjectDescriptors == null) {
-            allObjectDescriptors = Sets.newHashSet(getObjectDescriptorsMap().values());
-            allObjectDescriptors.addAll(getWorkerScope().getObjectDescriptors());
+        Set<ClassDescriptor> result = allObjectDescriptors;
+        if (result == null) {
+            result = objectDescriptors == null
+                     ? Sets.<ClassDescriptor>newHashSet()
+                     : Sets.newHashSet(objectDescriptors.values());
+            result.addAll(getWorkerScope().getObjectDescriptors());
             for (JetScope imported : getImports()) {
-                allObjectDescriptors.addAll(imported.getObjectDescriptors());
+                result.addAll(imported.getObjectDescriptors());
             }
+            allObjectDescriptors = result;
         }
-        return allObjectDescriptors;
+        return result;
     }
 
     @Override
     public void addNamespace(@NotNull NamespaceDescriptor namespaceDescriptor) {
         checkMayWrite();
 
-        Map<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
-        DeclarationDescriptor oldValue = variableClassOrNamespaceDescriptors.put(namespaceDescriptor.getName(), namespaceDescriptor);
+        DeclarationDescriptor oldValue = getVariableClassOrNamespaceDescriptors().put(namespaceDescriptor.getName(), namespaceDescriptor);
         if (oldValue != null) {
             redeclarationHandler.handleRedeclaration(oldValue, namespaceDescriptor);
         }
@@ -441,8 +466,7 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     public NamespaceDescriptor getDeclaredNamespace(@NotNull Name name) {
         checkMayRead();
 
-        Map<Name, DeclarationDescriptor> variableClassOrNamespaceDescriptors = getVariableClassOrNamespaceDescriptors();
-        DeclarationDescriptor namespaceDescriptor = variableClassOrNamespaceDescriptors.get(name);
+        DeclarationDescriptor namespaceDescriptor = getVariableClassOrNamespaceDescriptor(name);
         if (namespaceDescriptor instanceof NamespaceDescriptor) return (NamespaceDescriptor) namespaceDescriptor;
         return null;
     }
@@ -454,7 +478,7 @@ public class WritableScopeImpl extends WritableScopeWithImports {
         NamespaceDescriptor declaredNamespace = getDeclaredNamespace(name);
         if (declaredNamespace != null) return declaredNamespace;
 
-        NamespaceDescriptor aliased = getNamespaceAliases().get(name);
+        NamespaceDescriptor aliased = namespaceAliases == null ? null : namespaceAliases.get(name);
         if (aliased != null) return aliased;
 
         NamespaceDescriptor namespace = getWorkerScope().getNamespace(name);
@@ -483,24 +507,31 @@ public class WritableScopeImpl extends WritableScopeWithImports {
     }
 
     private void addToDeclared(DeclarationDescriptor descriptor) {
+        if (declaredDescriptorsAccessibleBySimpleName == null) {
+            declaredDescriptorsAccessibleBySimpleName = HashMultimap.create();
+        }
         declaredDescriptorsAccessibleBySimpleName.put(descriptor.getName(), descriptor);
     }
 
     @NotNull
     @Override
     public Multimap<Name, DeclarationDescriptor> getDeclaredDescriptorsAccessibleBySimpleName() {
-        return declaredDescriptorsAccessibleBySimpleName;
+        return declaredDescriptorsAccessibleBySimpleName == null
+               ? ImmutableMultimap.<Name, DeclarationDescriptor>of()
+               : declaredDescriptorsAccessibleBySimpleName;
     }
 
     @NotNull
     @Override
     public Collection<DeclarationDescriptor> getOwnDeclaredDescriptors() {
-        return declaredDescriptorsAccessibleBySimpleName.values();
+        return declaredDescriptorsAccessibleBySimpleName == null
+               ? Collections.<DeclarationDescriptor>emptyList()
+               : declaredDescriptorsAccessibleBySimpleName.values();
     }
 
     @TestOnly
     @Override
     protected void printAdditionalScopeStructure(@NotNull Printer p) {
-        p.println("allDescriptorsDone = ", allDescriptorsDone);
+        p.println("allDescriptorsDone = ", allDescriptorsWithImports != null);
     }
 }
@@ -37,7 +37,8 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     private List<JetScope> imports;
     private WritableScope currentIndividualImportScope;
     protected final RedeclarationHandler redeclarationHandler;
-    private List<ReceiverParameterDescriptor> implicitReceiverHierarchy;
+    // Published when complete, see WritableScopeImpl.getAllDescriptors
+    private volatile List<ReceiverParameterDescriptor> implicitReceiverHierarchy;
 
     public WritableScopeWithImports(@NotNull JetScope scope, @NotNull RedeclarationHandler redeclarationHandler, @NotNull String debugName) {
         super(scope);
@@ -81,10 +82,11 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
 
     @NotNull
     protected final List<JetScope> getImports() {
-        if (imports == null) {
-            imports = new ArrayList<JetScope>();
-        }
-        return imports;
+        return imports == null ? Collections.<JetScope>emptyList() : imports;
+    }
+
+    protected final boolean hasImports() {
+        return imports != null && !imports.isEmpty();
     }
 
     @Override
@@ -95,7 +97,10 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
 
         checkMayWrite();
 
-        getImports().add(0, imported);
+        if (imports == null) {
+            imports = new ArrayList<JetScope>();
+        }
+        imports.add(0, imported);
         currentIndividualImportScope = null;
     }
 
@@ -104,10 +109,12 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     public List<ReceiverParameterDescriptor> getImplicitReceiversHierarchy() {
         checkMayRead();
 
-        if (implicitReceiverHierarchy == null) {
-            implicitReceiverHierarchy = computeImplicitReceiversHierarchy();
+        List<ReceiverParameterDescriptor> result = implicitReceiverHierarchy;
+        if (result == null) {
+            result = computeImplicitReceiversHierarchy();
+            implicitReceiverHierarchy = result;
         }
-        return implicitReceiverHierarchy;
+        return result;
     }
 
     protected List<ReceiverParameterDescriptor> computeImplicitReceiversHierarchy() {
@@ -153,7 +160,7 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     public Collection<FunctionDescriptor> getFunctions(@NotNull Name name) {
         checkMayRead();
 
-        if (getImports().isEmpty()) {
+        if (!hasImports()) {
             return Collections.emptySet();
         }
         Set<FunctionDescriptor> result = Sets.newLinkedHashSet();
@@ -248,7 +255,9 @@ public abstract class WritableScopeWithImports extends JetScopeAdapter implement
     @Override
     public void clearImports() {
         currentIndividualImportScope = null;
-        getImports().clear();
+        if (imports != null) {
+            imports.clear();
+        }
     }
 
     @Override
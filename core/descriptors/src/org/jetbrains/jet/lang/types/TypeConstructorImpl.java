@@ -22,17 +22,19 @@ import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
 import org.jetbrains.jet.lang.descriptors.TypeParameterDescriptor;
 import org.jetbrains.jet.lang.descriptors.annotations.AnnotatedImpl;
 import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.types.checker.SupertypeCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
-public class TypeConstructorImpl extends AnnotatedImpl implements TypeConstructor {
+public class TypeConstructorImpl extends AnnotatedImpl implements TypeConstructor, SupertypeCache.Owner {
     private final List<TypeParameterDescriptor> parameters;
     private Collection<JetType> supertypes;
     private final String debugName;
     private final boolean isFinal;
+    private final SupertypeCache supertypeCache = new SupertypeCache();
 
     @Nullable
     private final ClassifierDescriptor classifierDescriptor;
@@ -69,6 +71,12 @@ public class TypeConstructorImpl extends AnnotatedImpl implements TypeConstructo
         return debugName;
     }
 
+    @NotNull
+    @Override
+    public SupertypeCache getSupertypeCache() {
+        return supertypeCache;
+    }
+
     @Override
     public boolean isFinal() {
         return isFinal;
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.lang.types.checker;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.lang.types.TypeConstructor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Supertypes of one type constructor found by {@link TypeCheckingProcedure}: maps constructors of its supertypes to these supertypes,
+ * expressed in terms of its own type parameters. The cache is kept by the type constructor itself (see {@link Owner}),
+ * so it lives no longer than the descriptors of the resolve session the constructor belongs to.
+ *
+ * Only supertypes that were found are cached, since supertypes and upper bounds may be added while declarations are resolved.
+ * Supertypes are removed only to break cycles in a type hierarchy: every such removal must be reported by {@link #supertypesRemoved()},
+ * which invalidates all caches, as any cached supertype might have been found through the removed one.
+ */
+public final class SupertypeCache {
+    public interface Owner {
+        @NotNull
+        SupertypeCache getSupertypeCache();
+    }
+
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private static final class Supertypes {
+        private final int generation;
+        private final ConcurrentMap<TypeConstructor, JetType> map = new ConcurrentHashMap<TypeConstructor, JetType>();
+
+        private Supertypes(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    @Nullable
+    private volatile Supertypes supertypes;
+
+    public static void supertypesRemoved() {
+        generation.incrementAndGet();
+    }
+
+    /*package*/ static int currentGeneration() {
+        return generation.get();
+    }
+
+    @Nullable
+    /*package*/ JetType get(@NotNull TypeConstructor supertypeConstructor) {
+        Supertypes current = supertypes;
+        if (current == null || current.generation != generation.get()) return null;
+        return current.map.get(supertypeConstructor);
+    }
+
+    /**
+     * @param searchGeneration the generation when the search of the supertype started: if supertypes were removed since then,
+     *                         the supertype might have been found through a removed one and is not cached
+     */
+    /*package*/ synchronized void put(@NotNull TypeConstructor supertypeConstructor, @NotNull JetType supertype, int searchGeneration) {
+        if (searchGeneration != generation.get()) return;
+
+        Supertypes current = supertypes;
+        if (current == null || current.generation != searchGeneration) {
+            current = new Supertypes(searchGeneration);
+            supertypes = current;
+        }
+        current.map.put(supertypeConstructor, supertype);
+    }
+}
@@ -27,19 +27,53 @@ import java.util.List;
 import static org.jetbrains.jet.lang.types.Variance.*;
 
 public class TypeCheckingProcedure {
+    public static final String SUPERTYPE_CACHE_PROPERTY = "kotlin.supertype.cache";
+
+    private static final boolean SUPERTYPE_CACHE_ENABLED = !"false".equals(System.getProperty(SUPERTYPE_CACHE_PROPERTY));
 
     // This method returns the supertype of the first parameter that has the same constructor
     // as the second parameter, applying the substitution of type arguments to it
     @Nullable
     public static JetType findCorrespondingSupertype(@NotNull JetType subtype, @NotNull JetType supertype) {
+        return findCorrespondingSupertype(subtype, supertype.getConstructor());
+    }
+
+    @Nullable
+    private static JetType findCorrespondingSupertype(@NotNull JetType subtype, @NotNull TypeConstructor supertypeConstructor) {
         TypeConstructor constructor = subtype.getConstructor();
-        if (constructor.equals(supertype.getConstructor())) {
+        if (constructor.equals(supertypeConstructor)) {
             return subtype;
         }
+
+        JetType unsubstitutedSupertype = findUnsubstitutedSupertype(constructor, supertypeConstructor);
+        if (unsubstitutedSupertype == null) {
+            return null;
+        }
+        if (constructor.getParameters().isEmpty()) {
+            // Nothing to substitute, e.g. for String and Comparable<String>
+            return unsubstitutedSupertype;
+        }
+        return TypeSubstitutor.create(subtype).safeSubstitute(unsubstitutedSupertype, Variance.INVARIANT);
+    }
+
+    @Nullable
+    private static JetType findUnsubstitutedSupertype(@NotNull TypeConstructor constructor, @NotNull TypeConstructor supertypeConstructor) {
+        SupertypeCache cache = SUPERTYPE_CACHE_ENABLED && constructor instanceof SupertypeCache.Owner
+                               ? ((SupertypeCache.Owner) constructor).getSupertypeCache()
+                               : null;
+        int generation = SupertypeCache.currentGeneration();
+        if (cache != null) {
+            JetType result = cache.get(supertypeConstructor);
+            if (result != null) return result;
+        }
+
         for (JetType immediateSupertype : constructor.getSupertypes()) {
-            JetType correspondingSupertype = findCorrespondingSupertype(immediateSupertype, supertype);
-            if (correspondingSupertype != null) {
-                return TypeSubstitutor.create(subtype).safeSubstitute(correspondingSupertype, Variance.INVARIANT);
+            JetType result = findCorrespondingSupertype(immediateSupertype, supertypeConstructor);
+            if (result != null) {
+                if (cache != null) {
+                    cache.put(supertypeConstructor, result, generation);
+                }
+                return result;
             }
         }
         return null;
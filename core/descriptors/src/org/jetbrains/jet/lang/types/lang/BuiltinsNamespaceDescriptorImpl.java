@@ -24,17 +24,37 @@ import java.util.List;
 
 import static org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.UNSUPPORTED;
 
+/**
+ * The built-ins package, deserialized from classpath resources. Nothing is read until the package scope is first requested,
+ * and then every class is read and deserialized only when it's looked up.
+ */
 class BuiltinsNamespaceDescriptorImpl extends AbstractNamespaceDescriptorImpl {
-    private final DeserializedPackageMemberScope members;
-    private final NameResolver nameResolver;
+    private final NotNullLazyValue<NameResolver> nameResolver;
+    private final NotNullLazyValue<DeserializedPackageMemberScope> members;
 
-    public BuiltinsNamespaceDescriptorImpl(@NotNull StorageManager storageManager, @NotNull NamespaceDescriptor containingDeclaration) {
+    public BuiltinsNamespaceDescriptorImpl(@NotNull final StorageManager storageManager, @NotNull NamespaceDescriptor containingDeclaration) {
         super(containingDeclaration, Collections.<AnnotationDescriptor>emptyList(), KotlinBuiltIns.BUILT_INS_PACKAGE_NAME);
 
-        nameResolver = NameSerializationUtil.deserializeNameResolver(getStream(BuiltInsSerializationUtil.getNameTableFilePath(this)));
+        nameResolver = storageManager.createLazyValue(new Function0<NameResolver>() {
+            @Override
+            public NameResolver invoke() {
+                InputStream stream = getStream(BuiltInsSerializationUtil.getNameTableFilePath(BuiltinsNamespaceDescriptorImpl.this));
+                try {
+                    return NameSerializationUtil.deserializeNameResolver(stream);
+                }
+                finally {
+                    closeQuietly(stream);
+                }
+            }
+        });
 
-        members = new DeserializedPackageMemberScope(storageManager, this, UNSUPPORTED, new BuiltInsDescriptorFinder(storageManager),
-                                                     loadPackage(), nameResolver);
+        members = storageManager.createLazyValue(new Function0<DeserializedPackageMemberScope>() {
+            @Override
+            public DeserializedPackageMemberScope invoke() {
+                return new DeserializedPackageMemberScope(storageManager, BuiltinsNamespaceDescriptorImpl.this, UNSUPPORTED,
+                                                          new BuiltInsDescriptorFinder(storageManager), loadPackage(), nameResolver.invoke());
+            }
+        });
     }
 
     @NotNull
@@ -47,12 +67,15 @@ class BuiltinsNamespaceDescriptorImpl extends AbstractNamespaceDescriptorImpl {
         catch (IOException e) {
             throw new IllegalStateException(e);
         }
+        finally {
+            closeQuietly(stream);
+        }
     }
 
     @NotNull
     @Override
     public JetScope getMemberScope() {
-        return members;
+        return members.invoke();
     }
 
     @NotNull
@@ -75,6 +98,14 @@ class BuiltinsNamespaceDescriptorImpl extends AbstractNamespaceDescriptorImpl {
         return KotlinBuiltIns.class.getClassLoader().getResourceAsStream(path);
     }
 
+    private static void closeQuietly(@NotNull InputStream stream) {
+        try {
+            stream.close();
+        }
+        catch (IOException ignored) {
+        }
+    }
+
     private class BuiltInsDescriptorFinder extends AbstractDescriptorFinder {
         private final NotNullLazyValue<Collection<Name>> classNames;
 
@@ -93,7 +124,7 @@ class BuiltinsNamespaceDescriptorImpl extends AbstractNamespaceDescriptorImpl {
                             int size = data.readInt();
                             List<Name> result = new ArrayList<Name>(size);
                             for (int i = 0; i < size; i++) {
-                                result.add(nameResolver.getName(data.readInt()));
+                                result.add(nameResolver.invoke().getName(data.readInt()));
                             }
                             return result;
                         }
@@ -120,18 +151,21 @@ class BuiltinsNamespaceDescriptorImpl extends AbstractNamespaceDescriptorImpl {
                 ProtoBuf.Class classProto = ProtoBuf.Class.parseFrom(stream);
 
                 Name expectedShortName = classId.getRelativeClassName().shortName();
-                Name actualShortName = nameResolver.getClassId(classProto.getFqName()).getRelativeClassName().shortName();
+                Name actualShortName = nameResolver.invoke().getClassId(classProto.getFqName()).getRelativeClassName().shortName();
                 if (!actualShortName.isSpecial() && !actualShortName.equals(expectedShortName)) {
                     // Workaround for case-insensitive file systems,
                     // otherwise we'd find "Collection" for "collection" etc
                     return null;
                 }
 
-                return new ClassData(nameResolver, classProto);
+                return new ClassData(nameResolver.invoke(), classProto);
             }
             catch (IOException e) {
                 throw new IllegalStateException(e);
             }
+            finally {
+                closeQuietly(stream);
+            }
         }
 
         @Nullable
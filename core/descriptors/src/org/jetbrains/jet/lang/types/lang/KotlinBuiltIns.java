@@ -18,6 +18,7 @@ package org.jetbrains.jet.lang.types.lang;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import jet.Function0;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.DefaultModuleConfiguration;
@@ -31,7 +32,6 @@ import org.jetbrains.jet.lang.descriptors.impl.ValueParameterDescriptorImpl;
 import org.jetbrains.jet.lang.resolve.DescriptorUtils;
 import org.jetbrains.jet.lang.resolve.constants.CompileTimeConstant;
 import org.jetbrains.jet.lang.resolve.constants.EnumValue;
-import org.jetbrains.jet.storage.LockBasedStorageManager;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.jet.lang.resolve.name.SpecialNames;
@@ -40,8 +40,10 @@ import org.jetbrains.jet.lang.resolve.scopes.RedeclarationHandler;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScopeImpl;
 import org.jetbrains.jet.lang.types.*;
+import org.jetbrains.jet.storage.LockBasedStorageManager;
+import org.jetbrains.jet.storage.NotNullLazyValue;
+import org.jetbrains.jet.storage.StorageManager;
 
-import java.io.IOException;
 import java.util.*;
 
 import static org.jetbrains.jet.lang.types.lang.PrimitiveType.*;
@@ -55,6 +57,9 @@ public class KotlinBuiltIns {
 
     public static final int FUNCTION_TRAIT_COUNT = 23;
 
+    private static final ImmutableSet<Name> FUNCTION_CLASS_NAMES = computeIndexedClassNames("Function", FUNCTION_TRAIT_COUNT);
+    private static final ImmutableSet<Name> EXTENSION_FUNCTION_CLASS_NAMES = computeIndexedClassNames("ExtensionFunction", FUNCTION_TRAIT_COUNT);
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     private static volatile KotlinBuiltIns instance = null;
@@ -74,7 +79,6 @@ public class KotlinBuiltIns {
             initializing = true;
             try {
                 instance = new KotlinBuiltIns();
-                instance.doInitialize();
             }
             catch (Throwable e) {
                 initializationFailed = e;
@@ -102,70 +106,39 @@ public class KotlinBuiltIns {
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private final ModuleDescriptorImpl builtInsModule;
-
-    private volatile ImmutableSet<ClassDescriptor> nonPhysicalClasses;
+    // All the state below is computed lazily under the lock of this storage manager,
+    // so that one instance is safely shared by all the compilations in the JVM
+    private final StorageManager storageManager = new LockBasedStorageManager();
 
-    private final ImmutableSet<ClassDescriptor> functionClassesSet;
-
-    private final ImmutableSet<ClassDescriptor> extensionFunctionClassesSet;
-
-    private final EnumMap<PrimitiveType, ClassDescriptor> primitiveTypeToClass;
-    private final EnumMap<PrimitiveType, ClassDescriptor> primitiveTypeToArrayClass;
-    private final EnumMap<PrimitiveType, JetType> primitiveTypeToJetType;
-    private final EnumMap<PrimitiveType, JetType> primitiveTypeToNullableJetType;
-    private final EnumMap<PrimitiveType, JetType> primitiveTypeToArrayJetType;
-    private final Map<JetType, JetType> primitiveJetTypeToJetArrayType;
-    private final Map<JetType, JetType> jetArrayTypeToPrimitiveJetType;
-
-    private final ClassDescriptor nothingClass;
-    private final ClassDescriptor arrayClass;
-    private final ClassDescriptor deprecatedAnnotationClass;
-    private final ClassDescriptor dataAnnotationClass;
-    private final ClassDescriptor[] functionClasses;
+    private final ModuleDescriptorImpl builtInsModule;
+    private final NamespaceDescriptor builtInsPackage;
 
-    private volatile JetType anyType;
-    private volatile JetType nullableAnyType;
-    private volatile JetType nothingType;
-    private volatile JetType nullableNothingType;
-    private volatile JetType unitType;
-    private volatile JetType stringType;
-    private volatile JetType annotationType;
+    private final NotNullLazyValue<ImmutableSet<ClassDescriptor>> nonPhysicalClasses;
+    private final NotNullLazyValue<PrimitiveTypes> primitiveTypes;
 
     private KotlinBuiltIns() {
-        try {
-            this.builtInsModule = new ModuleDescriptorImpl(Name.special("<built-ins lazy module>"),
-                                                           DefaultModuleConfiguration.DEFAULT_JET_IMPORTS,
-                                                           PlatformToKotlinClassMap.EMPTY);
-            builtInsModule.setModuleConfiguration(ModuleConfiguration.EMPTY);
-            loadBuiltIns(builtInsModule);
-
-            this.functionClassesSet = computeIndexedClasses("Function", FUNCTION_TRAIT_COUNT);
-            this.extensionFunctionClassesSet = computeIndexedClasses("ExtensionFunction", FUNCTION_TRAIT_COUNT);
-
-            this.primitiveTypeToClass = new EnumMap<PrimitiveType, ClassDescriptor>(PrimitiveType.class);
-            this.primitiveTypeToJetType = new EnumMap<PrimitiveType, JetType>(PrimitiveType.class);
-            this.primitiveTypeToNullableJetType = new EnumMap<PrimitiveType, JetType>(PrimitiveType.class);
-            this.primitiveTypeToArrayClass = new EnumMap<PrimitiveType, ClassDescriptor>(PrimitiveType.class);
-            this.primitiveTypeToArrayJetType = new EnumMap<PrimitiveType, JetType>(PrimitiveType.class);
-            this.primitiveJetTypeToJetArrayType = new HashMap<JetType, JetType>();
-            this.jetArrayTypeToPrimitiveJetType = new HashMap<JetType, JetType>();
-
-            this.nothingClass = getBuiltInClassByName("Nothing");
-            this.arrayClass = getBuiltInClassByName("Array");
-            this.deprecatedAnnotationClass = getBuiltInClassByName("deprecated");
-            this.dataAnnotationClass = getBuiltInClassByName("data");
-            this.functionClasses = new ClassDescriptor[FUNCTION_TRAIT_COUNT];
-            for (int i = 0; i < functionClasses.length; i++) {
-                functionClasses[i] = getBuiltInClassByName("Function" + i);
+        this.builtInsModule = new ModuleDescriptorImpl(Name.special("<built-ins lazy module>"),
+                                                       DefaultModuleConfiguration.DEFAULT_JET_IMPORTS,
+                                                       PlatformToKotlinClassMap.EMPTY);
+        builtInsModule.setModuleConfiguration(ModuleConfiguration.EMPTY);
+        this.builtInsPackage = loadBuiltIns(builtInsModule, storageManager);
+
+        this.nonPhysicalClasses = storageManager.createLazyValue(new Function0<ImmutableSet<ClassDescriptor>>() {
+            @Override
+            public ImmutableSet<ClassDescriptor> invoke() {
+                return computeNonPhysicalClasses();
             }
-        }
-        catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
+        });
+        this.primitiveTypes = storageManager.createLazyValue(new Function0<PrimitiveTypes>() {
+            @Override
+            public PrimitiveTypes invoke() {
+                return new PrimitiveTypes();
+            }
+        });
     }
 
-    private static void loadBuiltIns(@NotNull ModuleDescriptorImpl module) throws IOException {
+    @NotNull
+    private static NamespaceDescriptor loadBuiltIns(@NotNull ModuleDescriptorImpl module, @NotNull StorageManager storageManager) {
         NamespaceDescriptorImpl rootNamespace =
                         new NamespaceDescriptorImpl(module, Collections.<AnnotationDescriptor>emptyList(), SpecialNames.ROOT_NAMESPACE);
         rootNamespace.initialize(
@@ -173,39 +146,36 @@ public class KotlinBuiltIns {
 
         module.setRootNamespace(rootNamespace);
 
-        rootNamespace.getMemberScope().addNamespace(new BuiltinsNamespaceDescriptorImpl(new LockBasedStorageManager(), rootNamespace));
+        // Nothing is read from the resources until a built-in class is requested
+        NamespaceDescriptor builtInsPackage = new BuiltinsNamespaceDescriptorImpl(storageManager, rootNamespace);
+        rootNamespace.getMemberScope().addNamespace(builtInsPackage);
         rootNamespace.getMemberScope().changeLockLevel(WritableScope.LockLevel.READING);
+        return builtInsPackage;
     }
 
-    private void doInitialize() {
-        anyType = getBuiltInTypeByClassName("Any");
-        nullableAnyType = TypeUtils.makeNullable(anyType);
-        nothingType = getBuiltInTypeByClassName("Nothing");
-        nullableNothingType = TypeUtils.makeNullable(nothingType);
-        unitType = getBuiltInTypeByClassName("Unit");
-        stringType = getBuiltInTypeByClassName("String");
-        annotationType = getBuiltInTypeByClassName("Annotation");
+    private class PrimitiveTypes {
+        private final EnumMap<PrimitiveType, JetType> primitiveTypeToNullableJetType = new EnumMap<PrimitiveType, JetType>(PrimitiveType.class);
+        private final EnumMap<PrimitiveType, JetType> primitiveTypeToArrayJetType = new EnumMap<PrimitiveType, JetType>(PrimitiveType.class);
+        private final Map<JetType, JetType> primitiveJetTypeToJetArrayType = new HashMap<JetType, JetType>();
+        private final Map<JetType, JetType> jetArrayTypeToPrimitiveJetType = new HashMap<JetType, JetType>();
 
-        for (PrimitiveType primitive : PrimitiveType.values()) {
-            makePrimitive(primitive);
+        private PrimitiveTypes() {
+            for (PrimitiveType primitive : PrimitiveType.values()) {
+                makePrimitive(primitive);
+            }
         }
 
-        nonPhysicalClasses = computeNonPhysicalClasses();
-    }
-
-    private void makePrimitive(PrimitiveType primitiveType) {
-        ClassDescriptor theClass = getBuiltInClassByName(primitiveType.getTypeName().asString());
-        JetType type = new JetTypeImpl(theClass);
-        ClassDescriptor arrayClass = getBuiltInClassByName(primitiveType.getArrayTypeName().asString());
-        JetType arrayType = new JetTypeImpl(arrayClass);
+        private void makePrimitive(PrimitiveType primitiveType) {
+            ClassDescriptor theClass = getBuiltInClassByName(primitiveType.getTypeName().asString());
+            JetType type = new JetTypeImpl(theClass);
+            ClassDescriptor arrayClass = getBuiltInClassByName(primitiveType.getArrayTypeName().asString());
+            JetType arrayType = new JetTypeImpl(arrayClass);
 
-        primitiveTypeToClass.put(primitiveType, theClass);
-        primitiveTypeToJetType.put(primitiveType, type);
-        primitiveTypeToNullableJetType.put(primitiveType, TypeUtils.makeNullable(type));
-        primitiveTypeToArrayClass.put(primitiveType, arrayClass);
-        primitiveTypeToArrayJetType.put(primitiveType, arrayType);
-        primitiveJetTypeToJetArrayType.put(type, arrayType);
-        jetArrayTypeToPrimitiveJetType.put(arrayType, type);
+            primitiveTypeToNullableJetType.put(primitiveType, TypeUtils.makeNullable(type));
+            primitiveTypeToArrayJetType.put(primitiveType, arrayType);
+            primitiveJetTypeToJetArrayType.put(type, arrayType);
+            jetArrayTypeToPrimitiveJetType.put(arrayType, type);
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -217,9 +187,7 @@ public class KotlinBuiltIns {
 
     @NotNull
     public NamespaceDescriptor getBuiltInsPackage() {
-        NamespaceDescriptor namespace = getBuiltInsModule().getNamespace(BUILT_INS_PACKAGE_FQ_NAME);
-        assert namespace != null : "Built ins namespace not found: " + BUILT_INS_PACKAGE_FQ_NAME;
-        return namespace;
+        return builtInsPackage;
     }
 
     @NotNull
@@ -522,7 +490,7 @@ public class KotlinBuiltIns {
      */
     @NotNull
     public Set<ClassDescriptor> getNonPhysicalClasses() {
-        return nonPhysicalClasses;
+        return nonPhysicalClasses.invoke();
     }
 
     @NotNull
@@ -618,7 +586,7 @@ public class KotlinBuiltIns {
 
     @NotNull
     public JetType getNullablePrimitiveJetType(@NotNull PrimitiveType primitiveType) {
-        return primitiveTypeToNullableJetType.get(primitiveType);
+        return primitiveTypes.invoke().primitiveTypeToNullableJetType.get(primitiveType);
     }
 
     @NotNull
@@ -681,7 +649,7 @@ public class KotlinBuiltIns {
             }
             return arrayType.getArguments().get(0).getType();
         }
-        JetType primitiveType = jetArrayTypeToPrimitiveJetType.get(TypeUtils.makeNotNullable(arrayType));
+        JetType primitiveType = primitiveTypes.invoke().jetArrayTypeToPrimitiveJetType.get(TypeUtils.makeNotNullable(arrayType));
         if (primitiveType == null) {
             throw new IllegalStateException("not array: " + arrayType);
         }
@@ -690,7 +658,7 @@ public class KotlinBuiltIns {
 
     @NotNull
     public JetType getPrimitiveArrayJetType(@NotNull PrimitiveType primitiveType) {
-        return primitiveTypeToArrayJetType.get(primitiveType);
+        return primitiveTypes.invoke().primitiveTypeToArrayJetType.get(primitiveType);
     }
 
     /**
@@ -698,7 +666,7 @@ public class KotlinBuiltIns {
      */
     @Nullable
     public JetType getPrimitiveArrayJetTypeByPrimitiveJetType(@NotNull JetType jetType) {
-        return primitiveJetTypeToJetArrayType.get(jetType);
+        return primitiveTypes.invoke().primitiveJetTypeToJetArrayType.get(jetType);
     }
 
     @NotNull
@@ -830,20 +798,20 @@ public class KotlinBuiltIns {
     }
 
     public boolean isPrimitiveArray(@NotNull JetType type) {
-        return jetArrayTypeToPrimitiveJetType.containsKey(TypeUtils.makeNotNullable(type));
+        return primitiveTypes.invoke().jetArrayTypeToPrimitiveJetType.containsKey(TypeUtils.makeNotNullable(type));
     }
 
     public boolean isPrimitiveType(@NotNull JetType type) {
-        return primitiveJetTypeToJetArrayType.containsKey(type);
+        return primitiveTypes.invoke().primitiveJetTypeToJetArrayType.containsKey(type);
     }
 
     // Functions
 
     @NotNull
-    private ImmutableSet<ClassDescriptor> computeIndexedClasses(@NotNull String prefix, int count) {
-        ImmutableSet.Builder<ClassDescriptor> builder = ImmutableSet.builder();
+    private static ImmutableSet<Name> computeIndexedClassNames(@NotNull String prefix, int count) {
+        ImmutableSet.Builder<Name> builder = ImmutableSet.builder();
         for (int i = 0; i < count; i++) {
-            builder.add(getBuiltInClassByName(prefix + i));
+            builder.add(Name.identifier(prefix + i));
         }
         return builder.build();
     }
@@ -853,7 +821,7 @@ public class KotlinBuiltIns {
     }
 
     public boolean isFunctionType(@NotNull JetType type) {
-        if (setContainsClassOf(functionClassesSet, type)) return true;
+        if (isBuiltInClassOf(FUNCTION_CLASS_NAMES, type)) return true;
 
         for (JetType superType : type.getConstructor().getSupertypes()) {
             if (isFunctionType(superType)) return true;
@@ -863,11 +831,11 @@ public class KotlinBuiltIns {
     }
 
     public boolean isExactFunctionOrExtensionFunctionType(@NotNull JetType type) {
-        return setContainsClassOf(extensionFunctionClassesSet, type) || setContainsClassOf(functionClassesSet, type);
+        return isBuiltInClassOf(EXTENSION_FUNCTION_CLASS_NAMES, type) || isBuiltInClassOf(FUNCTION_CLASS_NAMES, type);
     }
 
     public boolean isExtensionFunctionType(@NotNull JetType type) {
-        if (setContainsClassOf(extensionFunctionClassesSet, type)) return true;
+        if (isBuiltInClassOf(EXTENSION_FUNCTION_CLASS_NAMES, type)) return true;
 
         for (JetType superType : type.getConstructor().getSupertypes()) {
             if (isExtensionFunctionType(superType)) return true;
@@ -978,8 +946,11 @@ public class KotlinBuiltIns {
         return getNullableAnyType();
     }
 
-    private static boolean setContainsClassOf(ImmutableSet<ClassDescriptor> set, JetType type) {
-        //noinspection SuspiciousMethodCalls
-        return set.contains(type.getConstructor().getDeclarationDescriptor());
+    // Checks names instead of comparing with the classes, so that function classes are not deserialized until they are used
+    private boolean isBuiltInClassOf(@NotNull Set<Name> classNames, @NotNull JetType type) {
+        ClassifierDescriptor descriptor = type.getConstructor().getDeclarationDescriptor();
+        return descriptor instanceof ClassDescriptor &&
+               classNames.contains(descriptor.getName()) &&
+               descriptor.getContainingDeclaration() == builtInsPackage;
     }
 }
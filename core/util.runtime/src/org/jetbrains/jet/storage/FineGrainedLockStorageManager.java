@@ -0,0 +1,475 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.storage;
+
+import jet.Function0;
+import jet.Function1;
+import jet.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.utils.ExceptionUtils;
+import org.jetbrains.jet.utils.WrappedValues;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A storage manager that guards every lazy value and every key of a memoized function with its own lock,
+ * so that independent computations may run in parallel.
+ *
+ * Recursion is detected per thread, exactly as in {@link LockBasedStorageManager}. Computations may also wait for each other
+ * from different threads (A computes x and needs y, while B computes y and needs x). Such a cycle is broken on one of its threads:
+ * the computations in progress there are abandoned without storing anything, which releases their locks, and the outermost one
+ * is started again when the other thread is done. Whatever the other thread computed meanwhile is reused, so the results are
+ * the same as if the computations were run one after another.
+ */
+public class FineGrainedLockStorageManager implements StorageManager {
+    public static final String ENABLED_PROPERTY = "kotlin.storage.fine.grained.locks";
+
+    private static final long CYCLE_CHECK_INTERVAL_MS = 10;
+
+    // Which lock each blocked thread is waiting for: this is the wait-for graph used to detect cross-thread cycles
+    private static final ConcurrentMap<Thread, ComputationLock> WAITING_FOR = new ConcurrentHashMap<Thread, ComputationLock>();
+
+    // Number of computations holding their locks on the current thread: a broken cycle is retried by the outermost one
+    private static final ThreadLocal<int[]> COMPUTATION_DEPTH = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    public static boolean isEnabled() {
+        return "true".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    }
+
+    @NotNull
+    public static StorageManager createDefault() {
+        return isEnabled() ? new FineGrainedLockStorageManager() : new LockBasedStorageManager();
+    }
+
+    private final ComputationLock computeLock = new ComputationLock();
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(@NotNull Function1<K, V> compute) {
+        return createMemoizedFunction(compute, new ConcurrentHashMap<K, Object>());
+    }
+
+    @NotNull
+    protected <K, V> MemoizedFunctionToNotNull<K, V> createMemoizedFunction(
+            @NotNull Function1<K, V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new PerKeyLockMemoizedFunctionToNotNull<K, V>(map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(@NotNull Function1<K, V> compute) {
+        return createMemoizedFunctionWithNullableValues(compute, new ConcurrentHashMap<K, Object>());
+    }
+
+    @NotNull
+    protected <K, V> MemoizedFunctionToNullable<K, V> createMemoizedFunctionWithNullableValues(
+            @NotNull Function1<K, V> compute,
+            @NotNull ConcurrentMap<K, Object> map
+    ) {
+        return new PerKeyLockMemoizedFunction<K, V>(map, compute);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValue(@NotNull Function0<T> computable) {
+        return new OwnLockNotNullLazyValue<T>(computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createRecursionTolerantLazyValue(
+            @NotNull Function0<T> computable, @NotNull final T onRecursiveCall
+    ) {
+        return new OwnLockNotNullLazyValue<T>(computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NotNullLazyValue<T> createLazyValueWithPostCompute(
+            @NotNull Function0<T> computable,
+            final Function1<Boolean, T> onRecursiveCall,
+            @NotNull final Function1<T, Unit> postCompute
+    ) {
+        return new OwnLockNotNullLazyValue<T>(computable) {
+            @Nullable
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                if (onRecursiveCall == null) {
+                    return super.recursionDetected(firstTime);
+                }
+                return onRecursiveCall.invoke(firstTime);
+            }
+
+            @Override
+            protected void postCompute(@NotNull T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValue(@NotNull Function0<T> computable) {
+        return new OwnLockLazyValue<T>(computable);
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createRecursionTolerantNullableLazyValue(@NotNull Function0<T> computable, final T onRecursiveCall) {
+        return new OwnLockLazyValue<T>(computable) {
+            @Override
+            protected T recursionDetected(boolean firstTime) {
+                return onRecursiveCall;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public <T> NullableLazyValue<T> createNullableLazyValueWithPostCompute(
+            @NotNull Function0<T> computable, @NotNull final Function1<T, Unit> postCompute
+    ) {
+        return new OwnLockLazyValue<T>(computable) {
+            @Override
+            protected void postCompute(@Nullable T value) {
+                postCompute.invoke(value);
+            }
+        };
+    }
+
+    /**
+     * Unlike {@link LockBasedStorageManager}, this lock only excludes other {@code compute()} calls
+     * and does not block lazy values and memoized functions
+     */
+    @Override
+    public <T> T compute(@NotNull Function0<T> computable) {
+        while (true) {
+            try {
+                acquire(computeLock);
+                try {
+                    return computable.invoke();
+                }
+                finally {
+                    release(computeLock);
+                }
+            }
+            catch (CycleBrokenException e) {
+                waitBeforeRetry(e);
+            }
+        }
+    }
+
+    /**
+     * @throws CycleBrokenException if waiting for the lock would close a cycle between threads, and the current thread
+     *         is chosen to break it (the lock is not acquired in this case)
+     */
+    private static void acquire(@NotNull ComputationLock lock) {
+        if (!lock.tryLock()) {
+            waitFor(lock);
+        }
+        COMPUTATION_DEPTH.get()[0]++;
+    }
+
+    private static void release(@NotNull ComputationLock lock) {
+        COMPUTATION_DEPTH.get()[0]--;
+        lock.unlock();
+    }
+
+    private static void waitFor(@NotNull ComputationLock lock) {
+        Thread current = Thread.currentThread();
+        WAITING_FOR.put(current, lock);
+        try {
+            while (!lock.tryLock(CYCLE_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (shouldBreakCycle(current, lock)) {
+                    throw new CycleBrokenException(lock);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ExceptionUtils.rethrow(e);
+        }
+        finally {
+            WAITING_FOR.remove(current);
+        }
+    }
+
+    private static boolean shouldBreakCycle(@NotNull Thread current, @NotNull ComputationLock lock) {
+        // Only the thread with the smallest id gives up, the others keep waiting until it unwinds and releases its locks
+        long minId = current.getId();
+        Thread owner = lock.getOwnerThread();
+        for (int steps = WAITING_FOR.size(); owner != null && steps >= 0; steps--) {
+            if (owner == current) {
+                return current.getId() == minId;
+            }
+            minId = Math.min(minId, owner.getId());
+
+            ComputationLock next = WAITING_FOR.get(owner);
+            if (next == null) return false;
+            owner = next.getOwnerThread();
+        }
+        return false;
+    }
+
+    /**
+     * Rethrows the exception if the current thread is still inside a computation, it's not stored by any of them.
+     * Otherwise the locks of the thread are released, and this waits until the thread it was waiting for is done with the lock.
+     */
+    private static void waitBeforeRetry(@NotNull CycleBrokenException e) {
+        if (COMPUTATION_DEPTH.get()[0] > 0) throw e;
+
+        e.lock.lock();
+        e.lock.unlock();
+    }
+
+    private static class CycleBrokenException extends RuntimeException {
+        private final ComputationLock lock;
+
+        public CycleBrokenException(@NotNull ComputationLock lock) {
+            super("Cycle between threads is broken, the computation will be retried");
+            this.lock = lock;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static class ComputationLock extends ReentrantLock {
+        @Nullable
+        public Thread getOwnerThread() {
+            return getOwner();
+        }
+    }
+
+    private static class OwnLockLazyValue<T> implements NullableLazyValue<T> {
+
+        private enum NotValue {
+            NOT_COMPUTED,
+            COMPUTING,
+            RECURSION_WAS_DETECTED
+        }
+
+        private final ComputationLock lock = new ComputationLock();
+        private final Function0<T> computable;
+
+        @Nullable
+        private volatile Object value = NotValue.NOT_COMPUTED;
+
+        public OwnLockLazyValue(@NotNull Function0<T> computable) {
+            this.computable = computable;
+        }
+
+        @Override
+        public boolean isComputed() {
+            return value != NotValue.NOT_COMPUTED && value != NotValue.COMPUTING;
+        }
+
+        @Override
+        public T invoke() {
+            Object _value = value;
+            if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
+
+            while (true) {
+                try {
+                    return computeUnderLock();
+                }
+                catch (CycleBrokenException e) {
+                    waitBeforeRetry(e);
+                }
+            }
+        }
+
+        private T computeUnderLock() {
+            acquire(lock);
+            try {
+                Object _value = value;
+                if (!(_value instanceof NotValue)) return WrappedValues.unescapeThrowable(_value);
+
+                if (_value == NotValue.COMPUTING) {
+                    value = NotValue.RECURSION_WAS_DETECTED;
+                    return recursionDetected(/*firstTime = */ true);
+                }
+
+                if (_value == NotValue.RECURSION_WAS_DETECTED) {
+                    return recursionDetected(/*firstTime = */ false);
+                }
+
+                value = NotValue.COMPUTING;
+                try {
+                    T typedValue = computable.invoke();
+                    value = typedValue;
+                    postCompute(typedValue);
+                    return typedValue;
+                }
+                catch (CycleBrokenException e) {
+                    // The computation is abandoned, even if recursion was detected in it
+                    if (value instanceof NotValue) {
+                        value = NotValue.NOT_COMPUTED;
+                    }
+                    throw e;
+                }
+                catch (Throwable throwable) {
+                    if (value == NotValue.COMPUTING) {
+                        // Store only if it's a genuine result, not something thrown through recursionDetected()
+                        value = WrappedValues.escapeThrowable(throwable);
+                    }
+                    throw ExceptionUtils.rethrow(throwable);
+                }
+            }
+            finally {
+                release(lock);
+            }
+        }
+
+        /**
+         * @param firstTime {@code true} when recursion has been just detected, {@code false} otherwise
+         * @return a value to be returned on a recursive call or subsequent calls
+         */
+        @Nullable
+        protected T recursionDetected(boolean firstTime) {
+            throw new IllegalStateException("Recursive call in a lazy value");
+        }
+
+        protected void postCompute(T value) {
+            // Doing something in post-compute helps prevent infinite recursion
+        }
+    }
+
+    private static class OwnLockNotNullLazyValue<T> extends OwnLockLazyValue<T> implements NotNullLazyValue<T> {
+
+        public OwnLockNotNullLazyValue(@NotNull Function0<T> computable) {
+            super(computable);
+        }
+
+        @Override
+        @NotNull
+        public T invoke() {
+            T result = super.invoke();
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+
+    private static class PerKeyLockMemoizedFunction<K, V> implements MemoizedFunctionToNullable<K, V> {
+        private final ConcurrentMap<K, Object> cache;
+        // Locks for the keys being computed at the moment, a lock is removed as soon as its value is stored in the cache
+        private final ConcurrentMap<K, ComputationLock> locks = new ConcurrentHashMap<K, ComputationLock>();
+        private final Function1<K, V> compute;
+
+        public PerKeyLockMemoizedFunction(@NotNull ConcurrentMap<K, Object> map, @NotNull Function1<K, V> compute) {
+            this.cache = map;
+            this.compute = compute;
+        }
+
+        @Override
+        @Nullable
+        public V invoke(K input) {
+            Object value = cache.get(input);
+            if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
+
+            ComputationLock lock = getLock(input);
+            if (lock.isHeldByCurrentThread()) {
+                throw new IllegalStateException("Recursive call in a memoized function for " + input);
+            }
+            while (true) {
+                try {
+                    return computeUnderLock(input, lock);
+                }
+                catch (CycleBrokenException e) {
+                    waitBeforeRetry(e);
+                    lock = getLock(input);
+                }
+            }
+        }
+
+        @NotNull
+        private ComputationLock getLock(K input) {
+            ComputationLock newLock = new ComputationLock();
+            ComputationLock existingLock = locks.putIfAbsent(input, newLock);
+            return existingLock != null ? existingLock : newLock;
+        }
+
+        @Nullable
+        private V computeUnderLock(K input, @NotNull ComputationLock lock) {
+            acquire(lock);
+            boolean abandoned = false;
+            try {
+                Object value = cache.get(input);
+                if (value != null) return WrappedValues.unescapeExceptionOrNull(value);
+
+                try {
+                    V typedValue = compute.invoke(input);
+                    Object oldValue = cache.put(input, WrappedValues.escapeNull(typedValue));
+                    assert oldValue == null : "Race condition or recursion detected. Old value is " + oldValue;
+
+                    return typedValue;
+                }
+                catch (CycleBrokenException e) {
+                    abandoned = true;
+                    throw e;
+                }
+                catch (Throwable throwable) {
+                    Object oldValue = cache.put(input, WrappedValues.escapeThrowable(throwable));
+                    assert oldValue == null : "Race condition or recursion detected. Old value is " + oldValue;
+
+                    throw ExceptionUtils.rethrow(throwable);
+                }
+            }
+            finally {
+                // The lock of an abandoned computation stays: threads waiting for it and new callers must use the same lock
+                if (!abandoned) {
+                    locks.remove(input, lock);
+                }
+                release(lock);
+            }
+        }
+    }
+
+    private static class PerKeyLockMemoizedFunctionToNotNull<K, V> extends PerKeyLockMemoizedFunction<K, V>
+            implements MemoizedFunctionToNotNull<K, V> {
+
+        public PerKeyLockMemoizedFunctionToNotNull(@NotNull ConcurrentMap<K, Object> map, @NotNull Function1<K, V> compute) {
+            super(map, compute);
+        }
+
+        @NotNull
+        @Override
+        public V invoke(K input) {
+            V result = super.invoke(input);
+            assert result != null : "compute() returned null";
+            return result;
+        }
+    }
+}
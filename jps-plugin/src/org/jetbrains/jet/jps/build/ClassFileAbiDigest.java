@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.asm4.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Digest of everything in a set of class files that other sources can depend on: class headers, non-private members and
+ * annotations (the latter include the serialized Kotlin descriptors). Method bodies and debug information are ignored,
+ * so that changes inside function bodies do not cause recompilation of dependent files. The only exception are bodies of
+ * functions annotated with {@code inline}: calls of them are expanded in the callers, which must be recompiled when the body changes.
+ */
+public class ClassFileAbiDigest {
+    private static final String INLINE_ANNOTATION_DESC = "Ljet/inline;";
+
+    private final MessageDigest digest;
+
+    private ClassFileAbiDigest() {
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    public static String compute(@NotNull Collection<File> classFiles) throws IOException {
+        List<File> sorted = new ArrayList<File>(classFiles);
+        Collections.sort(sorted);
+
+        ClassFileAbiDigest abiDigest = new ClassFileAbiDigest();
+        for (File classFile : sorted) {
+            new ClassReader(FileUtil.loadFileBytes(classFile)).accept(
+                    abiDigest.new AbiClassVisitor(), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        return toHex(abiDigest.digest.digest());
+    }
+
+    private void update(Object... values) {
+        for (Object value : values) {
+            try {
+                digest.update(String.valueOf(value).getBytes("UTF-8"));
+            }
+            catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            digest.update((byte) 0);
+        }
+    }
+
+    @NotNull
+    private static String toHex(@NotNull byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    @NotNull
+    private static String arrayToString(@NotNull Object array) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < Array.getLength(array); i++) {
+            builder.append(Array.get(array, i)).append(",");
+        }
+        return builder.toString();
+    }
+
+    private static boolean isPrivate(int access) {
+        return (access & Opcodes.ACC_PRIVATE) != 0;
+    }
+
+    private class AbiClassVisitor extends ClassVisitor {
+        public AbiClassVisitor() {
+            super(Opcodes.ASM4);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            update("class", access, name, signature, superName);
+            if (interfaces != null) {
+                update((Object[]) interfaces);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            update("annotation", desc);
+            return new AbiAnnotationVisitor();
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            update("inner", name, outerName, innerName, access);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            if (isPrivate(access)) return null;
+            update("field", access, name, desc, signature, value);
+            return new FieldVisitor(Opcodes.ASM4) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                    update("annotation", desc);
+                    return new AbiAnnotationVisitor();
+                }
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            if (isPrivate(access)) return null;
+            update("method", access, name, desc, signature);
+            if (exceptions != null) {
+                update((Object[]) exceptions);
+            }
+            return new AbiMethodVisitor();
+        }
+    }
+
+    // Annotations are visited before the code, so the body is known to be inline by the time it is visited
+    private class AbiMethodVisitor extends MethodVisitor {
+        private final Map<Label, Integer> labels = new HashMap<Label, Integer>();
+        private boolean inline = false;
+
+        public AbiMethodVisitor() {
+            super(Opcodes.ASM4);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            update("annotation", desc);
+            inline |= INLINE_ANNOTATION_DESC.equals(desc);
+            return new AbiAnnotationVisitor();
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+            update("parameter annotation", parameter, desc);
+            return new AbiAnnotationVisitor();
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (inline) update("insn", opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            if (inline) update("insn", opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            if (inline) update("insn", opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            if (inline) update("insn", opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            if (inline) update("insn", opcode, owner, name, desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+            if (inline) update("insn", opcode, owner, name, desc);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+            if (inline) {
+                update("insn", Opcodes.INVOKEDYNAMIC, name, desc, bsm);
+                update(bsmArgs);
+            }
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            if (inline) update("insn", opcode, getLabelIndex(label));
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            if (inline) update("label", getLabelIndex(label));
+        }
+
+        @Override
+        public void visitLdcInsn(Object cst) {
+            if (inline) update("ldc", cst.getClass().getName(), cst);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            if (inline) update("iinc", var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            if (inline) {
+                update("tableswitch", min, max, getLabelIndex(dflt));
+                for (Label label : labels) {
+                    update(getLabelIndex(label));
+                }
+            }
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            if (inline) {
+                update("lookupswitch", getLabelIndex(dflt), arrayToString(keys));
+                for (Label label : labels) {
+                    update(getLabelIndex(label));
+                }
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            if (inline) update("multianewarray", desc, dims);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            if (inline) update("try", getLabelIndex(start), getLabelIndex(end), getLabelIndex(handler), type);
+        }
+
+        // Labels are numbered in the order they are met, so that the digest doesn't depend on their identity
+        private int getLabelIndex(@NotNull Label label) {
+            Integer index = labels.get(label);
+            if (index == null) {
+                index = labels.size();
+                labels.put(label, index);
+            }
+            return index;
+        }
+    }
+
+    private class AbiAnnotationVisitor extends AnnotationVisitor {
+        public AbiAnnotationVisitor() {
+            super(Opcodes.ASM4);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            // Primitive arrays are passed as is, e.g. int[] for ABI version numbers
+            update(name, value.getClass().isArray() ? arrayToString(value) : value);
+        }
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            update(name, desc, value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            update(name, desc);
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            update(name);
+            return this;
+        }
+
+        @Override
+        public void visitEnd() {
+            update("end");
+        }
+    }
+}
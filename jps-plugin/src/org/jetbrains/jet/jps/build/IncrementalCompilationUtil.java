@@ -0,0 +1,184 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.MultiMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.compiler.runner.SimpleOutputItem;
+import org.jetbrains.jps.builders.DirtyFilesHolder;
+import org.jetbrains.jps.builders.FileProcessor;
+import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.incremental.CompileContext;
+import org.jetbrains.jps.incremental.ModuleBuildTarget;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Incremental compilation of a single JVM target. Changed files cause recompilation of all files of their packages;
+ * if the ABI of a recompiled package changes, files referring to the package are recompiled in an additional pass.
+ */
+public class IncrementalCompilationUtil {
+    private static final String STORAGE_FILE_NAME = "kotlin-dependencies.txt";
+
+    @NotNull
+    public static File getDependencyGraphFile(@NotNull CompileContext context, @NotNull ModuleBuildTarget target) {
+        File dataRoot = context.getProjectDescriptor().dataManager.getDataPaths().getTargetDataRoot(target);
+        return new File(dataRoot, STORAGE_FILE_NAME);
+    }
+
+    /**
+     * @return packages of changed and removed Kotlin files, or {@code null} if the whole target should be recompiled
+     */
+    @Nullable
+    public static Set<String> getDirtyPackages(
+            @NotNull final KotlinDependencyGraph graph,
+            @NotNull DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder,
+            @NotNull ModuleBuildTarget target
+    ) throws IOException {
+        final Set<String> dirtyPackages = new HashSet<String>();
+        final boolean[] nonKotlinFileChanged = new boolean[1];
+
+        dirtyFilesHolder.processDirtyFiles(new FileProcessor<JavaSourceRootDescriptor, ModuleBuildTarget>() {
+            @Override
+            public boolean apply(ModuleBuildTarget target, File file, JavaSourceRootDescriptor root) throws IOException {
+                if (!KotlinSourceFileCollector.isKotlinSourceFile(file)) {
+                    // Kotlin sources may depend on anything declared in Java sources: we don't track that
+                    nonKotlinFileChanged[0] = true;
+                    return false;
+                }
+                String oldPackage = graph.getPackage(file);
+                if (oldPackage != null) {
+                    dirtyPackages.add(oldPackage);
+                }
+                dirtyPackages.add(KotlinSourceFileCollector.readPackageFqName(file));
+                return true;
+            }
+        });
+        if (nonKotlinFileChanged[0]) return null;
+
+        for (String removedPath : dirtyFilesHolder.getRemovedFiles(target)) {
+            File removed = new File(removedPath);
+            if (!KotlinSourceFileCollector.isKotlinSourceFile(removed)) return null;
+
+            String oldPackage = graph.getPackage(removed);
+            if (oldPackage != null) {
+                dirtyPackages.add(oldPackage);
+            }
+            graph.removeFile(removed);
+        }
+
+        return dirtyPackages;
+    }
+
+    @NotNull
+    public static List<File> getFilesInPackages(
+            @NotNull KotlinDependencyGraph graph,
+            @NotNull Collection<File> allSourceFiles,
+            @NotNull Set<String> packages
+    ) throws IOException {
+        List<File> result = new ArrayList<File>();
+        for (File file : allSourceFiles) {
+            String packageFqName = graph.getPackage(file);
+            if (packageFqName == null) {
+                packageFqName = KotlinSourceFileCollector.readPackageFqName(file);
+            }
+            if (packages.contains(packageFqName)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records packages of the compiled files and the new ABI digests of the given packages
+     * @return packages whose ABI has changed
+     */
+    @NotNull
+    public static Set<String> updateDependencyGraph(
+            @NotNull KotlinDependencyGraph graph,
+            @NotNull Collection<File> compiledFiles,
+            @NotNull Collection<SimpleOutputItem> outputs,
+            @NotNull File outputDir,
+            @NotNull Collection<String> packagesToUpdate
+    ) throws IOException {
+        for (File file : compiledFiles) {
+            graph.setPackage(file, KotlinSourceFileCollector.readPackageFqName(file));
+        }
+
+        MultiMap<String, File> classFilesByPackage = new MultiMap<String, File>();
+        for (SimpleOutputItem output : outputs) {
+            File outputFile = output.getOutputFile();
+            String relativePath = FileUtil.getRelativePath(outputDir, outputFile);
+            if (relativePath == null || !relativePath.endsWith(".class")) continue;
+
+            String packagePath = new File(relativePath).getParent();
+            String packageFqName = packagePath == null ? "" : FileUtil.toSystemIndependentName(packagePath).replace('/', '.');
+            classFilesByPackage.putValue(packageFqName, outputFile);
+        }
+
+        Set<String> changedPackages = new HashSet<String>();
+        for (String packageFqName : packagesToUpdate) {
+            Collection<File> classFiles = classFilesByPackage.get(packageFqName);
+            String newDigest = classFiles.isEmpty() ? null : ClassFileAbiDigest.compute(classFiles);
+            String oldDigest = graph.getAbiDigest(packageFqName);
+            if (newDigest == null ? oldDigest != null : !newDigest.equals(oldDigest)) {
+                changedPackages.add(packageFqName);
+            }
+            graph.setAbiDigest(packageFqName, newDigest);
+        }
+        return changedPackages;
+    }
+
+    /**
+     * Finds files that may refer to the changed packages. The check is textual and thus conservative:
+     * a file is considered dependent if it mentions a qualified name starting with the package name
+     */
+    @NotNull
+    public static List<File> getDependentFiles(
+            @NotNull KotlinDependencyGraph graph,
+            @NotNull Collection<File> allSourceFiles,
+            @NotNull Collection<File> compiledFiles,
+            @NotNull Set<String> changedPackages
+    ) throws IOException {
+        Set<File> compiled = new HashSet<File>(compiledFiles);
+        List<File> result = new ArrayList<File>();
+        for (File file : allSourceFiles) {
+            if (compiled.contains(file)) continue;
+
+            if (changedPackages.contains("") || changedPackages.contains(graph.getPackage(file))) {
+                // Anything can import from the root package by a simple name
+                result.add(file);
+                continue;
+            }
+
+            String text = FileUtil.loadFile(file, true);
+            for (String packageFqName : changedPackages) {
+                if (text.contains(packageFqName + ".")) {
+                    result.add(file);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private IncrementalCompilationUtil() {}
+}
@@ -16,6 +16,7 @@
 
 package org.jetbrains.jet.jps.build;
 
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.Function;
 import com.intellij.util.containers.ContainerUtil;
@@ -37,7 +38,9 @@ import org.jetbrains.jet.utils.PathUtil;
 import org.jetbrains.jps.ModuleChunk;
 import org.jetbrains.jps.builders.BuildTarget;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
+import org.jetbrains.jps.builders.java.JavaBuilderUtil;
 import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.builders.storage.SourceToOutputMapping;
 import org.jetbrains.jps.incremental.*;
 import org.jetbrains.jps.incremental.java.JavaBuilder;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
@@ -86,7 +89,7 @@ public class KotlinBuilder extends ModuleLevelBuilder {
             DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder,
             OutputConsumer outputConsumer
     ) throws ProjectBuildException, IOException {
-        MessageCollector messageCollector = new MessageCollectorAdapter(context);
+        MessageCollectorAdapter messageCollector = new MessageCollectorAdapter(context);
         // Workaround for Android Studio
         if (!isJavaPluginEnabled(context)) {
             messageCollector.report(INFO, "Kotlin JPS plugin is disabled", NO_LOCATION);
@@ -157,17 +160,107 @@ public class KotlinBuilder extends ModuleLevelBuilder {
                         NO_LOCATION);
             }
 
-            File moduleFile = KotlinBuilderModuleScriptGenerator.generateModuleDescription(context, chunk);
-            if (moduleFile == null) {
+            // Incremental compilation is supported only for a single target: there is nothing to gain in cyclic chunks anyway
+            boolean singleTarget = chunk.getTargets().size() == 1;
+            File graphFile = IncrementalCompilationUtil.getDependencyGraphFile(context, representativeTarget);
+            KotlinDependencyGraph graph = singleTarget && !JavaBuilderUtil.isForcedRecompilationAllJavaModules(context)
+                                          ? KotlinDependencyGraph.load(graphFile)
+                                          : null;
+            Set<String> dirtyPackages = graph != null
+                                        ? IncrementalCompilationUtil.getDirtyPackages(graph, dirtyFilesHolder, representativeTarget)
+                                        : null;
+            boolean incremental = dirtyPackages != null;
+            if (!incremental) {
+                graph = singleTarget ? new KotlinDependencyGraph() : null;
+            }
+
+            Map<ModuleBuildTarget, List<File>> sourceFilesByTarget = new HashMap<ModuleBuildTarget, List<File>>();
+            for (ModuleBuildTarget target : chunk.getTargets()) {
+                sourceFilesByTarget.put(target, KotlinSourceFileCollector.getAllKotlinSourceFiles(target));
+            }
+            List<File> allSourceFiles = sourceFilesByTarget.get(representativeTarget);
+
+            if (incremental) {
+                List<File> filesToCompile = IncrementalCompilationUtil.getFilesInPackages(graph, allSourceFiles, dirtyPackages);
+                sourceFilesByTarget.put(representativeTarget, filesToCompile);
+                // Stale classes of the recompiled packages must not be visible to the compiler through the class path
+                deleteOutputs(context, representativeTarget, filesToCompile);
+            }
+
+            File moduleFile = KotlinBuilderModuleScriptGenerator.generateModuleDescription(context, chunk, sourceFilesByTarget, incremental);
+            if (moduleFile != null) {
+                K2JVMCompilerArguments k2JvmArguments = JpsKotlinCompilerSettings.getK2JvmCompilerArguments(project);
+
+                runK2JvmCompiler(commonArguments, k2JvmArguments, compilerSettings, messageCollector, environment,
+                                 moduleFile, outputItemCollector);
+            }
+            else if (!incremental) {
                 // No Kotlin sources found
                 return ExitCode.NOTHING_DONE;
             }
 
-            K2JVMCompilerArguments k2JvmArguments = JpsKotlinCompilerSettings.getK2JvmCompilerArguments(project);
+            registerOutputs(chunk, outputConsumer, messageCollector, outputItemCollector);
+
+            if (graph == null) {
+                return ExitCode.OK;
+            }
+            if (messageCollector.hasErrors()) {
+                // Digests of the broken packages are unknown: compile everything next time
+                FileUtil.delete(graphFile);
+                return ExitCode.OK;
+            }
+
+            List<File> compiledFiles = sourceFilesByTarget.get(representativeTarget);
+            Collection<String> packagesToUpdate = dirtyPackages;
+            if (packagesToUpdate == null) {
+                packagesToUpdate = new HashSet<String>();
+                for (File file : compiledFiles) {
+                    packagesToUpdate.add(KotlinSourceFileCollector.readPackageFqName(file));
+                }
+            }
+            Set<String> changedPackages = IncrementalCompilationUtil.updateDependencyGraph(
+                    graph, compiledFiles, outputItemCollector.getOutputs(), outputDir, packagesToUpdate);
+            graph.save(graphFile);
+
+            if (!incremental || changedPackages.isEmpty()) {
+                return ExitCode.OK;
+            }
+
+            List<File> dependentFiles = IncrementalCompilationUtil.getDependentFiles(graph, allSourceFiles, compiledFiles, changedPackages);
+            for (File file : dependentFiles) {
+                FSOperations.markDirty(context, file);
+            }
+            return dependentFiles.isEmpty() ? ExitCode.OK : ExitCode.ADDITIONAL_PASS_REQUIRED;
+        }
+
+        registerOutputs(chunk, outputConsumer, messageCollector, outputItemCollector);
+
+        return ExitCode.OK;
+    }
 
-            runK2JvmCompiler(commonArguments, k2JvmArguments, compilerSettings, messageCollector, environment,
-                             moduleFile, outputItemCollector);
+    private static void deleteOutputs(
+            @NotNull CompileContext context,
+            @NotNull ModuleBuildTarget target,
+            @NotNull List<File> sourceFiles
+    ) throws IOException {
+        SourceToOutputMapping mapping = context.getProjectDescriptor().dataManager.getSourceToOutputMap(target);
+        for (File file : sourceFiles) {
+            Collection<String> outputs = mapping.getOutputs(file.getPath());
+            if (outputs == null) continue;
+
+            for (String output : outputs) {
+                FileUtil.delete(new File(output));
+            }
         }
+    }
+
+    private static void registerOutputs(
+            @NotNull ModuleChunk chunk,
+            @NotNull OutputConsumer outputConsumer,
+            @NotNull MessageCollector messageCollector,
+            @NotNull OutputItemsCollectorImpl outputItemCollector
+    ) throws IOException {
+        ModuleBuildTarget representativeTarget = chunk.representativeTarget();
 
         // If there's only one target, this map is empty: get() always returns null, and the representativeTarget will be used below
         Map<File, BuildTarget<?>> sourceToTarget = new HashMap<File, BuildTarget<?>>();
@@ -191,8 +284,6 @@ public class KotlinBuilder extends ModuleLevelBuilder {
 
             outputConsumer.registerOutputFile(target != null ? target : representativeTarget, outputItem.getOutputFile(), paths(sourceFiles));
         }
-
-        return ExitCode.OK;
     }
 
     private static boolean hasKotlinFiles(@NotNull ModuleChunk chunk) {
@@ -229,6 +320,7 @@ public class KotlinBuilder extends ModuleLevelBuilder {
     public static class MessageCollectorAdapter implements MessageCollector {
 
         private final CompileContext context;
+        private boolean hasErrors = false;
 
         public MessageCollectorAdapter(@NotNull CompileContext context) {
             this.context = context;
@@ -240,6 +332,7 @@ public class KotlinBuilder extends ModuleLevelBuilder {
                 @NotNull String message,
                 @NotNull CompilerMessageLocation location
         ) {
+            hasErrors |= ERRORS.contains(severity);
             String prefix = "";
             if (severity == EXCEPTION) {
                 prefix = INTERNAL_ERROR_PREFIX;
@@ -255,6 +348,10 @@ public class KotlinBuilder extends ModuleLevelBuilder {
             ));
         }
 
+        public boolean hasErrors() {
+            return hasErrors;
+        }
+
         @NotNull
         private static BuildMessage.Kind kind(@NotNull CompilerMessageSeverity severity) {
             switch (severity) {
@@ -51,22 +51,34 @@ public class KotlinBuilderModuleScriptGenerator {
 
     public static final KotlinModuleDescriptionBuilderFactory FACTORY = KotlinModuleXmlBuilderFactory.INSTANCE;
 
+    /**
+     * @param incremental if {@code true}, output directories are kept in the class path: classes compiled earlier from sources
+     *                    that are not recompiled now are read from there
+     */
     @Nullable
-    public static File generateModuleDescription(CompileContext context, ModuleChunk chunk)
-            throws IOException
-    {
+    public static File generateModuleDescription(
+            CompileContext context,
+            ModuleChunk chunk,
+            Map<ModuleBuildTarget, List<File>> sourceFilesByTarget,
+            boolean incremental
+    ) throws IOException {
         KotlinModuleDescriptionBuilder builder = FACTORY.create();
 
         boolean noSources = true;
 
         Set<File> outputDirs = new HashSet<File>();
-        for (ModuleBuildTarget target : chunk.getTargets()) {
-            outputDirs.add(getOutputDir(target));
+        if (!incremental) {
+            for (ModuleBuildTarget target : chunk.getTargets()) {
+                outputDirs.add(getOutputDir(target));
+            }
         }
         for (ModuleBuildTarget target : chunk.getTargets()) {
             File outputDir = getOutputDir(target);
 
-            List<File> sourceFiles = KotlinSourceFileCollector.getAllKotlinSourceFiles(target);
+            List<File> sourceFiles = sourceFilesByTarget.get(target);
+            if (sourceFiles == null) {
+                sourceFiles = Collections.emptyList();
+            }
             noSources &= sourceFiles.isEmpty();
 
             builder.addModule(
@@ -75,7 +87,7 @@ public class KotlinBuilderModuleScriptGenerator {
                     getKotlinModuleDependencies(context, target),
                     sourceFiles,
                     target.isTests(),
-                    // this excludes the output directories from the class path, to be removed for true incremental compilation
+                    // this excludes the output directories from the class path when everything is recompiled
                     outputDirs
             );
         }
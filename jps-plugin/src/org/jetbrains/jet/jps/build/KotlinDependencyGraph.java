@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.jet.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Persistent per-target data for incremental compilation: the package every source file declares and the ABI digest
+ * of every package's class files.
+ *
+ * A package is the unit of recompilation, because all top-level members of a package are compiled into one package class.
+ */
+public class KotlinDependencyGraph {
+    private static final String VERSION = "1";
+
+    private static final String FILE_PREFIX = "file";
+    private static final String PACKAGE_PREFIX = "package";
+    private static final String SEPARATOR = "\t";
+
+    private final Map<File, String> filePackages = new HashMap<File, String>();
+    private final Map<String, String> packageAbiDigests = new HashMap<String, String>();
+
+    @Nullable
+    public static KotlinDependencyGraph load(@NotNull File storage) {
+        if (!storage.exists()) return null;
+
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(storage), "UTF-8"));
+            try {
+                if (!VERSION.equals(reader.readLine())) return null;
+
+                KotlinDependencyGraph graph = new KotlinDependencyGraph();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(SEPARATOR, -1);
+                    if (parts.length != 3) return null;
+
+                    if (FILE_PREFIX.equals(parts[0])) {
+                        graph.filePackages.put(new File(parts[1]), parts[2]);
+                    }
+                    else if (PACKAGE_PREFIX.equals(parts[0])) {
+                        graph.packageAbiDigests.put(parts[1], parts[2]);
+                    }
+                    else {
+                        return null;
+                    }
+                }
+                return graph;
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            // A broken cache only means that the next build is not incremental
+            return null;
+        }
+    }
+
+    public void save(@NotNull File storage) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(VERSION).append("\n");
+        for (Map.Entry<File, String> entry : filePackages.entrySet()) {
+            appendLine(builder, FILE_PREFIX, entry.getKey().getPath(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : packageAbiDigests.entrySet()) {
+            appendLine(builder, PACKAGE_PREFIX, entry.getKey(), entry.getValue());
+        }
+        FileUtil.writeToFile(storage, builder.toString().getBytes("UTF-8"));
+    }
+
+    private static void appendLine(@NotNull StringBuilder builder, @NotNull String... parts) {
+        builder.append(StringUtil.join(parts, SEPARATOR)).append("\n");
+    }
+
+    @Nullable
+    public String getPackage(@NotNull File sourceFile) {
+        return filePackages.get(sourceFile);
+    }
+
+    public void setPackage(@NotNull File sourceFile, @NotNull String packageFqName) {
+        filePackages.put(sourceFile, packageFqName);
+    }
+
+    public void removeFile(@NotNull File sourceFile) {
+        filePackages.remove(sourceFile);
+    }
+
+    @Nullable
+    public String getAbiDigest(@NotNull String packageFqName) {
+        return packageAbiDigests.get(packageFqName);
+    }
+
+    public void setAbiDigest(@NotNull String packageFqName, @Nullable String digest) {
+        if (digest == null) {
+            packageAbiDigests.remove(packageFqName);
+        }
+        else {
+            packageAbiDigests.put(packageFqName, digest);
+        }
+    }
+}
@@ -37,6 +37,8 @@ import java.io.IOException;
 import java.util.List;
 
 public class KotlinSourceFileCollector {
+    private static final String PACKAGE_KEYWORD = "package";
+
     // For incremental compilation
     public static List<File> getDirtySourceFiles(DirtyFilesHolder<JavaSourceRootDescriptor, ModuleBuildTarget> dirtyFilesHolder)
             throws IOException
@@ -104,9 +106,82 @@ public class KotlinSourceFileCollector {
         return (Iterable) target.getModule().getSourceRoots(sourceRootType);
     }
 
-    private static boolean isKotlinSourceFile(File file) {
+    static boolean isKotlinSourceFile(File file) {
         return file.getPath().endsWith(".kt");
     }
 
+    /**
+     * Reads the package directive without parsing the whole file: only comments may precede it
+     * @return the package FqName, empty for the root package
+     */
+    @NotNull
+    public static String readPackageFqName(@NotNull File file) throws IOException {
+        String text = FileUtil.loadFile(file, true);
+        int i = skipWhitespaceAndComments(text, 0);
+        if (!text.startsWith(PACKAGE_KEYWORD, i) ||
+            i + PACKAGE_KEYWORD.length() >= text.length() ||
+            Character.isJavaIdentifierPart(text.charAt(i + PACKAGE_KEYWORD.length()))) {
+            return "";
+        }
+
+        StringBuilder fqName = new StringBuilder();
+        i = skipWhitespaceAndComments(text, i + PACKAGE_KEYWORD.length());
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '.' || Character.isJavaIdentifierPart(c)) {
+                fqName.append(c);
+                i++;
+            }
+            else if (c == '`') {
+                int end = text.indexOf('`', i + 1);
+                if (end < 0) break;
+                fqName.append(text, i + 1, end);
+                i = end + 1;
+            }
+            else if (c == ' ' || c == '\t') {
+                i++;
+            }
+            else {
+                break;
+            }
+        }
+        return fqName.toString();
+    }
+
+    private static int skipWhitespaceAndComments(@NotNull String text, int start) {
+        int i = start;
+        while (i < text.length()) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            else if (text.startsWith("//", i)) {
+                int end = text.indexOf('\n', i);
+                i = end < 0 ? text.length() : end + 1;
+            }
+            else if (text.startsWith("/*", i)) {
+                // Block comments nest in Kotlin
+                int depth = 1;
+                i += 2;
+                while (i < text.length() && depth > 0) {
+                    if (text.startsWith("/*", i)) {
+                        depth++;
+                        i += 2;
+                    }
+                    else if (text.startsWith("*/", i)) {
+                        depth--;
+                        i += 2;
+                    }
+                    else {
+                        i++;
+                    }
+                }
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
     private KotlinSourceFileCollector() {}
 }
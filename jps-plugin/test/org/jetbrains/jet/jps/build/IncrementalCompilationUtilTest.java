@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jetbrains.jet.jps.build;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class IncrementalCompilationUtilTest extends TestCase {
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = FileUtil.createTempDirectory("incrementalCompilation", null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.delete(tmpDir);
+        super.tearDown();
+    }
+
+    public void testReadPackageFqName() throws IOException {
+        assertPackage("foo.bar", "package foo.bar\n\nfun f() {}\n");
+        assertPackage("foo.bar", "/* header */\n// comment\npackage foo . bar\n");
+        assertPackage("foo", "/* outer /* nested */ still a comment */ package foo\n");
+        assertPackage("foo.bar", "package foo.`bar`\n");
+        assertPackage("foo", "package foo; fun f() {}\n");
+        assertPackage("foo", "package foo // comment\n");
+        assertPackage("", "fun f() {}\n");
+        assertPackage("", "");
+        assertPackage("", "packages.foo()\n");
+        assertPackage("", "fun f() {}\npackage foo\n");
+    }
+
+    public void testDependentFilesMentionPackage() throws IOException {
+        KotlinDependencyGraph graph = new KotlinDependencyGraph();
+        File changed = createFile(graph, "changed.kt", "foo", "package foo\n\nfun f() {}\n");
+        File qualified = createFile(graph, "qualified.kt", "bar", "package bar\n\nfun g() = foo.f()\n");
+        File imported = createFile(graph, "imported.kt", "baz", "package baz\n\nimport foo.*\n");
+        File unrelated = createFile(graph, "unrelated.kt", "qux", "package qux\n\nfun foo() {}\n");
+        File prefixed = createFile(graph, "prefixed.kt", "quux", "package quux\n\nfun g() = foobar.f()\n");
+
+        assertEquals(Arrays.asList(qualified, imported),
+                     getDependentFiles(graph, Arrays.asList(changed, qualified, imported, unrelated, prefixed), changed, "foo"));
+    }
+
+    public void testDependentFilesInSamePackage() throws IOException {
+        KotlinDependencyGraph graph = new KotlinDependencyGraph();
+        File changed = createFile(graph, "changed.kt", "foo", "package foo\n\nfun f() {}\n");
+        File samePackage = createFile(graph, "samePackage.kt", "foo", "package foo\n\nfun g() = f()\n");
+        File otherPackage = createFile(graph, "otherPackage.kt", "bar", "package bar\n\nfun g() {}\n");
+
+        assertEquals(Collections.singletonList(samePackage),
+                     getDependentFiles(graph, Arrays.asList(changed, samePackage, otherPackage), changed, "foo"));
+    }
+
+    public void testDependentFilesOfRootPackage() throws IOException {
+        KotlinDependencyGraph graph = new KotlinDependencyGraph();
+        File changed = createFile(graph, "changed.kt", "", "fun f() {}\n");
+        File other = createFile(graph, "other.kt", "bar", "package bar\n\nfun g() = f()\n");
+
+        assertEquals(Collections.singletonList(other), getDependentFiles(graph, Arrays.asList(changed, other), changed, ""));
+    }
+
+    private void assertPackage(@NotNull String expected, @NotNull String text) throws IOException {
+        File file = new File(tmpDir, "package.kt");
+        FileUtil.writeToFile(file, text);
+        assertEquals(text, expected, KotlinSourceFileCollector.readPackageFqName(file));
+    }
+
+    @NotNull
+    private File createFile(
+            @NotNull KotlinDependencyGraph graph,
+            @NotNull String name,
+            @NotNull String packageFqName,
+            @NotNull String text
+    ) throws IOException {
+        File file = new File(tmpDir, name);
+        FileUtil.writeToFile(file, text);
+        graph.setPackage(file, packageFqName);
+        return file;
+    }
+
+    @NotNull
+    private static List<File> getDependentFiles(
+            @NotNull KotlinDependencyGraph graph,
+            @NotNull List<File> allFiles,
+            @NotNull File compiledFile,
+            @NotNull String changedPackage
+    ) throws IOException {
+        return IncrementalCompilationUtil.getDependentFiles(graph, allFiles, Collections.singletonList(compiledFile),
+                                                            Collections.singleton(changedPackage));
+    }
+}
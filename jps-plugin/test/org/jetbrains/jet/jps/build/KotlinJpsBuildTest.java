@@ -38,6 +38,7 @@ public class KotlinJpsBuildTest extends AbstractKotlinJpsBuildTestCase {
 
     private static final String[] EXCLUDE_FILES = { "Excluded.class", "YetAnotherExcluded.class" };
     private static final String[] NOTHING = {};
+    private static final long UNCHANGED_TIME_STAMP = 1000000000000L;
 
     @Override
     public void setUp() throws Exception {
@@ -154,6 +155,70 @@ public class KotlinJpsBuildTest extends AbstractKotlinJpsBuildTestCase {
         checkClassesDeletedFromOutputWhen(Operation.CHANGE, "kotlinProject", "src/Bar.kt", "foo.Bar");
     }
 
+    public void testInlineFunctionBodyChanged() throws IOException {
+        doTest();
+
+        // Calls of inline functions are expanded in the callers: the caller in another package must be recompiled
+        JpsModule module = myProject.getModules().get(0);
+        assertPackageOutputContains(module, "caller", "first");
+
+        File inlineFunctionFile = new File(workDir, "src/inlined/greeting.kt");
+        FileUtil.writeToFile(inlineFunctionFile, "package inlined\n\ninline fun greeting(): String = \"second\"\n");
+        change(inlineFunctionFile.getAbsolutePath());
+        makeAll().assertSuccessful();
+
+        assertPackageOutputContains(module, "caller", "second");
+    }
+
+    public void testSignatureChanged() throws IOException {
+        doTest();
+
+        JpsModule module = myProject.getModules().get(0);
+        assertPackageOutputContains(module, "caller", "()I");
+        markOutputUnchanged(module, "other");
+
+        // The caller mentions "callee." and is recompiled against the new signature, the unrelated package is not
+        File calleeFile = new File(workDir, "src/callee/callee.kt");
+        FileUtil.writeToFile(calleeFile, "package callee\n\nfun value(): Long = 1\n");
+        change(calleeFile.getAbsolutePath());
+        makeAll().assertSuccessful();
+
+        assertPackageOutputContains(module, "caller", "()J");
+        assertOutputUnchanged(module, "other");
+    }
+
+    public void testPrivateMemberChanged() throws IOException {
+        doTest();
+
+        JpsModule module = myProject.getModules().get(0);
+        markOutputUnchanged(module, "user");
+
+        // Only the body of the private function changes, which is not a part of the ABI of the package
+        File libFile = new File(workDir, "src/lib/lib.kt");
+        FileUtil.writeToFile(libFile, "package lib\n\nprivate fun secret(): String = \"second\"\n\nfun reveal(): String = secret()\n");
+        change(libFile.getAbsolutePath());
+        makeAll().assertSuccessful();
+
+        assertPackageOutputContains(module, "lib", "second");
+        assertOutputUnchanged(module, "user");
+    }
+
+    public void testClassMovedBetweenPackages() throws IOException {
+        doTest();
+
+        JpsModule module = myProject.getModules().get(0);
+        assertFilesExistInOutput(module, "first/Moved.class", "first/FirstPackage.class");
+
+        // The file stays in place, only its package directive changes
+        File movedFile = new File(workDir, "src/first/moved.kt");
+        FileUtil.writeToFile(movedFile, "package second\n\nclass Moved\n");
+        change(movedFile.getAbsolutePath());
+        makeAll().assertSuccessful();
+
+        assertFilesNotExistInOutput(module, "first/Moved.class");
+        assertFilesExistInOutput(module, "second/Moved.class", "first/FirstPackage.class");
+    }
+
     public void testKotlinProjectTwoFilesInOnePackage() {
         doTest();
 
@@ -234,6 +299,42 @@ public class KotlinJpsBuildTest extends AbstractKotlinJpsBuildTestCase {
         }
     }
 
+    private static void assertPackageOutputContains(JpsModule module, String packagePath, String text) throws IOException {
+        String outputUrl = JpsJavaExtensionService.getInstance().getOutputUrl(module, false);
+        assertNotNull(outputUrl);
+        File packageDir = new File(JpsPathUtil.urlToPath(outputUrl), packagePath);
+        File[] classFiles = packageDir.listFiles();
+        assertNotNull("Package not compiled: " + packageDir.getAbsolutePath(), classFiles);
+        for (File classFile : classFiles) {
+            // String constants are stored in the constant pool in modified UTF-8, which is the same as ASCII for ASCII strings
+            if (new String(FileUtil.loadFileBytes(classFile), "ISO-8859-1").contains(text)) return;
+        }
+        fail("Class files of \"" + packagePath + "\" don't contain \"" + text + "\"\n Directory contents: \n" + dirContents(packageDir));
+    }
+
+    // Sets the time stamp of the package's class files to a value the compiler never writes
+    private static void markOutputUnchanged(JpsModule module, String packagePath) {
+        for (File classFile : getPackageOutput(module, packagePath)) {
+            assertTrue("Can not set time stamp of " + classFile.getAbsolutePath(), classFile.setLastModified(UNCHANGED_TIME_STAMP));
+        }
+    }
+
+    private static void assertOutputUnchanged(JpsModule module, String packagePath) {
+        for (File classFile : getPackageOutput(module, packagePath)) {
+            assertEquals("Class file was recompiled: " + classFile.getAbsolutePath(), UNCHANGED_TIME_STAMP, classFile.lastModified());
+        }
+    }
+
+    private static File[] getPackageOutput(JpsModule module, String packagePath) {
+        String outputUrl = JpsJavaExtensionService.getInstance().getOutputUrl(module, false);
+        assertNotNull(outputUrl);
+        File packageDir = new File(JpsPathUtil.urlToPath(outputUrl), packagePath);
+        File[] classFiles = packageDir.listFiles();
+        assertNotNull("Package not compiled: " + packageDir.getAbsolutePath(), classFiles);
+        assertTrue("Package not compiled: " + packageDir.getAbsolutePath(), classFiles.length > 0);
+        return classFiles;
+    }
+
     private void checkExcludesNotAffectedToOutput(String module, String... excludeRelativePaths) {
         for (String path : excludeRelativePaths) {
             checkClassesDeletedFromOutputWhen(Operation.CHANGE, module, path, NOTHING);
@@ -0,0 +1,3 @@
+package first
+
+class Moved
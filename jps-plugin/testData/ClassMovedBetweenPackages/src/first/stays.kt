@@ -0,0 +1,3 @@
+package first
+
+fun stays(): Int = 1
@@ -0,0 +1,5 @@
+package caller
+
+import inlined.greeting
+
+fun callGreeting(): String = greeting()
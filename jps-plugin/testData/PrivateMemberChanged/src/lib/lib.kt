@@ -0,0 +1,5 @@
+package lib
+
+private fun secret(): String = "first"
+
+fun reveal(): String = secret()
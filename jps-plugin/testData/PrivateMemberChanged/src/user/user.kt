@@ -0,0 +1,5 @@
+package user
+
+import lib.reveal
+
+fun use(): String = reveal()
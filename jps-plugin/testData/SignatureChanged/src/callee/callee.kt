@@ -0,0 +1,3 @@
+package callee
+
+fun value(): Int = 1
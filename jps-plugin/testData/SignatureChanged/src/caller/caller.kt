@@ -0,0 +1,5 @@
+package caller
+
+import callee.value
+
+fun callValue() = value()
@@ -0,0 +1,3 @@
+package other
+
+fun other(): Int = 2
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test;
+
+import com.google.common.base.Predicates;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.AnalyzingUtils;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+import org.jetbrains.jet.renderer.DescriptorRenderer;
+import org.jetbrains.jet.renderer.DescriptorRendererBuilder;
+import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.config.EcmaVersion;
+import org.jetbrains.k2js.config.LibrarySourcesConfig;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.serialization.JsMetadataLibrary;
+import org.jetbrains.k2js.serialization.JsMetadataSerializer;
+import org.jetbrains.k2js.test.utils.TranslationUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes descriptors of a library to a metadata library and checks that they are loaded back the same,
+ * and that code using the library is analyzed and translated against the metadata
+ */
+public final class JsMetadataSerializationTest extends KotlinTestWithEnvironment {
+    private static final String TEST_FILES = "js/js.translator/testFiles/metadata/";
+    private static final String MODULE_NAME = "metalib";
+
+    private static final DescriptorRenderer RENDERER = new DescriptorRendererBuilder().setWithDefinedIn(false).setVerbose(true).build();
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), new CompilerConfiguration());
+    }
+
+    public void testRoundTrip() throws Exception {
+        JetFile libraryFile = createFile("library/metalib.kt");
+        BindingContext libraryContext = analyze(libraryFile, Config.getEmptyConfig(getProject()));
+        File metadata = serialize(libraryContext, libraryFile);
+
+        NamespaceDescriptor source = libraryContext.get(BindingContext.FILE_TO_NAMESPACE, libraryFile);
+        assertNotNull(source);
+
+        JetFile usage = createFile("cases/useLibrary.kt");
+        BindingContext context = analyze(usage, createMetadataConfig(metadata));
+
+        NamespaceDescriptor root = context.get(BindingContext.FILE_TO_NAMESPACE, usage);
+        assertNotNull(root);
+        while (root.getContainingDeclaration() instanceof NamespaceDescriptor) {
+            root = (NamespaceDescriptor) root.getContainingDeclaration();
+        }
+        NamespaceDescriptor loaded = root.getMemberScope().getNamespace(Name.identifier("metalib"));
+        assertNotNull("Library package is not loaded", loaded);
+
+        assertEquals(dump(source.getMemberScope()), dump(loaded.getMemberScope()));
+    }
+
+    public void testTranslationAgainstMetadata() throws Exception {
+        JetFile libraryFile = createFile("library/metalib.kt");
+        File metadata = serialize(analyze(libraryFile, Config.getEmptyConfig(getProject())), libraryFile);
+
+        Config config = createMetadataConfig(metadata);
+        List<JsMetadataLibrary> libraries = config.getMetadataLibraries();
+        assertEquals(1, libraries.size());
+        assertEquals(MODULE_NAME, libraries.get(0).getModuleName());
+
+        JetFile usage = createFile("cases/useLibrary.kt");
+        String code = new K2JSTranslator(config).generateProgramCode(usage, MainCallParameters.noCall());
+
+        // Library declarations are accessed through the module of the library, native ones by their native names
+        assertTrue(code, code.contains(MODULE_NAME));
+        assertTrue(code, code.contains("realAlert"));
+        assertFalse(code, code.contains("function greet"));
+    }
+
+    public void testRootPackageRejected() throws Exception {
+        doTestRejected("rejected/rootPackage.kt", "root package");
+    }
+
+    public void testEnumArgumentRejected() throws Exception {
+        doTestRejected("rejected/enumArgument.kt", "can't be written");
+    }
+
+    private void doTestRejected(@NotNull String path, @NotNull String expectedMessage) throws Exception {
+        JetFile file = createFile(path);
+        BindingContext context = analyze(file, Config.getEmptyConfig(getProject()));
+        try {
+            serialize(context, file);
+            fail("Declarations from " + path + " can't be loaded back and should be rejected");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+        }
+    }
+
+    @NotNull
+    private JetFile createFile(@NotNull String path) {
+        return TranslationUtils.createJetFileList(getProject(), Collections.singletonList(path), TEST_FILES).get(0);
+    }
+
+    @NotNull
+    private BindingContext analyze(@NotNull JetFile file, @NotNull Config config) {
+        List<JetFile> files = new ArrayList<JetFile>();
+        files.add(file);
+        if (config.getLibFiles().isEmpty()) {
+            files.addAll(TranslationUtils.createJetFileList(getProject(), Config.LIB_FILE_NAMES, Config.LIBRARIES_LOCATION));
+        }
+        BindingContext context = AnalyzerFacadeForJS.analyzeFiles(files, Predicates.<PsiFile>alwaysTrue(), config).getBindingContext();
+        AnalyzingUtils.throwExceptionOnErrors(context);
+        return context;
+    }
+
+    @NotNull
+    private File serialize(@NotNull BindingContext context, @NotNull JetFile file) throws IOException {
+        File metadata = new File(JetTestUtils.tmpDirForTest(this), MODULE_NAME + ".zip");
+        JsMetadataSerializer.serialize(context, Collections.singletonList(file), metadata);
+        return metadata;
+    }
+
+    // The JS library is analyzed from sources, the library under test is loaded from metadata
+    @NotNull
+    private Config createMetadataConfig(@NotNull File metadata) {
+        List<String> files = new ArrayList<String>();
+        for (String name : Config.LIB_FILE_NAMES) {
+            files.add(new File(Config.LIBRARIES_LOCATION + name).getAbsolutePath());
+        }
+        files.add("@" + MODULE_NAME);
+        files.add(metadata.getAbsolutePath());
+        return new LibrarySourcesConfig(getProject(), "main", files, EcmaVersion.defaultVersion(), false);
+    }
+
+    // Only declarations are compared: fake overrides are built from them in the same way for both
+    @NotNull
+    private static String dump(@NotNull JetScope scope) {
+        StringBuilder builder = new StringBuilder();
+        dump(scope, builder, "");
+        return builder.toString();
+    }
+
+    private static void dump(@NotNull JetScope scope, @NotNull StringBuilder builder, @NotNull String indent) {
+        Set<DeclarationDescriptor> descriptors = new LinkedHashSet<DeclarationDescriptor>(scope.getAllDescriptors());
+        descriptors.addAll(scope.getObjectDescriptors());
+
+        List<String> lines = new ArrayList<String>();
+        for (DeclarationDescriptor descriptor : descriptors) {
+            if (descriptor instanceof NamespaceDescriptor) continue;
+            if (descriptor instanceof CallableMemberDescriptor &&
+                ((CallableMemberDescriptor) descriptor).getKind() != CallableMemberDescriptor.Kind.DECLARATION) continue;
+
+            StringBuilder member = new StringBuilder();
+            member.append(indent).append(RENDERER.render(descriptor)).append("\n");
+            if (descriptor instanceof PropertyDescriptor) {
+                PropertySetterDescriptor setter = ((PropertyDescriptor) descriptor).getSetter();
+                if (setter != null && !setter.isDefault()) {
+                    member.append(indent).append("    setter ").append(setter.getAnnotations().size()).append(" ")
+                            .append(RENDERER.render(setter.getValueParameters().get(0))).append("\n");
+                }
+            }
+            if (descriptor instanceof ClassDescriptor) {
+                dumpClass((ClassDescriptor) descriptor, member, indent + "    ");
+            }
+            lines.add(member.toString());
+        }
+        Collections.sort(lines);
+        builder.append(StringUtil.join(lines, ""));
+    }
+
+    private static void dumpClass(@NotNull ClassDescriptor descriptor, @NotNull StringBuilder builder, @NotNull String indent) {
+        List<String> constructors = new ArrayList<String>();
+        for (ConstructorDescriptor constructor : descriptor.getConstructors()) {
+            constructors.add(indent + RENDERER.render(constructor) + "\n");
+        }
+        Collections.sort(constructors);
+        builder.append(StringUtil.join(constructors, ""));
+
+        dump(descriptor.getDefaultType().getMemberScope(), builder, indent);
+        dump(descriptor.getUnsubstitutedInnerClassesScope(), builder, indent);
+
+        ClassDescriptor classObject = descriptor.getClassObjectDescriptor();
+        if (classObject != null) {
+            builder.append(indent).append(RENDERER.render(classObject)).append("\n");
+            dumpClass(classObject, builder, indent + "    ");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test;
+
+import com.google.common.base.Predicates;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.descriptors.CallableDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.descriptors.PropertyDescriptor;
+import org.jetbrains.jet.lang.diagnostics.Diagnostic;
+import org.jetbrains.jet.lang.diagnostics.rendering.DefaultErrorMessages;
+import org.jetbrains.jet.lang.psi.JetElement;
+import org.jetbrains.jet.lang.psi.JetExpression;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.psi.JetReferenceExpression;
+import org.jetbrains.jet.lang.psi.JetWhenExpression;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.calls.model.ResolvedCall;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.jet.lang.types.JetType;
+import org.jetbrains.jet.renderer.DescriptorRenderer;
+import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.test.utils.TranslationUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that resolving function bodies and checking control flow in parallel gives the same diagnostics and the same
+ * binding context as the sequential analysis
+ */
+public final class ParallelBodyResolveTest extends KotlinTestWithEnvironment {
+    private static final String TEST_FILES = "js/js.translator/testFiles/";
+    private static final String CONTROL_FLOW_FILE = TEST_FILES + "parallelBodyResolve/controlFlow.kt";
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), new CompilerConfiguration());
+    }
+
+    public void testJsLibrary() {
+        doTest(getLibraryFiles());
+    }
+
+    public void testTestFiles() {
+        // Files of different tests clash with each other, which gives some diagnostics to compare
+        List<JetFile> files = getLibraryFiles();
+        String[] directories = {"closure", "examples", "inheritance", "operatorOverloading", "patternMatching", "propertyAccess"};
+        for (String directory : directories) {
+            files.addAll(TranslationUtils.createJetFileList(getProject(), getCases(directory), null));
+        }
+        doTest(files);
+    }
+
+    // Control flow checks report diagnostics while they run, so their order depends on the order of the commits
+    public void testControlFlowDiagnosticsInOrder() {
+        List<JetFile> files = getLibraryFiles();
+        files.addAll(TranslationUtils.createJetFileList(getProject(), Collections.singletonList(CONTROL_FLOW_FILE), null));
+
+        List<String> sequential = renderDiagnostics(analyze(files, false));
+        List<String> parallel = renderDiagnostics(analyze(files, true));
+        assertEquals(StringUtil.join(sequential, "\n"), StringUtil.join(parallel, "\n"));
+
+        String all = StringUtil.join(sequential, "\n");
+        String[] expected = {"UNUSED_VARIABLE", "UNINITIALIZED_VARIABLE", "UNREACHABLE_CODE", "NO_RETURN_IN_FUNCTION_WITH_BLOCK_BODY",
+                "VAL_REASSIGNMENT", "MUST_BE_INITIALIZED"};
+        for (String diagnostic : expected) {
+            assertTrue("No " + diagnostic + " in\n" + all, all.contains(diagnostic));
+        }
+    }
+
+    private void doTest(@NotNull List<JetFile> files) {
+        String sequential = dump(analyze(files, false));
+        String parallel = dump(analyze(files, true));
+        assertEquals(sequential, parallel);
+    }
+
+    @NotNull
+    private List<JetFile> getLibraryFiles() {
+        return TranslationUtils.createJetFileList(getProject(), Config.LIB_FILE_NAMES, Config.LIBRARIES_LOCATION);
+    }
+
+    @NotNull
+    private static List<String> getCases(@NotNull String directory) {
+        File[] files = new File(TEST_FILES + directory + "/cases").listFiles();
+        assertNotNull("No test files in " + directory, files);
+
+        List<String> result = new ArrayList<String>();
+        for (File file : files) {
+            if (file.getName().endsWith(".kt")) {
+                result.add(file.getPath());
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    @NotNull
+    private BindingContext analyze(@NotNull List<JetFile> files, boolean parallel) {
+        String oldValue = System.getProperty(AnalyzerFacadeForJS.PARALLEL_BODY_RESOLVE_PROPERTY);
+        System.setProperty(AnalyzerFacadeForJS.PARALLEL_BODY_RESOLVE_PROPERTY, String.valueOf(parallel));
+        try {
+            return AnalyzerFacadeForJS.analyzeFiles(files, Predicates.<PsiFile>alwaysTrue(), Config.getEmptyConfig(getProject()))
+                    .getBindingContext();
+        }
+        finally {
+            if (oldValue == null) {
+                System.clearProperty(AnalyzerFacadeForJS.PARALLEL_BODY_RESOLVE_PROPERTY);
+            }
+            else {
+                System.setProperty(AnalyzerFacadeForJS.PARALLEL_BODY_RESOLVE_PROPERTY, oldValue);
+            }
+        }
+    }
+
+    // Descriptors differ between two analyses, so they are compared by their rendering; the order of diagnostics is not compared
+    @NotNull
+    private static String dump(@NotNull BindingContext context) {
+        List<String> lines = new ArrayList<String>();
+        for (Diagnostic diagnostic : context.getDiagnostics()) {
+            lines.add("diagnostic " + render(diagnostic.getPsiElement()) + " " + DefaultErrorMessages.RENDERER.render(diagnostic));
+        }
+        for (Map.Entry<JetExpression, JetType> entry : context.getSliceContents(BindingContext.EXPRESSION_TYPE).entrySet()) {
+            lines.add("type " + render(entry.getKey()) + " " + entry.getValue());
+        }
+        for (Map.Entry<JetExpression, JetType> entry : context.getSliceContents(BindingContext.AUTOCAST).entrySet()) {
+            lines.add("autocast " + render(entry.getKey()) + " " + entry.getValue());
+        }
+        for (Map.Entry<JetReferenceExpression, DeclarationDescriptor> entry :
+                context.getSliceContents(BindingContext.REFERENCE_TARGET).entrySet()) {
+            lines.add("reference " + render(entry.getKey()) + " " + DescriptorRenderer.DEBUG_TEXT.render(entry.getValue()));
+        }
+        for (Map.Entry<JetElement, ResolvedCall<? extends CallableDescriptor>> entry :
+                context.getSliceContents(BindingContext.RESOLVED_CALL).entrySet()) {
+            CallableDescriptor descriptor = entry.getValue().getResultingDescriptor();
+            lines.add("call " + render(entry.getKey()) + " " + DescriptorRenderer.DEBUG_TEXT.render(descriptor));
+        }
+        for (Map.Entry<PropertyDescriptor, Boolean> entry : context.getSliceContents(BindingContext.IS_INITIALIZED).entrySet()) {
+            lines.add("initialized " + DescriptorRenderer.DEBUG_TEXT.render(entry.getKey()) + " " + entry.getValue());
+        }
+        for (Map.Entry<JetWhenExpression, Boolean> entry : context.getSliceContents(BindingContext.EXHAUSTIVE_WHEN).entrySet()) {
+            lines.add("exhaustive " + render(entry.getKey()) + " " + entry.getValue());
+        }
+        Collections.sort(lines);
+        return StringUtil.join(lines, "\n");
+    }
+
+    @NotNull
+    private static List<String> renderDiagnostics(@NotNull BindingContext context) {
+        List<String> result = new ArrayList<String>();
+        for (Diagnostic diagnostic : context.getDiagnostics()) {
+            result.add(diagnostic.getFactory().getName() + " " + render(diagnostic.getPsiElement()) + " " +
+                       DefaultErrorMessages.RENDERER.render(diagnostic));
+        }
+        return result;
+    }
+
+    @NotNull
+    private static String render(@NotNull PsiElement element) {
+        return element.getContainingFile().getName() + element.getTextRange() + " " + element.getClass().getSimpleName();
+    }
+}
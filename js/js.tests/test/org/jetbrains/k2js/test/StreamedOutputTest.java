@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.test;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.PairConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.JetTestUtils;
+import org.jetbrains.jet.OutputFile;
+import org.jetbrains.jet.OutputFileCollection;
+import org.jetbrains.jet.cli.jvm.compiler.JetCoreEnvironment;
+import org.jetbrains.jet.config.CompilerConfiguration;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.lazy.KotlinTestWithEnvironment;
+import org.jetbrains.js.compiler.StringTextOutput;
+import org.jetbrains.js.compiler.sourcemap.SourceMap3Builder;
+import org.jetbrains.js.compiler.sourcemap.SourceMapBuilder;
+import org.jetbrains.k2js.config.Config;
+import org.jetbrains.k2js.config.EcmaVersion;
+import org.jetbrains.k2js.facade.K2JSTranslator;
+import org.jetbrains.k2js.facade.MainCallParameters;
+import org.jetbrains.k2js.test.config.TestConfig;
+import org.jetbrains.k2js.test.utils.TranslationUtils;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the code and the source map streamed to files are the same as the ones built in memory
+ */
+public final class StreamedOutputTest extends KotlinTestWithEnvironment {
+    private static final String CASES = "js/js.translator/testFiles/outputPrefixPostfix/cases/";
+
+    @Override
+    protected JetCoreEnvironment createEnvironment() {
+        return JetCoreEnvironment.createForTests(getTestRootDisposable(), new CompilerConfiguration());
+    }
+
+    public void testWithSourceMap() throws Exception {
+        doTest("simpleWithPrefixAndPostfix.kt", true);
+    }
+
+    public void testWithoutSourceMap() throws Exception {
+        doTest("simpleWithPrefixAndPostfix.kt", false);
+    }
+
+    public void testWithoutPrefixAndPostfix() throws Exception {
+        doTest("simple.kt", true);
+    }
+
+    public void testOutputIsReplaced() throws Exception {
+        File outputFile = new File(JetTestUtils.tmpDirForTest(this), "out.js");
+        FileUtil.writeToFile(outputFile, "old output which is longer than the new one" + StringUtil.repeatSymbol('\n', 100000));
+
+        List<File> written = translateToFiles("simple.kt", outputFile, true);
+
+        assertEquals(2, written.size());
+        assertFalse(FileUtil.loadFile(outputFile).startsWith("old"));
+        assertEquals("Temporary files are left", 2, outputFile.getParentFile().list().length);
+    }
+
+    public void testSourceMapStreamedInChunks() throws Exception {
+        File generatedFile = new File("out.js");
+        StringTextOutput inMemoryOutput = new StringTextOutput();
+        SourceMap3Builder inMemory = new SourceMap3Builder(generatedFile, inMemoryOutput, NO_SOURCE_INFO);
+        StringTextOutput streamedOutput = new StringTextOutput();
+        StringWriter writer = new StringWriter();
+        SourceMap3Builder streamed = new SourceMap3Builder(generatedFile, streamedOutput, NO_SOURCE_INFO, writer);
+
+        // Much more than one chunk of mappings
+        inMemory.skipLinesAtBeginning(3);
+        streamed.skipLinesAtBeginning(3);
+        for (int line = 0; line < 20000; line++) {
+            addLine(inMemoryOutput, inMemory, line);
+            addLine(streamedOutput, streamed, line);
+        }
+        streamed.finish();
+
+        assertEquals(inMemory.build(), writer.toString());
+    }
+
+    private static void addLine(@NotNull StringTextOutput output, @NotNull SourceMapBuilder builder, int line) {
+        builder.addMapping("source" + line % 3 + ".kt", line, 4);
+        output.print("var a" + line + " = ");
+        builder.addMapping("source" + line % 3 + ".kt", line, 12);
+        output.print(line);
+        output.newline();
+        builder.newLine();
+    }
+
+    private void doTest(@NotNull String fileName, boolean sourcemap) throws Exception {
+        File outputFile = new File(JetTestUtils.tmpDirForTest(this), "out.js");
+        List<File> written = translateToFiles(fileName, outputFile, sourcemap);
+
+        OutputFileCollection expected = K2JSTranslator.translateWithMainCallParameters(
+                MainCallParameters.noCall(), createFiles(fileName), outputFile,
+                prefixOrPostfixFile(fileName, ".prefix"), prefixOrPostfixFile(fileName, ".postfix"), createConfig(sourcemap));
+
+        List<OutputFile> expectedFiles = expected.asList();
+        assertEquals(expectedFiles.size(), written.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(expectedFiles.get(i).getRelativePath(), written.get(i).getName());
+            assertEquals(expectedFiles.get(i).asText(), FileUtil.loadFile(written.get(i), "UTF-8"));
+        }
+    }
+
+    @NotNull
+    private List<File> translateToFiles(@NotNull String fileName, @NotNull File outputFile, boolean sourcemap) throws Exception {
+        return K2JSTranslator.translateToFiles(
+                MainCallParameters.noCall(), createFiles(fileName), outputFile,
+                prefixOrPostfixFile(fileName, ".prefix"), prefixOrPostfixFile(fileName, ".postfix"), createConfig(sourcemap));
+    }
+
+    @NotNull
+    private List<JetFile> createFiles(@NotNull String fileName) {
+        return TranslationUtils.createJetFileList(getProject(), Collections.singletonList(fileName), CASES);
+    }
+
+    @NotNull
+    private Config createConfig(boolean sourcemap) {
+        return TranslationUtils.getConfig(getProject(), EcmaVersion.defaultVersion(),
+                                          sourcemap ? TestConfig.FACTORY_WITH_SOURCEMAP : TestConfig.FACTORY_WITHOUT_SOURCEMAP);
+    }
+
+    @Nullable
+    private static File prefixOrPostfixFile(@NotNull String fileName, @NotNull String extension) {
+        File file = new File(CASES + fileName + extension);
+        return file.exists() ? file : null;
+    }
+
+    private static final PairConsumer<SourceMapBuilder, Object> NO_SOURCE_INFO = new PairConsumer<SourceMapBuilder, Object>() {
+        @Override
+        public void consume(SourceMapBuilder builder, Object sourceInfo) {
+        }
+    };
+}
@@ -23,9 +23,7 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.jet.OutputFileCollection;
 import org.jetbrains.jet.analyzer.AnalyzeExhaust;
-import org.jetbrains.jet.cli.common.output.outputUtils.OutputUtilsPackage;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
@@ -41,7 +39,7 @@ import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.util.List;
 
-import static org.jetbrains.k2js.facade.K2JSTranslator.translateWithMainCallParameters;
+import static org.jetbrains.k2js.facade.K2JSTranslator.translateToFiles;
 
 //TODO: use method object
 public final class TranslationUtils {
@@ -120,9 +118,7 @@ public final class TranslationUtils {
             @Nullable File outputPostfixFile,
             @NotNull Config config
     ) throws TranslationException, IOException {
-        File outputFile = new File(outputPath);
-        OutputFileCollection outputFiles = translateWithMainCallParameters(mainCall, files, outputFile, outputPrefixFile, outputPostfixFile, config);
-        OutputUtilsPackage.writeAllTo(outputFiles, outputFile.getParentFile());
+        translateToFiles(mainCall, files, new File(outputPath), outputPrefixFile, outputPostfixFile, config);
     }
 
     @NotNull
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.js.compiler;
+
+import com.google.dart.compiler.util.TextOutput;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Keeps positions and indentation the same way as {@link com.google.dart.compiler.util.TextOutputImpl} and leaves to subclasses
+ * only where the text goes, so that the code printed in memory and streamed to a file is the same.
+ */
+public abstract class AbstractTextOutput implements TextOutput {
+    private static final int INDENT_GRANULARITY = 2;
+
+    private final boolean compact;
+
+    private int indentLevel = 0;
+    private char[][] indents = new char[][] {new char[0]};
+    private boolean justNewlined;
+    private int position = 0;
+    private int line = 0;
+    private int column = 0;
+
+    private OutListener outListener;
+
+    protected AbstractTextOutput(boolean compact) {
+        this.compact = compact;
+    }
+
+    protected abstract void write(char c);
+
+    protected abstract void write(@NotNull CharSequence s);
+
+    protected abstract void write(@NotNull char[] chars);
+
+    @Override
+    public boolean isCompact() {
+        return compact;
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public int getLine() {
+        return line;
+    }
+
+    @Override
+    public int getColumn() {
+        return column;
+    }
+
+    @Override
+    public void indentIn() {
+        ++indentLevel;
+        if (indentLevel >= indents.length) {
+            char[] newIndentLevel = new char[indentLevel * INDENT_GRANULARITY];
+            Arrays.fill(newIndentLevel, ' ');
+            char[][] newIndents = new char[indents.length + 1][];
+            System.arraycopy(indents, 0, newIndents, 0, indents.length);
+            newIndents[indentLevel] = newIndentLevel;
+            indents = newIndents;
+        }
+    }
+
+    @Override
+    public void indentOut() {
+        --indentLevel;
+    }
+
+    @Override
+    public void newline() {
+        write('\n');
+        position++;
+        line++;
+        column = 0;
+        justNewlined = true;
+        if (outListener != null) {
+            outListener.newLined();
+        }
+    }
+
+    @Override
+    public void print(double value) {
+        maybeIndent();
+        printAndCount(String.valueOf(value));
+    }
+
+    @Override
+    public void print(int value) {
+        maybeIndent();
+        printAndCount(String.valueOf(value));
+    }
+
+    @Override
+    public void print(char c) {
+        maybeIndent();
+        write(c);
+        position++;
+        column++;
+    }
+
+    @Override
+    public void print(char[] s) {
+        maybeIndent();
+        printAndCount(s);
+    }
+
+    @Override
+    public void print(CharSequence s) {
+        maybeIndent();
+        printAndCount(s);
+    }
+
+    @Override
+    public void printOpt(char c) {
+        if (!compact) {
+            print(c);
+        }
+    }
+
+    @Override
+    public void printOpt(char[] s) {
+        if (!compact) {
+            maybeIndent();
+            printAndCount(s);
+        }
+    }
+
+    @Override
+    public void printOpt(String s) {
+        if (!compact) {
+            maybeIndent();
+            printAndCount(s);
+        }
+    }
+
+    @Override
+    public void maybeIndent() {
+        if (justNewlined && !compact) {
+            printAndCount(indents[indentLevel]);
+            justNewlined = false;
+            if (outListener != null) {
+                outListener.indentedAfterNewLine();
+            }
+        }
+    }
+
+    @Override
+    public boolean isJustNewlined() {
+        return justNewlined && !compact;
+    }
+
+    @Override
+    public void setOutListener(OutListener outListener) {
+        this.outListener = outListener;
+    }
+
+    private void printAndCount(@NotNull CharSequence s) {
+        position += s.length();
+        column += s.length();
+        write(s);
+    }
+
+    private void printAndCount(@NotNull char[] chars) {
+        position += chars.length;
+        column += chars.length;
+        write(chars);
+    }
+}
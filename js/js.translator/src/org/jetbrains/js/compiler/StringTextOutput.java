@@ -0,0 +1,54 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.js.compiler;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Accumulates the printed text in memory, see {@link #toString()}.
+ */
+public class StringTextOutput extends AbstractTextOutput {
+    private final StringBuilder out = new StringBuilder();
+
+    public StringTextOutput() {
+        this(false);
+    }
+
+    public StringTextOutput(boolean compact) {
+        super(compact);
+    }
+
+    @Override
+    protected void write(char c) {
+        out.append(c);
+    }
+
+    @Override
+    protected void write(@NotNull CharSequence s) {
+        out.append(s);
+    }
+
+    @Override
+    protected void write(@NotNull char[] chars) {
+        out.append(chars);
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+}
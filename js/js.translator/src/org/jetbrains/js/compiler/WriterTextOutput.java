@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.js.compiler;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the text to a writer as it is printed instead of accumulating it in memory. The writer should be buffered.
+ *
+ * Since TextOutput can't throw checked exceptions, the first {@link IOException} is kept and thrown by {@link #flush()},
+ * nothing is written after it.
+ */
+public class WriterTextOutput extends AbstractTextOutput {
+    private final Writer out;
+
+    @Nullable
+    private IOException error;
+
+    public WriterTextOutput(@NotNull Writer out) {
+        this(out, false);
+    }
+
+    public WriterTextOutput(@NotNull Writer out, boolean compact) {
+        super(compact);
+        this.out = out;
+    }
+
+    public void flush() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+        out.flush();
+    }
+
+    @Override
+    protected void write(char c) {
+        if (error != null) return;
+        try {
+            out.write(c);
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    protected void write(@NotNull CharSequence s) {
+        if (error != null) return;
+        try {
+            out.append(s);
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+
+    @Override
+    protected void write(@NotNull char[] chars) {
+        if (error != null) return;
+        try {
+            out.write(chars);
+        }
+        catch (IOException e) {
+            error = e;
+        }
+    }
+}
@@ -5,17 +5,29 @@ import com.google.dart.compiler.util.TextOutput;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.PairConsumer;
 import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SourceMap3Builder implements SourceMapBuilder {
-    private final StringBuilder out = new StringBuilder(8192);
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private final StringBuilder out = new StringBuilder(FLUSH_THRESHOLD);
     private final File generatedFile;
     private final TextOutput textOutput;
     private final PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer;
 
+    // If not null, mappings are written to it as the code is generated, and the rest of the map is written by finish()
+    @Nullable
+    private final Writer streamingWriter;
+    private boolean headerWritten;
+    @Nullable
+    private IOException streamingError;
+
     private String lastSource;
     private int lastSourceIndex;
 
@@ -35,9 +47,19 @@ public class SourceMap3Builder implements SourceMapBuilder {
     private int previousSourceColumn;
 
     public SourceMap3Builder(File generatedFile, TextOutput textOutput, PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer) {
+        this(generatedFile, textOutput, sourceInfoConsumer, null);
+    }
+
+    public SourceMap3Builder(
+            File generatedFile,
+            TextOutput textOutput,
+            PairConsumer<SourceMapBuilder, Object> sourceInfoConsumer,
+            @Nullable Writer streamingWriter
+    ) {
         this.generatedFile = generatedFile;
         this.textOutput = textOutput;
         this.sourceInfoConsumer = sourceInfoConsumer;
+        this.streamingWriter = streamingWriter;
     }
 
     @Override
@@ -47,16 +69,62 @@ public class SourceMap3Builder implements SourceMapBuilder {
 
     @Override
     public String build() {
+        assert streamingWriter == null : "Mappings are already written to the stream, use finish()";
         StringBuilder sb = new StringBuilder(out.length() + (128 * orderedSources.size()));
-        sb.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append('"').append(',');
-        appendSources(sb);
-        sb.append(",\"names\":[");
-        sb.append("],\"mappings\":\"");
+        appendHeader(sb);
         sb.append(out);
-        sb.append("\"}");
+        appendTail(sb);
         return sb.toString();
     }
 
+    /**
+     * Writes the mappings not written yet and the rest of the map to the streaming writer. The writer is not closed.
+     * The result is the same as {@link #build()}.
+     */
+    public void finish() throws IOException {
+        assert streamingWriter != null : "Not a streaming builder, use build()";
+        flushMappings();
+        if (streamingError != null) {
+            throw streamingError;
+        }
+
+        StringBuilder sb = new StringBuilder(128 * orderedSources.size());
+        appendTail(sb);
+        streamingWriter.write(sb.toString());
+        streamingWriter.flush();
+    }
+
+    // Sources go after the mappings, since they are only known when all the code is generated
+    private void appendHeader(StringBuilder sb) {
+        sb.append("{\"version\":3,\"file\":\"").append(generatedFile.getName()).append("\",\"mappings\":\"");
+    }
+
+    private void appendTail(StringBuilder sb) {
+        sb.append("\",");
+        appendSources(sb);
+        sb.append(",\"names\":[]}");
+    }
+
+    private void flushMappings() {
+        assert streamingWriter != null;
+        if (streamingError != null) return;
+
+        try {
+            if (!headerWritten) {
+                StringBuilder sb = new StringBuilder();
+                appendHeader(sb);
+                streamingWriter.append(sb);
+                headerWritten = true;
+            }
+            streamingWriter.append(out);
+        }
+        catch (IOException e) {
+            // Reported by finish(), since newLine() and addMapping() can't throw
+            streamingError = e;
+        }
+        out.setLength(0);
+    }
+
     private void appendSources(StringBuilder sb) {
         boolean isNotFirst = false;
         sb.append('"').append("sources").append("\":[");
@@ -76,10 +144,17 @@ public class SourceMap3Builder implements SourceMapBuilder {
     public void newLine() {
         out.append(';');
         previousGeneratedColumn = -1;
+
+        if (streamingWriter != null && out.length() >= FLUSH_THRESHOLD) {
+            flushMappings();
+        }
     }
 
     @Override
     public void skipLinesAtBeginning(int count) {
+        if (headerWritten) {
+            throw new IllegalStateException("Lines can't be skipped after the mappings are written to the stream");
+        }
         out.insert(0, StringUtil.repeatSymbol(';', count));
     }
 
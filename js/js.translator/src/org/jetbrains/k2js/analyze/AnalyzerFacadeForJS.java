@@ -32,7 +32,8 @@ import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.*;
 import org.jetbrains.jet.lang.resolve.lazy.ResolveSession;
 import org.jetbrains.jet.lang.resolve.lazy.declarations.FileBasedDeclarationProviderFactory;
-import org.jetbrains.jet.lang.resolve.lazy.storage.LockBasedLazyResolveStorageManager;
+import org.jetbrains.jet.lang.resolve.lazy.storage.FineGrainedLockLazyResolveStorageManager;
+import org.jetbrains.jet.lang.resolve.lazy.storage.LazyResolveStorageManager;
 import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.Name;
 import org.jetbrains.k2js.config.Config;
@@ -42,6 +43,10 @@ import java.util.Collections;
 import java.util.List;
 
 public final class AnalyzerFacadeForJS {
+    /**
+     * Resolve function bodies on several threads. Not supported for the JVM yet: caches of Java descriptor resolution are not thread-safe
+     */
+    public static final String PARALLEL_BODY_RESOLVE_PROPERTY = "kotlin.js.parallel.body.resolve";
 
     private AnalyzerFacadeForJS() {
     }
@@ -81,14 +86,17 @@ public final class AnalyzerFacadeForJS {
 
         Predicate<PsiFile> completely = Predicates.and(notLibFiles(config.getLibFiles()), filesToAnalyzeCompletely);
 
+        BindingContext libraryBindingContext = config.getLibraryBindingContext();
+        // Only a trace created here can be made thread-safe
+        boolean parallelBodyResolve = libraryBindingContext == null && Boolean.getBoolean(PARALLEL_BODY_RESOLVE_PROPERTY);
+
         TopDownAnalysisParameters topDownAnalysisParameters = new TopDownAnalysisParameters(
-                completely, false, false, Collections.<AnalyzerScriptParameter>emptyList());
+                completely, false, false, Collections.<AnalyzerScriptParameter>emptyList(), parallelBodyResolve);
 
-        BindingContext libraryBindingContext = config.getLibraryBindingContext();
         BindingTrace trace = libraryBindingContext == null ?
-                             new ObservableBindingTrace(new BindingTraceContext()) :
+                             new ObservableBindingTrace(parallelBodyResolve ? BindingTraceContext.createConcurrent() : new BindingTraceContext()) :
                              new DelegatingBindingTrace(libraryBindingContext, "trace for analyzing library in js");
-        owner.setModuleConfiguration(new JsConfiguration(libraryBindingContext));
+        owner.setModuleConfiguration(new JsConfiguration(libraryBindingContext, config.getMetadataLibraries()));
         InjectorForTopDownAnalyzerForJs injector = new InjectorForTopDownAnalyzerForJs(project, topDownAnalysisParameters, trace, owner);
         try {
             Collection<JetFile> allFiles = libraryBindingContext != null ?
@@ -140,11 +148,11 @@ public final class AnalyzerFacadeForJS {
 
     @NotNull
     public static ResolveSession getLazyResolveSession(Collection<JetFile> files, Config config) {
-        LockBasedLazyResolveStorageManager storageManager = new LockBasedLazyResolveStorageManager();
+        LazyResolveStorageManager storageManager = FineGrainedLockLazyResolveStorageManager.createDefault();
         FileBasedDeclarationProviderFactory declarationProviderFactory = new FileBasedDeclarationProviderFactory(
                 storageManager, Config.withJsLibAdded(files, config), Predicates.<FqName>alwaysFalse());
         ModuleDescriptorImpl lazyModule = createJsModule("<lazy module>");
-        lazyModule.setModuleConfiguration(new JsConfiguration(null));
+        lazyModule.setModuleConfiguration(new JsConfiguration(null, config.getMetadataLibraries()));
         return new ResolveSession(config.getProject(), storageManager, lazyModule, declarationProviderFactory);
     }
 
@@ -29,6 +29,8 @@ import org.jetbrains.jet.lang.resolve.name.FqName;
 import org.jetbrains.jet.lang.resolve.name.FqNameUnsafe;
 import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
 import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.k2js.serialization.JsMetadataLibrary;
+import org.jetbrains.k2js.serialization.JsMetadataModule;
 
 import java.util.List;
 
@@ -49,8 +51,14 @@ public class JsConfiguration implements ModuleConfiguration {
     @Nullable
     private final BindingContext preanalyzedContext;
 
-    JsConfiguration(@Nullable BindingContext preanalyzedContext) {
+    @NotNull
+    private final List<JsMetadataLibrary> metadataLibraries;
+    @Nullable
+    private JsMetadataModule metadataModule = null;
+
+    JsConfiguration(@Nullable BindingContext preanalyzedContext, @NotNull List<JsMetadataLibrary> metadataLibraries) {
         this.preanalyzedContext = preanalyzedContext;
+        this.metadataLibraries = metadataLibraries;
     }
 
     @Override
@@ -65,6 +73,22 @@ public class JsConfiguration implements ModuleConfiguration {
         if (hasPreanalyzedContextForTests()) {
             extendScopeWithPreAnalyzedContextForTests(namespaceDescriptor, namespaceMemberScope);
         }
+
+        if (!metadataLibraries.isEmpty()) {
+            getMetadataModule(namespaceDescriptor).extendNamespaceScope(namespaceDescriptor, namespaceMemberScope);
+        }
+    }
+
+    @NotNull
+    private synchronized JsMetadataModule getMetadataModule(@NotNull NamespaceDescriptor namespaceDescriptor) {
+        if (metadataModule == null) {
+            NamespaceDescriptor root = namespaceDescriptor;
+            while (!isRootNamespace(root)) {
+                root = (NamespaceDescriptor) root.getContainingDeclaration();
+            }
+            metadataModule = new JsMetadataModule(metadataLibraries, root);
+        }
+        return metadataModule;
     }
 
     private boolean hasPreanalyzedContextForTests() {
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.k2js.serialization.JsMetadataLibrary;
 import org.jetbrains.k2js.translate.test.JSTester;
 import org.jetbrains.k2js.translate.test.QUnitTester;
 
@@ -194,6 +195,14 @@ public abstract class Config {
         return null;
     }
 
+    /**
+     * Libraries whose declarations are loaded from serialized descriptors instead of being analyzed from sources
+     */
+    @NotNull
+    public List<JsMetadataLibrary> getMetadataLibraries() {
+        return Collections.emptyList();
+    }
+
     @NotNull
     public static Collection<JetFile> withJsLibAdded(@NotNull Collection<JetFile> files, @NotNull Config config) {
         Collection<JetFile> allFiles = Lists.newArrayList();
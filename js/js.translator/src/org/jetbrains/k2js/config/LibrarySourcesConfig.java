@@ -25,9 +25,12 @@ import com.intellij.openapi.vfs.*;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.k2js.serialization.JsMetadataLibrary;
 import org.jetbrains.k2js.utils.JetFileUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -48,6 +51,8 @@ public class LibrarySourcesConfig extends Config {
 
     @NotNull
     private final List<String> files;
+    @Nullable
+    private List<JsMetadataLibrary> metadataLibraries = null;
 
     public LibrarySourcesConfig(
             @NotNull Project project,
@@ -76,6 +81,9 @@ public class LibrarySourcesConfig extends Config {
             if (path.charAt(0) == '@') {
                 moduleName = path.substring(1);
             }
+            else if (JsMetadataLibrary.isMetadataLibrary(new File(path))) {
+                // Metadata libraries are not analyzed from sources, see getMetadataLibraries()
+            }
             else if (path.endsWith(".jar") || path.endsWith(".zip")) {
                 try {
                     jetFiles.addAll(readZip(path));
@@ -102,6 +110,35 @@ public class LibrarySourcesConfig extends Config {
         return jetFiles;
     }
 
+    @NotNull
+    @Override
+    public synchronized List<JsMetadataLibrary> getMetadataLibraries() {
+        if (metadataLibraries == null) {
+            metadataLibraries = loadMetadataLibraries();
+        }
+        return metadataLibraries;
+    }
+
+    @NotNull
+    private List<JsMetadataLibrary> loadMetadataLibraries() {
+        List<JsMetadataLibrary> result = new ArrayList<JsMetadataLibrary>();
+        String moduleName = UNKNOWN_EXTERNAL_MODULE_NAME;
+        for (String path : files) {
+            if (path.charAt(0) == '@') {
+                moduleName = path.substring(1);
+            }
+            else if (JsMetadataLibrary.isMetadataLibrary(new File(path))) {
+                try {
+                    result.add(JsMetadataLibrary.load(new File(path), moduleName));
+                }
+                catch (IOException e) {
+                    LOG.error(e);
+                }
+            }
+        }
+        return result;
+    }
+
     private List<JetFile> readZip(String file) throws IOException {
         ZipFile zipFile = new ZipFile(file);
         try {
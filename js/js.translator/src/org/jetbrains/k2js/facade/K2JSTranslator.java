@@ -17,9 +17,10 @@
 package org.jetbrains.k2js.facade;
 
 import com.google.dart.compiler.backend.js.ast.JsProgram;
-import com.google.dart.compiler.util.TextOutputImpl;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Function;
@@ -34,6 +35,8 @@ import org.jetbrains.jet.lang.psi.JetFile;
 import org.jetbrains.jet.lang.resolve.BindingContext;
 import org.jetbrains.jet.utils.fileUtils.FileUtilsPackage;
 import org.jetbrains.js.compiler.JsSourceGenerationVisitor;
+import org.jetbrains.js.compiler.StringTextOutput;
+import org.jetbrains.js.compiler.WriterTextOutput;
 import org.jetbrains.js.compiler.sourcemap.SourceMap3Builder;
 import org.jetbrains.js.compiler.sourcemap.SourceMapBuilder;
 import org.jetbrains.k2js.analyze.AnalyzerFacadeForJS;
@@ -42,8 +45,7 @@ import org.jetbrains.k2js.facade.exceptions.TranslationException;
 import org.jetbrains.k2js.translate.general.Translation;
 import org.jetbrains.k2js.utils.JetFileUtils;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.util.Collections;
 import java.util.List;
 
@@ -66,7 +68,7 @@ public final class K2JSTranslator {
             @NotNull Config config
     ) throws TranslationException, IOException {
         K2JSTranslator translator = new K2JSTranslator(config);
-        TextOutputImpl output = new TextOutputImpl();
+        StringTextOutput output = new StringTextOutput();
         SourceMapBuilder sourceMapBuilder = config.isSourcemap() ? new SourceMap3Builder(outputFile, output, new SourceMapBuilderConsumer()) : null;
         String programCode = translator.generateProgramCode(files, mainCall, output, sourceMapBuilder);
 
@@ -76,14 +78,7 @@ public final class K2JSTranslator {
         StringBuilder outBuilder = new StringBuilder(programCode.length() + prefix.length() + postfix.length());
         outBuilder.append(prefix).append(programCode).append(postfix);
 
-        List<File> sourceFiles = ContainerUtil.map(files, new Function<JetFile, File>() {
-            @Override
-            public File fun(JetFile file) {
-                VirtualFile virtualFile = file.getOriginalFile().getVirtualFile();
-                if (virtualFile == null) return new File(file.getName());
-                return VfsUtilCore.virtualToIoFile(virtualFile);
-            }
-        });
+        List<File> sourceFiles = getSourceFiles(files);
 
         SimpleOutputFile jsFile = new SimpleOutputFile(sourceFiles, outputFile.getName(), outBuilder.toString());
         List<SimpleOutputFile> outputFiles = new SmartList<SimpleOutputFile>(jsFile);
@@ -97,6 +92,132 @@ public final class K2JSTranslator {
         return new SimpleOutputFileCollection(outputFiles);
     }
 
+    /**
+     * Same as {@link #translateWithMainCallParameters}, but the code and the source map are written to the output files
+     * as they are generated, instead of being built as strings first. The output is the same.
+     *
+     * The files are written next to the output files first and renamed to them when everything is written, so a failed
+     * translation never leaves truncated output behind.
+     *
+     * @return the written files
+     */
+    @NotNull
+    public static List<File> translateToFiles(
+            @NotNull MainCallParameters mainCall,
+            @NotNull List<JetFile> files,
+            @NotNull File outputFile,
+            @Nullable File outputPrefixFile,
+            @Nullable File outputPostfixFile,
+            @NotNull Config config
+    ) throws TranslationException, IOException {
+        JsProgram program = new K2JSTranslator(config).generateProgram(files, mainCall);
+
+        String prefix = FileUtilsPackage.readTextOrEmpty(outputPrefixFile);
+        String postfix = FileUtilsPackage.readTextOrEmpty(outputPostfixFile);
+        File sourceMapFile = config.isSourcemap() ? new File(outputFile.getParentFile(), outputFile.getName() + ".map") : null;
+
+        FileUtil.createParentDirs(outputFile);
+        File tempFile = createTempFile(outputFile);
+        File sourceMapTempFile = null;
+        boolean written = false;
+        try {
+            if (sourceMapFile != null) {
+                sourceMapTempFile = createTempFile(sourceMapFile);
+            }
+            writeProgram(program, prefix, postfix, outputFile, tempFile, sourceMapTempFile);
+
+            if (sourceMapFile != null) {
+                moveTo(sourceMapTempFile, sourceMapFile);
+            }
+            moveTo(tempFile, outputFile);
+            written = true;
+        }
+        finally {
+            if (!written) {
+                tempFile.delete();
+                if (sourceMapTempFile != null) {
+                    sourceMapTempFile.delete();
+                }
+            }
+        }
+
+        List<File> outputFiles = new SmartList<File>(outputFile);
+        if (sourceMapFile != null) {
+            outputFiles.add(sourceMapFile);
+        }
+        return outputFiles;
+    }
+
+    private static void writeProgram(
+            @NotNull JsProgram program,
+            @NotNull String prefix,
+            @NotNull String postfix,
+            @NotNull File outputFile,
+            @NotNull File jsFile,
+            @Nullable File sourceMapFile
+    ) throws IOException {
+        Writer jsWriter = createWriter(jsFile);
+        try {
+            Writer sourceMapWriter = sourceMapFile != null ? createWriter(sourceMapFile) : null;
+            try {
+                WriterTextOutput output = new WriterTextOutput(jsWriter);
+                SourceMap3Builder sourceMapBuilder = null;
+                if (sourceMapWriter != null) {
+                    sourceMapBuilder = new SourceMap3Builder(outputFile, output, new SourceMapBuilderConsumer(), sourceMapWriter);
+                    sourceMapBuilder.skipLinesAtBeginning(StringUtil.getLineBreakCount(prefix));
+                }
+
+                jsWriter.write(prefix);
+                program.accept(new JsSourceGenerationVisitor(output, sourceMapBuilder));
+                output.flush();
+                jsWriter.write(postfix);
+
+                if (sourceMapBuilder != null) {
+                    sourceMapBuilder.finish();
+                }
+            }
+            finally {
+                if (sourceMapWriter != null) {
+                    sourceMapWriter.close();
+                }
+            }
+        }
+        finally {
+            jsWriter.close();
+        }
+    }
+
+    @NotNull
+    public static List<File> getSourceFiles(@NotNull List<JetFile> files) {
+        return ContainerUtil.map(files, new Function<JetFile, File>() {
+            @Override
+            public File fun(JetFile file) {
+                VirtualFile virtualFile = file.getOriginalFile().getVirtualFile();
+                if (virtualFile == null) return new File(file.getName());
+                return VfsUtilCore.virtualToIoFile(virtualFile);
+            }
+        });
+    }
+
+    @NotNull
+    private static File createTempFile(@NotNull File file) throws IOException {
+        return File.createTempFile(file.getName() + ".part", ".tmp", file.getAbsoluteFile().getParentFile());
+    }
+
+    private static void moveTo(@NotNull File source, @NotNull File target) throws IOException {
+        if (source.renameTo(target)) return;
+
+        // Renaming over an existing file fails on Windows
+        if (!target.delete() || !source.renameTo(target)) {
+            throw new IOException("Couldn't rename " + source + " to " + target);
+        }
+    }
+
+    @NotNull
+    private static Writer createWriter(@NotNull File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), CharsetToolkit.UTF8_CHARSET), 64 * 1024);
+    }
+
     @NotNull
     private final Config config;
 
@@ -121,14 +242,14 @@ public final class K2JSTranslator {
     @NotNull
     public String generateProgramCode(@NotNull List<JetFile> files, @NotNull MainCallParameters mainCallParameters)
             throws TranslationException {
-        return generateProgramCode(files, mainCallParameters, new TextOutputImpl(), null);
+        return generateProgramCode(files, mainCallParameters, new StringTextOutput(), null);
     }
 
     @NotNull
     public String generateProgramCode(
             @NotNull List<JetFile> files,
             @NotNull MainCallParameters mainCallParameters,
-            @NotNull TextOutputImpl output,
+            @NotNull StringTextOutput output,
             @Nullable SourceMapBuilder sourceMapBuilder
     ) throws TranslationException {
         JsProgram program = generateProgram(files, mainCallParameters);
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import com.google.protobuf.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.descriptors.serialization.ClassId;
+import org.jetbrains.jet.descriptors.serialization.ProtoBuf;
+import org.jetbrains.jet.lang.descriptors.CallableDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.ClassifierDescriptor;
+import org.jetbrains.jet.lang.descriptors.ValueParameterDescriptor;
+import org.jetbrains.jet.lang.descriptors.annotations.Annotated;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.resolve.constants.*;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.FqNameUnsafe;
+
+import java.io.*;
+import java.util.*;
+
+import static org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.AnnotatedCallableKind;
+
+/**
+ * Annotations of the declarations of one package. Descriptor protos only have a flag telling that a declaration is annotated,
+ * on the JVM annotations are loaded from class files, for JS they are kept in this table.
+ *
+ * Classes are identified by their names relative to the package. Callables are identified by the name of the containing class
+ * (empty for package members), the kind of the annotated element and the bytes of their proto, which are unique in the container.
+ * Value parameters are identified by their callable and their name.
+ *
+ * Arguments of annotations may be primitive values, strings and nulls. Enum, array, class and annotation arguments are rejected
+ * with an {@link IOException} when the table is filled.
+ */
+/*package*/ final class JsAnnotationTable {
+    public static final JsAnnotationTable EMPTY = new JsAnnotationTable();
+
+    private static final int STRING = 0;
+    private static final int INT = 1;
+    private static final int LONG = 2;
+    private static final int SHORT = 3;
+    private static final int BYTE = 4;
+    private static final int CHAR = 5;
+    private static final int BOOLEAN = 6;
+    private static final int DOUBLE = 7;
+    private static final int FLOAT = 8;
+    private static final int NULL = 9;
+
+    private final Map<String, List<SerializedAnnotation>> classAnnotations = new LinkedHashMap<String, List<SerializedAnnotation>>();
+    private final Map<CallableKey, List<SerializedAnnotation>> callableAnnotations = new LinkedHashMap<CallableKey, List<SerializedAnnotation>>();
+
+    @NotNull
+    public List<SerializedAnnotation> getClassAnnotations(@NotNull FqNameUnsafe relativeClassName) {
+        List<SerializedAnnotation> annotations = classAnnotations.get(relativeClassName.asString());
+        return annotations == null ? Collections.<SerializedAnnotation>emptyList() : annotations;
+    }
+
+    @NotNull
+    public List<SerializedAnnotation> getCallableAnnotations(
+            @NotNull String containerName,
+            @NotNull AnnotatedCallableKind kind,
+            @NotNull ProtoBuf.Callable proto
+    ) {
+        return getAnnotations(new CallableKey(containerName, kind, proto.toByteString(), ""));
+    }
+
+    @NotNull
+    public List<SerializedAnnotation> getValueParameterAnnotations(
+            @NotNull String containerName,
+            @NotNull AnnotatedCallableKind kind,
+            @NotNull ProtoBuf.Callable proto,
+            @NotNull String parameterName
+    ) {
+        return getAnnotations(new CallableKey(containerName, kind, proto.toByteString(), parameterName));
+    }
+
+    @NotNull
+    private List<SerializedAnnotation> getAnnotations(@NotNull CallableKey key) {
+        List<SerializedAnnotation> annotations = callableAnnotations.get(key);
+        return annotations == null ? Collections.<SerializedAnnotation>emptyList() : annotations;
+    }
+
+    public void addClass(@NotNull FqNameUnsafe relativeClassName, @NotNull Annotated descriptor) throws IOException {
+        List<SerializedAnnotation> annotations = serialize(descriptor);
+        if (!annotations.isEmpty()) {
+            classAnnotations.put(relativeClassName.asString(), annotations);
+        }
+    }
+
+    public void addCallable(
+            @NotNull String containerName,
+            @NotNull AnnotatedCallableKind kind,
+            @NotNull ProtoBuf.Callable proto,
+            @Nullable CallableDescriptor descriptor
+    ) throws IOException {
+        if (descriptor == null) return;
+
+        ByteString protoBytes = proto.toByteString();
+        addAnnotations(new CallableKey(containerName, kind, protoBytes, ""), descriptor);
+        for (ValueParameterDescriptor parameter : descriptor.getValueParameters()) {
+            addAnnotations(new CallableKey(containerName, kind, protoBytes, parameter.getName().asString()), parameter);
+        }
+    }
+
+    private void addAnnotations(@NotNull CallableKey key, @NotNull Annotated descriptor) throws IOException {
+        List<SerializedAnnotation> annotations = serialize(descriptor);
+        if (!annotations.isEmpty()) {
+            callableAnnotations.put(key, annotations);
+        }
+    }
+
+    @NotNull
+    private static List<SerializedAnnotation> serialize(@NotNull Annotated descriptor) throws IOException {
+        List<SerializedAnnotation> result = new ArrayList<SerializedAnnotation>(0);
+        for (AnnotationDescriptor annotation : descriptor.getAnnotations()) {
+            ClassifierDescriptor annotationClass = annotation.getType().getConstructor().getDeclarationDescriptor();
+            if (!(annotationClass instanceof ClassDescriptor)) continue;
+
+            Map<String, CompileTimeConstant<?>> arguments = new LinkedHashMap<String, CompileTimeConstant<?>>();
+            for (Map.Entry<ValueParameterDescriptor, CompileTimeConstant<?>> entry : annotation.getAllValueArguments().entrySet()) {
+                CompileTimeConstant<?> value = entry.getValue();
+                if (getArgumentTag(value) < 0) {
+                    throw new IOException("Argument " + entry.getKey().getName() + " = " + value + " of annotation " +
+                                          annotationClass.getName() + " on " + descriptor + " can't be written to Kotlin/JS metadata: " +
+                                          "only primitive, String and null arguments are supported");
+                }
+                arguments.put(entry.getKey().getName().asString(), value);
+            }
+            result.add(new SerializedAnnotation(JsMetadataSerializationUtil.getClassId((ClassDescriptor) annotationClass), arguments));
+        }
+        return result;
+    }
+
+    /**
+     * @return -1 for arguments which can't be serialized
+     */
+    private static int getArgumentTag(@NotNull CompileTimeConstant<?> value) {
+        if (value instanceof StringValue) return STRING;
+        if (value instanceof IntValue) return INT;
+        if (value instanceof LongValue) return LONG;
+        if (value instanceof ShortValue) return SHORT;
+        if (value instanceof ByteValue) return BYTE;
+        if (value instanceof CharValue) return CHAR;
+        if (value instanceof BooleanValue) return BOOLEAN;
+        if (value instanceof DoubleValue) return DOUBLE;
+        if (value instanceof FloatValue) return FLOAT;
+        if (value instanceof NullValue) return NULL;
+        return -1;
+    }
+
+    private static void writeArgument(@NotNull DataOutputStream data, @NotNull CompileTimeConstant<?> value) throws IOException {
+        int tag = getArgumentTag(value);
+        data.writeByte(tag);
+        switch (tag) {
+            case STRING: data.writeUTF(((StringValue) value).getValue()); break;
+            case INT: data.writeInt(((IntValue) value).getValue()); break;
+            case LONG: data.writeLong(((LongValue) value).getValue()); break;
+            case SHORT: data.writeShort(((ShortValue) value).getValue()); break;
+            case BYTE: data.writeByte(((ByteValue) value).getValue()); break;
+            case CHAR: data.writeChar(((CharValue) value).getValue()); break;
+            case BOOLEAN: data.writeBoolean(((BooleanValue) value).getValue()); break;
+            case DOUBLE: data.writeDouble(((DoubleValue) value).getValue()); break;
+            case FLOAT: data.writeFloat(((FloatValue) value).getValue()); break;
+            case NULL: break;
+            default: throw new IllegalStateException("Unsupported annotation argument: " + value);
+        }
+    }
+
+    @NotNull
+    private static CompileTimeConstant<?> readArgument(@NotNull DataInputStream data) throws IOException {
+        int tag = data.readByte();
+        switch (tag) {
+            case STRING: return new StringValue(data.readUTF());
+            case INT: return new IntValue(data.readInt());
+            case LONG: return new LongValue(data.readLong());
+            case SHORT: return new ShortValue(data.readShort());
+            case BYTE: return new ByteValue(data.readByte());
+            case CHAR: return new CharValue(data.readChar());
+            case BOOLEAN: return BooleanValue.valueOf(data.readBoolean());
+            case DOUBLE: return new DoubleValue(data.readDouble());
+            case FLOAT: return new FloatValue(data.readFloat());
+            case NULL: return NullValue.NULL;
+            default: throw new IOException("Unknown tag of an annotation argument: " + tag);
+        }
+    }
+
+    @NotNull
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeInt(classAnnotations.size());
+            for (Map.Entry<String, List<SerializedAnnotation>> entry : classAnnotations.entrySet()) {
+                data.writeUTF(entry.getKey());
+                writeAnnotations(data, entry.getValue());
+            }
+
+            data.writeInt(callableAnnotations.size());
+            for (Map.Entry<CallableKey, List<SerializedAnnotation>> entry : callableAnnotations.entrySet()) {
+                CallableKey key = entry.getKey();
+                data.writeUTF(key.containerName);
+                data.writeByte(key.kind.ordinal());
+                data.writeInt(key.proto.size());
+                key.proto.writeTo(data);
+                data.writeUTF(key.parameterName);
+                writeAnnotations(data, entry.getValue());
+            }
+        }
+        finally {
+            data.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeAnnotations(@NotNull DataOutputStream data, @NotNull List<SerializedAnnotation> annotations)
+            throws IOException {
+        data.writeInt(annotations.size());
+        for (SerializedAnnotation annotation : annotations) {
+            data.writeUTF(annotation.classId.getPackageFqName().asString());
+            data.writeUTF(annotation.classId.getRelativeClassName().asString());
+            data.writeInt(annotation.arguments.size());
+            for (Map.Entry<String, CompileTimeConstant<?>> argument : annotation.arguments.entrySet()) {
+                data.writeUTF(argument.getKey());
+                writeArgument(data, argument.getValue());
+            }
+        }
+    }
+
+    @NotNull
+    public static JsAnnotationTable read(@NotNull byte[] bytes) throws IOException {
+        JsAnnotationTable table = new JsAnnotationTable();
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        int classCount = data.readInt();
+        for (int i = 0; i < classCount; i++) {
+            String className = data.readUTF();
+            table.classAnnotations.put(className, readAnnotations(data));
+        }
+
+        int callableCount = data.readInt();
+        for (int i = 0; i < callableCount; i++) {
+            String containerName = data.readUTF();
+            AnnotatedCallableKind kind = AnnotatedCallableKind.values()[data.readByte()];
+            byte[] proto = new byte[data.readInt()];
+            data.readFully(proto);
+            String parameterName = data.readUTF();
+            table.callableAnnotations.put(new CallableKey(containerName, kind, ByteString.copyFrom(proto), parameterName),
+                                          readAnnotations(data));
+        }
+
+        return table;
+    }
+
+    @NotNull
+    private static List<SerializedAnnotation> readAnnotations(@NotNull DataInputStream data) throws IOException {
+        int size = data.readInt();
+        List<SerializedAnnotation> result = new ArrayList<SerializedAnnotation>(size);
+        for (int i = 0; i < size; i++) {
+            ClassId classId = new ClassId(new FqName(data.readUTF()), new FqNameUnsafe(data.readUTF()));
+            int argumentCount = data.readInt();
+            Map<String, CompileTimeConstant<?>> arguments = new LinkedHashMap<String, CompileTimeConstant<?>>();
+            for (int j = 0; j < argumentCount; j++) {
+                String name = data.readUTF();
+                arguments.put(name, readArgument(data));
+            }
+            result.add(new SerializedAnnotation(classId, arguments));
+        }
+        return result;
+    }
+
+    public static final class SerializedAnnotation {
+        @NotNull
+        private final ClassId classId;
+        @NotNull
+        private final Map<String, CompileTimeConstant<?>> arguments;
+
+        private SerializedAnnotation(@NotNull ClassId classId, @NotNull Map<String, CompileTimeConstant<?>> arguments) {
+            this.classId = classId;
+            this.arguments = arguments;
+        }
+
+        @NotNull
+        public ClassId getClassId() {
+            return classId;
+        }
+
+        @NotNull
+        public Map<String, CompileTimeConstant<?>> getArguments() {
+            return arguments;
+        }
+    }
+
+    private static final class CallableKey {
+        private final String containerName;
+        private final AnnotatedCallableKind kind;
+        private final ByteString proto;
+        // Empty for the callable itself
+        private final String parameterName;
+
+        private CallableKey(
+                @NotNull String containerName,
+                @NotNull AnnotatedCallableKind kind,
+                @NotNull ByteString proto,
+                @NotNull String parameterName
+        ) {
+            this.containerName = containerName;
+            this.kind = kind;
+            this.proto = proto;
+            this.parameterName = parameterName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CallableKey)) return false;
+
+            CallableKey other = (CallableKey) o;
+            return containerName.equals(other.containerName) && kind == other.kind && proto.equals(other.proto) &&
+                   parameterName.equals(other.parameterName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * (31 * containerName.hashCode() + kind.hashCode()) + proto.hashCode()) + parameterName.hashCode();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Serialized descriptors of a Kotlin/JS library, written by {@link JsMetadataSerializer}: a zip file or a directory
+ * which contains the list of packages and, for every package, the same files as the serialized built-ins
+ * plus a table of annotations.
+ *
+ * Only the list of packages is read when a library is loaded. Other resources are read when {@link JsMetadataModule} creates
+ * the descriptors of a package or a class, each of them once. A zip file is opened for every read, so that no file handles are
+ * kept by the compiler between reads.
+ */
+public final class JsMetadataLibrary {
+    @NotNull
+    private final File file;
+    @NotNull
+    private final String moduleName;
+    @NotNull
+    private final List<FqName> packageFqNames;
+    // Includes all parents of the serialized packages, the root package included
+    @NotNull
+    private final Map<FqName, List<Name>> subpackages = new HashMap<FqName, List<Name>>();
+
+    private JsMetadataLibrary(@NotNull File file, @NotNull String moduleName) throws IOException {
+        this.file = file;
+        this.moduleName = moduleName;
+        this.packageFqNames = readPackageFqNames();
+
+        for (FqName fqName : packageFqNames) {
+            FqName child = fqName;
+            while (!child.isRoot()) {
+                FqName parent = child.parent();
+                List<Name> children = subpackages.get(parent);
+                if (children == null) {
+                    children = new ArrayList<Name>();
+                    subpackages.put(parent, children);
+                }
+                if (children.contains(child.shortName())) break;
+
+                children.add(child.shortName());
+                child = parent;
+            }
+        }
+    }
+
+    public static boolean isMetadataLibrary(@NotNull File file) {
+        if (file.isDirectory()) {
+            return new File(file, JsMetadataSerializationUtil.PACKAGES_FILE_NAME).isFile();
+        }
+        if (!file.isFile()) return false;
+
+        try {
+            ZipFile zipFile = new ZipFile(file);
+            try {
+                return zipFile.getEntry(JsMetadataSerializationUtil.PACKAGES_FILE_NAME) != null;
+            }
+            finally {
+                zipFile.close();
+            }
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    @NotNull
+    public static JsMetadataLibrary load(@NotNull File file, @NotNull String moduleName) throws IOException {
+        return new JsMetadataLibrary(file, moduleName);
+    }
+
+    @NotNull
+    private List<FqName> readPackageFqNames() throws IOException {
+        byte[] bytes = getResource(JsMetadataSerializationUtil.PACKAGES_FILE_NAME);
+        if (bytes == null) {
+            throw new IOException("Not a Kotlin/JS metadata library: " + file);
+        }
+
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        int version = data.readInt();
+        if (version != JsMetadataSerializationUtil.VERSION) {
+            throw new IOException("Unsupported version of Kotlin/JS metadata: " + version + " in " + file +
+                                  ", expected " + JsMetadataSerializationUtil.VERSION);
+        }
+
+        int size = data.readInt();
+        List<FqName> result = new ArrayList<FqName>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new FqName(data.readUTF()));
+        }
+        return result;
+    }
+
+    @NotNull
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    @NotNull
+    public List<FqName> getPackageFqNames() {
+        return packageFqNames;
+    }
+
+    public boolean hasPackage(@NotNull FqName fqName) {
+        return packageFqNames.contains(fqName) || subpackages.containsKey(fqName);
+    }
+
+    @NotNull
+    public List<Name> getSubpackageNames(@NotNull FqName fqName) {
+        List<Name> names = subpackages.get(fqName);
+        return names == null ? Collections.<Name>emptyList() : names;
+    }
+
+    @Nullable
+    public byte[] getResource(@NotNull String path) throws IOException {
+        String resourcePath = JsMetadataSerializationUtil.toResourcePath(path);
+        if (file.isDirectory()) {
+            File resource = new File(file, resourcePath);
+            return resource.isFile() ? FileUtil.loadFileBytes(resource) : null;
+        }
+
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            ZipEntry entry = zipFile.getEntry(resourcePath);
+            if (entry == null) return null;
+
+            InputStream stream = zipFile.getInputStream(entry);
+            try {
+                return FileUtil.loadBytes(stream);
+            }
+            finally {
+                stream.close();
+            }
+        }
+        finally {
+            zipFile.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getPath();
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import jet.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+import org.jetbrains.jet.descriptors.serialization.*;
+import org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer;
+import org.jetbrains.jet.descriptors.serialization.descriptors.DeserializedPackageMemberScope;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptorImpl;
+import org.jetbrains.jet.lang.resolve.constants.CompileTimeConstant;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.resolve.scopes.ChainedScope;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+import org.jetbrains.jet.lang.resolve.scopes.JetScopeImpl;
+import org.jetbrains.jet.lang.resolve.scopes.WritableScope;
+import org.jetbrains.jet.lang.types.lang.BuiltInsSerializationUtil;
+import org.jetbrains.jet.lang.types.lang.KotlinBuiltIns;
+import org.jetbrains.jet.storage.LockBasedStorageManager;
+import org.jetbrains.jet.storage.MemoizedFunctionToNullable;
+import org.jetbrains.jet.storage.StorageManager;
+import org.jetbrains.jet.utils.ExceptionUtils;
+import org.jetbrains.jet.utils.Printer;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.AnnotatedCallableKind;
+import static org.jetbrains.jet.lang.resolve.name.SpecialNames.isClassObjectName;
+import static org.jetbrains.k2js.serialization.JsAnnotationTable.SerializedAnnotation;
+
+/**
+ * Descriptors of Kotlin/JS libraries loaded from serialized metadata, for one module being analyzed.
+ * Packages of the libraries are added to the namespaces of the module as imported scopes, so the source namespace descriptors
+ * of the module stay the only ones the top-down analyzer works with.
+ *
+ * Libraries don't have declarations in the root package, {@link JsMetadataSerializer} rejects them.
+ */
+public final class JsMetadataModule {
+    private final StorageManager storageManager = new LockBasedStorageManager();
+    private final NamespaceDescriptor rootNamespace;
+    private final List<LibraryDescriptors> libraries = new ArrayList<LibraryDescriptors>();
+
+    public JsMetadataModule(@NotNull List<JsMetadataLibrary> libraries, @NotNull NamespaceDescriptor rootNamespace) {
+        this.rootNamespace = rootNamespace;
+        for (JsMetadataLibrary library : libraries) {
+            this.libraries.add(new LibraryDescriptors(library));
+        }
+    }
+
+    public void extendNamespaceScope(@NotNull NamespaceDescriptor namespaceDescriptor, @NotNull WritableScope namespaceMemberScope) {
+        FqName fqName = namespaceDescriptor.getFqName();
+        for (LibraryDescriptors library : libraries) {
+            if (fqName.isRoot()) {
+                namespaceMemberScope.importScope(library.createSubpackagesScope(fqName, namespaceDescriptor));
+            }
+            else {
+                NamespaceDescriptor libraryNamespace = library.namespaces.invoke(fqName);
+                if (libraryNamespace != null) {
+                    namespaceMemberScope.importScope(libraryNamespace.getMemberScope());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the name of the module of a library declaration loaded from metadata, or null for declarations of other origins
+     */
+    @Nullable
+    public static String getExternalModuleName(@NotNull DeclarationDescriptor descriptor) {
+        for (DeclarationDescriptor current = descriptor; current != null; current = current.getContainingDeclaration()) {
+            if (current instanceof JsMetadataNamespaceDescriptor) {
+                return ((JsMetadataNamespaceDescriptor) current).getModuleName();
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private ClassDescriptor findClass(@NotNull ClassId classId) {
+        if (classId.getPackageFqName().equals(KotlinBuiltIns.BUILT_INS_PACKAGE_FQ_NAME)) {
+            return findBuiltInClass(classId);
+        }
+        for (LibraryDescriptors library : libraries) {
+            ClassDescriptor classDescriptor = library.finder.findOwnClass(classId);
+            if (classDescriptor != null) return classDescriptor;
+        }
+        return null;
+    }
+
+    @Nullable
+    private static ClassDescriptor findBuiltInClass(@NotNull ClassId classId) {
+        JetScope scope = KotlinBuiltIns.getInstance().getBuiltInsScope();
+        ClassDescriptor result = null;
+        for (Name name : classId.getRelativeClassName().pathSegments()) {
+            if (result != null && isClassObjectName(name)) {
+                result = result.getClassObjectDescriptor();
+            }
+            else {
+                ClassifierDescriptor classifier = scope.getClassifier(name);
+                result = classifier instanceof ClassDescriptor ? (ClassDescriptor) classifier : scope.getObjectDescriptor(name);
+            }
+            if (result == null) return null;
+            scope = result.getUnsubstitutedInnerClassesScope();
+        }
+        return result;
+    }
+
+    private final class LibraryDescriptors {
+        private final JsMetadataLibrary library;
+        private final MemoizedFunctionToNullable<FqName, JsMetadataNamespaceDescriptor> namespaces;
+        private final MemoizedFunctionToNullable<FqName, PackageResources> packages;
+        private final LibraryDescriptorFinder finder;
+        private final AnnotationDeserializer annotationDeserializer = new LibraryAnnotationDeserializer();
+
+        public LibraryDescriptors(@NotNull JsMetadataLibrary library) {
+            this.library = library;
+            this.finder = new LibraryDescriptorFinder();
+
+            this.namespaces = storageManager.createMemoizedFunctionWithNullableValues(
+                    new Function1<FqName, JsMetadataNamespaceDescriptor>() {
+                        @Override
+                        public JsMetadataNamespaceDescriptor invoke(FqName fqName) {
+                            return createNamespace(fqName);
+                        }
+                    });
+
+            this.packages = storageManager.createMemoizedFunctionWithNullableValues(new Function1<FqName, PackageResources>() {
+                @Override
+                public PackageResources invoke(FqName fqName) {
+                    JsMetadataNamespaceDescriptor namespace = namespaces.invoke(fqName);
+                    return namespace == null ? null : loadPackage(namespace);
+                }
+            });
+        }
+
+        @Nullable
+        private JsMetadataNamespaceDescriptor createNamespace(@NotNull FqName fqName) {
+            if (fqName.isRoot() || !library.hasPackage(fqName)) return null;
+
+            FqName parentFqName = fqName.parent();
+            NamespaceDescriptor parent = parentFqName.isRoot() ? rootNamespace : namespaces.invoke(parentFqName);
+            assert parent != null : "Parent of a library package must be in the library: " + fqName;
+
+            return new JsMetadataNamespaceDescriptor(
+                    storageManager, parent, fqName, library.getModuleName(),
+                    new Function1<JsMetadataNamespaceDescriptor, JetScope>() {
+                        @Override
+                        public JetScope invoke(JsMetadataNamespaceDescriptor namespace) {
+                            return createMemberScope(namespace);
+                        }
+                    });
+        }
+
+        @NotNull
+        private JetScope createMemberScope(@NotNull JsMetadataNamespaceDescriptor namespace) {
+            JetScope subpackages = createSubpackagesScope(namespace.getFqName(), namespace);
+            PackageResources resources = packages.invoke(namespace.getFqName());
+            if (resources == null) return subpackages;
+
+            JetScope members = new DeserializedPackageMemberScope(storageManager, namespace, annotationDeserializer, finder,
+                                                                  resources.packageProto, resources.nameResolver);
+            return new ChainedScope(namespace, "JS library package " + namespace.getFqName(), members, subpackages);
+        }
+
+        @NotNull
+        private JetScope createSubpackagesScope(@NotNull final FqName fqName, @NotNull final NamespaceDescriptor containingDeclaration) {
+            return new JetScopeImpl() {
+                @Override
+                public NamespaceDescriptor getNamespace(@NotNull Name name) {
+                    return namespaces.invoke(fqName.child(name));
+                }
+
+                @NotNull
+                @Override
+                public Collection<DeclarationDescriptor> getAllDescriptors() {
+                    List<DeclarationDescriptor> result = new ArrayList<DeclarationDescriptor>();
+                    for (Name name : library.getSubpackageNames(fqName)) {
+                        NamespaceDescriptor namespace = namespaces.invoke(fqName.child(name));
+                        if (namespace != null) {
+                            result.add(namespace);
+                        }
+                    }
+                    return result;
+                }
+
+                @NotNull
+                @Override
+                public DeclarationDescriptor getContainingDeclaration() {
+                    return containingDeclaration;
+                }
+
+                @TestOnly
+                @Override
+                public void printScopeStructure(@NotNull Printer p) {
+                    p.println("Subpackages of ", fqName, " in ", library);
+                }
+            };
+        }
+
+        @Nullable
+        private PackageResources loadPackage(@NotNull NamespaceDescriptor namespace) {
+            try {
+                byte[] packageBytes = library.getResource(BuiltInsSerializationUtil.getPackageFilePath(namespace));
+                if (packageBytes == null) return null;
+
+                NameResolver nameResolver = NameSerializationUtil.deserializeNameResolver(
+                        new ByteArrayInputStream(getNotNullResource(BuiltInsSerializationUtil.getNameTableFilePath(namespace))));
+                ProtoBuf.Package packageProto = ProtoBuf.Package.parseFrom(packageBytes);
+
+                DataInputStream data =
+                        new DataInputStream(new ByteArrayInputStream(getNotNullResource(BuiltInsSerializationUtil.getClassNamesFilePath(namespace))));
+                int size = data.readInt();
+                List<Name> classNames = new ArrayList<Name>(size);
+                for (int i = 0; i < size; i++) {
+                    classNames.add(nameResolver.getName(data.readInt()));
+                }
+
+                byte[] annotationBytes = library.getResource(JsMetadataSerializationUtil.getAnnotationsFilePath(namespace));
+                JsAnnotationTable annotations = annotationBytes == null ? JsAnnotationTable.EMPTY : JsAnnotationTable.read(annotationBytes);
+
+                return new PackageResources(nameResolver, packageProto, classNames, annotations);
+            }
+            catch (IOException e) {
+                throw ExceptionUtils.rethrow(e);
+            }
+        }
+
+        @NotNull
+        private byte[] getNotNullResource(@NotNull String path) throws IOException {
+            byte[] bytes = library.getResource(path);
+            if (bytes == null) {
+                throw new IOException("Resource not found in " + library + ": " + path);
+            }
+            return bytes;
+        }
+
+        private class LibraryDescriptorFinder extends AbstractDescriptorFinder {
+            public LibraryDescriptorFinder() {
+                super(storageManager, annotationDeserializer);
+            }
+
+            @Nullable
+            @Override
+            public ClassDescriptor findClass(@NotNull ClassId classId) {
+                ClassDescriptor classDescriptor = findOwnClass(classId);
+                return classDescriptor != null ? classDescriptor : JsMetadataModule.this.findClass(classId);
+            }
+
+            @Nullable
+            public ClassDescriptor findOwnClass(@NotNull ClassId classId) {
+                return super.findClass(classId);
+            }
+
+            @Nullable
+            @Override
+            protected ClassData getClassData(@NotNull ClassId classId) {
+                PackageResources resources = packages.invoke(classId.getPackageFqName());
+                if (resources == null) return null;
+
+                try {
+                    byte[] bytes = library.getResource(BuiltInsSerializationUtil.getClassMetadataPath(classId));
+                    if (bytes == null) return null;
+
+                    return new ClassData(resources.nameResolver, ProtoBuf.Class.parseFrom(bytes));
+                }
+                catch (IOException e) {
+                    throw ExceptionUtils.rethrow(e);
+                }
+            }
+
+            @Nullable
+            @Override
+            public NamespaceDescriptor findPackage(@NotNull FqName fqName) {
+                return namespaces.invoke(fqName);
+            }
+
+            @NotNull
+            @Override
+            public Collection<Name> getClassNames(@NotNull FqName packageName) {
+                PackageResources resources = packages.invoke(packageName);
+                return resources == null ? Collections.<Name>emptyList() : resources.classNames;
+            }
+        }
+
+        private class LibraryAnnotationDeserializer implements AnnotationDeserializer {
+            @NotNull
+            @Override
+            public List<AnnotationDescriptor> loadClassAnnotations(@NotNull ClassDescriptor descriptor, @NotNull ProtoBuf.Class classProto) {
+                ClassId classId = JsMetadataSerializationUtil.getClassId(descriptor);
+                PackageResources resources = packages.invoke(classId.getPackageFqName());
+                if (resources == null) return Collections.emptyList();
+
+                return resolveAnnotations(resources.annotations.getClassAnnotations(classId.getRelativeClassName()));
+            }
+
+            @NotNull
+            @Override
+            public List<AnnotationDescriptor> loadCallableAnnotations(
+                    @NotNull ClassOrNamespaceDescriptor container,
+                    @NotNull ProtoBuf.Callable proto,
+                    @NotNull NameResolver nameResolver,
+                    @NotNull AnnotatedCallableKind kind
+            ) {
+                JsAnnotationTable annotations = getAnnotationTable(container);
+                if (annotations == null) return Collections.emptyList();
+
+                return resolveAnnotations(annotations.getCallableAnnotations(getContainerName(container), kind, proto));
+            }
+
+            @NotNull
+            @Override
+            public List<AnnotationDescriptor> loadValueParameterAnnotations(
+                    @NotNull ClassOrNamespaceDescriptor container,
+                    @NotNull ProtoBuf.Callable callable,
+                    @NotNull NameResolver nameResolver,
+                    @NotNull AnnotatedCallableKind kind,
+                    @NotNull ProtoBuf.Callable.ValueParameter proto
+            ) {
+                JsAnnotationTable annotations = getAnnotationTable(container);
+                if (annotations == null) return Collections.emptyList();
+
+                String parameterName = nameResolver.getName(proto.getName()).asString();
+                return resolveAnnotations(annotations.getValueParameterAnnotations(getContainerName(container), kind, callable,
+                                                                                   parameterName));
+            }
+
+            @Nullable
+            private JsAnnotationTable getAnnotationTable(@NotNull ClassOrNamespaceDescriptor container) {
+                FqName packageFqName = container instanceof NamespaceDescriptor
+                                       ? ((NamespaceDescriptor) container).getFqName()
+                                       : JsMetadataSerializationUtil.getClassId((ClassDescriptor) container).getPackageFqName();
+                PackageResources resources = packages.invoke(packageFqName);
+                return resources == null ? null : resources.annotations;
+            }
+
+            @NotNull
+            private String getContainerName(@NotNull ClassOrNamespaceDescriptor container) {
+                if (container instanceof NamespaceDescriptor) return "";
+                return JsMetadataSerializationUtil.getClassId((ClassDescriptor) container).getRelativeClassName().asString();
+            }
+
+            @NotNull
+            private List<AnnotationDescriptor> resolveAnnotations(@NotNull List<SerializedAnnotation> annotations) {
+                if (annotations.isEmpty()) return Collections.emptyList();
+
+                List<AnnotationDescriptor> result = new ArrayList<AnnotationDescriptor>(annotations.size());
+                for (SerializedAnnotation annotation : annotations) {
+                    ClassDescriptor annotationClass = JsMetadataModule.this.findClass(annotation.getClassId());
+                    if (annotationClass == null) continue;
+
+                    AnnotationDescriptorImpl descriptor = new AnnotationDescriptorImpl();
+                    descriptor.setAnnotationType(annotationClass.getDefaultType());
+
+                    ConstructorDescriptor constructor = annotationClass.getUnsubstitutedPrimaryConstructor();
+                    if (constructor != null) {
+                        for (ValueParameterDescriptor parameter : constructor.getValueParameters()) {
+                            CompileTimeConstant<?> value = annotation.getArguments().get(parameter.getName().asString());
+                            if (value != null) {
+                                descriptor.setValueArgument(parameter, value);
+                            }
+                        }
+                    }
+                    result.add(descriptor);
+                }
+                return result;
+            }
+        }
+    }
+
+    private static final class PackageResources {
+        private final NameResolver nameResolver;
+        private final ProtoBuf.Package packageProto;
+        private final List<Name> classNames;
+        private final JsAnnotationTable annotations;
+
+        private PackageResources(
+                @NotNull NameResolver nameResolver,
+                @NotNull ProtoBuf.Package packageProto,
+                @NotNull List<Name> classNames,
+                @NotNull JsAnnotationTable annotations
+        ) {
+            this.nameResolver = nameResolver;
+            this.packageProto = packageProto;
+            this.classNames = classNames;
+            this.annotations = annotations;
+        }
+    }
+}
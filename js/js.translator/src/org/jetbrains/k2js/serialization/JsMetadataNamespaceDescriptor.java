@@ -0,0 +1,74 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import jet.Function0;
+import jet.Function1;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptorParent;
+import org.jetbrains.jet.lang.descriptors.annotations.AnnotationDescriptor;
+import org.jetbrains.jet.lang.descriptors.impl.AbstractNamespaceDescriptorImpl;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.scopes.JetScope;
+import org.jetbrains.jet.storage.NotNullLazyValue;
+import org.jetbrains.jet.storage.StorageManager;
+
+import java.util.Collections;
+
+/**
+ * A package of a Kotlin/JS library loaded from serialized descriptors
+ */
+/*package*/ class JsMetadataNamespaceDescriptor extends AbstractNamespaceDescriptorImpl {
+    private final FqName fqName;
+    private final String moduleName;
+    private final NotNullLazyValue<JetScope> memberScope;
+
+    public JsMetadataNamespaceDescriptor(
+            @NotNull StorageManager storageManager,
+            @NotNull NamespaceDescriptorParent containingDeclaration,
+            @NotNull FqName fqName,
+            @NotNull String moduleName,
+            @NotNull final Function1<JsMetadataNamespaceDescriptor, JetScope> computeMemberScope
+    ) {
+        super(containingDeclaration, Collections.<AnnotationDescriptor>emptyList(), fqName.shortName());
+        this.fqName = fqName;
+        this.moduleName = moduleName;
+        this.memberScope = storageManager.createLazyValue(new Function0<JetScope>() {
+            @Override
+            public JetScope invoke() {
+                return computeMemberScope.invoke(JsMetadataNamespaceDescriptor.this);
+            }
+        });
+    }
+
+    @NotNull
+    @Override
+    public JetScope getMemberScope() {
+        return memberScope.invoke();
+    }
+
+    @NotNull
+    @Override
+    public FqName getFqName() {
+        return fqName;
+    }
+
+    @NotNull
+    public String getModuleName() {
+        return moduleName;
+    }
+}
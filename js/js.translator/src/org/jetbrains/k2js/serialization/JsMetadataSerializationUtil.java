@@ -0,0 +1,56 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.descriptors.serialization.ClassId;
+import org.jetbrains.jet.lang.descriptors.ClassDescriptor;
+import org.jetbrains.jet.lang.descriptors.DeclarationDescriptor;
+import org.jetbrains.jet.lang.descriptors.NamespaceDescriptor;
+import org.jetbrains.jet.lang.resolve.name.FqNameUnsafe;
+
+public final class JsMetadataSerializationUtil {
+    public static final int VERSION = 2;
+
+    public static final String PACKAGES_FILE_NAME = ".kotlin_js_packages";
+    public static final String ANNOTATIONS_FILE_NAME = ".kotlin_js_annotations";
+
+    private JsMetadataSerializationUtil() {
+    }
+
+    @NotNull
+    public static String getAnnotationsFilePath(@NotNull NamespaceDescriptor packageDescriptor) {
+        return packageDescriptor.getFqName().asString().replace('.', '/') + "/" + ANNOTATIONS_FILE_NAME;
+    }
+
+    /**
+     * Paths of the built-ins serialization start with a slash for the root package, resources don't
+     */
+    @NotNull
+    public static String toResourcePath(@NotNull String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+
+    @NotNull
+    public static ClassId getClassId(@NotNull ClassDescriptor classDescriptor) {
+        DeclarationDescriptor owner = classDescriptor.getContainingDeclaration();
+        if (owner instanceof NamespaceDescriptor) {
+            return new ClassId(((NamespaceDescriptor) owner).getFqName(), FqNameUnsafe.topLevel(classDescriptor.getName()));
+        }
+        return getClassId((ClassDescriptor) owner).createNestedClassId(classDescriptor.getName());
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jetbrains.k2js.serialization;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jet.descriptors.serialization.ClassId;
+import org.jetbrains.jet.descriptors.serialization.DescriptorSerializer;
+import org.jetbrains.jet.descriptors.serialization.NameSerializationUtil;
+import org.jetbrains.jet.descriptors.serialization.ProtoBuf;
+import org.jetbrains.jet.lang.descriptors.*;
+import org.jetbrains.jet.lang.psi.JetFile;
+import org.jetbrains.jet.lang.resolve.BindingContext;
+import org.jetbrains.jet.lang.resolve.BindingContextUtils;
+import org.jetbrains.jet.lang.resolve.name.FqName;
+import org.jetbrains.jet.lang.resolve.name.Name;
+import org.jetbrains.jet.lang.types.lang.BuiltInsSerializationUtil;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.jetbrains.jet.descriptors.serialization.descriptors.AnnotationDeserializer.AnnotatedCallableKind;
+
+/**
+ * Writes descriptors of the declarations in the given files to a metadata library, see {@link JsMetadataLibrary}.
+ * Every package gets its own name table, so that packages can be loaded independently.
+ *
+ * Declarations which can't be loaded back are rejected with an {@link IOException}: declarations in the root package
+ * and annotation arguments other than primitives, strings and nulls.
+ */
+public final class JsMetadataSerializer {
+    private final BindingContext bindingContext;
+    private final Set<JetFile> files;
+    private final Map<String, byte[]> resources = new LinkedHashMap<String, byte[]>();
+
+    private JsMetadataSerializer(@NotNull BindingContext bindingContext, @NotNull Collection<JetFile> files) {
+        this.bindingContext = bindingContext;
+        this.files = new HashSet<JetFile>(files);
+    }
+
+    public static void serialize(
+            @NotNull BindingContext bindingContext,
+            @NotNull Collection<JetFile> files,
+            @NotNull File outputFile
+    ) throws IOException {
+        JsMetadataSerializer serializer = new JsMetadataSerializer(bindingContext, files);
+        serializer.serializePackages();
+        serializer.write(outputFile);
+    }
+
+    private void serializePackages() throws IOException {
+        Set<NamespaceDescriptor> namespaces = new LinkedHashSet<NamespaceDescriptor>();
+        for (JetFile file : files) {
+            NamespaceDescriptor namespace = bindingContext.get(BindingContext.FILE_TO_NAMESPACE, file);
+            assert namespace != null : "File is not analyzed: " + file.getName();
+            // The root namespace of a module can't be extended with library declarations, they would be translated as own ones
+            if (namespace.getFqName().isRoot() && !file.getDeclarations().isEmpty()) {
+                throw new IOException("Declarations in the root package can't be written to Kotlin/JS metadata: " + file.getName());
+            }
+            namespaces.add(namespace);
+        }
+
+        List<FqName> packageFqNames = new ArrayList<FqName>();
+        for (NamespaceDescriptor namespace : namespaces) {
+            if (!namespace.getFqName().isRoot() && serializePackage(namespace)) {
+                packageFqNames.add(namespace.getFqName());
+            }
+        }
+
+        ByteArrayOutputStream packagesStream = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(packagesStream);
+        data.writeInt(JsMetadataSerializationUtil.VERSION);
+        data.writeInt(packageFqNames.size());
+        for (FqName fqName : packageFqNames) {
+            data.writeUTF(fqName.asString());
+        }
+        data.close();
+        resources.put(JsMetadataSerializationUtil.PACKAGES_FILE_NAME, packagesStream.toByteArray());
+    }
+
+    /**
+     * @return false if there are no declarations from the given files in the package
+     */
+    private boolean serializePackage(@NotNull NamespaceDescriptor namespace) throws IOException {
+        List<DeclarationDescriptor> declarations = getOwnDeclarations(namespace);
+        if (declarations.isEmpty()) return false;
+
+        DescriptorSerializer serializer = new DescriptorSerializer();
+        JsAnnotationTable annotations = new JsAnnotationTable();
+
+        ProtoBuf.Package.Builder packageProto = ProtoBuf.Package.newBuilder();
+        List<Name> classNames = new ArrayList<Name>();
+        for (DeclarationDescriptor declaration : declarations) {
+            if (declaration instanceof PropertyDescriptor || declaration instanceof FunctionDescriptor) {
+                CallableMemberDescriptor callable = (CallableMemberDescriptor) declaration;
+                ProtoBuf.Callable proto = serializer.callableProto(callable).build();
+                packageProto.addMember(proto);
+                addCallableAnnotations(annotations, "", callable, proto);
+            }
+            else if (declaration instanceof ClassDescriptor) {
+                classNames.add(declaration.getName());
+                serializeClass((ClassDescriptor) declaration, serializer, annotations);
+            }
+        }
+
+        putResource(BuiltInsSerializationUtil.getPackageFilePath(namespace), packageProto.build().toByteArray());
+
+        ByteArrayOutputStream classNamesStream = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(classNamesStream);
+        data.writeInt(classNames.size());
+        for (Name className : classNames) {
+            data.writeInt(serializer.getNameTable().getSimpleNameIndex(className));
+        }
+        data.close();
+        putResource(BuiltInsSerializationUtil.getClassNamesFilePath(namespace), classNamesStream.toByteArray());
+
+        putResource(JsMetadataSerializationUtil.getAnnotationsFilePath(namespace), annotations.toBytes());
+
+        // The name table is written last: all the names used above must be in it
+        ByteArrayOutputStream nameTableStream = new ByteArrayOutputStream();
+        NameSerializationUtil.serializeNameTable(nameTableStream, serializer.getNameTable());
+        putResource(BuiltInsSerializationUtil.getNameTableFilePath(namespace), nameTableStream.toByteArray());
+
+        return true;
+    }
+
+    @NotNull
+    private List<DeclarationDescriptor> getOwnDeclarations(@NotNull NamespaceDescriptor namespace) {
+        // The namespace may also contain declarations of library sources analyzed together with the given files
+        Set<DeclarationDescriptor> all = new LinkedHashSet<DeclarationDescriptor>(namespace.getMemberScope().getAllDescriptors());
+        all.addAll(namespace.getMemberScope().getObjectDescriptors());
+
+        List<DeclarationDescriptor> result = new ArrayList<DeclarationDescriptor>();
+        for (DeclarationDescriptor descriptor : all) {
+            if (descriptor.getContainingDeclaration() != namespace) continue;
+
+            PsiElement declaration = BindingContextUtils.descriptorToDeclaration(bindingContext, descriptor);
+            if (declaration != null && files.contains(declaration.getContainingFile())) {
+                result.add(descriptor);
+            }
+        }
+        return DescriptorSerializer.sort(result);
+    }
+
+    private void serializeClass(
+            @NotNull ClassDescriptor classDescriptor,
+            @NotNull DescriptorSerializer serializer,
+            @NotNull JsAnnotationTable annotations
+    ) throws IOException {
+        ProtoBuf.Class proto = serializer.classProto(classDescriptor).build();
+        ClassId classId = JsMetadataSerializationUtil.getClassId(classDescriptor);
+        putResource(BuiltInsSerializationUtil.getClassMetadataPath(classId), proto.toByteArray());
+
+        annotations.addClass(classId.getRelativeClassName(), classDescriptor);
+
+        String containerName = classId.getRelativeClassName().asString();
+        ConstructorDescriptor primaryConstructor = classDescriptor.getUnsubstitutedPrimaryConstructor();
+        if (primaryConstructor != null && proto.hasPrimaryConstructor()) {
+            annotations.addCallable(containerName, AnnotatedCallableKind.FUNCTION, proto.getPrimaryConstructor(), primaryConstructor);
+        }
+
+        // Members are paired with their protos in the order DescriptorSerializer.classProto() writes them
+        int memberIndex = 0;
+        for (DeclarationDescriptor descriptor : DescriptorSerializer.sort(classDescriptor.getDefaultType().getMemberScope().getAllDescriptors())) {
+            if (!(descriptor instanceof CallableMemberDescriptor)) continue;
+            CallableMemberDescriptor member = (CallableMemberDescriptor) descriptor;
+            if (member.getKind() == CallableMemberDescriptor.Kind.FAKE_OVERRIDE) continue;
+
+            addCallableAnnotations(annotations, containerName, member, proto.getMember(memberIndex++));
+        }
+        assert memberIndex == proto.getMemberCount() : "Members of " + classId + " are not in sync with the proto";
+
+        for (DeclarationDescriptor descriptor : classDescriptor.getUnsubstitutedInnerClassesScope().getAllDescriptors()) {
+            if (descriptor instanceof ClassDescriptor) {
+                serializeClass((ClassDescriptor) descriptor, serializer, annotations);
+            }
+        }
+        for (ClassDescriptor descriptor : classDescriptor.getUnsubstitutedInnerClassesScope().getObjectDescriptors()) {
+            serializeClass(descriptor, serializer, annotations);
+        }
+        ClassDescriptor classObjectDescriptor = classDescriptor.getClassObjectDescriptor();
+        if (classObjectDescriptor != null) {
+            serializeClass(classObjectDescriptor, serializer, annotations);
+        }
+    }
+
+    private static void addCallableAnnotations(
+            @NotNull JsAnnotationTable annotations,
+            @NotNull String containerName,
+            @NotNull CallableMemberDescriptor descriptor,
+            @NotNull ProtoBuf.Callable proto
+    ) throws IOException {
+        if (descriptor instanceof PropertyDescriptor) {
+            PropertyDescriptor property = (PropertyDescriptor) descriptor;
+            annotations.addCallable(containerName, AnnotatedCallableKind.PROPERTY, proto, property);
+            annotations.addCallable(containerName, AnnotatedCallableKind.PROPERTY_GETTER, proto, property.getGetter());
+            annotations.addCallable(containerName, AnnotatedCallableKind.PROPERTY_SETTER, proto, property.getSetter());
+        }
+        else {
+            annotations.addCallable(containerName, AnnotatedCallableKind.FUNCTION, proto, descriptor);
+        }
+    }
+
+    private void putResource(@NotNull String path, @NotNull byte[] bytes) {
+        resources.put(JsMetadataSerializationUtil.toResourcePath(path), bytes);
+    }
+
+    private void write(@NotNull File outputFile) throws IOException {
+        File parent = outputFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)));
+        try {
+            for (Map.Entry<String, byte[]> entry : resources.entrySet()) {
+                output.putNextEntry(new ZipEntry(entry.getKey()));
+                output.write(entry.getValue());
+                output.closeEntry();
+            }
+        }
+        finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package app
+
+import metalib.*
+
+fun box(): String {
+    val greeter = Greeter.create()
+    if (greeter.greet("world") != "Hi, world") return "fail: member"
+    if (greet("world") != "Hello, world!") return "fail: function"
+    counter = 2
+    Registry.greeters.add(greeter)
+    nativeAlert("hello")
+    return "OK"
+}
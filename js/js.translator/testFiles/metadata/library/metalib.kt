@@ -0,0 +1,40 @@
+package metalib
+
+import js.*
+import java.util.ArrayList
+
+annotation class marker(count: Int, big: Long, flag: Boolean, ratio: Double, letter: Char, text: String)
+
+native("realAlert")
+fun nativeAlert(message: String): Unit = noImpl
+
+marker(1, 2, true, 0.5, 'a', "function")
+fun greet(marker(3, 4, false, 1.5, 'b', "parameter") name: String, punctuation: String = "!"): String = "Hello, " + name + punctuation
+
+fun <T> List<T>.second(): T = get(1)
+
+val String.shout: String
+    get() = toUpperCase()
+
+var counter: Int = 0
+    [marker(5, 6, true, 2.5, 'c', "setter")] set(value) { $counter = value }
+
+trait Named {
+    val name: String
+}
+
+open class Greeter(marker(7, 8, false, 3.5, 'd', "constructor") val greeting: String) : Named {
+    override val name: String = "greeter"
+
+    open fun greet(name: String): String = greeting + ", " + name
+
+    class Nested(val value: Int)
+
+    class object {
+        fun create(): Greeter = Greeter("Hi")
+    }
+}
+
+object Registry {
+    val greeters = ArrayList<Greeter>()
+}
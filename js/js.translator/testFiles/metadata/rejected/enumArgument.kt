@@ -0,0 +1,10 @@
+package rejected
+
+enum class Kind {
+    FIRST
+}
+
+annotation class kind(value: Kind)
+
+kind(Kind.FIRST) fun annotated() {
+}
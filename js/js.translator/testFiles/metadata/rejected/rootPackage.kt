@@ -0,0 +1 @@
+fun inRootPackage(): Int = 42
@@ -0,0 +1,92 @@
+package foo
+
+fun unusedVariables() {
+    val a = 1
+    var b = 2
+    b = 3
+}
+
+fun uninitialized(): Int {
+    val a: Int
+    var b: Int
+    if (a > 0) {
+        b = 1
+    }
+    return b
+}
+
+fun unreachable(): Int {
+    return 1
+    val c = 2
+    return c
+}
+
+fun noReturn(x: Int): Int {
+    if (x > 0) return x
+}
+
+fun valReassigned() {
+    val a = 1
+    a = 2
+    val b: Int
+    b = 1
+    b = 2
+}
+
+fun loops(n: Int): Int {
+    var sum: Int
+    var i = 0
+    while (i < n) {
+        sum = sum + i
+        i++
+    }
+    do {
+        val x = i
+    } while (x > 0)
+    return sum
+}
+
+fun tryFinally(): Int {
+    val a: Int
+    try {
+        a = 1
+    }
+    finally {
+        a = 2
+    }
+    return a
+}
+
+class A(p: Int) {
+    val x: Int
+    val y: Int = p
+    var z: Int
+
+    fun f() {
+        val unused = y
+    }
+
+    class object {
+        val w: Int
+    }
+}
+
+object O {
+    val v: Int
+    fun g(): Int {
+        return 1
+        g()
+    }
+}
+
+val topLevel: Int
+    get() {
+        val unused = 1
+    }
+
+trait T {
+    fun h(): Int {
+        val a: Int
+        return a
+    }
+}